@@ -164,4 +164,8 @@ public class AuditEvent {
     return duration;
   }
 
+  public void setDuration(long duration) {
+    this.duration = duration;
+  }
+
 }
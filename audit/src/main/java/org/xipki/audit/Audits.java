@@ -17,9 +17,16 @@
 
 package org.xipki.audit;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.audit.services.AsyncAuditService;
+import org.xipki.audit.services.AsyncAuditService.OverflowPolicy;
 import org.xipki.audit.services.EmbedAuditService;
+import org.xipki.audit.services.FileAuditService;
 import org.xipki.audit.services.SyslogAuditService;
 
 /**
@@ -30,18 +37,89 @@ import org.xipki.audit.services.SyslogAuditService;
 
 public class Audits {
 
+  /**
+   * Configuration of the asynchronous audit, see {@link AsyncAuditService}.
+   *
+   * @since 5.3.8
+   */
+  public static class AsyncConf {
+
+    private int queueSize = 8192;
+
+    private int batchSize = 256;
+
+    private int flushers = 1;
+
+    /**
+     * valid values are block, drop-debug and spill.
+     */
+    private String overflowPolicy = "block";
+
+    /**
+     * directory of the spill file, required for the overflowPolicy spill.
+     */
+    private String spillDir;
+
+    public int getQueueSize() {
+      return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+      this.queueSize = queueSize;
+    }
+
+    public int getBatchSize() {
+      return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+      this.batchSize = batchSize;
+    }
+
+    public int getFlushers() {
+      return flushers;
+    }
+
+    public void setFlushers(int flushers) {
+      this.flushers = flushers;
+    }
+
+    public String getOverflowPolicy() {
+      return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(String overflowPolicy) {
+      this.overflowPolicy = overflowPolicy;
+    }
+
+    public String getSpillDir() {
+      return spillDir;
+    }
+
+    public void setSpillDir(String spillDir) {
+      this.spillDir = spillDir;
+    }
+
+  } // class AsyncConf
+
   public static class AuditConf {
 
     /**
      * valid values are:
      *   embed: use the embedded slf4j logging
      *   syslog: use the syslog
+     *   file: use the hash-chained segment files
      *   java:&lt;name of class that implements org.xipki.audit.AuditService&gt;
      */
     private String type;
 
     private String conf;
 
+    /**
+     * If present, the events are logged asynchronously.
+     */
+    private AsyncConf async;
+
     public static AuditConf DEFAULT = new AuditConf();
 
     public String getType() {
@@ -60,8 +138,18 @@ public class Audits {
       this.conf = conf;
     }
 
+    public AsyncConf getAsync() {
+      return async;
+    }
+
+    public void setAsync(AsyncConf async) {
+      this.async = async;
+    }
+
   }
 
+  private static final Logger LOG = LoggerFactory.getLogger(Audits.class);
+
   private static AuditService auditService;
 
   private static AuditServiceRuntimeException initializationException;
@@ -82,12 +170,18 @@ public class Audits {
   } // method getAuditService
 
   public static void init(String auditType, String auditConf)  {
+    init(auditType, auditConf, null);
+  }
+
+  public static void init(String auditType, String auditConf, AsyncConf asyncConf)  {
     try {
       AuditService service;
       if ("embed".equalsIgnoreCase(auditType)) {
         service = new EmbedAuditService();
       } else if ("syslog".equalsIgnoreCase(auditType)) {
         service = new SyslogAuditService();
+      } else if ("file".equalsIgnoreCase(auditType)) {
+        service = new FileAuditService();
       } else  if (auditType.startsWith("java:")) {
         String className = auditType.substring("java:".length());
         try {
@@ -101,8 +195,14 @@ public class Audits {
         }
       } else {
         throw new AuditServiceRuntimeException("invalid Audit.Type '" + auditType
-            + "'. Valid values are 'embed', 'syslog' or java:<name of class that implements "
-            + AuditService.class.getName() + ">");
+            + "'. Valid values are 'embed', 'syslog', 'file' or java:<name of class that "
+            + "implements " + AuditService.class.getName() + ">");
+      }
+
+      if (asyncConf != null) {
+        service = new AsyncAuditService(service, asyncConf.getQueueSize(),
+            asyncConf.getBatchSize(), asyncConf.getFlushers(),
+            OverflowPolicy.forName(asyncConf.getOverflowPolicy()), asyncConf.getSpillDir());
       }
 
       service.init(auditConf);
@@ -114,4 +214,19 @@ public class Audits {
     }
   } // method init
 
+  /**
+   * Closes the audit service if it is {@link Closeable}, e.g. to log the buffered events of
+   * the asynchronous audit service.
+   */
+  public static void close() {
+    AuditService service = auditService;
+    if (service instanceof Closeable) {
+      try {
+        ((Closeable) service).close();
+      } catch (IOException | RuntimeException ex) {
+        LOG.warn("could not close the AuditService: {}", ex.getMessage());
+      }
+    }
+  } // method close
+
 }
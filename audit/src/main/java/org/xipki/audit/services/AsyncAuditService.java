@@ -0,0 +1,692 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.services;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.audit.AuditEvent;
+import org.xipki.audit.AuditEventData;
+import org.xipki.audit.AuditLevel;
+import org.xipki.audit.AuditService;
+import org.xipki.audit.AuditServiceRuntimeException;
+import org.xipki.audit.AuditStatus;
+import org.xipki.audit.PciAuditEvent;
+import org.xipki.util.Args;
+import org.xipki.util.IoUtil;
+
+/**
+ * Audit service which hands the events over to a lock-free ring buffer, and logs them to the
+ * wrapped audit service in batches by flusher threads. The request threads do not wait for
+ * formatting and sending the events, unless the buffer is full and the overflow policy is
+ * {@link OverflowPolicy#BLOCK}.
+ *
+ * <p>With more than one flusher thread the events may be logged out of order.
+ *
+ * <p>The events spilled with the policy {@link OverflowPolicy#SPILL} are replayed into the
+ * wrapped audit service once the buffer is drained, on close and on restart, so that they are
+ * covered by the hash chain of the {@link FileAuditService} as well, though later than and not
+ * in order with the events logged in between. An event may be logged twice if the process
+ * stops during the replay.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class AsyncAuditService implements AuditService, Closeable {
+
+  /**
+   * Policy if the buffer is full.
+   */
+  public enum OverflowPolicy {
+
+    /**
+     * Wait until the buffer has free space.
+     */
+    BLOCK,
+
+    /**
+     * Drop the events of level DEBUG, and wait for the other events.
+     */
+    DROP_DEBUG,
+
+    /**
+     * Write the events to a file in the spill directory. These events are logged to the
+     * wrapped audit service once the buffer is drained.
+     */
+    SPILL;
+
+    public static OverflowPolicy forName(String name) {
+      Args.notBlank(name, "name");
+      String str = name.replace("-", "_").replace(" ", "_");
+      for (OverflowPolicy m : values()) {
+        if (m.name().equalsIgnoreCase(str)) {
+          return m;
+        }
+      }
+      throw new IllegalArgumentException("invalid OverflowPolicy " + name);
+    } // method forName
+
+  } // class OverflowPolicy
+
+  private class Flusher extends Thread {
+
+    // whether the flusher is about to park or parked, the producers unpark it
+    private volatile boolean idle;
+
+    private Flusher(String name) {
+      super(name);
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      List<Object> events = new ArrayList<>(batchSize);
+      while (true) {
+        buffer.drainTo(events, batchSize);
+        if (events.isEmpty()) {
+          if (closed && activeProducers.get() == 0 && buffer.size() == 0) {
+            break;
+          }
+
+          if (spillPending && !replaying.get()) {
+            // the buffer is drained, log the spilled events
+            replaySpill();
+            continue;
+          }
+
+          idle = true;
+          numIdleFlushers.incrementAndGet();
+          // check again after announcing the idle state, an event offered in between
+          // would not unpark this flusher otherwise
+          if (buffer.size() == 0 && !closed) {
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+          }
+          numIdleFlushers.decrementAndGet();
+          idle = false;
+          continue;
+        }
+
+        for (Object event : events) {
+          deliver(event);
+        }
+        events.clear();
+      }
+    } // method run
+
+  } // class Flusher
+
+  private static final Logger LOG = LoggerFactory.getLogger(AsyncAuditService.class);
+
+  // the idle flushers are unparked by the producers, the timeout is only a safety net
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  private static final String SPILL_FILE_NAME = "audit-spill.log";
+
+  // the spill file is renamed to this file before it is replayed
+  private static final String REPLAY_FILE_NAME = "audit-spill.log.replay";
+
+  private static final char SPILL_FIELD_SEPARATOR = '\t';
+
+  private static final String SPILL_NULL = "\\N";
+
+  // last field of each record in the spill file, to detect a truncated record
+  private static final String SPILL_END = ".";
+
+  private static final DateTimeFormatter PCI_DATE_TIME_FORMATTER =
+      DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
+
+  private final AuditService delegate;
+
+  private final AuditRingBuffer<Object> buffer;
+
+  private final int batchSize;
+
+  private final int numFlushers;
+
+  private final OverflowPolicy overflowPolicy;
+
+  private final String spillDir;
+
+  private final List<Flusher> flushers = new ArrayList<>();
+
+  private final AtomicInteger activeProducers = new AtomicInteger();
+
+  private final AtomicInteger numIdleFlushers = new AtomicInteger();
+
+  private final AtomicLong numLogged = new AtomicLong();
+
+  private final AtomicLong numBlocked = new AtomicLong();
+
+  private final AtomicLong numDropped = new AtomicLong();
+
+  private final AtomicLong numSpilled = new AtomicLong();
+
+  private final AtomicLong numReplayed = new AtomicLong();
+
+  private final AtomicBoolean replaying = new AtomicBoolean();
+
+  private BufferedWriter spillWriter;
+
+  private volatile boolean spillPending;
+
+  private volatile boolean closed;
+
+  /**
+   * Constructor.
+   *
+   * @param delegate
+   *          the audit service to which the events are logged.
+   * @param queueSize
+   *          capacity of the buffer, rounded up to the next power of two.
+   * @param batchSize
+   *          maximal number of events taken from the buffer at once by a flusher.
+   * @param numFlushers
+   *          number of flusher threads.
+   * @param overflowPolicy
+   *          policy if the buffer is full.
+   * @param spillDir
+   *          directory of the spill file. Required for the policy
+   *          {@link OverflowPolicy#SPILL}.
+   */
+  public AsyncAuditService(AuditService delegate, int queueSize, int batchSize,
+      int numFlushers, OverflowPolicy overflowPolicy, String spillDir) {
+    this.delegate = Args.notNull(delegate, "delegate");
+    this.buffer = new AuditRingBuffer<>(Args.positive(queueSize, "queueSize"));
+    this.batchSize = Args.positive(batchSize, "batchSize");
+    this.numFlushers = Args.positive(numFlushers, "numFlushers");
+    this.overflowPolicy = Args.notNull(overflowPolicy, "overflowPolicy");
+    if (overflowPolicy == OverflowPolicy.SPILL) {
+      this.spillDir = IoUtil.expandFilepath(Args.notBlank(spillDir, "spillDir"));
+    } else {
+      this.spillDir = null;
+    }
+  } // constructor
+
+  @Override
+  public void init(String conf) {
+    delegate.init(conf);
+
+    if (spillDir != null) {
+      // events spilled before the last stop
+      replaySpill();
+    }
+
+    for (int i = 0; i < numFlushers; i++) {
+      Flusher flusher = new Flusher("audit-flusher-" + (i + 1));
+      flushers.add(flusher);
+      flusher.start();
+    }
+
+    LOG.info("initialized asynchronous audit service: delegate={}, queueSize={}, batchSize={}, "
+        + "flushers={}, overflowPolicy={}", delegate.getClass().getName(), buffer.capacity(),
+        batchSize, numFlushers, overflowPolicy);
+  } // method init
+
+  @Override
+  public void logEvent(AuditEvent event) {
+    Args.notNull(event, "event");
+    enqueue(event, event.getLevel());
+  }
+
+  @Override
+  public void logEvent(PciAuditEvent event) {
+    Args.notNull(event, "event");
+    enqueue(event, event.getLevel());
+  }
+
+  private void enqueue(Object event, AuditLevel level) {
+    activeProducers.incrementAndGet();
+    try {
+      if (closed) {
+        deliver(event);
+        return;
+      }
+
+      if (buffer.offer(event)) {
+        wakeUpFlusher();
+        return;
+      }
+
+      if (overflowPolicy == OverflowPolicy.SPILL) {
+        spill(event);
+        return;
+      } else if (overflowPolicy == OverflowPolicy.DROP_DEBUG && level == AuditLevel.DEBUG) {
+        numDropped.incrementAndGet();
+        return;
+      }
+
+      numBlocked.incrementAndGet();
+      while (!buffer.offer(event)) {
+        if (closed) {
+          deliver(event);
+          return;
+        }
+        LockSupport.parkNanos(BLOCK_PARK_NANOS);
+      }
+      wakeUpFlusher();
+    } finally {
+      activeProducers.decrementAndGet();
+    }
+  } // method enqueue
+
+  private void wakeUpFlusher() {
+    if (numIdleFlushers.get() == 0) {
+      return;
+    }
+
+    for (Flusher flusher : flushers) {
+      if (flusher.idle) {
+        LockSupport.unpark(flusher);
+        return;
+      }
+    }
+  } // method wakeUpFlusher
+
+  private void deliver(Object event) {
+    try {
+      if (event instanceof AuditEvent) {
+        delegate.logEvent((AuditEvent) event);
+      } else {
+        delegate.logEvent((PciAuditEvent) event);
+      }
+      numLogged.incrementAndGet();
+    } catch (Throwable th) {
+      LOG.error("could not log audit event: {}", th.getMessage());
+      LOG.debug("could not log audit event", th);
+    }
+  } // method deliver
+
+  private synchronized void spill(Object event) {
+    try {
+      File spillFile = new File(spillDir, SPILL_FILE_NAME);
+      if (spillWriter == null) {
+        Files.createDirectories(spillFile.getParentFile().toPath());
+        spillWriter = new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(spillFile, true), StandardCharsets.UTF_8));
+      }
+
+      spillWriter.write(encodeSpillRecord(event));
+      spillWriter.newLine();
+      spillWriter.flush();
+      numSpilled.incrementAndGet();
+      if (!spillPending) {
+        spillPending = true;
+        LOG.warn("audit buffer is full, spilling the events to {} until it is drained",
+            spillFile.getPath());
+      }
+    } catch (IOException ex) {
+      numDropped.incrementAndGet();
+      LOG.error("could not write audit event to the spill file: {}", ex.getMessage());
+      LOG.debug("could not write audit event to the spill file", ex);
+    }
+  } // method spill
+
+  /**
+   * Logs the spilled events to the wrapped audit service. The spill file is renamed before, so
+   * that the events spilled in the meantime go to a new file.
+   */
+  private void replaySpill() {
+    if (!replaying.compareAndSet(false, true)) {
+      return;
+    }
+
+    File spillFile = new File(spillDir, SPILL_FILE_NAME);
+    File replayFile = new File(spillDir, REPLAY_FILE_NAME);
+    try {
+      // left over by a replay which has not been completed
+      if (replayFile.exists()) {
+        replayFile(replayFile);
+      }
+
+      synchronized (this) {
+        spillPending = false;
+        closeSpillWriter();
+        if (!spillFile.exists()) {
+          return;
+        }
+        Files.move(spillFile.toPath(), replayFile.toPath());
+      }
+
+      replayFile(replayFile);
+    } catch (IOException ex) {
+      LOG.error("could not replay the spilled audit events: {}", ex.getMessage());
+      LOG.debug("could not replay the spilled audit events", ex);
+    } finally {
+      replaying.set(false);
+    }
+  } // method replaySpill
+
+  private void replayFile(File file) throws IOException {
+    long num = 0;
+    int lineNo = 0;
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new FileInputStream(file), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lineNo++;
+        if (line.isEmpty()) {
+          continue;
+        }
+
+        Object event = decodeSpillRecord(line);
+        if (event == null) {
+          LOG.error("ignored invalid record in line {} of the spill file {}", lineNo,
+              file.getPath());
+          continue;
+        }
+
+        deliver(event);
+        num++;
+      }
+    }
+
+    numReplayed.addAndGet(num);
+    Files.delete(file.toPath());
+    LOG.warn("replayed {} spilled audit events from {}", num, file.getPath());
+  } // method replayFile
+
+  private void closeSpillWriter() {
+    if (spillWriter != null) {
+      try {
+        spillWriter.close();
+      } catch (IOException ex) {
+        LOG.warn("could not close the spill file: {}", ex.getMessage());
+      }
+      spillWriter = null;
+    }
+  } // method closeSpillWriter
+
+  static String encodeSpillRecord(Object event) {
+    List<String> fields = new ArrayList<>();
+    if (event instanceof AuditEvent) {
+      AuditEvent ae = (AuditEvent) event;
+      fields.add("A");
+      fields.add(Long.toString(ae.getTimestamp().getTime()));
+      fields.add(ae.getLevel() == null ? null : ae.getLevel().name());
+      fields.add(ae.getApplicationName());
+      fields.add(ae.getName());
+      fields.add(ae.getStatus() == null ? null : ae.getStatus().name());
+      fields.add(Long.toString(ae.getDuration()));
+      for (AuditEventData data : ae.getEventDatas()) {
+        fields.add(data.getName());
+        fields.add(data.getValue());
+      }
+    } else {
+      PciAuditEvent pe = (PciAuditEvent) event;
+      fields.add("P");
+      fields.add(pe.getDate() + " " + pe.getTime());
+      fields.add(pe.getLevel().name());
+      fields.add(pe.getUserId());
+      fields.add(pe.getEventType());
+      fields.add(pe.getStatus());
+      fields.add(pe.getOrigination());
+      fields.add(pe.getAffectedResource());
+    }
+    fields.add(SPILL_END);
+
+    StringBuilder sb = new StringBuilder();
+    for (String field : fields) {
+      if (sb.length() > 0) {
+        sb.append(SPILL_FIELD_SEPARATOR);
+      }
+
+      if (field == null) {
+        sb.append(SPILL_NULL);
+        continue;
+      }
+
+      for (int i = 0; i < field.length(); i++) {
+        char ch = field.charAt(i);
+        if (ch == '\\') {
+          sb.append("\\\\");
+        } else if (ch == SPILL_FIELD_SEPARATOR) {
+          sb.append("\\t");
+        } else if (ch == '\n') {
+          sb.append("\\n");
+        } else if (ch == '\r') {
+          sb.append("\\r");
+        } else {
+          sb.append(ch);
+        }
+      }
+    }
+    return sb.toString();
+  } // method encodeSpillRecord
+
+  /**
+   * Decodes the record written by {@link #encodeSpillRecord(Object)}.
+   *
+   * @param record
+   *          the record.
+   * @return the event, or {@code null} if the record is invalid or truncated.
+   */
+  static Object decodeSpillRecord(String record) {
+    List<String> fields = new ArrayList<>();
+    StringBuilder sb = new StringBuilder();
+    boolean nullField = false;
+    for (int i = 0; i < record.length(); i++) {
+      char ch = record.charAt(i);
+      if (ch == SPILL_FIELD_SEPARATOR) {
+        fields.add(nullField ? null : sb.toString());
+        sb.setLength(0);
+        nullField = false;
+      } else if (ch == '\\' && i + 1 < record.length()) {
+        char next = record.charAt(++i);
+        if (next == 't') {
+          sb.append(SPILL_FIELD_SEPARATOR);
+        } else if (next == 'n') {
+          sb.append('\n');
+        } else if (next == 'r') {
+          sb.append('\r');
+        } else if (next == 'N') {
+          nullField = true;
+        } else {
+          sb.append(next);
+        }
+      } else {
+        sb.append(ch);
+      }
+    }
+    fields.add(nullField ? null : sb.toString());
+
+    int num = fields.size();
+    if (num < 2 || !SPILL_END.equals(fields.get(num - 1))) {
+      return null;
+    }
+
+    try {
+      String type = fields.get(0);
+      if ("A".equals(type)) {
+        // type, timestamp, level, application, name, status, duration, pairs of data, end
+        if (num < 8 || (num - 8) % 2 != 0) {
+          return null;
+        }
+
+        AuditEvent event = new AuditEvent(new Date(Long.parseLong(fields.get(1))));
+        event.setLevel(fields.get(2) == null ? null : AuditLevel.forName(fields.get(2)));
+        if (fields.get(3) != null) {
+          event.setApplicationName(fields.get(3));
+        }
+        event.setName(fields.get(4));
+        if (fields.get(5) != null) {
+          event.setStatus(AuditStatus.forName(fields.get(5)));
+        }
+        event.setDuration(Long.parseLong(fields.get(6)));
+        for (int i = 7; i < num - 1; i += 2) {
+          event.addEventData(fields.get(i), fields.get(i + 1));
+        }
+        return event;
+      } else if ("P".equals(type)) {
+        if (num != 9) {
+          return null;
+        }
+
+        LocalDateTime dateTime = LocalDateTime.parse(fields.get(1), PCI_DATE_TIME_FORMATTER);
+        PciAuditEvent event = new PciAuditEvent(Date.from(dateTime.toInstant(ZoneOffset.UTC)));
+        event.setLevel(AuditLevel.forName(fields.get(2)));
+        event.setUserId(fields.get(3));
+        event.setEventType(fields.get(4));
+        event.setStatus(fields.get(5));
+        event.setOrigination(fields.get(6));
+        event.setAffectedResource(fields.get(7));
+        return event;
+      } else {
+        return null;
+      }
+    } catch (RuntimeException ex) {
+      LOG.debug("could not decode the spilled audit event", ex);
+      return null;
+    }
+  } // method decodeSpillRecord
+
+  /**
+   * Stops accepting events, and waits until the flushers have logged the buffered events.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+
+    for (Flusher flusher : flushers) {
+      LockSupport.unpark(flusher);
+    }
+
+    for (Flusher flusher : flushers) {
+      try {
+        flusher.join(10000);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+
+    // log what the flushers have not taken
+    Object event;
+    while ((event = buffer.poll()) != null) {
+      deliver(event);
+    }
+
+    if (spillDir != null) {
+      replaySpill();
+      synchronized (this) {
+        closeSpillWriter();
+      }
+    }
+
+    LOG.info("closed asynchronous audit service: logged={}, blocked={}, dropped={}, spilled={}, "
+        + "replayed={}", numLogged.get(), numBlocked.get(), numDropped.get(), numSpilled.get(),
+        numReplayed.get());
+
+    if (delegate instanceof Closeable) {
+      try {
+        ((Closeable) delegate).close();
+      } catch (IOException ex) {
+        throw new AuditServiceRuntimeException("could not close " + delegate.getClass(), ex);
+      }
+    }
+  } // method close
+
+  /**
+   * Returns the approximate number of events in the buffer.
+   *
+   * @return the number of buffered events.
+   */
+  public int getQueueDepth() {
+    return buffer.size();
+  }
+
+  public int getQueueCapacity() {
+    return buffer.capacity();
+  }
+
+  /**
+   * Returns the number of events logged to the wrapped audit service.
+   *
+   * @return the number of logged events.
+   */
+  public long getNumLogged() {
+    return numLogged.get();
+  }
+
+  /**
+   * Returns how often a request thread had to wait since the buffer was full.
+   *
+   * @return the number of blocked calls.
+   */
+  public long getNumBlocked() {
+    return numBlocked.get();
+  }
+
+  /**
+   * Returns the number of events which have been dropped, since the buffer was full or the
+   * spill file could not be written.
+   *
+   * @return the number of dropped events.
+   */
+  public long getNumDropped() {
+    return numDropped.get();
+  }
+
+  /**
+   * Returns the number of events written to the spill file.
+   *
+   * @return the number of spilled events.
+   */
+  public long getNumSpilled() {
+    return numSpilled.get();
+  }
+
+  /**
+   * Returns the number of spilled events logged to the wrapped audit service.
+   *
+   * @return the number of replayed events.
+   */
+  public long getNumReplayed() {
+    return numReplayed.get();
+  }
+
+}
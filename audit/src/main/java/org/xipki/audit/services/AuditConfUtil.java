@@ -0,0 +1,89 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import org.xipki.audit.AuditServiceRuntimeException;
+
+/**
+ * Utility functions to read the properties configuration of the audit services.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+class AuditConfUtil {
+
+  private AuditConfUtil() {
+  }
+
+  static Properties loadProperties(String path) throws AuditServiceRuntimeException {
+    if (path == null) {
+      return null;
+    }
+
+    Path realPath = Paths.get(path);
+    if (Files.exists(realPath)) {
+      Properties props = new Properties();
+      try {
+        try (InputStream is = Files.newInputStream(realPath)) {
+          props.load(is);
+        }
+      } catch (IOException ex) {
+        throw new AuditServiceRuntimeException("could not load properties from file " + path, ex);
+      }
+      return props;
+    } else {
+      throw new AuditServiceRuntimeException("the file " + path + " does not exist");
+    }
+  } // method loadProperties
+
+  static String getString(Properties props, String key, String dfltValue) {
+    if (props == null) {
+      return dfltValue;
+    } else {
+      String value = props.getProperty(key);
+      return value == null ? dfltValue : value;
+    }
+  } // method getString
+
+  static int getInt(Properties props, String key, int dfltValue) {
+    if (props == null) {
+      return dfltValue;
+    } else {
+      String value = props.getProperty(key);
+      return value == null ? dfltValue : Integer.parseInt(value);
+    }
+  } // method getInt
+
+  static boolean getBoolean(Properties props, String key, boolean dfltValue) {
+    if (props == null) {
+      return dfltValue;
+    } else {
+      String value = props.getProperty(key);
+      return value == null ? dfltValue : Boolean.parseBoolean(value);
+    }
+  } // method getBoolean
+
+}
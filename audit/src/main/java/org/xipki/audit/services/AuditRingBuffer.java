@@ -0,0 +1,167 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.services;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free ring buffer for multiple producers and multiple consumers. Each slot has a
+ * sequence number which tells whether the slot is free for the producer of a given position or
+ * filled for the consumer of a given position, so that producers and consumers only compete
+ * via CAS on the tail and head positions respectively.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+class AuditRingBuffer<T> {
+
+  private final int mask;
+
+  // the items are published by the volatile write of the sequence of the slot
+  private final Object[] items;
+
+  private final AtomicLongArray sequences;
+
+  private final AtomicLong head = new AtomicLong();
+
+  private final AtomicLong tail = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param capacity
+   *          minimal capacity. It is rounded up to the next power of two.
+   */
+  AuditRingBuffer(int capacity) {
+    if (capacity < 1 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException("capacity is not in [1, 2^30]: " + capacity);
+    }
+
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+
+    this.mask = size - 1;
+    this.items = new Object[size];
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+  } // constructor
+
+  int capacity() {
+    return items.length;
+  }
+
+  /**
+   * Returns the approximate number of items in the buffer.
+   *
+   * @return the approximate number of items.
+   */
+  int size() {
+    long size = tail.get() - head.get();
+    return (size < 0) ? 0 : (int) Math.min(size, items.length);
+  }
+
+  /**
+   * Adds an item if the buffer is not full.
+   *
+   * @param item
+   *          the item. Must not be {@code null}.
+   * @return whether the item has been added.
+   */
+  boolean offer(T item) {
+    long pos;
+    int idx;
+    while (true) {
+      pos = tail.get();
+      idx = (int) pos & mask;
+      long diff = sequences.get(idx) - pos;
+      if (diff == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          break;
+        }
+      } else if (diff < 0) {
+        // the slot still holds the item of the previous round
+        return false;
+      }
+      // else: another producer has taken the position, retry
+    }
+
+    items[idx] = item;
+    sequences.set(idx, pos + 1);
+    return true;
+  } // method offer
+
+  /**
+   * Removes the next item.
+   *
+   * @return the next item, or {@code null} if the buffer is empty.
+   */
+  @SuppressWarnings("unchecked")
+  T poll() {
+    long pos;
+    int idx;
+    while (true) {
+      pos = head.get();
+      idx = (int) pos & mask;
+      long diff = sequences.get(idx) - (pos + 1);
+      if (diff == 0) {
+        if (head.compareAndSet(pos, pos + 1)) {
+          break;
+        }
+      } else if (diff < 0) {
+        // the slot has not been filled yet
+        return null;
+      }
+      // else: another consumer has taken the position, retry
+    }
+
+    T item = (T) items[idx];
+    items[idx] = null;
+    sequences.set(idx, pos + items.length);
+    return item;
+  } // method poll
+
+  /**
+   * Removes up to {@code maxItems} items and adds them to the given list.
+   *
+   * @param list
+   *          the list to which the items are added.
+   * @param maxItems
+   *          maximal number of items to be removed.
+   * @return number of removed items.
+   */
+  int drainTo(List<T> list, int maxItems) {
+    int n = 0;
+    while (n < maxItems) {
+      T item = poll();
+      if (item == null) {
+        break;
+      }
+      list.add(item);
+      n++;
+    }
+    return n;
+  } // method drainTo
+
+}
@@ -124,4 +124,9 @@ public class EmbedAuditService implements AuditService {
     return sb.toString();
   } // method createMessage
 
+  protected static String createMessage(PciAuditEvent event) {
+    Args.notNull(event, "event");
+    return event.getLevel().getAlignedText() + " | " + event.toCharArrayWriter("");
+  } // method createMessage
+
 }
@@ -0,0 +1,476 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.services;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.audit.AuditEvent;
+import org.xipki.audit.AuditService;
+import org.xipki.audit.AuditServiceRuntimeException;
+import org.xipki.audit.PciAuditEvent;
+import org.xipki.util.Args;
+import org.xipki.util.Hex;
+import org.xipki.util.IoUtil;
+
+/**
+ * File audit service. The events are appended as binary records to memory-mapped segment
+ * files of fixed size, a new segment is started if the current one is full.
+ *
+ * <p>The records form a hash chain: the hash of a record is computed over the hash of the
+ * previous record, the sequence number, the timestamp and the message. The header of a segment
+ * contains the hash of the last record of the previous segment. Hence modified, removed or
+ * inserted records are detected by {@link FileAuditVerifier}. Since the newest records could
+ * be removed together with their hashes, the head of the chain (sequence number and hash of the
+ * last record written to the disk) is logged every anchorInterval seconds and on close; the
+ * verifier compares the trail with such a logged head.
+ *
+ * <p>If the last segment ends with an invalid record, e.g. after a crash during a write,
+ * the audit trail is continued after the last valid record in a new segment, which starts with
+ * a recovery record describing the error. The verifier accepts an invalid segment only if such
+ * a recovery record follows it.
+ *
+ * <p>The segments are written to the disk by a background thread every syncInterval
+ * milliseconds, one fsync for all records since the last one (group commit). If waitForSync
+ * is true, {@code logEvent} returns after the record has been written to the disk.
+ *
+ * <p>Layout of a segment: magic (8 bytes), sequence number of the first record (8), hash of the
+ * previous record (32), records, and zero bytes. Layout of a record: length of the following
+ * fields (4, the highest bit is set for a recovery record), sequence number (8), timestamp in
+ * milliseconds (8), UTF-8 message, hash (32). The zero length marks the end of the records.
+ *
+ * <p>Configuration (properties file): dir (required), segmentSize in MB (default 64),
+ * syncInterval in milliseconds (default 10), waitForSync (default false), anchorInterval in
+ * seconds (default 60, 0 to log the head only on close).
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class FileAuditService implements AuditService, Closeable {
+
+  private class Syncer extends Thread {
+
+    private long lastAnchorTime = System.currentTimeMillis();
+
+    private Syncer() {
+      super("audit-file-sync");
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      while (!closed) {
+        try {
+          Thread.sleep(syncInterval);
+        } catch (InterruptedException ex) {
+          break;
+        }
+
+        try {
+          sync();
+        } catch (Throwable th) {
+          LOG.error("could not sync the audit file: {}", th.getMessage());
+          LOG.debug("could not sync the audit file", th);
+        }
+
+        if (anchorInterval > 0) {
+          long now = System.currentTimeMillis();
+          if (now - lastAnchorTime >= anchorInterval) {
+            lastAnchorTime = now;
+            logHead();
+          }
+        }
+      }
+    } // method run
+
+  } // class Syncer
+
+  static final byte[] MAGIC = "XIAUDIT1".getBytes(StandardCharsets.US_ASCII);
+
+  static final int HASH_SIZE = 32;
+
+  static final int RECOVERY_FLAG = 0x80000000;
+
+  static final int HEADER_SIZE = MAGIC.length + 8 + HASH_SIZE;
+
+  // sequence number, timestamp and hash
+  static final int MIN_RECORD_LENGTH = 8 + 8 + HASH_SIZE;
+
+  private static final String SEGMENT_PREFIX = "audit-";
+
+  private static final String SEGMENT_SUFFIX = ".seg";
+
+  private static final Logger LOG = LoggerFactory.getLogger(FileAuditService.class);
+
+  private final Object syncLock = new Object();
+
+  private File dir;
+
+  private int segmentSize;
+
+  private long syncInterval;
+
+  private boolean waitForSync;
+
+  private long anchorInterval;
+
+  private MessageDigest md;
+
+  private FileChannel channel;
+
+  private MappedByteBuffer segment;
+
+  private long nextSeq;
+
+  private byte[] lastHash;
+
+  // the records up to this sequence number have been written to the disk
+  private volatile long syncedSeq;
+
+  // hash of the record syncedSeq
+  private byte[] syncedHash;
+
+  // the last logged head of the chain
+  private long anchoredSeq = -1;
+
+  private Syncer syncer;
+
+  private volatile boolean closed;
+
+  public FileAuditService() {
+  }
+
+  @Override
+  public void init(String conf) {
+    LOG.info("initializing: {}", FileAuditService.class);
+    Args.notBlank(conf, "conf");
+    Properties props = AuditConfUtil.loadProperties(conf.trim());
+
+    String dirName = AuditConfUtil.getString(props, "dir", null);
+    if (dirName == null || dirName.isEmpty()) {
+      throw new AuditServiceRuntimeException("dir is not specified");
+    }
+    this.dir = new File(IoUtil.expandFilepath(dirName));
+
+    int segmentSizeMb = AuditConfUtil.getInt(props, "segmentSize", 64);
+    if (segmentSizeMb < 1 || segmentSizeMb > 1024) {
+      throw new AuditServiceRuntimeException("segmentSize is not in [1, 1024]: " + segmentSizeMb);
+    }
+    this.segmentSize = segmentSizeMb * 1024 * 1024;
+    this.syncInterval = Args.positive(
+        AuditConfUtil.getInt(props, "syncInterval", 10), "syncInterval");
+    this.waitForSync = AuditConfUtil.getBoolean(props, "waitForSync", false);
+    int anchorIntervalSec = AuditConfUtil.getInt(props, "anchorInterval", 60);
+    if (anchorIntervalSec < 0) {
+      throw new AuditServiceRuntimeException("anchorInterval is negative: " + anchorIntervalSec);
+    }
+    this.anchorInterval = anchorIntervalSec * 1000L;
+
+    this.md = newDigest();
+
+    try {
+      Files.createDirectories(dir.toPath());
+
+      long lastSeq = 0;
+      byte[] hash = new byte[HASH_SIZE];
+      String recovery = null;
+      File[] segments = FileAuditVerifier.listSegments(dir);
+      if (segments.length > 0) {
+        FileAuditVerifier.Segment last =
+            FileAuditVerifier.readSegment(segments[segments.length - 1], null, 0);
+        String name = last.getFile().getName();
+
+        if (last.getError() != null) {
+          recovery = "recovery after record " + last.getLastSeq() + " of " + name + ": "
+              + last.getError();
+          if (last.getNumRecords() == 0) {
+            // the new segment would have the same name, keep the invalid one for inspection
+            File broken = new File(dir, name + ".broken");
+            Files.move(last.getFile().toPath(), broken.toPath());
+            recovery += ", moved to " + broken.getName();
+
+            if (last.getPrevHash() == null) {
+              // invalid header, continue after the previous segment
+              last = null;
+              if (segments.length > 1) {
+                last = FileAuditVerifier.readSegment(segments[segments.length - 2], null, 0);
+                if (last.getError() != null) {
+                  throw new AuditServiceRuntimeException("could not continue the audit trail: "
+                      + last.getFile().getName() + ": " + last.getError());
+                }
+              }
+            }
+          }
+          LOG.warn("continue the audit trail with a new segment: {}", recovery);
+        } else if (last.getNumRecords() == 0) {
+          // the segment contains only the header, it is replaced by the new one
+          Files.delete(last.getFile().toPath());
+        }
+
+        if (last != null) {
+          lastSeq = last.getLastSeq();
+          hash = last.getLastHash();
+        }
+      }
+
+      // always start a new segment, the existing ones are not changed
+      openSegment(lastSeq + 1, hash);
+      if (recovery != null) {
+        putRecord(true, System.currentTimeMillis(), recovery.getBytes(StandardCharsets.UTF_8));
+        segment.force();
+        markSynced(nextSeq - 1, lastHash);
+      }
+    } catch (IOException ex) {
+      throw new AuditServiceRuntimeException("could not open the audit file", ex);
+    }
+
+    syncer = new Syncer();
+    syncer.start();
+    LOG.info("initialized: {}, dir={}, next sequence number={}", FileAuditService.class, dir,
+        nextSeq);
+  } // method init
+
+  @Override
+  public void logEvent(AuditEvent event) {
+    Date timestamp = event.getTimestamp();
+    append(timestamp == null ? System.currentTimeMillis() : timestamp.getTime(),
+        EmbedAuditService.createMessage(event));
+  }
+
+  @Override
+  public void logEvent(PciAuditEvent event) {
+    append(System.currentTimeMillis(), EmbedAuditService.createMessage(event));
+  }
+
+  private void append(long timestamp, String message) {
+    // encode outside of the lock
+    byte[] msg = message.getBytes(StandardCharsets.UTF_8);
+    int recordSize = 4 + MIN_RECORD_LENGTH + msg.length;
+    if (HEADER_SIZE + recordSize + 4 > segmentSize) {
+      LOG.error("audit message is too long for the segment size: {} bytes", msg.length);
+      return;
+    }
+
+    long seq;
+    synchronized (this) {
+      if (closed) {
+        LOG.error("file audit is closed, ignore the event: {}", message);
+        return;
+      }
+
+      try {
+        // keep space for the end marker
+        if (segment.remaining() < recordSize + 4) {
+          rotate();
+        }
+      } catch (IOException ex) {
+        LOG.error("could not start a new audit segment, ignore the event: {}", message);
+        LOG.debug("could not start a new audit segment", ex);
+        return;
+      }
+
+      seq = putRecord(false, timestamp, msg);
+    }
+
+    if (waitForSync) {
+      synchronized (syncLock) {
+        while (syncedSeq < seq && !closed) {
+          try {
+            syncLock.wait(syncInterval);
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            break;
+          }
+        }
+      }
+    }
+  } // method append
+
+  // must be called with the lock of this object
+  private long putRecord(boolean recovery, long timestamp, byte[] msg) {
+    long seq = nextSeq++;
+    byte[] hash = chainHash(md, lastHash, recovery, seq, timestamp, msg);
+    int len = MIN_RECORD_LENGTH + msg.length;
+    segment.putInt(recovery ? len | RECOVERY_FLAG : len);
+    segment.putLong(seq);
+    segment.putLong(timestamp);
+    segment.put(msg);
+    segment.put(hash);
+    lastHash = hash;
+    return seq;
+  } // method putRecord
+
+  private void sync() {
+    MappedByteBuffer buf;
+    long seq;
+    byte[] hash;
+    synchronized (this) {
+      buf = segment;
+      seq = nextSeq - 1;
+      hash = lastHash;
+    }
+
+    if (buf == null || seq <= syncedSeq) {
+      return;
+    }
+
+    // records written after the snapshot may be synced as well, this is harmless
+    buf.force();
+    markSynced(seq, hash);
+  } // method sync
+
+  private void markSynced(long seq, byte[] hash) {
+    synchronized (syncLock) {
+      if (seq > syncedSeq) {
+        syncedSeq = seq;
+        syncedHash = hash;
+      }
+      syncLock.notifyAll();
+    }
+  } // method markSynced
+
+  /**
+   * Logs the sequence number and hash of the last record written to the disk, so that the
+   * removal of the newest records can be detected with {@link FileAuditVerifier}.
+   */
+  private void logHead() {
+    long seq;
+    byte[] hash;
+    synchronized (syncLock) {
+      seq = syncedSeq;
+      hash = syncedHash;
+    }
+
+    if (seq < 1 || seq == anchoredSeq) {
+      return;
+    }
+
+    anchoredSeq = seq;
+    LOG.info("audit chain head: {}:{}", seq, Hex.encode(hash));
+  } // method logHead
+
+  private void rotate() throws IOException {
+    segment.force();
+    markSynced(nextSeq - 1, lastHash);
+    channel.close();
+    openSegment(nextSeq, lastHash);
+  } // method rotate
+
+  private void openSegment(long firstSeq, byte[] prevHash) throws IOException {
+    File file = new File(dir, segmentFileName(firstSeq));
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    segment.put(MAGIC);
+    segment.putLong(firstSeq);
+    segment.put(prevHash);
+    segment.force();
+
+    nextSeq = firstSeq;
+    lastHash = prevHash;
+    synchronized (syncLock) {
+      syncedSeq = firstSeq - 1;
+      syncedHash = prevHash;
+    }
+    LOG.info("opened audit segment {}", file.getName());
+  } // method openSegment
+
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+
+      if (segment != null) {
+        segment.force();
+        markSynced(nextSeq - 1, lastHash);
+      }
+
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException ex) {
+          LOG.warn("could not close the audit segment: {}", ex.getMessage());
+        }
+      }
+    }
+
+    // wake up the callers waiting for the sync
+    synchronized (syncLock) {
+      syncLock.notifyAll();
+    }
+
+    if (syncer != null) {
+      syncer.interrupt();
+      try {
+        syncer.join();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    logHead();
+  } // method close
+
+  static String segmentFileName(long firstSeq) {
+    return SEGMENT_PREFIX + String.format("%020d", firstSeq) + SEGMENT_SUFFIX;
+  }
+
+  static boolean isSegmentFileName(String name) {
+    return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)
+        && name.length() == SEGMENT_PREFIX.length() + 20 + SEGMENT_SUFFIX.length();
+  }
+
+  static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException ex) {
+      throw new AuditServiceRuntimeException("SHA-256 is not supported", ex);
+    }
+  } // method newDigest
+
+  static byte[] chainHash(MessageDigest md, byte[] prevHash, boolean recovery, long seq,
+      long timestamp, byte[] msg) {
+    md.reset();
+    md.update(prevHash);
+    md.update((byte) (recovery ? 1 : 0));
+    for (int i = 56; i >= 0; i -= 8) {
+      md.update((byte) (seq >>> i));
+    }
+    for (int i = 56; i >= 0; i -= 8) {
+      md.update((byte) (timestamp >>> i));
+    }
+    md.update(msg);
+    return md.digest();
+  } // method chainHash
+
+}
@@ -0,0 +1,498 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.services;
+
+import static org.xipki.audit.services.FileAuditService.HASH_SIZE;
+import static org.xipki.audit.services.FileAuditService.HEADER_SIZE;
+import static org.xipki.audit.services.FileAuditService.MAGIC;
+import static org.xipki.audit.services.FileAuditService.MIN_RECORD_LENGTH;
+import static org.xipki.audit.services.FileAuditService.RECOVERY_FLAG;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+
+import org.xipki.util.Hex;
+
+/**
+ * Reader and verifier of the segment files written by {@link FileAuditService}. It checks
+ * the header of each segment, the continuity of the sequence numbers and the hash chain over
+ * all records. An invalid segment is accepted, with a warning, only if the next segment starts
+ * with a recovery record.
+ *
+ * <p>Usage: {@code FileAuditVerifier <audit directory> [--print] [--head <seq>:<hash>]}. With
+ * {@code --print} the records are written to the standard output. With {@code --head} the trail
+ * must contain the record of the given chain head logged by {@link FileAuditService}, this
+ * detects the removal of the newest records.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class FileAuditVerifier {
+
+  /**
+   * Content of one segment file.
+   */
+  static class Segment {
+
+    private final File file;
+
+    private long firstSeq;
+
+    private byte[] prevHash;
+
+    private long lastSeq;
+
+    private byte[] lastHash;
+
+    private int numRecords;
+
+    private String recovery;
+
+    private byte[] headHash;
+
+    private String error;
+
+    Segment(File file) {
+      this.file = file;
+    }
+
+    File getFile() {
+      return file;
+    }
+
+    long getFirstSeq() {
+      return firstSeq;
+    }
+
+    byte[] getPrevHash() {
+      return prevHash;
+    }
+
+    /**
+     * Returns the sequence number of the last valid record, or firstSeq - 1 if the segment
+     * contains no valid record.
+     *
+     * @return the sequence number of the last valid record.
+     */
+    long getLastSeq() {
+      return lastSeq;
+    }
+
+    /**
+     * Returns the hash of the last valid record, or the hash in the header if the segment
+     * contains no valid record.
+     *
+     * @return the hash of the last valid record.
+     */
+    byte[] getLastHash() {
+      return lastHash;
+    }
+
+    int getNumRecords() {
+      return numRecords;
+    }
+
+    /**
+     * Returns the message of the recovery record at the begin of the segment.
+     *
+     * @return the message of the recovery record, or {@code null} if the segment does not start
+     *         with a recovery record.
+     */
+    String getRecovery() {
+      return recovery;
+    }
+
+    /**
+     * Returns the hash of the record with the requested head sequence number.
+     *
+     * @return the hash of the record, or {@code null} if the segment does not contain it.
+     */
+    byte[] getHeadHash() {
+      return headHash;
+    }
+
+    String getError() {
+      return error;
+    }
+
+  } // class Segment
+
+  /**
+   * Result of the verification.
+   */
+  public static class Result {
+
+    private int numSegments;
+
+    private long numRecords;
+
+    private long lastSeq;
+
+    private final List<String> errors = new LinkedList<>();
+
+    private final List<String> warnings = new LinkedList<>();
+
+    public int getNumSegments() {
+      return numSegments;
+    }
+
+    public long getNumRecords() {
+      return numRecords;
+    }
+
+    public long getLastSeq() {
+      return lastSeq;
+    }
+
+    public List<String> getErrors() {
+      return errors;
+    }
+
+    public List<String> getWarnings() {
+      return warnings;
+    }
+
+    public boolean isValid() {
+      return errors.isEmpty();
+    }
+
+  } // class Result
+
+  private FileAuditVerifier() {
+  }
+
+  public static void main(String[] args) {
+    boolean print = false;
+    long headSeq = 0;
+    byte[] headHash = null;
+    boolean validArgs = args.length > 0;
+    for (int i = 1; i < args.length && validArgs; i++) {
+      if ("--print".equals(args[i])) {
+        print = true;
+      } else if ("--head".equals(args[i]) && i + 1 < args.length) {
+        String head = args[++i];
+        int idx = head.indexOf(':');
+        try {
+          headSeq = Long.parseLong(head.substring(0, idx));
+          headHash = Hex.decode(head.substring(idx + 1));
+          validArgs = headSeq > 0 && headHash.length == HASH_SIZE;
+        } catch (RuntimeException ex) {
+          validArgs = false;
+        }
+      } else {
+        validArgs = false;
+      }
+    }
+
+    if (!validArgs) {
+      System.err.println("Usage: " + FileAuditVerifier.class.getName()
+          + " <audit directory> [--print] [--head <seq>:<hash>]");
+      System.exit(2);
+    }
+
+    Result result;
+    try {
+      result = verify(new File(args[0]), print ? System.out : null, headSeq, headHash);
+    } catch (IOException ex) {
+      System.err.println("could not read the audit files: " + ex.getMessage());
+      System.exit(2);
+      return;
+    }
+
+    System.out.println("segments: " + result.getNumSegments() + ", records: "
+        + result.getNumRecords() + ", last sequence number: " + result.getLastSeq());
+    for (String warning : result.getWarnings()) {
+      System.out.println("WARN: " + warning);
+    }
+
+    if (result.isValid()) {
+      System.out.println("the audit trail is valid");
+    } else {
+      for (String error : result.getErrors()) {
+        System.err.println("ERROR: " + error);
+      }
+      System.exit(1);
+    }
+  } // method main
+
+  /**
+   * Verifies the audit trail in the given directory.
+   *
+   * @param dir
+   *          the audit directory.
+   * @param printTo
+   *          if not {@code null}, the records are written to it.
+   * @return the verification result.
+   * @throws IOException
+   *           if the files could not be read.
+   */
+  public static Result verify(File dir, PrintStream printTo) throws IOException {
+    return verify(dir, printTo, 0, null);
+  }
+
+  /**
+   * Verifies the audit trail in the given directory.
+   *
+   * @param dir
+   *          the audit directory.
+   * @param printTo
+   *          if not {@code null}, the records are written to it.
+   * @param headSeq
+   *          sequence number of a chain head logged by {@link FileAuditService}, 0 to skip the
+   *          check of the head.
+   * @param headHash
+   *          hash of the chain head. Ignored if headSeq is 0.
+   * @return the verification result.
+   * @throws IOException
+   *           if the files could not be read.
+   */
+  public static Result verify(File dir, PrintStream printTo, long headSeq, byte[] headHash)
+      throws IOException {
+    Result result = new Result();
+    long prevLastSeq = -1;
+    byte[] prevLastHash = null;
+    // error of the previous segment, accepted if this segment starts with a recovery record
+    String prevError = null;
+    byte[] foundHeadHash = null;
+
+    for (File file : listSegments(dir)) {
+      Segment segment = readSegment(file, printTo, headSeq);
+      result.numSegments++;
+      result.numRecords += segment.numRecords;
+      String name = file.getName();
+
+      if (segment.recovery != null) {
+        if (prevError != null) {
+          result.warnings.add(prevError + " (recovered)");
+        }
+        result.warnings.add(name + ": " + segment.recovery);
+      } else if (prevError != null) {
+        result.errors.add(prevError);
+      }
+      prevError = segment.error == null ? null : name + ": " + segment.error;
+
+      if (segment.headHash != null) {
+        // the records of a recovered segment after its error are ignored
+        foundHeadHash = segment.headHash;
+      }
+
+      if (segment.prevHash == null) {
+        // invalid header
+        prevLastSeq = -1;
+        prevLastHash = null;
+        continue;
+      }
+
+      if (prevLastHash != null) {
+        if (segment.firstSeq != prevLastSeq + 1) {
+          result.errors.add(name + ": first sequence number " + segment.firstSeq
+              + " does not follow " + prevLastSeq);
+        }
+
+        if (!Arrays.equals(segment.prevHash, prevLastHash)) {
+          result.errors.add(name + ": hash chain broken at the begin of the segment");
+        }
+      }
+
+      prevLastSeq = segment.lastSeq;
+      prevLastHash = segment.lastHash;
+      result.lastSeq = segment.lastSeq;
+    }
+
+    if (prevError != null) {
+      result.errors.add(prevError);
+    }
+
+    if (headSeq > 0) {
+      if (foundHeadHash == null) {
+        result.errors.add("record " + headSeq + " of the chain head is missing");
+      } else if (!Arrays.equals(foundHeadHash, headHash)) {
+        result.errors.add("hash of record " + headSeq + " differs from the chain head");
+      }
+    }
+
+    return result;
+  } // method verify
+
+  /**
+   * Returns the segment files in the given directory, sorted by the first sequence number.
+   *
+   * @param dir
+   *          the audit directory.
+   * @return the segment files.
+   */
+  static File[] listSegments(File dir) {
+    File[] files = dir.listFiles();
+    if (files == null) {
+      return new File[0];
+    }
+
+    List<File> list = new LinkedList<>();
+    for (File file : files) {
+      if (FileAuditService.isSegmentFileName(file.getName())) {
+        list.add(file);
+      }
+    }
+
+    File[] segments = list.toArray(new File[0]);
+    // the first sequence number is zero-padded, hence the names sort in the order of it
+    Arrays.sort(segments);
+    return segments;
+  } // method listSegments
+
+  /**
+   * Reads and verifies one segment file. The reading stops at the end marker or at the first
+   * invalid record. All bytes after the end marker must be zero.
+   *
+   * @param file
+   *          the segment file.
+   * @param printTo
+   *          if not {@code null}, the records are written to it.
+   * @param headSeq
+   *          the hash of the record with this sequence number is kept, 0 for none.
+   * @return the content of the segment.
+   * @throws IOException
+   *           if the file could not be read.
+   */
+  static Segment readSegment(File file, PrintStream printTo, long headSeq) throws IOException {
+    Segment segment = new Segment(file);
+    MessageDigest md = FileAuditService.newDigest();
+    SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.US);
+
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+      if (buf.remaining() < HEADER_SIZE) {
+        segment.error = "segment is too short";
+        return segment;
+      }
+
+      byte[] magic = new byte[MAGIC.length];
+      buf.get(magic);
+      if (!Arrays.equals(MAGIC, magic)) {
+        segment.error = "invalid magic";
+        return segment;
+      }
+
+      segment.firstSeq = buf.getLong();
+      segment.prevHash = new byte[HASH_SIZE];
+      buf.get(segment.prevHash);
+
+      long expectedSeq = segment.firstSeq;
+      byte[] hash = segment.prevHash;
+      byte[] storedHash = new byte[HASH_SIZE];
+
+      while (buf.remaining() >= 4) {
+        int recordOffset = buf.position();
+        int len = buf.getInt();
+        if (len == 0) {
+          // end marker, removed or zeroed records would leave non-zero bytes after it
+          int offset = nonZeroOffset(buf);
+          if (offset != -1) {
+            segment.error = "non-zero byte after the end marker at offset " + offset;
+          }
+          break;
+        }
+
+        boolean recovery = (len & RECOVERY_FLAG) != 0;
+        len &= ~RECOVERY_FLAG;
+        if (recovery && expectedSeq != segment.firstSeq) {
+          segment.error = "recovery record not at the begin of the segment at offset "
+              + recordOffset;
+          break;
+        }
+
+        if (len < MIN_RECORD_LENGTH || len > buf.remaining()) {
+          segment.error = "invalid or incomplete record at offset " + recordOffset;
+          break;
+        }
+
+        long seq = buf.getLong();
+        long timestamp = buf.getLong();
+        byte[] msg = new byte[len - MIN_RECORD_LENGTH];
+        buf.get(msg);
+        buf.get(storedHash);
+
+        if (seq != expectedSeq) {
+          segment.error = "expected sequence number " + expectedSeq + ", but is " + seq
+              + " at offset " + recordOffset;
+          break;
+        }
+
+        byte[] computedHash =
+            FileAuditService.chainHash(md, hash, recovery, seq, timestamp, msg);
+        if (!Arrays.equals(computedHash, storedHash)) {
+          segment.error = "hash mismatch of record " + seq + " at offset " + recordOffset;
+          break;
+        }
+
+        if (recovery) {
+          segment.recovery = new String(msg, StandardCharsets.UTF_8);
+        }
+
+        if (seq == headSeq) {
+          segment.headHash = computedHash;
+        }
+
+        if (printTo != null) {
+          printTo.println(seq + " " + df.format(new Date(timestamp)) + " "
+              + (recovery ? "RECOVERY " : "") + new String(msg, StandardCharsets.UTF_8));
+        }
+
+        hash = computedHash;
+        expectedSeq++;
+        segment.numRecords++;
+      }
+
+      segment.lastSeq = expectedSeq - 1;
+      segment.lastHash = hash;
+    }
+
+    return segment;
+  } // method readSegment
+
+  private static int nonZeroOffset(MappedByteBuffer buf) {
+    while (buf.remaining() >= 8) {
+      if (buf.getLong() != 0) {
+        buf.position(buf.position() - 8);
+        break;
+      }
+    }
+
+    while (buf.hasRemaining()) {
+      if (buf.get() != 0) {
+        return buf.position() - 1;
+      }
+    }
+    return -1;
+  } // method nonZeroOffset
+
+}
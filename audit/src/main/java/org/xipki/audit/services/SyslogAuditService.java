@@ -17,12 +17,12 @@
 
 package org.xipki.audit.services;
 
+import static org.xipki.audit.services.AuditConfUtil.getBoolean;
+import static org.xipki.audit.services.AuditConfUtil.getInt;
+import static org.xipki.audit.services.AuditConfUtil.getString;
+import static org.xipki.audit.services.AuditConfUtil.loadProperties;
+
 import java.io.CharArrayWriter;
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
@@ -36,7 +36,6 @@ import org.xipki.audit.AuditEvent;
 import org.xipki.audit.AuditEventData;
 import org.xipki.audit.AuditLevel;
 import org.xipki.audit.AuditService;
-import org.xipki.audit.AuditServiceRuntimeException;
 import org.xipki.audit.AuditStatus;
 import org.xipki.audit.PciAuditEvent;
 import org.xipki.util.FileOrBinary;
@@ -352,52 +351,4 @@ public class SyslogAuditService implements AuditService {
     return res;
   } // method getSeverity
 
-  private static Properties loadProperties(String path) throws AuditServiceRuntimeException {
-    if (path == null) {
-      return null;
-    }
-
-    Path realPath = Paths.get(path);
-    if (Files.exists(realPath)) {
-      Properties props = new Properties();
-      try {
-        try (InputStream is = Files.newInputStream(realPath)) {
-          props.load(is);
-        }
-      } catch (IOException ex) {
-        throw new AuditServiceRuntimeException("could not load properties from file " + path, ex);
-      }
-      return props;
-    } else {
-      throw new AuditServiceRuntimeException("the file " + path + " does not exist");
-    }
-  } // method loadProperties
-
-  private static String getString(Properties props, String key, String dfltValue) {
-    if (props == null) {
-      return dfltValue;
-    } else {
-      String value = props.getProperty(key);
-      return value == null ? dfltValue : value;
-    }
-  } // method getString
-
-  private static int getInt(Properties props, String key, int dfltValue) {
-    if (props == null) {
-      return dfltValue;
-    } else {
-      String value = props.getProperty(key);
-      return value == null ? dfltValue : Integer.parseInt(value);
-    }
-  } // method getInt
-
-  private static boolean getBoolean(Properties props, String key, boolean dfltValue) {
-    if (props == null) {
-      return dfltValue;
-    } else {
-      String value = props.getProperty(key);
-      return value == null ? dfltValue : Boolean.parseBoolean(value);
-    }
-  } // method getBoolean
-
 }
@@ -0,0 +1,281 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.audit.services;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.audit.AuditEvent;
+import org.xipki.audit.AuditEventData;
+import org.xipki.audit.AuditLevel;
+import org.xipki.audit.AuditService;
+import org.xipki.audit.AuditStatus;
+import org.xipki.audit.PciAuditEvent;
+
+/**
+ * AsyncAuditService test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class AsyncAuditServiceTest {
+
+  /**
+   * Audit service which counts the events, optionally blocked until released.
+   */
+  private static class CountingAuditService implements AuditService {
+
+    private final AtomicInteger numEvents = new AtomicInteger();
+
+    private final CountDownLatch entered = new CountDownLatch(1);
+
+    private final CountDownLatch released;
+
+    private CountingAuditService(boolean blocked) {
+      this.released = new CountDownLatch(blocked ? 1 : 0);
+    }
+
+    @Override
+    public void init(String conf) {
+    }
+
+    @Override
+    public void logEvent(AuditEvent event) {
+      entered.countDown();
+      try {
+        released.await();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      numEvents.incrementAndGet();
+    }
+
+    @Override
+    public void logEvent(PciAuditEvent event) {
+      numEvents.incrementAndGet();
+    }
+
+  } // class CountingAuditService
+
+  @Test
+  public void testCloseDrain() {
+    CountingAuditService delegate = new CountingAuditService(false);
+    AsyncAuditService service = new AsyncAuditService(delegate, 2048, 16, 1,
+        AsyncAuditService.OverflowPolicy.BLOCK, null);
+    service.init(null);
+
+    for (int i = 0; i < 2000; i++) {
+      service.logEvent(newEvent(AuditLevel.INFO));
+    }
+    service.close();
+
+    Assert.assertEquals("delegated events", 2000, delegate.numEvents.get());
+    Assert.assertEquals("numLogged", 2000, service.getNumLogged());
+    Assert.assertEquals("queue depth", 0, service.getQueueDepth());
+
+    // events after close are logged directly
+    service.logEvent(newEvent(AuditLevel.INFO));
+    Assert.assertEquals("delegated events", 2001, delegate.numEvents.get());
+  } // method testCloseDrain
+
+  @Test
+  public void testConcurrentProducers() throws Exception {
+    final int numProducers = 8;
+    final int numPerProducer = 10000;
+
+    CountingAuditService delegate = new CountingAuditService(false);
+    final AsyncAuditService service = new AsyncAuditService(delegate, 256, 32, 2,
+        AsyncAuditService.OverflowPolicy.BLOCK, null);
+    service.init(null);
+
+    List<Thread> producers = new ArrayList<>();
+    for (int i = 0; i < numProducers; i++) {
+      producers.add(new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < numPerProducer; j++) {
+            service.logEvent(newEvent(AuditLevel.INFO));
+          }
+        }
+      });
+    }
+
+    for (Thread producer : producers) {
+      producer.start();
+    }
+
+    for (Thread producer : producers) {
+      producer.join(60000);
+      Assert.assertFalse("producer terminated", producer.isAlive());
+    }
+    service.close();
+
+    int numEvents = numProducers * numPerProducer;
+    Assert.assertEquals("delegated events", numEvents, delegate.numEvents.get());
+    Assert.assertEquals("numLogged", numEvents, service.getNumLogged());
+    Assert.assertEquals("numDropped", 0, service.getNumDropped());
+  } // method testConcurrentProducers
+
+  @Test
+  public void testFullBufferDropDebug() throws Exception {
+    CountingAuditService delegate = new CountingAuditService(true);
+    AsyncAuditService service = new AsyncAuditService(delegate, 4, 1, 1,
+        AsyncAuditService.OverflowPolicy.DROP_DEBUG, null);
+    service.init(null);
+
+    fillBuffer(service, delegate);
+    for (int i = 0; i < 3; i++) {
+      service.logEvent(newEvent(AuditLevel.DEBUG));
+    }
+    Assert.assertEquals("numDropped", 3, service.getNumDropped());
+
+    delegate.released.countDown();
+    service.close();
+    Assert.assertEquals("delegated events", 5, delegate.numEvents.get());
+    Assert.assertEquals("numLogged", 5, service.getNumLogged());
+  } // method testFullBufferDropDebug
+
+  @Test
+  public void testFullBufferSpill() throws Exception {
+    File spillDir = Files.createTempDirectory("xipki-audit-spill-").toFile();
+    File spillFile = new File(spillDir, "audit-spill.log");
+    try {
+      CountingAuditService delegate = new CountingAuditService(true);
+      AsyncAuditService service = new AsyncAuditService(delegate, 4, 1, 1,
+          AsyncAuditService.OverflowPolicy.SPILL, spillDir.getPath());
+      service.init(null);
+
+      fillBuffer(service, delegate);
+      for (int i = 0; i < 3; i++) {
+        service.logEvent(newEvent(AuditLevel.INFO));
+      }
+      Assert.assertEquals("numSpilled", 3, service.getNumSpilled());
+
+      List<String> lines = Files.readAllLines(spillFile.toPath(), StandardCharsets.UTF_8);
+      Assert.assertEquals("lines in the spill file", 3, lines.size());
+
+      // the spilled events are replayed after the buffer is drained
+      delegate.released.countDown();
+      service.close();
+      Assert.assertEquals("delegated events", 8, delegate.numEvents.get());
+      Assert.assertEquals("numReplayed", 3, service.getNumReplayed());
+      Assert.assertFalse("spill file exists", spillFile.exists());
+    } finally {
+      spillFile.delete();
+      spillDir.delete();
+    }
+  } // method testFullBufferSpill
+
+  @Test
+  public void testReplayOnRestart() throws Exception {
+    File spillDir = Files.createTempDirectory("xipki-audit-spill-").toFile();
+    File spillFile = new File(spillDir, "audit-spill.log");
+    try {
+      PciAuditEvent pciEvent = new PciAuditEvent(new Date());
+      pciEvent.setUserId("user");
+      pciEvent.setOrigination("127.0.0.1");
+
+      List<String> lines = new ArrayList<>();
+      lines.add(AsyncAuditService.encodeSpillRecord(newEvent(AuditLevel.INFO)));
+      lines.add(AsyncAuditService.encodeSpillRecord(pciEvent));
+      // record truncated by a crash
+      String record = AsyncAuditService.encodeSpillRecord(newEvent(AuditLevel.INFO));
+      lines.add(record.substring(0, record.length() - 2));
+      Files.write(spillFile.toPath(), lines, StandardCharsets.UTF_8);
+
+      CountingAuditService delegate = new CountingAuditService(false);
+      AsyncAuditService service = new AsyncAuditService(delegate, 4, 1, 1,
+          AsyncAuditService.OverflowPolicy.SPILL, spillDir.getPath());
+      service.init(null);
+      Assert.assertEquals("delegated events", 2, delegate.numEvents.get());
+      Assert.assertEquals("numReplayed", 2, service.getNumReplayed());
+      Assert.assertFalse("spill file exists", spillFile.exists());
+      service.close();
+    } finally {
+      spillFile.delete();
+      spillDir.delete();
+    }
+  } // method testReplayOnRestart
+
+  @Test
+  public void testSpillRecord() {
+    AuditEvent event = newEvent(AuditLevel.WARN);
+    event.setStatus(AuditStatus.FAILED);
+    event.addEventData("message", "a\tb\nc\\d");
+    event.addEventData("value", "\\N");
+    event.finish();
+
+    AuditEvent decoded = (AuditEvent) AsyncAuditService.decodeSpillRecord(
+        AsyncAuditService.encodeSpillRecord(event));
+    Assert.assertNotNull("decoded event", decoded);
+    Assert.assertEquals("timestamp", event.getTimestamp(), decoded.getTimestamp());
+    Assert.assertEquals("level", event.getLevel(), decoded.getLevel());
+    Assert.assertEquals("applicationName", event.getApplicationName(),
+        decoded.getApplicationName());
+    Assert.assertEquals("name", event.getName(), decoded.getName());
+    Assert.assertEquals("status", event.getStatus(), decoded.getStatus());
+    Assert.assertEquals("duration", event.getDuration(), decoded.getDuration());
+
+    List<AuditEventData> datas = event.getEventDatas();
+    List<AuditEventData> decodedDatas = decoded.getEventDatas();
+    Assert.assertEquals("number of event data", datas.size(), decodedDatas.size());
+    for (int i = 0; i < datas.size(); i++) {
+      Assert.assertEquals("event data", datas.get(i).toString(), decodedDatas.get(i).toString());
+    }
+
+    // without status
+    decoded = (AuditEvent) AsyncAuditService.decodeSpillRecord(
+        AsyncAuditService.encodeSpillRecord(newEvent(AuditLevel.INFO)));
+    Assert.assertNull("status", decoded.getStatus());
+
+    Assert.assertNull("invalid record", AsyncAuditService.decodeSpillRecord("X\t."));
+  } // method testSpillRecord
+
+  // the flusher is blocked by the first event and the 4 next events fill the buffer
+  private static void fillBuffer(AsyncAuditService service, CountingAuditService delegate)
+      throws InterruptedException {
+    service.logEvent(newEvent(AuditLevel.INFO));
+    Assert.assertTrue("flusher entered the delegate",
+        delegate.entered.await(10, TimeUnit.SECONDS));
+
+    for (int i = 0; i < 4; i++) {
+      service.logEvent(newEvent(AuditLevel.INFO));
+    }
+    Assert.assertEquals("queue depth", 4, service.getQueueDepth());
+  } // method fillBuffer
+
+  private static AuditEvent newEvent(AuditLevel level) {
+    AuditEvent event = new AuditEvent(new Date());
+    event.setApplicationName("test");
+    event.setName("event");
+    event.setLevel(level);
+    return event;
+  } // method newEvent
+
+}
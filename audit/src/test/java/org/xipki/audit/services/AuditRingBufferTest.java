@@ -0,0 +1,157 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.audit.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * AuditRingBuffer test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class AuditRingBufferTest {
+
+  @Test
+  public void testCapacity() {
+    Assert.assertEquals("capacity of 1", 1, new AuditRingBuffer<Integer>(1).capacity());
+    Assert.assertEquals("capacity of 3", 4, new AuditRingBuffer<Integer>(3).capacity());
+    Assert.assertEquals("capacity of 1024", 1024, new AuditRingBuffer<Integer>(1024).capacity());
+  } // method testCapacity
+
+  @Test
+  public void testFull() {
+    AuditRingBuffer<Integer> buffer = new AuditRingBuffer<>(4);
+    for (int i = 0; i < 4; i++) {
+      Assert.assertTrue("offer " + i, buffer.offer(i));
+    }
+    Assert.assertEquals("size", 4, buffer.size());
+    Assert.assertFalse("offer to the full buffer", buffer.offer(4));
+
+    Assert.assertEquals("poll", Integer.valueOf(0), buffer.poll());
+    Assert.assertTrue("offer after poll", buffer.offer(4));
+    Assert.assertFalse("offer to the full buffer", buffer.offer(5));
+
+    List<Integer> list = new ArrayList<>();
+    Assert.assertEquals("drained", 4, buffer.drainTo(list, 10));
+    Assert.assertEquals("items", Arrays.asList(1, 2, 3, 4), list);
+    Assert.assertNull("poll from the empty buffer", buffer.poll());
+    Assert.assertEquals("size", 0, buffer.size());
+  } // method testFull
+
+  @Test
+  public void testWrapAround() {
+    AuditRingBuffer<Integer> buffer = new AuditRingBuffer<>(4);
+    int next = 0;
+    int expected = 0;
+    for (int round = 0; round < 1000; round++) {
+      for (int i = 0; i < 3; i++) {
+        Assert.assertTrue("offer", buffer.offer(next++));
+      }
+      for (int i = 0; i < 3; i++) {
+        Assert.assertEquals("poll", Integer.valueOf(expected++), buffer.poll());
+      }
+    }
+    Assert.assertNull("poll from the empty buffer", buffer.poll());
+  } // method testWrapAround
+
+  @Test
+  public void testConcurrentOfferPoll() throws Exception {
+    final int numProducers = 4;
+    final int numConsumers = 4;
+    final int numPerProducer = 100000;
+    final int numItems = numProducers * numPerProducer;
+
+    final AuditRingBuffer<Integer> buffer = new AuditRingBuffer<>(1024);
+    final AtomicIntegerArray received = new AtomicIntegerArray(numItems);
+    final int[] numReceived = new int[numConsumers];
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < numProducers; i++) {
+      final int base = i * numPerProducer;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < numPerProducer; j++) {
+            while (!buffer.offer(base + j)) {
+              Thread.yield();
+            }
+          }
+        }
+      });
+    }
+
+    final Thread[] producers = threads.toArray(new Thread[0]);
+    for (int i = 0; i < numConsumers; i++) {
+      final int idx = i;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          while (true) {
+            Integer item = buffer.poll();
+            if (item != null) {
+              received.incrementAndGet(item);
+              numReceived[idx]++;
+            } else if (!anyAlive(producers) && buffer.size() == 0) {
+              break;
+            } else {
+              Thread.yield();
+            }
+          }
+        }
+      });
+    }
+
+    for (Thread thread : threads) {
+      thread.start();
+    }
+
+    for (Thread thread : threads) {
+      thread.join(60000);
+      Assert.assertFalse("thread terminated", thread.isAlive());
+    }
+
+    int total = 0;
+    for (int n : numReceived) {
+      total += n;
+    }
+    Assert.assertEquals("number of received items", numItems, total);
+
+    for (int i = 0; i < numItems; i++) {
+      Assert.assertEquals("item " + i + " received once", 1, received.get(i));
+    }
+  } // method testConcurrentOfferPoll
+
+  private static boolean anyAlive(Thread[] threads) {
+    for (Thread thread : threads) {
+      if (thread.isAlive()) {
+        return true;
+      }
+    }
+    return false;
+  } // method anyAlive
+
+}
@@ -0,0 +1,276 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.audit.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xipki.audit.AuditEvent;
+
+/**
+ * FileAuditService test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class FileAuditServiceTest {
+
+  private File baseDir;
+
+  private File dir;
+
+  @Before
+  public void init() throws Exception {
+    baseDir = Files.createTempDirectory("xipki-audit-").toFile();
+    dir = new File(baseDir, "audit");
+  }
+
+  @After
+  public void cleanup() {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    dir.delete();
+
+    files = baseDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    baseDir.delete();
+  }
+
+  @Test
+  public void testChain() throws Exception {
+    FileAuditService service = newService();
+    logEvents(service, 1, 100, 10);
+    service.close();
+
+    FileAuditVerifier.Result result = FileAuditVerifier.verify(dir, null);
+    assertValid(result);
+    Assert.assertEquals("numSegments", 1, result.getNumSegments());
+    Assert.assertEquals("numRecords", 100, result.getNumRecords());
+    Assert.assertEquals("lastSeq", 100, result.getLastSeq());
+    Assert.assertTrue("warnings", result.getWarnings().isEmpty());
+
+    // modify one byte of the message of record 50
+    File segment = FileAuditVerifier.listSegments(dir)[0];
+    int offset = recordOffset(segment, 50);
+    byte[] bytes = readBytes(segment, offset + 4 + 8 + 8, 1);
+    bytes[0] ^= 1;
+    writeBytes(segment, offset + 4 + 8 + 8, bytes);
+
+    result = FileAuditVerifier.verify(dir, null);
+    Assert.assertFalse("modified record detected", result.isValid());
+    Assert.assertEquals("lastSeq", 49, result.getLastSeq());
+  } // method testChain
+
+  @Test
+  public void testRotation() throws Exception {
+    FileAuditService service = newService();
+    // about 3 MB with the segment size of 1 MB
+    logEvents(service, 1, 1500, 2000);
+    service.close();
+
+    FileAuditVerifier.Result result = FileAuditVerifier.verify(dir, null);
+    assertValid(result);
+    Assert.assertTrue("numSegments > 2", result.getNumSegments() > 2);
+    Assert.assertEquals("numRecords", 1500, result.getNumRecords());
+    Assert.assertEquals("lastSeq", 1500, result.getLastSeq());
+
+    // remove the second segment
+    File[] segments = FileAuditVerifier.listSegments(dir);
+    Assert.assertTrue("delete segment", segments[1].delete());
+    result = FileAuditVerifier.verify(dir, null);
+    Assert.assertFalse("removed segment detected", result.isValid());
+  } // method testRotation
+
+  @Test
+  public void testRestart() throws Exception {
+    FileAuditService service = newService();
+    logEvents(service, 1, 10, 10);
+    service.close();
+
+    service = newService();
+    logEvents(service, 11, 5, 10);
+    service.close();
+
+    // restart without events
+    newService().close();
+    newService().close();
+
+    FileAuditVerifier.Result result = FileAuditVerifier.verify(dir, null);
+    assertValid(result);
+    Assert.assertEquals("numRecords", 15, result.getNumRecords());
+    Assert.assertEquals("lastSeq", 15, result.getLastSeq());
+    Assert.assertTrue("warnings", result.getWarnings().isEmpty());
+
+    service = newService();
+    logEvents(service, 16, 1, 10);
+    service.close();
+
+    result = FileAuditVerifier.verify(dir, null);
+    assertValid(result);
+    Assert.assertEquals("lastSeq", 16, result.getLastSeq());
+  } // method testRestart
+
+  @Test
+  public void testRecoveryAfterTornTail() throws Exception {
+    FileAuditService service = newService();
+    logEvents(service, 1, 10, 10);
+    service.close();
+
+    // torn write of the last record: the hash is missing
+    File segment = FileAuditVerifier.listSegments(dir)[0];
+    int offset = recordOffset(segment, 10);
+    int len = ByteBuffer.wrap(readBytes(segment, offset, 4)).getInt();
+    writeBytes(segment, offset + 4 + len - 32, new byte[32]);
+
+    FileAuditVerifier.Result result = FileAuditVerifier.verify(dir, null);
+    Assert.assertFalse("torn tail detected", result.isValid());
+
+    service = newService();
+    logEvents(service, 11, 1, 10);
+    service.close();
+
+    result = FileAuditVerifier.verify(dir, null);
+    assertValid(result);
+    Assert.assertEquals("numSegments", 2, result.getNumSegments());
+    // 9 valid records, the recovery record and the new event
+    Assert.assertEquals("numRecords", 11, result.getNumRecords());
+    Assert.assertEquals("lastSeq", 11, result.getLastSeq());
+    Assert.assertEquals("warnings", 2, result.getWarnings().size());
+
+    // the error is accepted only if followed by the recovery record
+    File[] segments = FileAuditVerifier.listSegments(dir);
+    Assert.assertTrue("delete segment", segments[1].delete());
+    result = FileAuditVerifier.verify(dir, null);
+    Assert.assertFalse("unrecovered error", result.isValid());
+  } // method testRecoveryAfterTornTail
+
+  @Test
+  public void testRemovedNewestRecords() throws Exception {
+    FileAuditService service = newService();
+    logEvents(service, 1, 10, 10);
+    service.close();
+
+    File segment = FileAuditVerifier.listSegments(dir)[0];
+    byte[] headHash = FileAuditVerifier.readSegment(segment, null, 10).getHeadHash();
+    Assert.assertNotNull("headHash", headHash);
+    assertValid(FileAuditVerifier.verify(dir, null, 10, headHash));
+
+    // remove the records 9 and 10 together with their hashes
+    int offset = recordOffset(segment, 9);
+    writeBytes(segment, offset, new byte[(int) segment.length() - offset]);
+
+    FileAuditVerifier.Result result = FileAuditVerifier.verify(dir, null);
+    assertValid(result);
+    Assert.assertEquals("lastSeq", 8, result.getLastSeq());
+
+    result = FileAuditVerifier.verify(dir, null, 10, headHash);
+    Assert.assertFalse("removal detected with the chain head", result.isValid());
+  } // method testRemovedNewestRecords
+
+  @Test
+  public void testZeroedRecord() throws Exception {
+    FileAuditService service = newService();
+    logEvents(service, 1, 10, 10);
+    service.close();
+
+    File segment = FileAuditVerifier.listSegments(dir)[0];
+    int offset = recordOffset(segment, 5);
+    int nextOffset = recordOffset(segment, 6);
+    writeBytes(segment, offset, new byte[nextOffset - offset]);
+
+    FileAuditVerifier.Result result = FileAuditVerifier.verify(dir, null);
+    Assert.assertFalse("zeroed record detected", result.isValid());
+  } // method testZeroedRecord
+
+  private FileAuditService newService() throws IOException {
+    File conf = new File(baseDir, "audit.file.cfg");
+    String text = "dir = " + dir.getAbsolutePath().replace('\\', '/') + "\n"
+        + "segmentSize = 1\n";
+    try (OutputStream out = Files.newOutputStream(conf.toPath())) {
+      out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    FileAuditService service = new FileAuditService();
+    service.init(conf.getPath());
+    return service;
+  } // method newService
+
+  private static void logEvents(FileAuditService service, int firstIndex, int num,
+      int dataSize) {
+    char[] data = new char[dataSize];
+    Arrays.fill(data, 'x');
+    for (int i = firstIndex; i < firstIndex + num; i++) {
+      AuditEvent event = new AuditEvent(new Date());
+      event.setApplicationName("test");
+      event.setName("event-" + i);
+      event.addEventData("data", new String(data));
+      service.logEvent(event);
+    }
+  } // method logEvents
+
+  private static void assertValid(FileAuditVerifier.Result result) {
+    Assert.assertTrue("valid: " + result.getErrors(), result.isValid());
+  }
+
+  private static int recordOffset(File segment, long seq) throws IOException {
+    long firstSeq = ByteBuffer.wrap(readBytes(segment, 8, 8)).getLong();
+    int offset = FileAuditService.HEADER_SIZE;
+    for (long i = firstSeq; i < seq; i++) {
+      int len = ByteBuffer.wrap(readBytes(segment, offset, 4)).getInt();
+      offset += 4 + (len & ~FileAuditService.RECOVERY_FLAG);
+    }
+    return offset;
+  } // method recordOffset
+
+  private static byte[] readBytes(File file, int offset, int len) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer buf = ByteBuffer.allocate(len);
+      channel.read(buf, offset);
+      return buf.array();
+    }
+  } // method readBytes
+
+  private static void writeBytes(File file, int offset, byte[] bytes) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(bytes), offset);
+    }
+  } // method writeBytes
+
+}
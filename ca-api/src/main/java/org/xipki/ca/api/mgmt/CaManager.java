@@ -537,6 +537,27 @@ public interface CaManager {
   void revokeCertificate(String caName, BigInteger serialNumber, CrlReason reason,
       Date invalidityTime) throws CaMgmtException;
 
+  /**
+   * Revokes the certificates with the serial numbers {@code serialNumbers}, and issued by the
+   * CA {@code caName}. The certificates are revoked in batches, certificates already revoked
+   * are skipped.
+   *
+   * @param caName
+   *          CA name. Must not be {@code null}.
+   * @param serialNumbers
+   *          Serial numbers. Must not be {@code null}.
+   * @param reason
+   *          Revocation reason. Must not be {@code null}.
+   * @param invalidityTime
+   *          Invalidity time. Could be {@code null}.
+   * @return the result of the revocation.
+   * @throws CaMgmtException
+   *          if error occurs.
+   * @since 5.3.8
+   */
+  RevokeCertsResult revokeCertificates(String caName, List<BigInteger> serialNumbers,
+      CrlReason reason, Date invalidityTime) throws CaMgmtException;
+
   /**
    * Unrevokes a certificate with the serial number {@code serialNumber}, and
    * issued by the CA {@code caName}.
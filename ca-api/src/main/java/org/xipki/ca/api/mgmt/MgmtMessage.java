@@ -115,6 +115,7 @@ public abstract class MgmtMessage {
     restartCaSystem,
     revokeCa,
     revokeCertficate,
+    revokeCertificates,
     unlockCa,
     unrevokeCa,
     unrevokeCertificate;
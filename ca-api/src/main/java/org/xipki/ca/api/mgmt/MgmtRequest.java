@@ -698,6 +698,40 @@ public abstract class MgmtRequest extends MgmtMessage {
 
   } // class RevokeCertificate
 
+  public static class RevokeCertificates extends CaNameRequest {
+
+    private List<BigInteger> serialNumbers;
+
+    private CrlReason reason;
+
+    private Date invalidityTime;
+
+    public List<BigInteger> getSerialNumbers() {
+      return serialNumbers;
+    }
+
+    public void setSerialNumbers(List<BigInteger> serialNumbers) {
+      this.serialNumbers = serialNumbers;
+    }
+
+    public CrlReason getReason() {
+      return reason;
+    }
+
+    public void setReason(CrlReason reason) {
+      this.reason = reason;
+    }
+
+    public Date getInvalidityTime() {
+      return invalidityTime;
+    }
+
+    public void setInvalidityTime(Date invalidityTime) {
+      this.invalidityTime = invalidityTime;
+    }
+
+  } // class RevokeCertificates
+
   public static class UnrevokeCertificate extends CaNameRequest {
 
     private BigInteger serialNumber;
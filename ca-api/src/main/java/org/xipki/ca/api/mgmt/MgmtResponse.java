@@ -481,6 +481,27 @@ public abstract class MgmtResponse extends MgmtMessage {
 
   } // class LoadConf
 
+  public static class RevokeCertificates extends MgmtResponse {
+
+    private RevokeCertsResult result;
+
+    public RevokeCertificates() {
+    }
+
+    public RevokeCertificates(RevokeCertsResult result) {
+      this.result = result;
+    }
+
+    public RevokeCertsResult getResult() {
+      return result;
+    }
+
+    public void setResult(RevokeCertsResult result) {
+      this.result = result;
+    }
+
+  } // class RevokeCertificates
+
   public static class StringResponse extends MgmtResponse {
 
     private String result;
@@ -0,0 +1,87 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.api.mgmt;
+
+import java.math.BigInteger;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Result of the revocation of a list of certificates.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class RevokeCertsResult {
+
+  private int numRevoked;
+
+  private int numAlreadyRevoked;
+
+  private List<BigInteger> failedSerialNumbers = new LinkedList<>();
+
+  /**
+   * Returns the number of newly revoked certificates.
+   *
+   * @return the number of newly revoked certificates.
+   */
+  public int getNumRevoked() {
+    return numRevoked;
+  }
+
+  public void setNumRevoked(int numRevoked) {
+    this.numRevoked = numRevoked;
+  }
+
+  /**
+   * Returns the number of certificates which had already been revoked. They are not
+   * changed, so that an interrupted bulk revocation can be resumed by repeating it.
+   *
+   * @return the number of certificates which had already been revoked.
+   */
+  public int getNumAlreadyRevoked() {
+    return numAlreadyRevoked;
+  }
+
+  public void setNumAlreadyRevoked(int numAlreadyRevoked) {
+    this.numAlreadyRevoked = numAlreadyRevoked;
+  }
+
+  /**
+   * Returns the serial numbers of the certificates which do not exist or could not be
+   * revoked.
+   *
+   * @return the serial numbers.
+   */
+  public List<BigInteger> getFailedSerialNumbers() {
+    return failedSerialNumbers;
+  }
+
+  public void setFailedSerialNumbers(List<BigInteger> failedSerialNumbers) {
+    this.failedSerialNumbers =
+        (failedSerialNumbers == null) ? new LinkedList<>() : failedSerialNumbers;
+  }
+
+  public void add(RevokeCertsResult other) {
+    numRevoked += other.numRevoked;
+    numAlreadyRevoked += other.numAlreadyRevoked;
+    failedSerialNumbers.addAll(other.failedSerialNumbers);
+  }
+
+}
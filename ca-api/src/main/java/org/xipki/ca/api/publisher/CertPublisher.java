@@ -18,15 +18,23 @@
 package org.xipki.ca.api.publisher;
 
 import java.io.Closeable;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
 import java.security.cert.X509CRL;
+import java.util.List;
 import java.util.Map;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.xipki.ca.api.CertWithDbId;
 import org.xipki.ca.api.CertificateInfo;
+import org.xipki.ca.api.mgmt.CertWithRevocationInfo;
 import org.xipki.password.PasswordResolver;
 import org.xipki.security.CertRevocationInfo;
 import org.xipki.security.X509Cert;
+import org.xipki.security.util.X509Util;
 import org.xipki.util.FileOrValue;
+import org.xipki.util.LogUtil;
 
 /**
  * Defines how to publish the certificates and CRLs. All CertPublisher classes must extend this
@@ -38,6 +46,8 @@ import org.xipki.util.FileOrValue;
 
 public abstract class CertPublisher implements Closeable {
 
+  private static final Logger LOG = LoggerFactory.getLogger(CertPublisher.class);
+
   protected CertPublisher() {
   }
 
@@ -81,6 +91,25 @@ public abstract class CertPublisher implements Closeable {
    */
   public abstract boolean certificateAdded(CertificateInfo certInfo);
 
+  /**
+   * Publishes a list of certificates. This implementation publishes the certificates one by one
+   * via {@link #certificateAdded(CertificateInfo)}. Publishers which can write several
+   * certificates at once should overwrite it.
+   *
+   * @param certInfos
+   *          Certificates to be published. Must not be {@code null}.
+   * @return for each certificate, in the order of certInfos, whether it is published.
+   * @since 5.3.8
+   */
+  public boolean[] certificatesAdded(List<CertificateInfo> certInfos) {
+    boolean[] published = new boolean[certInfos.size()];
+    int idx = 0;
+    for (CertificateInfo certInfo : certInfos) {
+      published[idx++] = certificateAdded(certInfo);
+    }
+    return published;
+  }
+
   /**
    * Publishes the revocation of a certificate.
    *
@@ -97,6 +126,29 @@ public abstract class CertPublisher implements Closeable {
   public abstract boolean certificateRevoked(X509Cert caCert, CertWithDbId cert,
       String certprofile, CertRevocationInfo revInfo);
 
+  /**
+   * Publishes the revocation of a list of certificates. This implementation publishes the
+   * revocations one by one via
+   * {@link #certificateRevoked(X509Cert, CertWithDbId, String, CertRevocationInfo)}.
+   * Publishers which can write several revocations at once should overwrite it.
+   *
+   * @param caCert
+   *          CA certificate. Must not be {@code null}.
+   * @param certs
+   *          Revoked certificates with the revocation information. Must not be {@code null}.
+   * @return for each certificate, in the order of certs, whether the revocation is published.
+   * @since 5.3.8
+   */
+  public boolean[] certificatesRevoked(X509Cert caCert, List<CertWithRevocationInfo> certs) {
+    boolean[] published = new boolean[certs.size()];
+    int idx = 0;
+    for (CertWithRevocationInfo cert : certs) {
+      published[idx++] = certificateRevoked(caCert, cert.getCert(), cert.getCertprofile(),
+          cert.getRevInfo());
+    }
+    return published;
+  }
+
   /**
    * Publishes the unrevocation of a certificate.
    *
@@ -130,6 +182,29 @@ public abstract class CertPublisher implements Closeable {
    */
   public abstract boolean crlAdded(X509Cert caCert, X509CRL crl);
 
+  /**
+   * Publishes a DER encoded CRL. This implementation parses the CRL and publishes it via
+   * {@link #crlAdded(X509Cert, X509CRL)}. Publishers which do not need the parsed CRL should
+   * overwrite it.
+   *
+   * @param caCert
+   *          CA certificate. Must not be {@code null}.
+   * @param encodedCrl
+   *          DER encoded CRL to be published. Must not be {@code null}.
+   * @return whether the CRL is published.
+   * @since 5.3.8
+   */
+  public boolean crlAdded(X509Cert caCert, byte[] encodedCrl) {
+    X509CRL crl;
+    try {
+      crl = X509Util.parseCrl(encodedCrl);
+    } catch (CertificateException | CRLException ex) {
+      LogUtil.warn(LOG, ex, "could not parse the CRL of CA " + caCert.getSubject());
+      return false;
+    }
+    return crlAdded(caCert, crl);
+  }
+
   /**
    * Publishes the revocation of a CA.
    *
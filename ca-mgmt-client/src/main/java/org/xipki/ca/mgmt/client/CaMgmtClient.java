@@ -52,6 +52,7 @@ import org.xipki.ca.api.mgmt.MgmtMessage.MgmtAction;
 import org.xipki.ca.api.mgmt.MgmtMessage.SignerEntryWrapper;
 import org.xipki.ca.api.mgmt.MgmtRequest;
 import org.xipki.ca.api.mgmt.MgmtResponse;
+import org.xipki.ca.api.mgmt.RevokeCertsResult;
 import org.xipki.security.CertRevocationInfo;
 import org.xipki.security.CrlReason;
 import org.xipki.security.util.X509Util;
@@ -520,6 +521,21 @@ public class CaMgmtClient implements CaManager {
     voidTransmit(MgmtAction.revokeCertficate, req);
   } // method revokeCertificate
 
+  @Override
+  public RevokeCertsResult revokeCertificates(String caName, List<BigInteger> serialNumbers,
+      CrlReason reason, Date invalidityTime) throws CaMgmtException {
+    MgmtRequest.RevokeCertificates req = new MgmtRequest.RevokeCertificates();
+    req.setCaName(caName);
+    req.setSerialNumbers(serialNumbers);
+    req.setReason(reason);
+    req.setInvalidityTime(invalidityTime);
+
+    byte[] respBytes = transmit(MgmtAction.revokeCertificates, req);
+    MgmtResponse.RevokeCertificates resp =
+        parse(respBytes, MgmtResponse.RevokeCertificates.class);
+    return resp.getResult();
+  } // method revokeCertificates
+
   @Override
   public void unrevokeCertificate(String caName, BigInteger serialNumber) throws CaMgmtException {
     MgmtRequest.UnrevokeCertificate req = new MgmtRequest.UnrevokeCertificate();
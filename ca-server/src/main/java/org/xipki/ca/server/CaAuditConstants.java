@@ -114,6 +114,12 @@ public class CaAuditConstants {
 
   public static final String NAME_num = "num";
 
+  public static final String NAME_num_already_revoked = "num_already_revoked";
+
+  public static final String NAME_num_failed = "num_failed";
+
+  public static final String NAME_num_revoked = "num_revoked";
+
   public static final String NAME_perf = "perf";
 
   public static final String NAME_reason = "reason";
@@ -161,6 +167,8 @@ public class CaAuditConstants {
 
   public static final String TYPE_revoke_cert = "revoke_cert";
 
+  public static final String TYPE_revoke_certs = "revoke_certs";
+
   public static final String TYPE_revoke_suspendedCert = "revoke_suspended_cert";
 
 }
@@ -27,6 +27,7 @@ import java.math.BigInteger;
 import java.net.SocketException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.security.cert.CRLException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509CRL;
@@ -84,6 +85,7 @@ import org.xipki.ca.api.mgmt.CtlogControl;
 import org.xipki.ca.api.mgmt.MgmtEntry;
 import org.xipki.ca.api.mgmt.PermissionConstants;
 import org.xipki.ca.api.mgmt.RequestorInfo;
+import org.xipki.ca.api.mgmt.RevokeCertsResult;
 import org.xipki.ca.api.profile.Certprofile;
 import org.xipki.ca.api.profile.CertprofileException;
 import org.xipki.ca.api.profile.CertprofileFactoryRegister;
@@ -435,6 +437,24 @@ public class CaManagerImpl implements CaManager, Closeable {
       throw new CaMgmtException(ex.getMessage(), ex);
     }
 
+    CaServerConf.CrlFetch crlFetch = caServerConf.getCrlFetch();
+    if (crlFetch != null) {
+      certstore.setCrlFetchControl(crlFetch.getPartitions(), crlFetch.getFetchSize());
+      LOG.info("ca.crlFetch: partitions={}, fetchSize={}", crlFetch.getPartitions(),
+          crlFetch.getFetchSize());
+    }
+
+    String deltaCrlJournalDir = caServerConf.getDeltaCrlJournalDir();
+    if (StringUtil.isNotBlank(deltaCrlJournalDir)) {
+      certstore.setDeltaCrlJournalDir(deltaCrlJournalDir);
+      LOG.info("ca.deltaCrlJournalDir: {}", deltaCrlJournalDir);
+    }
+
+    if (caServerConf.isCertFpIndex()) {
+      certstore.setCertFpIndexEnabled(true);
+      LOG.info("ca.certFpIndex: true");
+    }
+
     initCaAliases();
     initCertprofiles();
     initPublishers();
@@ -2040,6 +2060,21 @@ public class CaManagerImpl implements CaManager, Closeable {
     }
   } // method revokeCertificate
 
+  @Override
+  public RevokeCertsResult revokeCertificates(String caName, List<BigInteger> serialNumbers,
+      CrlReason reason, Date invalidityTime) throws CaMgmtException {
+    caName = Args.toNonBlankLower(caName, "caName");
+    Args.notNull(serialNumbers, "serialNumbers");
+    assertMasterModeAndSetuped();
+    X509Ca ca = getX509Ca(caName);
+    try {
+      return ca.revokeCerts(serialNumbers, reason, invalidityTime,
+          CaAuditConstants.MSGID_ca_mgmt);
+    } catch (OperationException ex) {
+      throw new CaMgmtException(ex.getMessage(), ex);
+    }
+  } // method revokeCertificates
+
   @Override
   public void unrevokeCertificate(String caName, BigInteger serialNumber) throws CaMgmtException {
     caName = Args.toNonBlankLower(caName, "caName");
@@ -2385,8 +2420,9 @@ public class CaManagerImpl implements CaManager, Closeable {
 
     X509Ca ca = getX509Ca(caName);
     try {
-      return ca.generateCrlOnDemand(CaAuditConstants.MSGID_ca_mgmt);
-    } catch (OperationException ex) {
+      CrlCache.CachedCrl crl = ca.generateCrlOnDemand(CaAuditConstants.MSGID_ca_mgmt);
+      return (crl == null) ? null : crl.getCrl();
+    } catch (OperationException | CRLException | CertificateException ex) {
       throw new CaMgmtException(ex.getMessage(), ex);
     }
   } // method generateCrlOnDemand
@@ -112,6 +112,109 @@ public class CaServerConf extends ValidatableConf {
 
   } // class RemoteMgmt
 
+  /**
+   * Strategy to fetch the revoked certificates for the CRL generation.
+   *
+   * @since 5.3.8
+   */
+  public static class CrlFetch extends ValidatableConf {
+
+    /**
+     * Number of ranges of the CERT IDs fetched in parallel, each with its own database
+     * connection. Limited by the size of the connection pool.
+     */
+    private int partitions = 4;
+
+    /**
+     * Number of rows fetched in one roundtrip. For MySQL the fetch size is only used if the
+     * property useCursorFetch=true is set in the JDBC URL.
+     */
+    private int fetchSize = 1000;
+
+    public int getPartitions() {
+      return partitions;
+    }
+
+    public void setPartitions(int partitions) {
+      this.partitions = partitions;
+    }
+
+    public int getFetchSize() {
+      return fetchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+      this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      if (partitions < 1) {
+        throw new InvalidConfException("crlFetch.partitions must not be less than 1");
+      }
+
+      if (fetchSize < 1) {
+        throw new InvalidConfException("crlFetch.fetchSize must not be less than 1");
+      }
+    }
+
+  } // class CrlFetch
+
+  public static class CertGen extends ValidatableConf {
+
+    /**
+     * Number of threads of each CA to generate the certificates of a bulk enrollment. If not
+     * positive, the number of processors is used. Should not exceed the parallelism of the CA
+     * signer.
+     */
+    private int bulkThreads;
+
+    /**
+     * Number of threads of each CA to generate the certificates of a request with several
+     * independent templates. If not positive, the number of processors is used. Should not
+     * exceed the parallelism of the CA signer.
+     */
+    private int threads;
+
+    /**
+     * Maximal number of waiting certificates of each pool. If the queue is full, the
+     * certificate is generated in the thread of the request.
+     */
+    private int queueSize = 1000;
+
+    public int getBulkThreads() {
+      return bulkThreads;
+    }
+
+    public void setBulkThreads(int bulkThreads) {
+      this.bulkThreads = bulkThreads;
+    }
+
+    public int getThreads() {
+      return threads;
+    }
+
+    public void setThreads(int threads) {
+      this.threads = threads;
+    }
+
+    public int getQueueSize() {
+      return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+      this.queueSize = queueSize;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      if (queueSize < 1) {
+        throw new InvalidConfException("certGen.queueSize must not be less than 1");
+      }
+    }
+
+  } // class CertGen
+
   private AuditConf audit;
 
   private SecurityConf security;
@@ -133,6 +236,31 @@ public class CaServerConf extends ValidatableConf {
 
   private List<SslContext> sslContexts;
 
+  private CrlFetch crlFetch;
+
+  private CertGen certGen;
+
+  /**
+   * Directory of the journals of the revocations for the next delta CRL. If set, the delta
+   * CRLs are generated from memory instead of the table DELTACRL_CACHE.
+   */
+  private String deltaCrlJournalDir;
+
+  /**
+   * Whether the subject and public key fingerprints of the certificates are indexed in memory,
+   * so that the checks of duplicated subjects and keys need no database query in the common
+   * case. Must not be activated if other CA systems issue certificates of the same CAs.
+   */
+  private boolean certFpIndex;
+
+  /**
+   * Capacity of the in-memory buffer of each asynchronous publisher of a CA. If positive, the
+   * certificates and revocations are published in the background immediately, and only written
+   * to the table PUBLISHQUEUE if the buffer is full or the publisher is unhealthy. Otherwise
+   * they are always written to the table PUBLISHQUEUE.
+   */
+  private int publishBufferSize;
+
   /**
    * list of classes that implement org.xipki.ca.api.profile.CertprofileFactory
    */
@@ -198,6 +326,46 @@ public class CaServerConf extends ValidatableConf {
     return null;
   } // method getSslContext
 
+  public CrlFetch getCrlFetch() {
+    return crlFetch;
+  }
+
+  public void setCrlFetch(CrlFetch crlFetch) {
+    this.crlFetch = crlFetch;
+  }
+
+  public CertGen getCertGen() {
+    return certGen;
+  }
+
+  public void setCertGen(CertGen certGen) {
+    this.certGen = certGen;
+  }
+
+  public String getDeltaCrlJournalDir() {
+    return deltaCrlJournalDir;
+  }
+
+  public void setDeltaCrlJournalDir(String deltaCrlJournalDir) {
+    this.deltaCrlJournalDir = deltaCrlJournalDir;
+  }
+
+  public boolean isCertFpIndex() {
+    return certFpIndex;
+  }
+
+  public void setCertFpIndex(boolean certFpIndex) {
+    this.certFpIndex = certFpIndex;
+  }
+
+  public int getPublishBufferSize() {
+    return publishBufferSize;
+  }
+
+  public void setPublishBufferSize(int publishBufferSize) {
+    this.publishBufferSize = publishBufferSize;
+  }
+
   public AuditConf getAudit() {
     return audit == null ? AuditConf.DEFAULT : audit;
   }
@@ -260,6 +428,8 @@ public class CaServerConf extends ValidatableConf {
     notEmpty(datasources, "datasources");
     validate(remoteMgmt);
     validate(security);
+    validate(crlFetch);
+    validate(certGen);
   } // method validate
 
 }
@@ -0,0 +1,177 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+/**
+ * In-memory index of the subject and public key fingerprints (columns FP_S and FP_K) of the
+ * certificates of one CA. It answers the common case "no certificate has been issued for the
+ * subject or the key" without querying the database.
+ *
+ * <p>The index may contain fingerprints of certificates which have been removed, since several
+ * certificates may share one fingerprint. Hence a positive answer must be verified against the
+ * database, while a negative answer is definitive once the index is {@link #isLoaded() loaded}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+class CertFpIndex {
+
+  /**
+   * Set of long values with open addressing.
+   */
+  private static class LongHashSet {
+
+    private static final int MIN_CAPACITY = 1024;
+
+    private long[] table = new long[MIN_CAPACITY];
+
+    // the value 0 marks an empty slot
+    private boolean containsZero;
+
+    private int size;
+
+    boolean add(long value) {
+      if (value == 0) {
+        boolean added = !containsZero;
+        containsZero = true;
+        return added;
+      }
+
+      if (2 * (size + 1) > table.length) {
+        resize(2 * table.length);
+      }
+
+      if (insert(table, value)) {
+        size++;
+        return true;
+      }
+      return false;
+    } // method add
+
+    boolean contains(long value) {
+      if (value == 0) {
+        return containsZero;
+      }
+
+      int mask = table.length - 1;
+      int idx = hash(value) & mask;
+      while (true) {
+        long current = table[idx];
+        if (current == value) {
+          return true;
+        } else if (current == 0) {
+          return false;
+        }
+        idx = (idx + 1) & mask;
+      }
+    } // method contains
+
+    int size() {
+      return containsZero ? size + 1 : size;
+    }
+
+    private void resize(int newCapacity) {
+      long[] newTable = new long[newCapacity];
+      for (long value : table) {
+        if (value != 0) {
+          insert(newTable, value);
+        }
+      }
+      table = newTable;
+    } // method resize
+
+    private static boolean insert(long[] table, long value) {
+      int mask = table.length - 1;
+      int idx = hash(value) & mask;
+      while (true) {
+        long current = table[idx];
+        if (current == value) {
+          return false;
+        } else if (current == 0) {
+          table[idx] = value;
+          return true;
+        }
+        idx = (idx + 1) & mask;
+      }
+    } // method insert
+
+    private static int hash(long value) {
+      // the fingerprints are hash values, mix the bits anyway to tolerate weak ones
+      long h = value * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32));
+    }
+
+  } // class LongHashSet
+
+  private final LongHashSet subjectFps = new LongHashSet();
+
+  private final LongHashSet keyFps = new LongHashSet();
+
+  private boolean loaded;
+
+  synchronized boolean isLoaded() {
+    return loaded;
+  }
+
+  synchronized void setLoaded() {
+    this.loaded = true;
+  }
+
+  /**
+   * Adds the fingerprints of a certificate.
+   *
+   * @param subjectFp
+   *          fingerprint of the subject.
+   * @param keyFp
+   *          fingerprint of the public key.
+   */
+  synchronized void add(long subjectFp, long keyFp) {
+    subjectFps.add(subjectFp);
+    keyFps.add(keyFp);
+  }
+
+  /**
+   * Returns whether a certificate for the subject may have been issued.
+   *
+   * @param subjectFp
+   *          fingerprint of the subject.
+   * @return {@code false} if no certificate has been issued for the subject, {@code true} if
+   *     a certificate may have been issued.
+   */
+  synchronized boolean mayContainSubject(long subjectFp) {
+    return subjectFps.contains(subjectFp);
+  }
+
+  /**
+   * Returns whether a certificate for the public key may have been issued.
+   *
+   * @param keyFp
+   *          fingerprint of the public key.
+   * @return {@code false} if no certificate has been issued for the key, {@code true} if
+   *     a certificate may have been issued.
+   */
+  synchronized boolean mayContainKey(long keyFp) {
+    return keyFps.contains(keyFp);
+  }
+
+  synchronized int size() {
+    return subjectFps.size();
+  }
+
+}
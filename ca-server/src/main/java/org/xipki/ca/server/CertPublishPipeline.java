@@ -0,0 +1,411 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ca.api.CertWithDbId;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+
+/**
+ * Bounded in-memory pipeline which publishes the changes of the certificates of one CA to one
+ * asynchronous publisher in the background. The entries are published in batches by one worker
+ * thread.
+ *
+ * <p>An entry carries only the ID of the changed certificate. The worker loads the current
+ * state of the certificates from the database and publishes it, like the publication of the
+ * table PUBLISHQUEUE by {@link X509Ca#publishCertsInQueue()}. Both load and publish while
+ * holding the {@link #lockPublishing() publishing lock}, hence a state loaded earlier is never
+ * published after a state loaded later, and a stale state cannot overwrite a newer one.
+ *
+ * <p>An entry is written to the table PUBLISHQUEUE instead, if the buffer is full, the
+ * publisher is unhealthy, the publishing fails or the pipeline is closed. Removed certificates
+ * cannot be loaded any more, the removal is published directly in these cases.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+class CertPublishPipeline {
+
+  /**
+   * Access to the database and to the publisher.
+   */
+  interface Backend {
+
+    String getName();
+
+    boolean isHealthy();
+
+    /**
+     * Loads the current state of the certificates and publishes it. Certificates which do not
+     * exist any more are ignored.
+     *
+     * @param certIds
+     *          IDs of the certificates.
+     * @return IDs of the certificates which could not be published.
+     */
+    List<Long> publishCurrentStates(List<Long> certIds);
+
+    /**
+     * Publishes the removal of a certificate.
+     *
+     * @param cert
+     *          the removed certificate.
+     * @return whether the removal has been published.
+     */
+    boolean publishRemoved(CertWithDbId cert);
+
+    /**
+     * Writes the entries to the table PUBLISHQUEUE.
+     *
+     * @param certIds
+     *          IDs of the certificates.
+     */
+    void addToPublishQueue(List<Long> certIds);
+
+  } // interface Backend
+
+  private static class Entry {
+
+    private final long certId;
+
+    // not null for the removal of the certificate
+    private final CertWithDbId removedCert;
+
+    private Entry(long certId, CertWithDbId removedCert) {
+      this.certId = certId;
+      this.removedCert = removedCert;
+    }
+
+  } // class Entry
+
+  private class Worker extends Thread {
+
+    private Worker(String name) {
+      super(name);
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      List<Entry> entries = new ArrayList<>(BATCH_SIZE);
+      while (!closed) {
+        try {
+          Entry entry = buffer.poll(1, TimeUnit.SECONDS);
+          if (entry == null) {
+            checkHealth();
+            continue;
+          }
+
+          entries.add(entry);
+          buffer.drainTo(entries, BATCH_SIZE - 1);
+          checkHealth();
+          if (healthy) {
+            publishEntries(entries);
+          } else {
+            spill(entries);
+          }
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          break;
+        } catch (Throwable th) {
+          LogUtil.error(LOG, th, "error while publishing to publisher " + backend.getName());
+          spill(entries);
+        } finally {
+          entries.clear();
+        }
+      }
+    } // method run
+
+  } // class Worker
+
+  private static final Logger LOG = LoggerFactory.getLogger(CertPublishPipeline.class);
+
+  private static final int BATCH_SIZE = 100;
+
+  static final long DFLT_HEALTH_CHECK_INTERVAL_MS = 10000;
+
+  private final Backend backend;
+
+  private final BlockingQueue<Entry> buffer;
+
+  private final long healthCheckInterval;
+
+  private final ReentrantLock publishLock = new ReentrantLock();
+
+  private final Worker worker;
+
+  private volatile boolean closed;
+
+  private volatile boolean healthy = true;
+
+  private long lastHealthCheck;
+
+  CertPublishPipeline(String threadName, Backend backend, int capacity) {
+    this(threadName, backend, capacity, DFLT_HEALTH_CHECK_INTERVAL_MS);
+  }
+
+  CertPublishPipeline(String threadName, Backend backend, int capacity,
+      long healthCheckInterval) {
+    this.backend = Args.notNull(backend, "backend");
+    this.buffer = new ArrayBlockingQueue<>(Args.positive(capacity, "capacity"));
+    this.healthCheckInterval = healthCheckInterval;
+
+    this.worker = new Worker(Args.notBlank(threadName, "threadName"));
+    this.worker.start();
+  } // constructor
+
+  Backend getBackend() {
+    return backend;
+  }
+
+  boolean isHealthy() {
+    return healthy;
+  }
+
+  /**
+   * Publishes the current state of a certificate, which has been added, revoked or unrevoked.
+   * If the pipeline does not accept the entry, it is written to the table PUBLISHQUEUE.
+   *
+   * @param certId
+   *          ID of the certificate.
+   */
+  void publish(long certId) {
+    publish(Collections.singletonList(certId));
+  }
+
+  /**
+   * Publishes the current state of the certificates. The entries not accepted by the pipeline
+   * are written to the table PUBLISHQUEUE.
+   *
+   * @param certIds
+   *          IDs of the certificates.
+   */
+  void publish(List<Long> certIds) {
+    List<Long> queued = new ArrayList<>();
+    for (Long certId : certIds) {
+      if (!offer(new Entry(certId, null))) {
+        queued.add(certId);
+      }
+    }
+    addToPublishQueue(queued);
+  } // method publish
+
+  /**
+   * Publishes the removal of a certificate. It must be called after the certificate has been
+   * removed from the database. If the pipeline does not accept the entry, the removal is
+   * published directly.
+   *
+   * @param cert
+   *          the removed certificate.
+   * @return {@code false} if the removal has been published directly and failed,
+   *     {@code true} otherwise.
+   */
+  boolean publishRemoved(CertWithDbId cert) {
+    Args.notNull(cert, "cert");
+    if (offer(new Entry(cert.getCertId(), cert))) {
+      return true;
+    }
+    return publishRemovedNow(cert);
+  } // method publishRemoved
+
+  private synchronized boolean offer(Entry entry) {
+    if (closed || !healthy) {
+      return false;
+    }
+    return buffer.offer(entry);
+  }
+
+  /**
+   * Acquires the lock which must be held while loading and publishing the current state of
+   * certificates to the publisher outside of this pipeline.
+   */
+  void lockPublishing() {
+    publishLock.lock();
+  }
+
+  void unlockPublishing() {
+    publishLock.unlock();
+  }
+
+  /**
+   * Stops the worker and writes the remaining entries to the table PUBLISHQUEUE.
+   */
+  void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+
+    // the worker stops within one second, it is not interrupted since some JDBC drivers
+    // close the connection on interruption.
+    try {
+      worker.join(10000);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+
+    List<Entry> entries = new ArrayList<>(buffer.size());
+    buffer.drainTo(entries);
+    if (!entries.isEmpty()) {
+      LOG.info("write {} unpublished entries of {} to PUBLISHQUEUE", entries.size(),
+          backend.getName());
+      spill(entries);
+    }
+  } // method close
+
+  private void checkHealth() {
+    if (healthy) {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    if (now - lastHealthCheck < healthCheckInterval) {
+      return;
+    }
+
+    lastHealthCheck = now;
+    try {
+      healthy = backend.isHealthy();
+    } catch (RuntimeException ex) {
+      LogUtil.warn(LOG, ex, "could not check the health of " + backend.getName());
+    }
+
+    if (healthy) {
+      LOG.info("{} is healthy again", backend.getName());
+    }
+  } // method checkHealth
+
+  private void publishEntries(List<Entry> entries) {
+    List<Long> failed = new ArrayList<>();
+    boolean removalFailed = false;
+
+    publishLock.lock();
+    try {
+      // the changes are published in the order of the entries, the states are loaded as late
+      // as possible. Consecutive entries of the same certificate need only one load.
+      Set<Long> certIds = new LinkedHashSet<>();
+      for (Entry entry : entries) {
+        if (entry.removedCert == null) {
+          certIds.add(entry.certId);
+          continue;
+        }
+
+        publishStates(certIds, failed);
+        certIds.clear();
+        if (!publishRemovedNow0(entry.removedCert)) {
+          removalFailed = true;
+        }
+      }
+      publishStates(certIds, failed);
+    } finally {
+      publishLock.unlock();
+    }
+
+    if (!failed.isEmpty() || removalFailed) {
+      LOG.warn("could not publish {} entries to {}, mark it as unhealthy",
+          failed.size() + (removalFailed ? 1 : 0), backend.getName());
+      healthy = false;
+      lastHealthCheck = System.currentTimeMillis();
+      addToPublishQueue(failed);
+    }
+  } // method publishEntries
+
+  private void publishStates(Collection<Long> certIds, List<Long> failed) {
+    if (certIds.isEmpty()) {
+      return;
+    }
+
+    List<Long> list = new ArrayList<>(certIds);
+    try {
+      failed.addAll(backend.publishCurrentStates(list));
+    } catch (RuntimeException ex) {
+      LogUtil.error(LOG, ex, "could not publish to " + backend.getName());
+      failed.addAll(list);
+    }
+  } // method publishStates
+
+  private boolean publishRemovedNow(CertWithDbId cert) {
+    publishLock.lock();
+    try {
+      return publishRemovedNow0(cert);
+    } finally {
+      publishLock.unlock();
+    }
+  } // method publishRemovedNow
+
+  private boolean publishRemovedNow0(CertWithDbId cert) {
+    boolean successful;
+    try {
+      successful = backend.publishRemoved(cert);
+    } catch (RuntimeException ex) {
+      LogUtil.error(LOG, ex, "could not publish the removal to " + backend.getName());
+      successful = false;
+    }
+
+    if (!successful) {
+      LOG.error("could not publish the removal of certificate id={} to {}", cert.getCertId(),
+          backend.getName());
+    }
+    return successful;
+  } // method publishRemovedNow0
+
+  private void spill(List<Entry> entries) {
+    List<Long> certIds = new ArrayList<>(entries.size());
+    for (Entry entry : entries) {
+      if (entry.removedCert == null) {
+        certIds.add(entry.certId);
+      } else {
+        // the removed certificate cannot be loaded from the table PUBLISHQUEUE
+        addToPublishQueue(certIds);
+        certIds.clear();
+        publishRemovedNow(entry.removedCert);
+      }
+    }
+    addToPublishQueue(certIds);
+  } // method spill
+
+  private void addToPublishQueue(List<Long> certIds) {
+    if (certIds.isEmpty()) {
+      return;
+    }
+
+    try {
+      backend.addToPublishQueue(certIds);
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th, "could not add " + certIds.size() + " entries of "
+          + backend.getName() + " to PublishQueue");
+    }
+  } // method addToPublishQueue
+
+}
@@ -17,9 +17,9 @@
 
 package org.xipki.ca.server;
 
-import java.security.cert.CertificateException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
@@ -129,56 +129,88 @@ class CertRepublisher {
 
     @Override
     public void run() {
-      while (!failed) {
-        QueueEntry entry;
+      final int batchSize = 100;
+      boolean endOfQueue = false;
+      while (!failed && !endOfQueue) {
+        List<QueueEntry> entries = new ArrayList<>(batchSize);
         try {
-          entry = queue.take();
+          entries.add(queue.take());
         } catch (InterruptedException ex) {
           LogUtil.error(LOG, ex, "could not take from queue");
           failed = true;
           break;
         }
+        queue.drainTo(entries, batchSize - 1);
+
+        List<Long> certIds = new ArrayList<>(entries.size());
+        for (QueueEntry entry : entries) {
+          if (entry instanceof QueueEntry.EndOfQueue) {
+            endOfQueue = true;
+          } else {
+            certIds.add(((SerialWithIdQueueEntry) entry).serialWithId().getId());
+          }
+        }
 
-        if (entry instanceof QueueEntry.EndOfQueue) {
+        if (endOfQueue) {
           // re-add it to queue so that other consumers know it
           try {
-            queue.put(entry);
+            queue.put(QueueEntry.END_OF_QUEUE);
           } catch (InterruptedException ex) {
             LogUtil.warn(LOG, ex, "could not re-add EndOfQueue to queue");
           }
-          break;
         }
 
-        CertStore.SerialWithId sid = ((SerialWithIdQueueEntry) entry).serialWithId();
-
-        CertificateInfo certInfo;
+        if (certIds.isEmpty()) {
+          continue;
+        }
 
+        Map<Long, CertificateInfo> certs;
         try {
-          certInfo = certstore.getCertForId(ca, caCert, sid.getId(), caIdNameMap);
-        } catch (OperationException | CertificateException ex) {
+          certs = certstore.getCertsForIds(ca, caCert, certIds, caIdNameMap);
+        } catch (OperationException ex) {
           LogUtil.error(LOG, ex);
           failed = true;
           break;
         }
 
+        List<CertificateInfo> certInfos = new ArrayList<>(certIds.size());
+        for (Long certId : certIds) {
+          CertificateInfo certInfo = certs.get(certId);
+          if (certInfo == null) {
+            LOG.warn("could not load certificate id={}, ignore it", certId);
+          } else {
+            certInfos.add(certInfo);
+          }
+        }
+
         boolean allSucc = true;
         for (IdentifiedCertPublisher publisher : publishers) {
-          if (!certInfo.isRevoked() && !publisher.publishsGoodCert()) {
+          List<CertificateInfo> toPublish = new ArrayList<>(certInfos.size());
+          for (CertificateInfo certInfo : certInfos) {
+            if (certInfo.isRevoked() || publisher.publishsGoodCert()) {
+              toPublish.add(certInfo);
+            }
+          }
+
+          if (toPublish.isEmpty()) {
             continue;
           }
 
-          boolean successful = publisher.certificateAdded(certInfo);
-          if (!successful) {
-            LOG.error("republish certificate serial={} to publisher {} failed",
-                LogUtil.formatCsn(sid.getSerial()), publisher.getIdent());
-            allSucc = false;
+          boolean[] published = publisher.certificatesAdded(toPublish);
+          for (int i = 0; i < published.length; i++) {
+            if (!published[i]) {
+              LOG.error("republish certificate serial={} to publisher {} failed",
+                  LogUtil.formatCsn(toPublish.get(i).getCert().getCert().getSerialNumber()),
+                  publisher.getIdent());
+              allSucc = false;
+            }
           }
         }
 
         if (!allSucc) {
           break;
         }
-        processLog.addNumProcessed(1);
+        processLog.addNumProcessed(certIds.size());
       }
     } // method run
 
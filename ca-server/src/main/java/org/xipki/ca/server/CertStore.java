@@ -24,12 +24,14 @@ import static org.xipki.ca.api.OperationException.ErrorCode.DATABASE_FAILURE;
 import static org.xipki.ca.api.OperationException.ErrorCode.NOT_PERMITTED;
 import static org.xipki.ca.api.OperationException.ErrorCode.SYSTEM_FAILURE;
 
+import java.io.File;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -40,10 +42,21 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.bouncycastle.asn1.ASN1Integer;
 import org.bouncycastle.asn1.DEROctetString;
@@ -63,6 +76,7 @@ import org.xipki.ca.api.mgmt.CertListInfo;
 import org.xipki.ca.api.mgmt.CertListOrderBy;
 import org.xipki.ca.api.mgmt.CertWithRevocationInfo;
 import org.xipki.ca.api.mgmt.MgmtEntry;
+import org.xipki.ca.api.mgmt.RevokeCertsResult;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.security.CertRevocationInfo;
@@ -74,6 +88,7 @@ import org.xipki.security.X509Cert;
 import org.xipki.security.util.X509Util;
 import org.xipki.util.Args;
 import org.xipki.util.Base64;
+import org.xipki.util.IoUtil;
 import org.xipki.util.LogUtil;
 import org.xipki.util.LruCache;
 import org.xipki.util.StringUtil;
@@ -174,6 +189,145 @@ public class CertStore {
 
   } // class SerialWithId
 
+  /**
+   * Consumer of the revoked certificates streamed by
+   * {@link CertStore#getRevokedCerts(NameId, Date, boolean, boolean, RevokedCertConsumer)}.
+   */
+  interface RevokedCertConsumer {
+
+    void accept(CertRevInfoWithSerial revInfo) throws OperationException;
+
+  } // interface RevokedCertConsumer
+
+  /**
+   * Consumer of the certificates streamed by
+   * {@link CertStore#getCertsForCrlCertset(NameId, Date, boolean, boolean, boolean,
+   * CrlCertConsumer)}.
+   */
+  interface CrlCertConsumer {
+
+    /**
+     * Accepts the certificate.
+     *
+     * @param id
+     *          the database ID.
+     * @param serial
+     *          the serial number.
+     * @param certprofileId
+     *          ID of the certificate profile, 0 if not requested.
+     * @param encodedCert
+     *          the DER encoded certificate, {@code null} if not requested.
+     * @throws OperationException
+     *           if error occurs while processing the certificate.
+     */
+    void accept(long id, BigInteger serial, int certprofileId, byte[] encodedCert)
+        throws OperationException;
+
+  } // interface CrlCertConsumer
+
+  /**
+   * Fetches the revoked certificates of one ID range, and passes them in batches to the queue.
+   */
+  private class RevokedCertsFetcher implements Runnable {
+
+    private final String sql;
+
+    private final long fromId;
+
+    private final long toId;
+
+    private final int caId;
+
+    private final long notExpiredAt;
+
+    private final Boolean onlyUserCerts;
+
+    private final BlockingQueue<List<CertRevInfoWithSerial>> queue;
+
+    private final AtomicBoolean cancelled;
+
+    private final AtomicReference<Exception> error;
+
+    RevokedCertsFetcher(String sql, long fromId, long toId, int caId, long notExpiredAt,
+        Boolean onlyUserCerts, BlockingQueue<List<CertRevInfoWithSerial>> queue,
+        AtomicBoolean cancelled, AtomicReference<Exception> error) {
+      this.sql = sql;
+      this.fromId = fromId;
+      this.toId = toId;
+      this.caId = caId;
+      this.notExpiredAt = notExpiredAt;
+      this.onlyUserCerts = onlyUserCerts;
+      this.queue = queue;
+      this.cancelled = cancelled;
+      this.error = error;
+    }
+
+    @Override
+    public void run() {
+      try {
+        fetch();
+      } catch (Exception ex) {
+        error.compareAndSet(null, ex);
+      } finally {
+        put(END_OF_REVOKED_CERTS);
+      }
+    } // method run
+
+    private void fetch() throws DataAccessException {
+      Connection conn = borrowStreamingConnection();
+      PreparedStatement ps = null;
+      ResultSet rs = null;
+      try {
+        ps = datasource.prepareStatement(conn, sql);
+        ps.setFetchSize(crlFetchSize);
+
+        int idx = 1;
+        ps.setLong(idx++, fromId);
+        ps.setLong(idx++, toId);
+        ps.setInt(idx++, caId);
+        ps.setLong(idx++, notExpiredAt);
+        if (onlyUserCerts != null) {
+          setBoolean(ps, idx++, onlyUserCerts);
+        }
+        rs = ps.executeQuery();
+
+        List<CertRevInfoWithSerial> batch = new ArrayList<>(crlFetchSize);
+        while (rs.next()) {
+          if (cancelled.get()) {
+            return;
+          }
+
+          batch.add(toCertRevInfoWithSerial(rs));
+          if (batch.size() >= crlFetchSize) {
+            put(batch);
+            batch = new ArrayList<>(crlFetchSize);
+          }
+        }
+
+        if (!batch.isEmpty()) {
+          put(batch);
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        releaseStreamingConnection(conn, ps, rs);
+      }
+    } // method fetch
+
+    private void put(List<CertRevInfoWithSerial> batch) {
+      try {
+        while (!cancelled.get()) {
+          if (queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+            return;
+          }
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    } // method put
+
+  } // class RevokedCertsFetcher
+
   private static final Logger LOG = LoggerFactory.getLogger(CertStore.class);
 
   private static final String SQL_ADD_CERT =
@@ -196,6 +350,9 @@ public class CertStore {
   private static final String SQL_MAXID_DELTACRL_CACHE =
       "SELECT MAX(ID) FROM DELTACRL_CACHE WHERE CA_ID=?";
 
+  private static final String SQL_COUNT_DELTACRL_CACHE =
+      "SELECT COUNT(*) FROM DELTACRL_CACHE WHERE CA_ID=?";
+
   private static final String SQL_CLEAR_DELTACRL_CACHE =
       "DELETE FROM DELTACRL_CACHE WHERE ID<? AND CA_ID=?";
 
@@ -219,6 +376,8 @@ public class CertStore {
   private static final String SQL_ADD_REQUEST =
       "INSERT INTO REQUEST (ID,LUPDATE,DATA) VALUES(?,?,?)";
 
+  private static final int MAX_IN_LIST_SIZE = 100;
+
   private static final String SQL_ADD_REQCERT = "INSERT INTO REQCERT (ID,RID,CID) VALUES(?,?,?)";
 
   private final String sqlCaHasCrl;
@@ -239,7 +398,7 @@ public class CertStore {
 
   private final String sqlKnowsCertForSerial;
 
-  private final String sqlRevForId;
+  private final String sqlRevForSerial;
 
   private final String sqlCertStatusForSubjectFp;
 
@@ -257,6 +416,8 @@ public class CertStore {
 
   private final String sqlReqForId;
 
+  private final ConcurrentHashMap<Integer, CrlCache> crlCaches = new ConcurrentHashMap<>();
+
   private final LruCache<Integer, String> cacheSqlCidFromPublishQueue = new LruCache<>(5);
 
   private final LruCache<Integer, String> cacheSqlExpiredSerials = new LruCache<>(5);
@@ -265,16 +426,34 @@ public class CertStore {
 
   private final LruCache<Integer, String> cacheSqlDeltaCrlCacheIds = new LruCache<>(5);
 
-  private final LruCache<Integer, String> cacheSqlRevokedCerts = new LruCache<>(5);
-
-  private final LruCache<Integer, String> cacheSqlRevokedCertsWithEe = new LruCache<>(5);
-
   private final LruCache<Integer, String> cacheSqlSerials = new LruCache<>(5);
 
   private final LruCache<Integer, String> cacheSqlSerialsRevoked = new LruCache<>(5);
 
+  // maximal number of queued partitions of the concurrent CRL generations
+  private static final int CRL_FETCH_QUEUE_SIZE = 256;
+
+  private static final List<CertRevInfoWithSerial> END_OF_REVOKED_CERTS =
+      Collections.emptyList();
+
   private final DataSourceWrapper datasource;
 
+  private int crlFetchPartitions = 4;
+
+  // shared by the CRL generations of all CAs, with crlFetchPartitions threads
+  private final ThreadPoolExecutor crlFetchExecutor;
+
+  private int crlFetchSize = 1000;
+
+  private File deltaCrlJournalDir;
+
+  private final ConcurrentHashMap<Integer, DeltaCrlAccumulator> deltaCrlAccumulators =
+      new ConcurrentHashMap<>();
+
+  private boolean certFpIndexEnabled;
+
+  private final ConcurrentHashMap<Integer, CertFpIndex> certFpIndexes = new ConcurrentHashMap<>();
+
   @SuppressWarnings("unused")
   private final int dbSchemaVersion;
 
@@ -304,7 +483,8 @@ public class CertStore {
     this.sqlCaHasUser = buildSelectFirstSql(
         "PERMISSION,PROFILES FROM CA_HAS_USER WHERE CA_ID=? AND USER_ID=?");
     this.sqlKnowsCertForSerial = buildSelectFirstSql("UID FROM CERT WHERE SN=? AND CA_ID=?");
-    this.sqlRevForId = buildSelectFirstSql("SN,EE,REV,RR,RT,RIT FROM CERT WHERE ID=?");
+    this.sqlRevForSerial =
+        buildSelectFirstSql("SN,EE,REV,RR,RT,RIT,LUPDATE FROM CERT WHERE CA_ID=? AND SN=?");
     this.sqlCertStatusForSubjectFp = buildSelectFirstSql("REV FROM CERT WHERE FP_S=? AND CA_ID=?");
     this.sqlCertforSubjectIssued = buildSelectFirstSql("ID FROM CERT WHERE CA_ID=? AND FP_S=?");
     this.sqlCertForKeyIssued = buildSelectFirstSql("ID FROM CERT WHERE CA_ID=? AND FP_K=?");
@@ -314,11 +494,62 @@ public class CertStore {
     this.sqlLatestSerialForSubjectLike = datasource.buildSelectFirstSql(1, "NBEFORE DESC",
         "SUBJECT FROM CERT WHERE SUBJECT LIKE ?");
     this.sqlCrl = datasource.buildSelectFirstSql(1, "THISUPDATE DESC",
-        "THISUPDATE,CRL FROM CRL WHERE CA_ID=?");
+        "CRL_NO,THISUPDATE,CRL FROM CRL WHERE CA_ID=?");
     this.sqlCrlWithNo = datasource.buildSelectFirstSql(1, "THISUPDATE DESC",
-        "THISUPDATE,CRL FROM CRL WHERE CA_ID=? AND CRL_NO=?");
+        "CRL_NO,THISUPDATE,CRL FROM CRL WHERE CA_ID=? AND CRL_NO=?");
+    this.crlFetchExecutor = newCrlFetchExecutor(crlFetchPartitions);
   } // constructor
 
+  /**
+   * Sets the strategy to fetch the revoked certificates for the CRL generation.
+   *
+   * @param partitions
+   *          number of ranges of the CERT IDs fetched in parallel, each with its own database
+   *          connection. It is limited by the size of the connection pool.
+   * @param fetchSize
+   *          number of rows fetched in one roundtrip, also the size of the pages to read the
+   *          delta CRL cache.
+   */
+  public void setCrlFetchControl(int partitions, int fetchSize) {
+    this.crlFetchPartitions = Args.positive(partitions, "partitions");
+    this.crlFetchSize = Args.positive(fetchSize, "fetchSize");
+
+    // the maximal pool size must not be less than the core pool size
+    if (partitions > crlFetchExecutor.getMaximumPoolSize()) {
+      crlFetchExecutor.setMaximumPoolSize(partitions);
+      crlFetchExecutor.setCorePoolSize(partitions);
+    } else {
+      crlFetchExecutor.setCorePoolSize(partitions);
+      crlFetchExecutor.setMaximumPoolSize(partitions);
+    }
+  } // method setCrlFetchControl
+
+  public int getCrlFetchSize() {
+    return crlFetchSize;
+  }
+
+  /**
+   * Sets the directory of the journals of the delta CRL accumulators, one subdirectory per CA.
+   *
+   * @param dir
+   *          the directory, {@code null} to read the delta CRL entries from the database.
+   */
+  public void setDeltaCrlJournalDir(String dir) {
+    this.deltaCrlJournalDir = (dir == null) ? null : new File(IoUtil.expandFilepath(dir));
+  }
+
+  /**
+   * Enables the in-memory index of the subject and public key fingerprints of the certificates,
+   * see {@link CertFpIndex}. The index of a CA is loaded at the first lookup. It must only be
+   * enabled if no other instance saves certificates of the CAs of this instance.
+   *
+   * @param enabled
+   *          whether the index is enabled.
+   */
+  public void setCertFpIndexEnabled(boolean enabled) {
+    this.certFpIndexEnabled = enabled;
+  }
+
   private String buildSelectFirstSql(String coreSql) {
     return datasource.buildSelectFirstSql(1, coreSql);
   }
@@ -350,6 +581,219 @@ public class CertStore {
 
     long certId = idGenerator.nextId();
 
+    final String sql = SQL_ADD_CERT;
+    PreparedStatement ps = borrowPreparedStatement(sql);
+
+    try {
+      setAddCertParameters(ps, certId, ca, certificate, encodedSubjectPublicKey, certprofile,
+          requestor, userId, reqType, transactionId, reqSubject);
+      ps.executeUpdate();
+
+      certificate.setCertId(certId);
+      addToCertFpIndex(ca, certificate, encodedSubjectPublicKey);
+    } catch (SQLException ex) {
+      throw datasource.translate(null, ex);
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
+  } // method addCert
+
+  /**
+   * Saves the certificates in one transaction. The certificates, the references to the request
+   * and the entries of the publish queue are inserted with JDBC batches.
+   *
+   * @param ca
+   *          the CA. Must not be {@code null}.
+   * @param certInfos
+   *          the certificates. Must not be {@code null}. Certificates already issued are ignored.
+   * @param requestId
+   *          ID of the saved request, {@code null} if the request is not saved.
+   * @param queuedPublishers
+   *          publishers to which the certificates are published via the publish queue.
+   * @throws OperationException
+   *           if the certificates could not be saved. In this case none is saved.
+   */
+  public void addCerts(NameId ca, List<CertificateInfo> certInfos, Long requestId,
+      List<NameId> queuedPublishers) throws OperationException {
+    Args.notNull(ca, "ca");
+    Args.notNull(certInfos, "certInfos");
+
+    List<CertificateInfo> newCertInfos = new ArrayList<>(certInfos.size());
+    for (CertificateInfo certInfo : certInfos) {
+      if (!certInfo.isAlreadyIssued()) {
+        newCertInfos.add(certInfo);
+      }
+    }
+
+    if (newCertInfos.isEmpty()) {
+      return;
+    }
+
+    final int n = newCertInfos.size();
+    long[] certIds = new long[n];
+    for (int i = 0; i < n; i++) {
+      certIds[i] = idGenerator.nextId();
+    }
+
+    Connection conn;
+    try {
+      conn = datasource.getConnection();
+    } catch (DataAccessException ex) {
+      throw new OperationException(DATABASE_FAILURE, ex.getMessage());
+    }
+
+    PreparedStatement psCert = null;
+    PreparedStatement psReqCert = null;
+    PreparedStatement psQueue = null;
+    String sql = null;
+
+    boolean successful = false;
+    try {
+      conn.setAutoCommit(false);
+
+      sql = SQL_ADD_CERT;
+      psCert = datasource.prepareStatement(conn, sql);
+      for (int i = 0; i < n; i++) {
+        CertificateInfo certInfo = newCertInfos.get(i);
+        setAddCertParameters(psCert, certIds[i], ca, certInfo.getCert(),
+            certInfo.getSubjectPublicKey(), certInfo.getProfile(), certInfo.getRequestor(),
+            certInfo.getUser(), certInfo.getReqType(), certInfo.getTransactionId(),
+            certInfo.getRequestedSubject());
+        psCert.addBatch();
+      }
+      psCert.executeBatch();
+
+      if (requestId != null) {
+        sql = SQL_ADD_REQCERT;
+        psReqCert = datasource.prepareStatement(conn, sql);
+        for (int i = 0; i < n; i++) {
+          psReqCert.setLong(1, idGenerator.nextId());
+          psReqCert.setLong(2, requestId);
+          psReqCert.setLong(3, certIds[i]);
+          psReqCert.addBatch();
+        }
+        psReqCert.executeBatch();
+      }
+
+      if (queuedPublishers != null && !queuedPublishers.isEmpty()) {
+        sql = SQL_INSERT_PUBLISHQUEUE;
+        psQueue = datasource.prepareStatement(conn, sql);
+        for (NameId publisher : queuedPublishers) {
+          for (int i = 0; i < n; i++) {
+            psQueue.setInt(1, publisher.getId());
+            psQueue.setInt(2, ca.getId());
+            psQueue.setLong(3, certIds[i]);
+            psQueue.addBatch();
+          }
+        }
+        psQueue.executeBatch();
+      }
+
+      conn.commit();
+      successful = true;
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } catch (DataAccessException ex) {
+      throw new OperationException(DATABASE_FAILURE, ex.getMessage());
+    } finally {
+      try {
+        if (!successful) {
+          conn.rollback();
+        }
+        conn.setAutoCommit(true);
+      } catch (SQLException ex) {
+        LOG.warn("could not reset the auto-commit mode: {}", ex.getMessage());
+      }
+
+      datasource.releaseResources(psQueue, null, false);
+      datasource.releaseResources(psReqCert, null, false);
+      datasource.releaseResources(psCert, null, false);
+      datasource.returnConnection(conn);
+    }
+
+    for (int i = 0; i < n; i++) {
+      CertificateInfo certInfo = newCertInfos.get(i);
+      certInfo.getCert().setCertId(certIds[i]);
+      addToCertFpIndex(ca, certInfo.getCert(), certInfo.getSubjectPublicKey());
+    }
+  } // method addCerts
+
+  private void addToCertFpIndex(NameId ca, CertWithDbId certificate,
+      byte[] encodedSubjectPublicKey) {
+    // also while the index is being loaded
+    CertFpIndex index = certFpIndexes.get(ca.getId());
+    if (index != null) {
+      index.add(X509Util.fpCanonicalizedName(certificate.getSubjectAsX500Name()),
+          FpIdCalculator.hash(encodedSubjectPublicKey));
+    }
+  } // method addToCertFpIndex
+
+  /**
+   * Returns the loaded fingerprint index of the CA, and loads it at the first call.
+   *
+   * @return the loaded index, or {@code null} if the index is disabled or not loaded.
+   */
+  private CertFpIndex getLoadedCertFpIndex(NameId ca) {
+    if (!certFpIndexEnabled) {
+      return null;
+    }
+
+    CertFpIndex index = certFpIndexes.get(ca.getId());
+    if (index == null) {
+      CertFpIndex newIndex = new CertFpIndex();
+      index = certFpIndexes.putIfAbsent(ca.getId(), newIndex);
+      if (index == null) {
+        // registered before loading, so that the certificates added meanwhile are recorded
+        index = newIndex;
+        if (!loadCertFpIndex(ca, index)) {
+          certFpIndexes.remove(ca.getId(), index);
+          return null;
+        }
+      }
+    }
+
+    return index.isLoaded() ? index : null;
+  } // method getLoadedCertFpIndex
+
+  private boolean loadCertFpIndex(NameId ca, CertFpIndex index) {
+    final String sql = "SELECT FP_S,FP_K FROM CERT WHERE CA_ID=?";
+    long start = System.currentTimeMillis();
+
+    Connection conn = null;
+    PreparedStatement ps = null;
+    ResultSet rs = null;
+    try {
+      conn = borrowStreamingConnection();
+      ps = datasource.prepareStatement(conn, sql);
+      ps.setFetchSize(crlFetchSize);
+      ps.setInt(1, ca.getId());
+      rs = ps.executeQuery();
+      while (rs.next()) {
+        index.add(rs.getLong("FP_S"), rs.getLong("FP_K"));
+      }
+    } catch (SQLException ex) {
+      LogUtil.error(LOG, datasource.translate(sql, ex),
+          "could not load the fingerprint index of CA " + ca.getName());
+      return false;
+    } catch (DataAccessException ex) {
+      LogUtil.error(LOG, ex, "could not load the fingerprint index of CA " + ca.getName());
+      return false;
+    } finally {
+      if (conn != null) {
+        releaseStreamingConnection(conn, ps, rs);
+      }
+    }
+
+    index.setLoaded();
+    LOG.info("loaded fingerprint index of CA {}: {} subjects in {} ms",
+        ca.getName(), index.size(), System.currentTimeMillis() - start);
+    return true;
+  } // method loadCertFpIndex
+
+  private void setAddCertParameters(PreparedStatement ps, long certId, NameId ca,
+      CertWithDbId certificate, byte[] encodedSubjectPublicKey, NameId certprofile,
+      NameId requestor, Integer userId, RequestType reqType, byte[] transactionId,
+      X500Name reqSubject) throws SQLException {
     long fpPk = FpIdCalculator.hash(encodedSubjectPublicKey);
     String subjectText = X509Util.cutText(certificate.getSubject(), maxX500nameLen);
     long fpSubject = X509Util.fpCanonicalizedName(certificate.getSubjectAsX500Name());
@@ -370,59 +814,71 @@ public class CertStore {
     String b64Cert = Base64.encodeToString(encodedCert);
     String tid = (transactionId == null) ? null : Base64.encodeToString(transactionId);
 
-    final String sql = SQL_ADD_CERT;
-    PreparedStatement ps = borrowPreparedStatement(sql);
+    // cert
+    X509Certificate cert = certificate.getCert();
+    int idx = 1;
+    ps.setLong(idx++, certId);
+    ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
+    ps.setString(idx++, cert.getSerialNumber().toString(16));
+    ps.setString(idx++, subjectText);
+    ps.setLong(idx++, fpSubject);
+    setLong(ps, idx++, fpReqSubject);
+    ps.setLong(idx++, cert.getNotBefore().getTime() / 1000); // notBeforeSeconds
+    ps.setLong(idx++, cert.getNotAfter().getTime() / 1000); // notAfterSeconds
+    setBoolean(ps, idx++, false);
+    ps.setInt(idx++, certprofile.getId());
+    ps.setInt(idx++, ca.getId());
+    setInt(ps, idx++, requestor.getId());
+    setInt(ps, idx++, userId);
+    ps.setLong(idx++, fpPk);
+    boolean isEeCert = cert.getBasicConstraints() == -1;
+    ps.setInt(idx++, isEeCert ? 1 : 0);
+    ps.setInt(idx++, reqType.getCode());
+    ps.setString(idx++, tid);
+
+    ps.setString(idx++, b64FpCert);
+    ps.setString(idx++, reqSubjectText);
+    // in this version we set CRL_SCOPE to fixed value 0
+    ps.setInt(idx++, 0);
+    ps.setString(idx++, b64Cert);
+  } // method setAddCertParameters
 
-    try {
-      // cert
-      X509Certificate cert = certificate.getCert();
-      int idx = 1;
-      ps.setLong(idx++, certId);
-      ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
-      ps.setString(idx++, cert.getSerialNumber().toString(16));
-      ps.setString(idx++, subjectText);
-      ps.setLong(idx++, fpSubject);
-      setLong(ps, idx++, fpReqSubject);
-      ps.setLong(idx++, cert.getNotBefore().getTime() / 1000); // notBeforeSeconds
-      ps.setLong(idx++, cert.getNotAfter().getTime() / 1000); // notAfterSeconds
-      setBoolean(ps, idx++, false);
-      ps.setInt(idx++, certprofile.getId());
-      ps.setInt(idx++, ca.getId());
-      setInt(ps, idx++, requestor.getId());
-      setInt(ps, idx++, userId);
-      ps.setLong(idx++, fpPk);
-      boolean isEeCert = cert.getBasicConstraints() == -1;
-      ps.setInt(idx++, isEeCert ? 1 : 0);
-      ps.setInt(idx++, reqType.getCode());
-      ps.setString(idx++, tid);
-
-      ps.setString(idx++, b64FpCert);
-      ps.setString(idx++, reqSubjectText);
-      // in this version we set CRL_SCOPE to fixed value 0
-      ps.setInt(idx++, 0);
-      ps.setString(idx++, b64Cert);
+  public void addToPublishQueue(NameId publisher, long certId, NameId ca)
+      throws OperationException {
+    Args.notNull(ca, "ca");
 
+    final String sql = SQL_INSERT_PUBLISHQUEUE;
+    PreparedStatement ps = borrowPreparedStatement(sql);
+    try {
+      ps.setInt(1, publisher.getId());
+      ps.setInt(2, ca.getId());
+      ps.setLong(3, certId);
       ps.executeUpdate();
-
-      certificate.setCertId(certId);
     } catch (SQLException ex) {
-      throw datasource.translate(null, ex);
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
     } finally {
       datasource.releaseResources(ps, null);
     }
-  } // method addCert
+  } // method addToPublishQueue
 
-  public void addToPublishQueue(NameId publisher, long certId, NameId ca)
+  public void addToPublishQueue(NameId publisher, List<Long> certIds, NameId ca)
       throws OperationException {
     Args.notNull(ca, "ca");
+    Args.notNull(certIds, "certIds");
+    if (certIds.isEmpty()) {
+      return;
+    }
 
     final String sql = SQL_INSERT_PUBLISHQUEUE;
     PreparedStatement ps = borrowPreparedStatement(sql);
     try {
-      ps.setInt(1, publisher.getId());
-      ps.setInt(2, ca.getId());
-      ps.setLong(3, certId);
-      ps.executeUpdate();
+      for (Long certId : certIds) {
+        ps.setInt(1, publisher.getId());
+        ps.setInt(2, ca.getId());
+        ps.setLong(3, certId);
+        ps.addBatch();
+      }
+      ps.executeBatch();
     } catch (SQLException ex) {
       throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
     } finally {
@@ -444,9 +900,42 @@ public class CertStore {
     }
   } // method removeFromPublishQueue
 
+  public void removeFromPublishQueue(NameId publisher, List<Long> certIds)
+      throws OperationException {
+    Args.notNull(certIds, "certIds");
+    if (certIds.isEmpty()) {
+      return;
+    }
+
+    final String sql = SQL_REMOVE_PUBLISHQUEUE;
+    PreparedStatement ps = borrowPreparedStatement(sql);
+    try {
+      for (Long certId : certIds) {
+        ps.setInt(1, publisher.getId());
+        ps.setLong(2, certId);
+        ps.addBatch();
+      }
+      ps.executeBatch();
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
+  } // method removeFromPublishQueue
+
   public long getMaxIdOfDeltaCrlCache(NameId ca) throws OperationException {
     Args.notNull(ca, "ca");
 
+    // the accumulator must exist before the maximal ID is read
+    DeltaCrlAccumulator accumulator = getDeltaCrlAccumulator(ca);
+    long maxId = queryMaxIdOfDeltaCrlCache(ca);
+    if (accumulator != null) {
+      accumulator.mark(maxId);
+    }
+    return maxId;
+  } // method getMaxIdOfDeltaCrlCache
+
+  private long queryMaxIdOfDeltaCrlCache(NameId ca) throws OperationException {
     final String sql = SQL_MAXID_DELTACRL_CACHE;
     PreparedStatement ps = borrowPreparedStatement(sql);
     try {
@@ -461,7 +950,24 @@ public class CertStore {
     } finally {
       datasource.releaseResources(ps, null);
     }
-  } // method getMaxIdOfDeltaCrlCache
+  } // method queryMaxIdOfDeltaCrlCache
+
+  private long queryCountOfDeltaCrlCache(NameId ca) throws OperationException {
+    final String sql = SQL_COUNT_DELTACRL_CACHE;
+    PreparedStatement ps = borrowPreparedStatement(sql);
+    try {
+      ps.setInt(1, ca.getId());
+      ResultSet rs = ps.executeQuery();
+      if (!rs.next()) {
+        return 0;
+      }
+      return rs.getLong(1);
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
+  } // method queryCountOfDeltaCrlCache
 
   public void clearDeltaCrlCache(NameId ca, long maxId) throws OperationException {
     final String sql = SQL_CLEAR_DELTACRL_CACHE;
@@ -475,6 +981,16 @@ public class CertStore {
     } finally {
       datasource.releaseResources(ps, null);
     }
+
+    DeltaCrlAccumulator accumulator = deltaCrlAccumulators.get(ca.getId());
+    if (accumulator != null) {
+      try {
+        accumulator.clear(maxId);
+      } catch (IOException ex) {
+        LogUtil.error(LOG, ex, "could not clear the delta CRL journal of CA " + ca.getName());
+        dropDeltaCrlAccumulator(ca);
+      }
+    }
   } // method clearDeltaCrlCache
 
   public void clearPublishQueue(NameId ca, NameId publisher) throws OperationException {
@@ -578,19 +1094,48 @@ public class CertStore {
     Args.notNull(crl, "crl");
 
     byte[] encodedExtnValue = crl.getExtensionValue(Extension.cRLNumber.getId());
-    Long crlNumber = null;
+    BigInteger crlNumber = null;
     if (encodedExtnValue != null) {
       byte[] extnValue = DEROctetString.getInstance(encodedExtnValue).getOctets();
-      crlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue().longValue();
+      crlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue();
     }
 
     encodedExtnValue = crl.getExtensionValue(Extension.deltaCRLIndicator.getId());
-    Long baseCrlNumber = null;
+    BigInteger baseCrlNumber = null;
     if (encodedExtnValue != null) {
       byte[] extnValue = DEROctetString.getInstance(encodedExtnValue).getOctets();
-      baseCrlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue().longValue();
+      baseCrlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue();
     }
 
+    addCrl(ca, crl.getEncoded(), crlNumber, baseCrlNumber, crl.getThisUpdate(),
+        crl.getNextUpdate());
+  } // method addCrl
+
+  /**
+   * Adds the DER encoded CRL without parsing it.
+   *
+   * @param ca
+   *          Identifier of the CA. Must not be {@code null}.
+   * @param encodedCrl
+   *          DER encoded CRL. Must not be {@code null}.
+   * @param crlNumber
+   *          CRL number. Could be {@code null}.
+   * @param baseCrlNumber
+   *          Base CRL number of the delta CRL. {@code null} for full CRL.
+   * @param thisUpdate
+   *          thisUpdate of the CRL. Must not be {@code null}.
+   * @param nextUpdate
+   *          nextUpdate of the CRL. Could be {@code null}.
+   * @return the cached CRL.
+   * @throws OperationException
+   *           if error occurs while saving the CRL.
+   */
+  public CrlCache.CachedCrl addCrl(NameId ca, byte[] encodedCrl, BigInteger crlNumber,
+      BigInteger baseCrlNumber, Date thisUpdate, Date nextUpdate) throws OperationException {
+    Args.notNull(ca, "ca");
+    Args.notNull(encodedCrl, "encodedCrl");
+    Args.notNull(thisUpdate, "thisUpdate");
+
     final String sql = SQL_ADD_CRL;
     long currentMaxCrlId;
     try {
@@ -600,7 +1145,7 @@ public class CertStore {
     }
     long crlId = currentMaxCrlId + 1;
 
-    String b64Crl = Base64.encodeToString(crl.getEncoded());
+    String b64Crl = Base64.encodeToString(encodedCrl);
 
     PreparedStatement ps = null;
 
@@ -610,12 +1155,11 @@ public class CertStore {
       int idx = 1;
       ps.setLong(idx++, crlId);
       ps.setInt(idx++, ca.getId());
-      setLong(ps, idx++, crlNumber);
-      Date date = crl.getThisUpdate();
-      ps.setLong(idx++, date.getTime() / 1000);
-      setDateSeconds(ps, idx++, crl.getNextUpdate());
+      setLong(ps, idx++, (crlNumber == null) ? null : crlNumber.longValue());
+      ps.setLong(idx++, thisUpdate.getTime() / 1000);
+      setDateSeconds(ps, idx++, nextUpdate);
       setBoolean(ps, idx++, (baseCrlNumber != null));
-      setLong(ps, idx++, baseCrlNumber);
+      setLong(ps, idx++, (baseCrlNumber == null) ? null : baseCrlNumber.longValue());
       // in this version we set CRL_SCOPE to fixed value 0
       ps.setInt(idx++, 0);
       ps.setString(idx++, b64Crl);
@@ -626,6 +1170,11 @@ public class CertStore {
     } finally {
       datasource.releaseResources(ps, null);
     }
+
+    CrlCache.CachedCrl cachedCrl =
+        new CrlCache.CachedCrl(crlNumber, thisUpdate, encodedCrl, null);
+    getCrlCache(ca).added(cachedCrl);
+    return cachedCrl;
   } // method addCrl
 
   public CertWithRevocationInfo revokeCert(NameId ca, BigInteger serialNumber,
@@ -687,16 +1236,256 @@ public class CertStore {
       throw new OperationException(DATABASE_FAILURE,
           datasource.translate(SQL_REVOKE_CERT, ex).getMessage());
     } finally {
-      datasource.releaseResources(ps, null);
+      datasource.releaseResources(ps, null);
+    }
+
+    if (publishToDeltaCrlCache) {
+      publishToDeltaCrlCache(ca, certWithRevInfo.getCert().getCert(), revInfo);
+    }
+
+    certWithRevInfo.setRevInfo(revInfo);
+    return certWithRevInfo;
+  } // method revokeCert
+
+  /**
+   * Revokes a list of certificates. The certificates are read with IN queries, the revocation
+   * and the entries of the table DELTACRL_CACHE are written with batch statements in one
+   * transaction.
+   *
+   * @param ca
+   *          CA.
+   * @param serialNumbers
+   *          serial numbers of the certificates to be revoked. Duplicated serial numbers are
+   *          revoked once.
+   * @param revInfo
+   *          revocation information.
+   * @param publishToDeltaCrlCache
+   *          whether the revocations are recorded for the delta CRL.
+   * @param idNameMap
+   *          map of the IDs and names.
+   * @param result
+   *          result to which the counts and failed serial numbers are added.
+   * @return the revoked certificates.
+   * @throws OperationException
+   *           if error occurs.
+   */
+  public List<CertWithRevocationInfo> revokeCerts(NameId ca, List<BigInteger> serialNumbers,
+      CertRevocationInfo revInfo, boolean publishToDeltaCrlCache, CaIdNameMap idNameMap,
+      RevokeCertsResult result) throws OperationException {
+    Args.notNull(ca, "ca");
+    Args.notNull(serialNumbers, "serialNumbers");
+    Args.notNull(revInfo, "revInfo");
+    Args.notNull(result, "result");
+
+    // a duplicated serial number would not be found in the result of the IN query again.
+    serialNumbers = new ArrayList<>(new LinkedHashSet<>(serialNumbers));
+
+    List<CertWithRevocationInfo> toRevoke = new ArrayList<>(serialNumbers.size());
+    final int size = serialNumbers.size();
+    for (int i = 0; i < size; i += MAX_IN_LIST_SIZE) {
+      List<BigInteger> subList =
+          serialNumbers.subList(i, Math.min(size, i + MAX_IN_LIST_SIZE));
+      Map<BigInteger, CertWithRevocationInfo> certs =
+          getCertsWithRevocationInfo(ca.getId(), subList, idNameMap);
+
+      for (BigInteger serialNumber : subList) {
+        CertWithRevocationInfo certWithRevInfo = certs.remove(serialNumber);
+        if (certWithRevInfo == null) {
+          LOG.warn("certificate with CA={} and serialNumber={} does not exist",
+              ca.getName(), LogUtil.formatCsn(serialNumber));
+          result.getFailedSerialNumbers().add(serialNumber);
+          continue;
+        }
+
+        CertRevocationInfo certRevInfo = new CertRevocationInfo(revInfo.getReason(),
+            revInfo.getRevocationTime(), revInfo.getInvalidityTime());
+        CertRevocationInfo currentRevInfo = certWithRevInfo.getRevInfo();
+        if (currentRevInfo != null) {
+          if (currentRevInfo.getReason() == CrlReason.CERTIFICATE_HOLD
+              && revInfo.getReason() != CrlReason.CERTIFICATE_HOLD) {
+            certRevInfo.setRevocationTime(currentRevInfo.getRevocationTime());
+            certRevInfo.setInvalidityTime(currentRevInfo.getInvalidityTime());
+          } else {
+            result.setNumAlreadyRevoked(result.getNumAlreadyRevoked() + 1);
+            continue;
+          }
+        }
+
+        certWithRevInfo.setRevInfo(certRevInfo);
+        toRevoke.add(certWithRevInfo);
+      }
+    }
+
+    if (toRevoke.isEmpty()) {
+      return toRevoke;
+    }
+
+    final int n = toRevoke.size();
+    long[] deltaCrlCacheIds = new long[n];
+    if (publishToDeltaCrlCache) {
+      for (int i = 0; i < n; i++) {
+        deltaCrlCacheIds[i] = idGenerator.nextId();
+      }
+    }
+
+    Connection conn;
+    try {
+      conn = datasource.getConnection();
+    } catch (DataAccessException ex) {
+      throw new OperationException(DATABASE_FAILURE, ex.getMessage());
+    }
+
+    PreparedStatement psRevoke = null;
+    PreparedStatement psDeltaCrl = null;
+    String sql = null;
+
+    boolean successful = false;
+    try {
+      conn.setAutoCommit(false);
+
+      final long lastUpdate = System.currentTimeMillis() / 1000;
+      sql = SQL_REVOKE_CERT;
+      psRevoke = datasource.prepareStatement(conn, sql);
+      for (CertWithRevocationInfo certWithRevInfo : toRevoke) {
+        CertRevocationInfo certRevInfo = certWithRevInfo.getRevInfo();
+        Long invTimeSeconds = null;
+        if (certRevInfo.getInvalidityTime() != null) {
+          invTimeSeconds = certRevInfo.getInvalidityTime().getTime() / 1000;
+        }
+
+        int idx = 1;
+        psRevoke.setLong(idx++, lastUpdate);
+        setBoolean(psRevoke, idx++, true);
+        psRevoke.setLong(idx++, certRevInfo.getRevocationTime().getTime() / 1000);
+        setLong(psRevoke, idx++, invTimeSeconds);
+        psRevoke.setInt(idx++, certRevInfo.getReason().getCode());
+        psRevoke.setLong(idx++, certWithRevInfo.getCert().getCertId().longValue());
+        psRevoke.addBatch();
+      }
+      psRevoke.executeBatch();
+
+      if (publishToDeltaCrlCache) {
+        sql = SQL_ADD_DELTACRL_CACHE;
+        psDeltaCrl = datasource.prepareStatement(conn, sql);
+        for (int i = 0; i < n; i++) {
+          psDeltaCrl.setLong(1, deltaCrlCacheIds[i]);
+          psDeltaCrl.setInt(2, ca.getId());
+          psDeltaCrl.setString(3,
+              toRevoke.get(i).getCert().getCert().getSerialNumber().toString(16));
+          psDeltaCrl.addBatch();
+        }
+        psDeltaCrl.executeBatch();
+      }
+
+      conn.commit();
+      successful = true;
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } catch (DataAccessException ex) {
+      throw new OperationException(DATABASE_FAILURE, ex.getMessage());
+    } finally {
+      try {
+        if (!successful) {
+          conn.rollback();
+        }
+        conn.setAutoCommit(true);
+      } catch (SQLException ex) {
+        LOG.warn("could not reset the auto-commit mode: {}", ex.getMessage());
+      }
+
+      datasource.releaseResources(psDeltaCrl, null, false);
+      datasource.releaseResources(psRevoke, null, false);
+      datasource.returnConnection(conn);
+    }
+
+    if (publishToDeltaCrlCache) {
+      DeltaCrlAccumulator accumulator = getDeltaCrlAccumulator(ca);
+      if (accumulator != null) {
+        boolean[] ees = new boolean[n];
+        List<CertRevInfoWithSerial> revInfos = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+          X509Certificate cert = toRevoke.get(i).getCert().getCert();
+          CertRevocationInfo certRevInfo = toRevoke.get(i).getRevInfo();
+          ees[i] = cert.getBasicConstraints() == -1;
+          revInfos.add(new CertRevInfoWithSerial(deltaCrlCacheIds[i], cert.getSerialNumber(),
+              certRevInfo.getReason(), certRevInfo.getRevocationTime(),
+              certRevInfo.getInvalidityTime()));
+        }
+
+        try {
+          accumulator.addAll(ees, revInfos);
+        } catch (IOException ex) {
+          // the events are in the table DELTACRL_CACHE
+          LogUtil.error(LOG, ex, "could not write the delta CRL journal of CA " + ca.getName());
+          dropDeltaCrlAccumulator(ca);
+        }
+      }
+    }
+
+    result.setNumRevoked(result.getNumRevoked() + n);
+    return toRevoke;
+  } // method revokeCerts
+
+  private Map<BigInteger, CertWithRevocationInfo> getCertsWithRevocationInfo(int caId,
+      List<BigInteger> serialNumbers, CaIdNameMap idNameMap) throws OperationException {
+    final String sql = buildInSql(
+        "SELECT ID,SN,REV,RR,RT,RIT,PID,CERT FROM CERT WHERE CA_ID=? AND SN IN (",
+        serialNumbers.size());
+
+    Map<BigInteger, CertWithRevocationInfo> ret = new HashMap<>();
+    ResultSet rs = null;
+    PreparedStatement ps = borrowPreparedStatement(sql);
+    try {
+      int idx = 1;
+      ps.setInt(idx++, caId);
+      for (BigInteger serialNumber : serialNumbers) {
+        ps.setString(idx++, serialNumber.toString(16));
+      }
+
+      rs = ps.executeQuery();
+      while (rs.next()) {
+        byte[] encodedCert = Base64.decodeFast(rs.getString("CERT"));
+        X509Certificate cert;
+        try {
+          cert = X509Util.parseCert(encodedCert);
+        } catch (CertificateException ex) {
+          throw new OperationException(SYSTEM_FAILURE, ex);
+        }
+
+        CertRevocationInfo revInfo = null;
+        if (rs.getBoolean("REV")) {
+          long revInvTime = rs.getLong("RIT");
+          Date invalidityTime = (revInvTime == 0) ? null : new Date(1000 * revInvTime);
+          revInfo = new CertRevocationInfo(rs.getInt("RR"), new Date(1000 * rs.getLong("RT")),
+              invalidityTime);
+        }
+
+        CertWithDbId certWithMeta = new CertWithDbId(cert, encodedCert);
+        certWithMeta.setCertId(rs.getLong("ID"));
+
+        CertWithRevocationInfo certWithRevInfo = new CertWithRevocationInfo();
+        certWithRevInfo.setCertprofile(idNameMap.getCertprofileName(rs.getInt("PID")));
+        certWithRevInfo.setCert(certWithMeta);
+        certWithRevInfo.setRevInfo(revInfo);
+        ret.put(cert.getSerialNumber(), certWithRevInfo);
+      }
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } finally {
+      datasource.releaseResources(ps, rs);
     }
 
-    if (publishToDeltaCrlCache) {
-      publishToDeltaCrlCache(ca, certWithRevInfo.getCert().getCert().getSerialNumber());
-    }
+    return ret;
+  } // method getCertsWithRevocationInfo
 
-    certWithRevInfo.setRevInfo(revInfo);
-    return certWithRevInfo;
-  } // method revokeCert
+  private static String buildInSql(String prefix, int numParams) {
+    StringBuilder sb = new StringBuilder(prefix.length() + 2 * numParams);
+    sb.append(prefix);
+    for (int i = 0; i < numParams; i++) {
+      sb.append(i == 0 ? "?" : ",?");
+    }
+    return sb.append(")").toString();
+  } // method buildInSql
 
   public CertWithRevocationInfo revokeSuspendedCert(NameId ca, BigInteger serialNumber,
       CrlReason reason, boolean publishToDeltaCrlCache, CaIdNameMap idNameMap)
@@ -745,11 +1534,11 @@ public class CertStore {
       datasource.releaseResources(ps, null);
     }
 
+    currentRevInfo.setReason(reason);
     if (publishToDeltaCrlCache) {
-      publishToDeltaCrlCache(ca, certWithRevInfo.getCert().getCert().getSerialNumber());
+      publishToDeltaCrlCache(ca, certWithRevInfo.getCert().getCert(), currentRevInfo);
     }
 
-    currentRevInfo.setReason(reason);
     return certWithRevInfo;
   } // method revokeSuspendedCert
 
@@ -784,10 +1573,11 @@ public class CertStore {
 
     final String sql = "UPDATE CERT SET LUPDATE=?,REV=?,RT=?,RIT=?,RR=? WHERE ID=?";
 
+    long currentTimeSeconds = System.currentTimeMillis() / 1000;
     PreparedStatement ps = borrowPreparedStatement(sql);
     try {
       int idx = 1;
-      ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
+      ps.setLong(idx++, currentTimeSeconds);
       setBoolean(ps, idx++, false);
       ps.setNull(idx++, Types.INTEGER);
       ps.setNull(idx++, Types.INTEGER);
@@ -808,20 +1598,23 @@ public class CertStore {
     }
 
     if (publishToDeltaCrlCache) {
-      publishToDeltaCrlCache(ca, certWithRevInfo.getCert().getCert().getSerialNumber());
+      // as read from the database, see getCertsForDeltaCrl()
+      CertRevocationInfo removeFromCrl = new CertRevocationInfo(CrlReason.REMOVE_FROM_CRL,
+          new Date(currentTimeSeconds * 1000), null);
+      publishToDeltaCrlCache(ca, certWithRevInfo.getCert().getCert(), removeFromCrl);
     }
 
     return certWithRevInfo.getCert();
   } // method unrevokeCert
 
-  private void publishToDeltaCrlCache(NameId ca, BigInteger serialNumber)
-      throws OperationException {
-    Args.notNull(serialNumber, "serialNumber");
+  private void publishToDeltaCrlCache(NameId ca, X509Certificate cert,
+      CertRevocationInfo revInfo) throws OperationException {
+    BigInteger serialNumber = cert.getSerialNumber();
 
     final String sql = SQL_ADD_DELTACRL_CACHE;
     PreparedStatement ps = null;
+    long id = idGenerator.nextId();
     try {
-      long id = idGenerator.nextId();
       ps = borrowPreparedStatement(sql);
       ps.setLong(1, id);
       ps.setInt(2, ca.getId());
@@ -832,8 +1625,109 @@ public class CertStore {
     } finally {
       datasource.releaseResources(ps, null);
     }
+
+    DeltaCrlAccumulator accumulator = getDeltaCrlAccumulator(ca);
+    if (accumulator != null) {
+      try {
+        accumulator.add(id, cert.getBasicConstraints() == -1,
+            new CertRevInfoWithSerial(id, serialNumber, revInfo.getReason(),
+                revInfo.getRevocationTime(), revInfo.getInvalidityTime()));
+      } catch (IOException ex) {
+        // the event is in the table DELTACRL_CACHE
+        LogUtil.error(LOG, ex, "could not write the delta CRL journal of CA " + ca.getName());
+        dropDeltaCrlAccumulator(ca);
+      }
+    }
   } // method publishToDeltaCrlCache
 
+  /**
+   * Returns the delta CRL accumulator of the CA, the journal is replayed if the accumulator
+   * does not exist.
+   *
+   * @return the accumulator, or {@code null} if no journal is configured or the journal could
+   *         not be read.
+   */
+  private DeltaCrlAccumulator getDeltaCrlAccumulator(NameId ca) throws OperationException {
+    if (deltaCrlJournalDir == null) {
+      return null;
+    }
+
+    DeltaCrlAccumulator accumulator = deltaCrlAccumulators.get(ca.getId());
+    if (accumulator != null) {
+      return accumulator;
+    }
+
+    synchronized (deltaCrlAccumulators) {
+      accumulator = deltaCrlAccumulators.get(ca.getId());
+      if (accumulator != null) {
+        return accumulator;
+      }
+
+      try {
+        accumulator = new DeltaCrlAccumulator(
+            new File(deltaCrlJournalDir, Integer.toString(ca.getId())));
+      } catch (IOException ex) {
+        LogUtil.error(LOG, ex, "could not open the delta CRL journal of CA " + ca.getName());
+        return null;
+      }
+
+      long maxId = queryMaxIdOfDeltaCrlCache(ca);
+      if (maxId == 0) {
+        // the table is empty, the entries in the journal have been included in a CRL.
+        try {
+          accumulator.clear(Long.MAX_VALUE);
+        } catch (IOException ex) {
+          LogUtil.error(LOG, ex, "could not clear the delta CRL journal of CA " + ca.getName());
+          try {
+            accumulator.close();
+          } catch (IOException ex2) {
+            LOG.warn("could not close the delta CRL journal of CA {}", ca.getName());
+          }
+          return null;
+        }
+        accumulator.setComplete(true);
+      } else if (accumulator.isMarkedIncomplete()) {
+        // an append has failed or a crash has been detected, the table is used until the
+        // next full CRL.
+        accumulator.setComplete(false);
+      } else {
+        // complete if the journal contains all events in the table. Since the IDs are not
+        // committed in order, an event in the middle may be missing while the latest one is
+        // journaled, hence the number of events is compared as well. Otherwise the table is
+        // used until the next full CRL.
+        accumulator.setComplete(accumulator.getMaxId() == maxId
+            && accumulator.getNumEvents() == queryCountOfDeltaCrlCache(ca));
+      }
+
+      LOG.info("delta CRL accumulator of CA {}: {} entries, complete={}",
+          ca.getName(), accumulator.size(), accumulator.isComplete());
+      deltaCrlAccumulators.put(ca.getId(), accumulator);
+      return accumulator;
+    }
+  } // method getDeltaCrlAccumulator
+
+  private void dropDeltaCrlAccumulator(NameId ca) {
+    DeltaCrlAccumulator accumulator = deltaCrlAccumulators.remove(ca.getId());
+    if (accumulator != null) {
+      try {
+        accumulator.close();
+      } catch (IOException ex) {
+        LOG.warn("could not close the delta CRL journal of CA {}", ca.getName());
+      }
+    }
+  } // method dropDeltaCrlAccumulator
+
+  /**
+   * Closes the journal of the delta CRL accumulator of the CA.
+   *
+   * @param ca
+   *          the CA. Must not be {@code null}.
+   */
+  public void closeDeltaCrlAccumulator(NameId ca) {
+    Args.notNull(ca, "ca");
+    dropDeltaCrlAccumulator(ca);
+  }
+
   public void removeCert(NameId ca, BigInteger serialNumber) throws OperationException {
     Args.notNull(ca, "ca");
     Args.notNull(serialNumber, "serialNumber");
@@ -859,8 +1753,23 @@ public class CertStore {
     }
   } // method removeCert
 
-  public List<Long> getPublishQueueEntries(NameId ca, NameId publisher, int numEntries)
-      throws OperationException {
+  /**
+   * Returns the IDs of the certificates in the publish queue, in ascending order.
+   *
+   * @param ca
+   *          CA.
+   * @param publisher
+   *          publisher.
+   * @param startId
+   *          only the certificates with ID greater than this value are returned.
+   * @param numEntries
+   *          maximal number of entries.
+   * @return the IDs of the certificates.
+   * @throws OperationException
+   *           if error occurs.
+   */
+  public List<Long> getPublishQueueEntries(NameId ca, NameId publisher, long startId,
+      int numEntries) throws OperationException {
     final String sql = getSqlCidFromPublishQueue(numEntries);
     ResultSet rs = null;
     PreparedStatement ps = borrowPreparedStatement(sql);
@@ -868,12 +1777,16 @@ public class CertStore {
     try {
       ps.setInt(1, publisher.getId());
       ps.setInt(2, ca.getId());
+      ps.setLong(3, startId);
       rs = ps.executeQuery();
       List<Long> ret = new ArrayList<>();
+      long lastCertId = startId;
       while (rs.next() && ret.size() < numEntries) {
         long certId = rs.getLong("CID");
-        if (!ret.contains(certId)) {
+        // the entries are sorted by CID
+        if (certId != lastCertId) {
           ret.add(certId);
+          lastCertId = certId;
         }
       }
       return ret;
@@ -1026,13 +1939,47 @@ public class CertStore {
   } // method getSuspendedCertIds
 
   public byte[] getEncodedCrl(NameId ca, BigInteger crlNumber) throws OperationException {
+    CrlCache.CachedCrl crl = getCrl(ca, crlNumber);
+    return (crl == null) ? null : crl.getEncoded();
+  } // method getEncodedCrl
+
+  /**
+   * Returns the CRL from the cache, or reads it from the database if not cached.
+   *
+   * @param ca
+   *          the CA. Must not be {@code null}.
+   * @param crlNumber
+   *          CRL number, {@code null} for the current CRL.
+   * @return the CRL, or {@code null} if not available.
+   * @throws OperationException
+   *           if error occurs while reading the CRL from database.
+   */
+  public CrlCache.CachedCrl getCrl(NameId ca, BigInteger crlNumber) throws OperationException {
     Args.notNull(ca, "ca");
 
+    CrlCache cache = getCrlCache(ca);
+    long generation = cache.getGeneration();
+    CrlCache.CachedCrl cachedCrl = cache.get(crlNumber);
+    if (cachedCrl != null) {
+      if (crlNumber != null) {
+        return cachedCrl;
+      }
+
+      // the current CRL may have been generated by another CA instance, compare only
+      // the CRL number instead of reading the CRL.
+      BigInteger cachedNumber = cachedCrl.getCrlNumber();
+      if (cachedNumber != null && cachedNumber.longValue() == getMaxCrlNumber(ca)) {
+        return cachedCrl;
+      }
+    }
+
     String sql = (crlNumber == null) ? sqlCrl : sqlCrlWithNo;
     ResultSet rs = null;
     PreparedStatement ps = borrowPreparedStatement(sql);
 
     String b64Crl = null;
+    Long currentCrlNumber = null;
+    long currentThisUpdate = 0;
     try {
       int idx = 1;
       ps.setInt(idx++, ca.getId());
@@ -1040,13 +1987,14 @@ public class CertStore {
         ps.setLong(idx++, crlNumber.longValue());
       }
       rs = ps.executeQuery();
-      long currentThisUpdate = 0;
       // iterate all entries to make sure that the latest CRL will be returned
       while (rs.next()) {
         long thisUpdate = rs.getLong("THISUPDATE");
         if (thisUpdate >= currentThisUpdate) {
           b64Crl = rs.getString("CRL");
           currentThisUpdate = thisUpdate;
+          long no = rs.getLong("CRL_NO");
+          currentCrlNumber = rs.wasNull() ? null : no;
         }
       }
     } catch (SQLException ex) {
@@ -1055,8 +2003,25 @@ public class CertStore {
       datasource.releaseResources(ps, rs);
     }
 
-    return (b64Crl == null) ? null : Base64.decodeFast(b64Crl);
-  } // method getEncodedCrl
+    if (b64Crl == null) {
+      return null;
+    }
+
+    cachedCrl = new CrlCache.CachedCrl(
+        (currentCrlNumber == null) ? null : BigInteger.valueOf(currentCrlNumber),
+        new Date(currentThisUpdate * 1000), Base64.decodeFast(b64Crl), null);
+    cache.put(cachedCrl, crlNumber == null, generation);
+    return cachedCrl;
+  } // method getCrl
+
+  private CrlCache getCrlCache(NameId ca) {
+    CrlCache cache = crlCaches.get(ca.getId());
+    if (cache == null) {
+      crlCaches.putIfAbsent(ca.getId(), new CrlCache());
+      cache = crlCaches.get(ca.getId());
+    }
+    return cache;
+  } // method getCrlCache
 
   public int cleanupCrls(NameId ca, int numCrls) throws OperationException {
     Args.notNull(ca, "ca");
@@ -1102,6 +2067,7 @@ public class CertStore {
       throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
     } finally {
       datasource.releaseResources(ps, null);
+      getCrlCache(ca).clear();
     }
 
     return numCrlsToDelete;
@@ -1164,6 +2130,83 @@ public class CertStore {
     return certInfo;
   } // method getCertForId
 
+  /**
+   * Returns the certificates with given IDs. The certificates are read with IN queries.
+   *
+   * @param ca
+   *          CA.
+   * @param caCert
+   *          certificate of the CA.
+   * @param certIds
+   *          IDs of the certificates.
+   * @param idNameMap
+   *          map of the IDs and names.
+   * @return map of the ID to the certificate. IDs of non-existing or unparsable certificates are
+   *     not contained.
+   * @throws OperationException
+   *           if error occurs.
+   */
+  public Map<Long, CertificateInfo> getCertsForIds(NameId ca, X509Cert caCert,
+      List<Long> certIds, CaIdNameMap idNameMap) throws OperationException {
+    Args.notNull(ca, "ca");
+    Args.notNull(caCert, "caCert");
+    Args.notNull(certIds, "certIds");
+    Args.notNull(idNameMap, "idNameMap");
+
+    Map<Long, CertificateInfo> ret = new HashMap<>();
+    final int size = certIds.size();
+    for (int i = 0; i < size; i += MAX_IN_LIST_SIZE) {
+      List<Long> subList = certIds.subList(i, Math.min(size, i + MAX_IN_LIST_SIZE));
+      final String sql = buildInSql(
+          "SELECT ID,PID,RID,REV,RR,RT,RIT,CERT FROM CERT WHERE ID IN (", subList.size());
+
+      ResultSet rs = null;
+      PreparedStatement ps = borrowPreparedStatement(sql);
+      try {
+        int idx = 1;
+        for (Long certId : subList) {
+          ps.setLong(idx++, certId);
+        }
+
+        rs = ps.executeQuery();
+        while (rs.next()) {
+          long certId = rs.getLong("ID");
+          byte[] encodedCert = Base64.decodeFast(rs.getString("CERT"));
+          X509Certificate cert;
+          try {
+            cert = X509Util.parseCert(encodedCert);
+          } catch (CertificateException ex) {
+            LogUtil.error(LOG, ex, "could not parse certificate id=" + certId);
+            continue;
+          }
+
+          CertWithDbId certWithMeta = new CertWithDbId(cert, encodedCert);
+          certWithMeta.setCertId(certId);
+          CertificateInfo certInfo = new CertificateInfo(certWithMeta, null, ca, caCert,
+              cert.getPublicKey().getEncoded(), idNameMap.getCertprofile(rs.getInt("PID")),
+              idNameMap.getRequestor(rs.getInt("RID")));
+
+          if (rs.getBoolean("REV")) {
+            long revTime = rs.getLong("RT");
+            long revInvTime = rs.getLong("RIT");
+            Date invalidityTime = (revInvTime == 0 || revInvTime == revTime) ? null
+                : new Date(revInvTime * 1000);
+            certInfo.setRevocationInfo(new CertRevocationInfo(rs.getInt("RR"),
+                new Date(revTime * 1000), invalidityTime));
+          }
+          ret.put(certId, certInfo);
+        }
+      } catch (SQLException ex) {
+        throw new OperationException(DATABASE_FAILURE,
+            datasource.translate(sql, ex).getMessage());
+      } finally {
+        datasource.releaseResources(ps, rs);
+      }
+    }
+
+    return ret;
+  } // method getCertsForIds
+
   public CertWithRevocationInfo getCertWithRevocationInfo(int caId, BigInteger serial,
       CaIdNameMap idNameMap) throws OperationException {
     Args.notNull(serial, "serial");
@@ -1638,24 +2681,162 @@ public class CertStore {
     }
   } // method knowsCertForSerial
 
-  public List<CertRevInfoWithSerial> getRevokedCerts(NameId ca, Date notExpiredAt, long startId,
-      int numEntries, boolean onlyCaCerts, boolean onlyUserCerts) throws OperationException {
+  /**
+   * Streams the revoked certificates to the consumer. The range of CERT IDs is partitioned and
+   * fetched in parallel with the configured fetch size, see
+   * {@link #setCrlFetchControl(int, int)}. The certificates are passed to the consumer in the
+   * calling thread, but not sorted.
+   *
+   * @param ca
+   *          the CA. Must not be {@code null}.
+   * @param notExpiredAt
+   *          only certificates not expired at this time will be considered.
+   * @param onlyCaCerts
+   *          whether only CA certificates will be considered.
+   * @param onlyUserCerts
+   *          whether only end-entity certificates will be considered.
+   * @param consumer
+   *          the consumer of the revoked certificates. Must not be {@code null}.
+   * @return number of revoked certificates.
+   * @throws OperationException
+   *           if error occurs while reading the database or in the consumer.
+   */
+  public long getRevokedCerts(NameId ca, Date notExpiredAt, boolean onlyCaCerts,
+      boolean onlyUserCerts, RevokedCertConsumer consumer) throws OperationException {
     Args.notNull(ca, "ca");
     Args.notNull(notExpiredAt, "notExpiredAt");
-    Args.positive(numEntries, "numEntries");
+    Args.notNull(consumer, "consumer");
+    if (onlyCaCerts && onlyUserCerts) {
+      throw new IllegalArgumentException("onlyCaCerts and onlyUserCerts cannot be both of true");
+    }
+
+    String condition = "CA_ID=" + ca.getId() + " AND REV=1";
+    long minId;
+    long maxId;
+    try {
+      minId = datasource.getMin(null, "CERT", "ID", condition);
+      maxId = datasource.getMax(null, "CERT", "ID", condition);
+    } catch (DataAccessException ex) {
+      throw new OperationException(DATABASE_FAILURE, ex.getMessage());
+    }
+
+    if (maxId < minId || maxId == 0) {
+      return 0;
+    }
+
+    // at least crlFetchSize IDs per partition, and keep one connection for the others
+    long idRange = maxId - minId + 1;
+    int partitions = (int) Math.min(crlFetchPartitions,
+        Math.max(1, Math.min(idRange / crlFetchSize, datasource.getMaximumPoolSize() - 1)));
+
+    String sql = StringUtil.concat("SELECT ID,SN,RR,RT,RIT FROM CERT WHERE ID>=? AND ID<=?",
+        " AND CA_ID=? AND REV=1 AND NAFTER>?", (onlyCaCerts || onlyUserCerts ? " AND EE=?" : ""));
+    Boolean eeFilter = (onlyCaCerts || onlyUserCerts) ? onlyUserCerts : null;
+
+    BlockingQueue<List<CertRevInfoWithSerial>> queue = new ArrayBlockingQueue<>(2 * partitions);
+    AtomicBoolean cancelled = new AtomicBoolean(false);
+    AtomicReference<Exception> error = new AtomicReference<>();
+
+    LOG.debug("fetching revoked certificates of CA {} with IDs [{}, {}] in {} partitions",
+        ca.getName(), minId, maxId, partitions);
+
+    long num = 0;
+    try {
+      long partitionSize = (idRange + partitions - 1) / partitions;
+      for (int i = 0; i < partitions; i++) {
+        long fromId = minId + i * partitionSize;
+        long toId = Math.min(maxId, fromId + partitionSize - 1);
+        try {
+          crlFetchExecutor.execute(new RevokedCertsFetcher(sql, fromId, toId, ca.getId(),
+              notExpiredAt.getTime() / 1000 + 1, eeFilter, queue, cancelled, error));
+        } catch (RejectedExecutionException ex) {
+          throw new OperationException(SYSTEM_FAILURE,
+              "too many concurrent fetches of revoked certificates");
+        }
+      }
+
+      int finishedPartitions = 0;
+      while (finishedPartitions < partitions) {
+        List<CertRevInfoWithSerial> batch;
+        try {
+          batch = queue.take();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new OperationException(SYSTEM_FAILURE, "interrupted");
+        }
+
+        if (batch == END_OF_REVOKED_CERTS) {
+          finishedPartitions++;
+          continue;
+        }
+
+        for (CertRevInfoWithSerial revInfo : batch) {
+          consumer.accept(revInfo);
+        }
+        num += batch.size();
+      }
+    } finally {
+      // the fetchers stop at the next row or batch
+      cancelled.set(true);
+      queue.clear();
+    }
+
+    Exception ex = error.get();
+    if (ex != null) {
+      throw new OperationException(DATABASE_FAILURE, ex.getMessage());
+    }
+
+    return num;
+  } // method getRevokedCerts
+
+  /**
+   * Streams the certificates for the XiPKI extension CrlCertSet to the consumer, with one query
+   * and the configured fetch size. The certificates are not sorted.
+   *
+   * @param ca
+   *          the CA. Must not be {@code null}.
+   * @param notExpiredAt
+   *          only certificates not expired at this time will be considered.
+   * @param withCert
+   *          whether the certificate and its profile are read.
+   * @param onlyCaCerts
+   *          whether only CA certificates will be considered.
+   * @param onlyUserCerts
+   *          whether only end-entity certificates will be considered.
+   * @param consumer
+   *          the consumer of the certificates. Must not be {@code null}.
+   * @return number of certificates.
+   * @throws OperationException
+   *           if error occurs while reading the database or in the consumer.
+   */
+  public long getCertsForCrlCertset(NameId ca, Date notExpiredAt, boolean withCert,
+      boolean onlyCaCerts, boolean onlyUserCerts, CrlCertConsumer consumer)
+      throws OperationException {
+    Args.notNull(ca, "ca");
+    Args.notNull(notExpiredAt, "notExpiredAt");
+    Args.notNull(consumer, "consumer");
     if (onlyCaCerts && onlyUserCerts) {
       throw new IllegalArgumentException("onlyCaCerts and onlyUserCerts cannot be both of true");
     }
     boolean withEe = onlyCaCerts || onlyUserCerts;
 
-    String sql = getSqlRevokedCerts(numEntries, withEe);
+    final String sql = StringUtil.concat("SELECT ID,SN", (withCert ? ",PID,CERT" : ""),
+        " FROM CERT WHERE CA_ID=? AND NAFTER>?", (withEe ? " AND EE=?" : ""));
 
-    ResultSet rs = null;
-    PreparedStatement ps = borrowPreparedStatement(sql);
+    Connection conn;
+    try {
+      conn = borrowStreamingConnection();
+    } catch (DataAccessException ex) {
+      throw new OperationException(DATABASE_FAILURE, ex.getMessage());
+    }
 
+    PreparedStatement ps = null;
+    ResultSet rs = null;
     try {
+      ps = datasource.prepareStatement(conn, sql);
+      ps.setFetchSize(crlFetchSize);
+
       int idx = 1;
-      ps.setLong(idx++, startId - 1);
       ps.setInt(idx++, ca.getId());
       ps.setLong(idx++, notExpiredAt.getTime() / 1000 + 1);
       if (withEe) {
@@ -1663,31 +2844,163 @@ public class CertStore {
       }
       rs = ps.executeQuery();
 
-      List<CertRevInfoWithSerial> ret = new LinkedList<>();
+      long num = 0;
       while (rs.next()) {
-        long revInvalidityTime = rs.getLong("RIT");
-        Date invalidityTime = (revInvalidityTime == 0) ? null : new Date(1000 * revInvalidityTime);
-        CertRevInfoWithSerial revInfo = new CertRevInfoWithSerial(rs.getLong("ID"),
-            new BigInteger(rs.getString("SN"), 16), rs.getInt("RR"), // revReason
-            new Date(1000 * rs.getLong("RT")), invalidityTime);
-        ret.add(revInfo);
+        BigInteger serial = new BigInteger(rs.getString("SN"), 16);
+        if (withCert) {
+          consumer.accept(rs.getLong("ID"), serial, rs.getInt("PID"),
+              Base64.decodeFast(rs.getString("CERT")));
+        } else {
+          consumer.accept(rs.getLong("ID"), serial, 0, null);
+        }
+        num++;
       }
-
-      return ret;
+      return num;
+    } catch (DataAccessException ex) {
+      throw new OperationException(DATABASE_FAILURE, ex.getMessage());
     } catch (SQLException ex) {
       throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
     } finally {
-      datasource.releaseResources(ps, rs);
+      releaseStreamingConnection(conn, ps, rs);
     }
-  } // method getRevokedCerts
+  } // method getCertsForCrlCertset
+
+  /**
+   * Borrows a connection to stream large results. The auto-commit mode is disabled, since some
+   * JDBC drivers, e.g. PostgreSQL, use the fetch size only outside auto-commit mode.
+   */
+  private Connection borrowStreamingConnection() throws DataAccessException {
+    Connection conn = datasource.getConnection();
+    try {
+      conn.setAutoCommit(false);
+    } catch (SQLException ex) {
+      datasource.returnConnection(conn);
+      throw datasource.translate(null, ex);
+    }
+    return conn;
+  } // method borrowStreamingConnection
+
+  private void releaseStreamingConnection(Connection conn, PreparedStatement ps, ResultSet rs) {
+    if (rs != null) {
+      try {
+        rs.close();
+      } catch (SQLException ex) {
+        LOG.warn("could not close ResultSet: {}", ex.getMessage());
+      }
+    }
+
+    try {
+      // read only, nothing to commit
+      conn.rollback();
+      conn.setAutoCommit(true);
+    } catch (SQLException ex) {
+      LOG.warn("could not reset the auto-commit mode: {}", ex.getMessage());
+    }
+
+    datasource.releaseResources(ps, null, false);
+    datasource.returnConnection(conn);
+  } // method releaseStreamingConnection
+
+  /**
+   * Creates the pool of the fetchers of revoked certificates. The idle threads are terminated,
+   * so that the pool needs not to be closed.
+   */
+  private static ThreadPoolExecutor newCrlFetchExecutor(int threads) {
+    ThreadFactory threadFactory = new ThreadFactory() {
 
-  public List<CertRevInfoWithSerial> getCertsForDeltaCrl(NameId ca, long startId, int numEntries,
-      boolean onlyCaCerts, boolean onlyUserCerts) throws OperationException {
+      private final AtomicInteger counter = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "crl-fetch-" + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+
+    };
+
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(CRL_FETCH_QUEUE_SIZE), threadFactory);
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  } // method newCrlFetchExecutor
+
+  private static CertRevInfoWithSerial toCertRevInfoWithSerial(ResultSet rs)
+      throws SQLException {
+    long revInvalidityTime = rs.getLong("RIT");
+    Date invalidityTime = (revInvalidityTime == 0) ? null : new Date(1000 * revInvalidityTime);
+    return new CertRevInfoWithSerial(rs.getLong("ID"),
+        new BigInteger(rs.getString("SN"), 16), rs.getInt("RR"), // revReason
+        new Date(1000 * rs.getLong("RT")), invalidityTime);
+  } // method toCertRevInfoWithSerial
+
+  /**
+   * Passes the entries of the delta CRL to the consumer. The entries are taken from the delta
+   * CRL accumulator if it has seen all events in the table DELTACRL_CACHE, otherwise they are
+   * read from the database.
+   *
+   * @param ca
+   *          the CA. Must not be {@code null}.
+   * @param onlyCaCerts
+   *          whether only the CA certificates are considered.
+   * @param onlyUserCerts
+   *          whether only the end entity certificates are considered.
+   * @param consumer
+   *          the consumer of the entries. Must not be {@code null}.
+   * @throws OperationException
+   *           if error occurs while reading the entries, or thrown by the consumer.
+   */
+  public void getCertsForDeltaCrl(NameId ca, boolean onlyCaCerts, boolean onlyUserCerts,
+      RevokedCertConsumer consumer) throws OperationException {
     Args.notNull(ca, "ca");
-    Args.positive(numEntries, "numEntries");
+    Args.notNull(consumer, "consumer");
+
+    DeltaCrlAccumulator accumulator = getDeltaCrlAccumulator(ca);
+    if (accumulator != null && accumulator.isComplete()) {
+      // events written by other CA instances are only in the table.
+      long maxId = queryMaxIdOfDeltaCrlCache(ca);
+      if (maxId <= accumulator.getMaxId()) {
+        List<CertRevInfoWithSerial> revInfos =
+            accumulator.getEntries(onlyCaCerts, onlyUserCerts);
+        LOG.info("took {} entries for the delta CRL of CA {} from the journal",
+            revInfos.size(), ca.getName());
+        for (CertRevInfoWithSerial revInfo : revInfos) {
+          consumer.accept(revInfo);
+        }
+        return;
+      }
+
+      LOG.warn("delta CRL journal of CA {} does not contain the latest event {}",
+          ca.getName(), maxId);
+      accumulator.setComplete(false);
+    }
 
+    // the table may contain several events for one certificate
+    Set<BigInteger> serials = new HashSet<>();
+    final int numEntries = crlFetchSize;
+    long startId = 1;
+    List<CertRevInfoWithSerial> revInfos;
+
+    do {
+      revInfos = getCertsForDeltaCrl(ca, startId, numEntries, onlyCaCerts, onlyUserCerts);
+
+      for (CertRevInfoWithSerial revInfo : revInfos) {
+        if (revInfo.getId() >= startId) {
+          startId = revInfo.getId() + 1;
+        }
+
+        if (serials.add(revInfo.getSerial())) {
+          consumer.accept(revInfo);
+        }
+      } // end for
+    } while (revInfos.size() >= numEntries); // end do
+  } // method getCertsForDeltaCrl
+
+  private List<CertRevInfoWithSerial> getCertsForDeltaCrl(NameId ca, long startId,
+      int numEntries, boolean onlyCaCerts, boolean onlyUserCerts) throws OperationException {
     String sql = getSqlDeltaCrlCacheIds(numEntries);
-    List<Long> ids = new LinkedList<>();
+    List<Long> ids = new ArrayList<>(numEntries);
+    List<String> serials = new ArrayList<>(numEntries);
     ResultSet rs = null;
 
     PreparedStatement ps = borrowPreparedStatement(sql);
@@ -1696,8 +3009,8 @@ public class CertStore {
       ps.setInt(2, ca.getId());
       rs = ps.executeQuery();
       while (rs.next()) {
-        long id = rs.getLong("ID");
-        ids.add(id);
+        ids.add(rs.getLong("ID"));
+        serials.add(rs.getString("SN"));
       }
     } catch (SQLException ex) {
       throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
@@ -1705,50 +3018,59 @@ public class CertStore {
       datasource.releaseResources(ps, rs);
     }
 
-    sql = sqlRevForId;
+    sql = sqlRevForSerial;
     ps = borrowPreparedStatement(sql);
 
-    List<CertRevInfoWithSerial> ret = new ArrayList<>();
-    for (Long id : ids) {
-      try {
-        ps.setLong(1, id);
-        rs = ps.executeQuery();
-
-        if (!rs.next()) {
-          continue;
-        }
+    List<CertRevInfoWithSerial> ret = new ArrayList<>(ids.size());
+    try {
+      for (int i = 0; i < ids.size(); i++) {
+        // the ID of the entry in DELTACRL_CACHE
+        long id = ids.get(i);
+        try {
+          ps.setInt(1, ca.getId());
+          ps.setString(2, serials.get(i));
+          rs = ps.executeQuery();
 
-        int ee = rs.getInt("EE");
-        if (onlyCaCerts) {
-          if (ee != 0) {
+          if (!rs.next()) {
             continue;
           }
-        } else if (onlyUserCerts) {
-          if (ee != 1) {
-            continue;
-          }
-        }
 
-        CertRevInfoWithSerial revInfo;
+          int ee = rs.getInt("EE");
+          if (onlyCaCerts) {
+            if (ee != 0) {
+              continue;
+            }
+          } else if (onlyUserCerts) {
+            if (ee != 1) {
+              continue;
+            }
+          }
 
-        String serial = rs.getString("SN");
-        boolean revoked = rs.getBoolean("REVOEKD");
-        if (revoked) {
-          long revInvTime = rs.getLong("RIT");
-          Date invalidityTime = (revInvTime == 0) ? null : new Date(1000 * revInvTime);
-          revInfo = new CertRevInfoWithSerial(id, new BigInteger(serial, 16), rs.getInt("RR"),
-              new Date(1000 * rs.getLong("RT")), invalidityTime);
-        } else {
-          revInfo = new CertRevInfoWithSerial(id, new BigInteger(serial, 16),
-              CrlReason.REMOVE_FROM_CRL.getCode(), new Date(1000 * rs.getLong("LUPDATE")), null);
+          CertRevInfoWithSerial revInfo;
+
+          BigInteger serial = new BigInteger(rs.getString("SN"), 16);
+          boolean revoked = rs.getBoolean("REV");
+          if (revoked) {
+            long revInvTime = rs.getLong("RIT");
+            Date invalidityTime = (revInvTime == 0) ? null : new Date(1000 * revInvTime);
+            revInfo = new CertRevInfoWithSerial(id, serial, rs.getInt("RR"),
+                new Date(1000 * rs.getLong("RT")), invalidityTime);
+          } else {
+            revInfo = new CertRevInfoWithSerial(id, serial,
+                CrlReason.REMOVE_FROM_CRL.getCode(), new Date(1000 * rs.getLong("LUPDATE")),
+                null);
+          }
+          ret.add(revInfo);
+        } catch (SQLException ex) {
+          throw new OperationException(DATABASE_FAILURE,
+              datasource.translate(sql, ex).getMessage());
+        } finally {
+          datasource.releaseResources(null, rs);
         }
-        ret.add(revInfo);
-      } catch (SQLException ex) {
-        throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
-      } finally {
-        datasource.releaseResources(null, rs);
-      }
-    } // end for
+      } // end for
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
 
     return ret;
   } // method getCertsForDeltaCrl
@@ -1762,6 +3084,11 @@ public class CertStore {
       throws OperationException {
     Args.notNull(ca, "ca");
 
+    CertFpIndex index = getLoadedCertFpIndex(ca);
+    if (index != null && !index.mayContainSubject(subjectFp)) {
+      return CertStatus.UNKNOWN;
+    }
+
     final String sql = sqlCertStatusForSubjectFp;
     ResultSet rs = null;
     PreparedStatement ps = borrowPreparedStatement(sql);
@@ -1783,6 +3110,11 @@ public class CertStore {
 
   public boolean isCertForSubjectIssued(NameId ca, long subjectFp) throws OperationException {
     Args.notNull(ca, "ca");
+
+    CertFpIndex index = getLoadedCertFpIndex(ca);
+    if (index != null && !index.mayContainSubject(subjectFp)) {
+      return false;
+    }
     String sql = sqlCertforSubjectIssued;
     ResultSet rs = null;
     PreparedStatement ps = borrowPreparedStatement(sql);
@@ -1801,6 +3133,11 @@ public class CertStore {
 
   public boolean isCertForKeyIssued(NameId ca, long keyFp) throws OperationException {
     Args.notNull(ca, "ca");
+
+    CertFpIndex index = getLoadedCertFpIndex(ca);
+    if (index != null && !index.mayContainKey(keyFp)) {
+      return false;
+    }
     String sql = sqlCertForKeyIssued;
     ResultSet rs = null;
     PreparedStatement ps = borrowPreparedStatement(sql);
@@ -1945,7 +3282,7 @@ public class CertStore {
     String sql = cacheSqlCidFromPublishQueue.get(numEntries);
     if (sql == null) {
       sql = datasource.buildSelectFirstSql(numEntries, "CID ASC",
-          "CID FROM PUBLISHQUEUE WHERE PID=? AND CA_ID=?");
+          "CID FROM PUBLISHQUEUE WHERE PID=? AND CA_ID=? AND CID>?");
       cacheSqlCidFromPublishQueue.put(numEntries, sql);
     }
     return sql;
@@ -1974,27 +3311,12 @@ public class CertStore {
     String sql = cacheSqlDeltaCrlCacheIds.get(numEntries);
     if (sql == null) {
       sql = datasource.buildSelectFirstSql(numEntries, "ID ASC",
-          "ID FROM DELTACRL_CACHE WHERE ID>? AND CA_ID=?");
+          "ID,SN FROM DELTACRL_CACHE WHERE ID>? AND CA_ID=?");
       cacheSqlDeltaCrlCacheIds.put(numEntries, sql);
     }
     return sql;
   } // method getSqlDeltaCrlCacheIds
 
-  private String getSqlRevokedCerts(int numEntries, boolean withEe) {
-    LruCache<Integer, String> cache = withEe ? cacheSqlRevokedCertsWithEe : cacheSqlRevokedCerts;
-    String sql = cache.get(numEntries);
-    if (sql == null) {
-      String coreSql =
-          "ID,SN,RR,RT,RIT FROM CERT WHERE ID>? AND CA_ID=? AND REV=1 AND NAFTER>?";
-      if (withEe) {
-        coreSql += " AND EE=?";
-      }
-      sql = datasource.buildSelectFirstSql(numEntries, "ID ASC", coreSql);
-      cache.put(numEntries, sql);
-    }
-    return sql;
-  } // method getSqlRevokedCerts
-
   private String getSqlSerials(int numEntries, boolean onlyRevoked) {
     LruCache<Integer, String> cache = onlyRevoked ? cacheSqlSerialsRevoked : cacheSqlSerials;
     String sql = cache.get(numEntries);
@@ -0,0 +1,207 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.math.BigInteger;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509CRL;
+import java.util.Date;
+
+import org.bouncycastle.asn1.x509.CertificateList;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.util.X509Util;
+import org.xipki.util.Args;
+import org.xipki.util.LruCache;
+import org.xipki.util.StringUtil;
+
+/**
+ * Cache of the CRLs of one CA, so that the CRLs are not read from the database and parsed
+ * for each download. The current CRL and the latest CRLs requested by their CRL number are
+ * cached.
+ *
+ * <p>The cache is updated by the {@link CertStore} when a new CRL is stored, and cleared when
+ * CRLs are deleted. A CRL loaded from the database is only cached if no CRL has been stored or
+ * deleted in the meantime.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class CrlCache {
+
+  /**
+   * The encoded CRL, the parsed objects are created on demand.
+   */
+  public static class CachedCrl {
+
+    private final BigInteger crlNumber;
+
+    private final Date thisUpdate;
+
+    private final byte[] encoded;
+
+    private volatile String etag;
+
+    private volatile X509CRL crl;
+
+    private volatile CertificateList bcCrl;
+
+    CachedCrl(BigInteger crlNumber, Date thisUpdate, byte[] encoded, X509CRL crl) {
+      this.crlNumber = crlNumber;
+      this.thisUpdate = Args.notNull(thisUpdate, "thisUpdate");
+      this.encoded = Args.notNull(encoded, "encoded");
+      this.crl = crl;
+    }
+
+    public BigInteger getCrlNumber() {
+      return crlNumber;
+    }
+
+    public Date getThisUpdate() {
+      return thisUpdate;
+    }
+
+    /**
+     * Returns the encoded CRL. The returned array must not be modified.
+     *
+     * @return the encoded CRL.
+     */
+    public byte[] getEncoded() {
+      return encoded;
+    }
+
+    /**
+     * Returns the HTTP entity tag, namely the quoted hex representation of the SHA1 hash
+     * of the encoded CRL.
+     *
+     * @return the entity tag.
+     */
+    public String getEtag() {
+      String tag = etag;
+      if (tag == null) {
+        tag = StringUtil.concat("\"", HashAlgo.SHA1.hexHash(encoded), "\"");
+        etag = tag;
+      }
+      return tag;
+    }
+
+    public X509CRL getCrl() throws CRLException, CertificateException {
+      X509CRL tmpCrl = crl;
+      if (tmpCrl == null) {
+        tmpCrl = X509Util.parseCrl(encoded);
+        crl = tmpCrl;
+      }
+      return tmpCrl;
+    }
+
+    public CertificateList getBcCrl() {
+      CertificateList tmpCrl = bcCrl;
+      if (tmpCrl == null) {
+        tmpCrl = CertificateList.getInstance(encoded);
+        bcCrl = tmpCrl;
+      }
+      return tmpCrl;
+    }
+
+  } // class CachedCrl
+
+  private static final int MAX_CRLS_BY_NUMBER = 4;
+
+  private final LruCache<BigInteger, CachedCrl> crlsByNumber =
+      new LruCache<>(MAX_CRLS_BY_NUMBER);
+
+  private CachedCrl current;
+
+  private long generation;
+
+  /**
+   * Returns the cached CRL.
+   *
+   * @param crlNumber
+   *          CRL number, {@code null} for the current CRL.
+   * @return the cached CRL, or {@code null} if not cached.
+   */
+  public CachedCrl get(BigInteger crlNumber) {
+    if (crlNumber == null) {
+      synchronized (this) {
+        return current;
+      }
+    } else {
+      return crlsByNumber.get(crlNumber);
+    }
+  } // method get
+
+  /**
+   * Returns the generation of this cache, to be read before loading a CRL from the database.
+   *
+   * @return the generation.
+   */
+  synchronized long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Caches the CRL loaded from the database.
+   *
+   * @param crl
+   *          the CRL loaded from the database.
+   * @param isCurrent
+   *          whether the CRL has been loaded as the current CRL.
+   * @param generation
+   *          the generation of this cache before the CRL was loaded.
+   */
+  synchronized void put(CachedCrl crl, boolean isCurrent, long generation) {
+    if (this.generation != generation) {
+      // CRLs have been stored or deleted while loading
+      return;
+    }
+
+    if (isCurrent) {
+      current = crl;
+    }
+
+    if (crl.getCrlNumber() != null) {
+      crlsByNumber.put(crl.getCrlNumber(), crl);
+    }
+  } // method put
+
+  /**
+   * Sets the newly stored CRL as the current CRL.
+   *
+   * @param crl
+   *          the newly stored CRL.
+   */
+  synchronized void added(CachedCrl crl) {
+    generation++;
+    if (current == null || !crl.getThisUpdate().before(current.getThisUpdate())) {
+      current = crl;
+    }
+
+    if (crl.getCrlNumber() != null) {
+      crlsByNumber.put(crl.getCrlNumber(), crl);
+    }
+  } // method added
+
+  synchronized void clear() {
+    generation++;
+    current = null;
+    crlsByNumber.evictAll();
+  } // method clear
+
+}
@@ -0,0 +1,660 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.operator.ContentSigner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.util.Args;
+
+/**
+ * Builds X.509 CRL without holding the CRL entries as objects in memory. The output is
+ * identical to that of {@link org.bouncycastle.cert.X509v2CRLBuilder} for the same input.
+ *
+ * <p>The CRL entries are sorted by the serial number. Up to {@code maxEntriesInMemory}
+ * entries are sorted in memory, more entries are sorted in runs written to temporary files
+ * and merged while the TBSCertList is written. The encoded TBSCertList is streamed to the
+ * signer, and then written with the signature to one byte array of the exact size. Hence the
+ * memory is bounded by the size of the encoded CRL, the CRL is not parsed. Large extension
+ * values can be streamed from files, see
+ * {@link #addExtension(ASN1ObjectIdentifier, boolean, File)}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class CrlStreamBuilder implements Closeable {
+
+  private static class CrlEntry implements Comparable<CrlEntry> {
+
+    private final BigInteger serial;
+
+    private final long revocationTime;
+
+    // NO_TIME if not present
+    private final long invalidityTime;
+
+    private final int reason;
+
+    CrlEntry(BigInteger serial, long revocationTime, long invalidityTime, int reason) {
+      this.serial = serial;
+      this.revocationTime = revocationTime;
+      this.invalidityTime = invalidityTime;
+      this.reason = reason;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      byte[] bytes = serial.toByteArray();
+      out.writeShort(bytes.length);
+      out.write(bytes);
+      out.writeLong(revocationTime);
+      out.writeLong(invalidityTime);
+      out.writeByte(reason);
+    }
+
+    static CrlEntry read(DataInputStream in) throws IOException {
+      int len;
+      try {
+        len = in.readUnsignedShort();
+      } catch (EOFException ex) {
+        return null;
+      }
+
+      byte[] bytes = new byte[len];
+      in.readFully(bytes);
+      return new CrlEntry(new BigInteger(bytes), in.readLong(), in.readLong(), in.readByte());
+    }
+
+    @Override
+    public int compareTo(CrlEntry other) {
+      return serial.compareTo(other.serial);
+    }
+
+  } // class CrlEntry
+
+  private static class Run implements Comparable<Run>, Closeable {
+
+    private final DataInputStream in;
+
+    private CrlEntry head;
+
+    Run(File file) throws IOException {
+      this.in = new DataInputStream(
+          new BufferedInputStream(Files.newInputStream(file.toPath()), BUFFER_SIZE));
+      this.head = CrlEntry.read(in);
+    }
+
+    CrlEntry next() throws IOException {
+      CrlEntry entry = head;
+      head = CrlEntry.read(in);
+      return entry;
+    }
+
+    @Override
+    public int compareTo(Run other) {
+      return head.compareTo(other.head);
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+  } // class Run
+
+  /**
+   * Output stream writing into a byte array of fixed size.
+   */
+  private static class ArrayOutputStream extends OutputStream {
+
+    private final byte[] buf;
+
+    private int count;
+
+    ArrayOutputStream(byte[] buf) {
+      this.buf = buf;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (count == buf.length) {
+        throw new IOException("buffer is full");
+      }
+      buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) throws IOException {
+      if (len > buf.length - count) {
+        throw new IOException("buffer is full");
+      }
+      System.arraycopy(bytes, off, buf, count, len);
+      count += len;
+    }
+
+    int size() {
+      return count;
+    }
+
+  } // class ArrayOutputStream
+
+  /**
+   * Merges the sorted runs.
+   */
+  private static class RunMerger implements Iterator<CrlEntry> {
+
+    private final PriorityQueue<Run> queue;
+
+    RunMerger(List<Run> runs) {
+      this.queue = new PriorityQueue<>(Math.max(1, runs.size()));
+      for (Run run : runs) {
+        if (run.head != null) {
+          queue.add(run);
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !queue.isEmpty();
+    }
+
+    @Override
+    public CrlEntry next() {
+      Run run = queue.poll();
+      if (run == null) {
+        throw new NoSuchElementException();
+      }
+
+      CrlEntry entry;
+      try {
+        entry = run.next();
+      } catch (IOException ex) {
+        throw new IllegalStateException("could not read sorted CRL entries", ex);
+      }
+
+      if (run.head != null) {
+        queue.add(run);
+      }
+      return entry;
+    }
+
+  } // class RunMerger
+
+  /**
+   * Encoded extension, the extnValue is either contained in the encoded bytes, or in the file.
+   */
+  private static class ExtensionPart {
+
+    private final byte[] encoded;
+
+    private final File valueFile;
+
+    private final long length;
+
+    ExtensionPart(byte[] encoded) {
+      this.encoded = encoded;
+      this.valueFile = null;
+      this.length = encoded.length;
+    }
+
+    ExtensionPart(byte[] header, File valueFile) {
+      this.encoded = header;
+      this.valueFile = valueFile;
+      this.length = header.length + valueFile.length();
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+      out.write(encoded);
+      if (valueFile != null) {
+        copy(valueFile, out);
+      }
+    }
+
+  } // class ExtensionPart
+
+  private static final Logger LOG = LoggerFactory.getLogger(CrlStreamBuilder.class);
+
+  private static final long NO_TIME = Long.MIN_VALUE;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final int DFLT_MAX_ENTRIES_IN_MEMORY = 100000;
+
+  private static final byte[] VERSION_V2 = new byte[]{0x02, 0x01, 0x01};
+
+  private final X500Name issuer;
+
+  private final Date thisUpdate;
+
+  private final Date nextUpdate;
+
+  private final X500Name certificateIssuer;
+
+  private final int maxEntriesInMemory;
+
+  private final List<ExtensionPart> extensions = new ArrayList<>();
+
+  private final Set<ASN1ObjectIdentifier> extensionTypes = new HashSet<>();
+
+  private final List<CrlEntry> entries = new ArrayList<>();
+
+  private final List<File> runFiles = new ArrayList<>();
+
+  private final List<File> tmpFiles = new ArrayList<>();
+
+  private long numEntries;
+
+  private boolean built;
+
+  /**
+   * Constructor.
+   *
+   * @param issuer
+   *          issuer of the CRL. Must not be {@code null}.
+   * @param thisUpdate
+   *          thisUpdate of the CRL. Must not be {@code null}.
+   * @param nextUpdate
+   *          nextUpdate of the CRL. {@code null} if not present.
+   * @param certificateIssuer
+   *          issuer of the revoked certificates for the indirect CRL, the extension
+   *          certificateIssuer will be added to the first entry. {@code null} for the direct CRL.
+   */
+  public CrlStreamBuilder(X500Name issuer, Date thisUpdate, Date nextUpdate,
+      X500Name certificateIssuer) {
+    this(issuer, thisUpdate, nextUpdate, certificateIssuer, DFLT_MAX_ENTRIES_IN_MEMORY);
+  }
+
+  public CrlStreamBuilder(X500Name issuer, Date thisUpdate, Date nextUpdate,
+      X500Name certificateIssuer, int maxEntriesInMemory) {
+    this.issuer = Args.notNull(issuer, "issuer");
+    this.thisUpdate = Args.notNull(thisUpdate, "thisUpdate");
+    this.nextUpdate = nextUpdate;
+    this.certificateIssuer = certificateIssuer;
+    this.maxEntriesInMemory = Args.positive(maxEntriesInMemory, "maxEntriesInMemory");
+  } // constructor
+
+  public long getNumEntries() {
+    return numEntries;
+  }
+
+  /**
+   * Adds the CRL entry.
+   *
+   * @param serial
+   *          serial number of the revoked certificate. Must not be {@code null}.
+   * @param revocationTime
+   *          revocation time. Must not be {@code null}.
+   * @param reason
+   *          reason code. No extension reasonCode will be added for 0 (unspecified).
+   * @param invalidityTime
+   *          invalidity time. {@code null} if not present.
+   * @throws IOException
+   *           if error occurs while writing the sorted entries to temporary file.
+   */
+  public void addCrlEntry(BigInteger serial, Date revocationTime, int reason,
+      Date invalidityTime) throws IOException {
+    Args.notNull(serial, "serial");
+    Args.notNull(revocationTime, "revocationTime");
+    assertNotBuilt();
+
+    entries.add(new CrlEntry(serial, revocationTime.getTime(),
+        invalidityTime == null ? NO_TIME : invalidityTime.getTime(), reason));
+    numEntries++;
+
+    if (entries.size() >= maxEntriesInMemory) {
+      flushRun();
+    }
+  } // method addCrlEntry
+
+  public void addExtension(ASN1ObjectIdentifier oid, boolean critical, ASN1Encodable value)
+      throws IOException {
+    assertNewExtension(oid);
+    byte[] encodedValue = value.toASN1Primitive().getEncoded(ASN1Encoding.DER);
+    extensions.add(new ExtensionPart(
+        new Extension(oid, critical, encodedValue).getEncoded(ASN1Encoding.DER)));
+  } // method addExtension
+
+  /**
+   * Adds the extension whose value is too large to be held in memory.
+   *
+   * @param oid
+   *          type of the extension. Must not be {@code null}.
+   * @param critical
+   *          whether the extension is critical.
+   * @param encodedValueFile
+   *          file containing the DER encoded extension value. Must not be {@code null}. The
+   *          file will be deleted by {@link #close()}.
+   * @throws IOException
+   *           if error occurs while encoding the extension.
+   */
+  public void addExtension(ASN1ObjectIdentifier oid, boolean critical, File encodedValueFile)
+      throws IOException {
+    Args.notNull(encodedValueFile, "encodedValueFile");
+    assertNewExtension(oid);
+
+    byte[] encodedOid = oid.getEncoded(ASN1Encoding.DER);
+    // BOOLEAN TRUE
+    byte[] encodedCritical = critical ? new byte[]{0x01, 0x01, (byte) 0xFF} : null;
+    long valueLen = encodedValueFile.length();
+    byte[] octetStringHeader = derHeader(0x04, valueLen);
+
+    long bodyLen = encodedOid.length + (critical ? encodedCritical.length : 0)
+        + octetStringHeader.length + valueLen;
+    extensions.add(new ExtensionPart(concat(derHeader(0x30, bodyLen), encodedOid,
+        encodedCritical, octetStringHeader), encodedValueFile));
+    tmpFiles.add(encodedValueFile);
+  } // method addExtension
+
+  private void assertNewExtension(ASN1ObjectIdentifier oid) {
+    Args.notNull(oid, "oid");
+    assertNotBuilt();
+    if (!extensionTypes.add(oid)) {
+      throw new IllegalArgumentException("extension " + oid + " already added");
+    }
+  } // method assertNewExtension
+
+  /**
+   * Generates the CRL signed by the given signer.
+   *
+   * @param signer
+   *          the content signer. Must not be {@code null}.
+   * @return the DER encoded CRL.
+   * @throws IOException
+   *           if error occurs while encoding the CRL.
+   */
+  public byte[] build(ContentSigner signer) throws IOException {
+    Args.notNull(signer, "signer");
+    assertNotBuilt();
+    built = true;
+
+    // revokedCertificates, without the header
+    File entriesFile = newTmpFile();
+    long entriesLen = writeSortedEntries(entriesFile);
+
+    byte[] sigAlgId = signer.getAlgorithmIdentifier().getEncoded(ASN1Encoding.DER);
+
+    byte[] tbsPrefix = concat(VERSION_V2, sigAlgId,
+        issuer.getEncoded(ASN1Encoding.DER),
+        new Time(thisUpdate).getEncoded(ASN1Encoding.DER),
+        nextUpdate == null ? null : new Time(nextUpdate).getEncoded(ASN1Encoding.DER));
+
+    byte[] entriesHeader = (numEntries == 0) ? new byte[0] : derHeader(0x30, entriesLen);
+
+    // crlExtensions [0] EXPLICIT Extensions
+    long extensionsLen = 0;
+    for (ExtensionPart extension : extensions) {
+      extensionsLen += extension.length;
+    }
+
+    byte[] extensionsHeader;
+    if (extensions.isEmpty()) {
+      extensionsHeader = new byte[0];
+    } else {
+      byte[] seqHeader = derHeader(0x30, extensionsLen);
+      extensionsHeader = concat(derHeader(0xA0, seqHeader.length + extensionsLen), seqHeader);
+    }
+
+    long tbsBodyLen = tbsPrefix.length + entriesHeader.length + entriesLen
+        + extensionsHeader.length + extensionsLen;
+    byte[] tbsHeader = derHeader(0x30, tbsBodyLen);
+    long tbsLen = tbsHeader.length + tbsBodyLen;
+
+    // sign the TBSCertList
+    OutputStream sigOut = signer.getOutputStream();
+    writeTbs(sigOut, tbsHeader, tbsPrefix, entriesHeader, entriesFile, extensionsHeader);
+    sigOut.close();
+    byte[] signature = signer.getSignature();
+
+    // signatureValue: BIT STRING without unused bits
+    byte[] sigHeader = derHeader(0x03, signature.length + 1L);
+    long crlBodyLen = tbsLen + sigAlgId.length + sigHeader.length + 1 + signature.length;
+
+    byte[] crlHeader = derHeader(0x30, crlBodyLen);
+    long crlLen = crlHeader.length + crlBodyLen;
+    if (crlLen > Integer.MAX_VALUE - 8) {
+      throw new IOException("CRL too large: " + crlLen + " bytes");
+    }
+
+    byte[] encoded = new byte[(int) crlLen];
+    try (ArrayOutputStream out = new ArrayOutputStream(encoded)) {
+      out.write(crlHeader);
+      writeTbs(out, tbsHeader, tbsPrefix, entriesHeader, entriesFile, extensionsHeader);
+      out.write(sigAlgId);
+      out.write(sigHeader);
+      out.write(0);
+      out.write(signature);
+      if (out.size() != encoded.length) {
+        throw new IOException("encoded " + out.size() + " bytes, but expected " + crlLen);
+      }
+    }
+
+    // not required anymore
+    delete(entriesFile);
+
+    LOG.debug("built CRL with {} entries, {} bytes", numEntries, crlLen);
+    return encoded;
+  } // method build
+
+  @Override
+  public void close() {
+    entries.clear();
+    extensions.clear();
+    for (File file : tmpFiles) {
+      delete(file);
+    }
+    tmpFiles.clear();
+    runFiles.clear();
+  } // method close
+
+  private void assertNotBuilt() {
+    if (built) {
+      throw new IllegalStateException("CRL has been built");
+    }
+  }
+
+  private void flushRun() throws IOException {
+    Collections.sort(entries);
+    File file = newTmpFile();
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(file.toPath()), BUFFER_SIZE))) {
+      for (CrlEntry entry : entries) {
+        entry.write(out);
+      }
+    }
+    runFiles.add(file);
+    entries.clear();
+  } // method flushRun
+
+  private long writeSortedEntries(File file) throws IOException {
+    List<Run> runs = new ArrayList<>(runFiles.size() + 1);
+    try (OutputStream out =
+        new BufferedOutputStream(Files.newOutputStream(file.toPath()), BUFFER_SIZE)) {
+      Iterator<CrlEntry> iterator;
+      if (runFiles.isEmpty()) {
+        Collections.sort(entries);
+        iterator = entries.iterator();
+      } else {
+        if (!entries.isEmpty()) {
+          flushRun();
+        }
+
+        for (File runFile : runFiles) {
+          runs.add(new Run(runFile));
+        }
+        iterator = new RunMerger(runs);
+        LOG.debug("merging {} sorted runs of CRL entries", runs.size());
+      }
+
+      long len = 0;
+      boolean first = true;
+      while (iterator.hasNext()) {
+        byte[] encoded = encodeEntry(iterator.next(), first && certificateIssuer != null);
+        first = false;
+        out.write(encoded);
+        len += encoded.length;
+      }
+      return len;
+    } catch (IllegalStateException ex) {
+      if (ex.getCause() instanceof IOException) {
+        throw (IOException) ex.getCause();
+      }
+      throw ex;
+    } finally {
+      for (Run run : runs) {
+        run.close();
+      }
+      entries.clear();
+    }
+  } // method writeSortedEntries
+
+  private byte[] encodeEntry(CrlEntry entry, boolean withCertificateIssuer) throws IOException {
+    ExtensionsGenerator entryExtGen = new ExtensionsGenerator();
+    if (entry.reason != 0) {
+      entryExtGen.addExtension(Extension.reasonCode, false, CRLReason.lookup(entry.reason));
+    }
+
+    if (entry.invalidityTime != NO_TIME) {
+      entryExtGen.addExtension(Extension.invalidityDate, false,
+          new ASN1GeneralizedTime(new Date(entry.invalidityTime)));
+    }
+
+    if (withCertificateIssuer) {
+      entryExtGen.addExtension(Extension.certificateIssuer, true,
+          new GeneralNames(new GeneralName(certificateIssuer)));
+    }
+
+    ASN1EncodableVector vec = new ASN1EncodableVector();
+    vec.add(new ASN1Integer(entry.serial));
+    vec.add(new Time(new Date(entry.revocationTime)));
+    if (!entryExtGen.isEmpty()) {
+      vec.add(entryExtGen.generate());
+    }
+    return new DERSequence(vec).getEncoded(ASN1Encoding.DER);
+  } // method encodeEntry
+
+  private void writeTbs(OutputStream out, byte[] tbsHeader, byte[] tbsPrefix,
+      byte[] entriesHeader, File entriesFile, byte[] extensionsHeader) throws IOException {
+    out.write(tbsHeader);
+    out.write(tbsPrefix);
+    out.write(entriesHeader);
+    copy(entriesFile, out);
+
+    out.write(extensionsHeader);
+    for (ExtensionPart extension : extensions) {
+      extension.writeTo(out);
+    }
+  } // method writeTbs
+
+  private static void copy(File file, OutputStream out) throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    try (InputStream in = Files.newInputStream(file.toPath())) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+    }
+  } // method copy
+
+  private File newTmpFile() throws IOException {
+    File file = File.createTempFile("xipki-crl-", ".tmp");
+    tmpFiles.add(file);
+    return file;
+  }
+
+  private static void delete(File file) {
+    if (file.exists() && !file.delete()) {
+      LOG.warn("could not delete temporary file {}", file.getPath());
+    }
+  }
+
+  static byte[] derHeader(int tag, long len) {
+    if (len < 0x80) {
+      return new byte[]{(byte) tag, (byte) len};
+    }
+
+    int numLenBytes = 0;
+    for (long v = len; v != 0; v >>>= 8) {
+      numLenBytes++;
+    }
+
+    byte[] bytes = new byte[2 + numLenBytes];
+    bytes[0] = (byte) tag;
+    bytes[1] = (byte) (0x80 | numLenBytes);
+    for (int i = 0; i < numLenBytes; i++) {
+      bytes[bytes.length - 1 - i] = (byte) (len >>> (8 * i));
+    }
+    return bytes;
+  } // method header
+
+  static byte[] concat(byte[]... arrays) {
+    int len = 0;
+    for (byte[] arr : arrays) {
+      if (arr != null) {
+        len += arr.length;
+      }
+    }
+
+    byte[] res = new byte[len];
+    int off = 0;
+    for (byte[] arr : arrays) {
+      if (arr != null) {
+        System.arraycopy(arr, 0, res, off, arr.length);
+        off += arr.length;
+      }
+    }
+    return res;
+  } // method concat
+
+}
@@ -0,0 +1,533 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.util.Args;
+
+/**
+ * Accumulates the revocation events of one CA for the next delta CRL in memory, so that the
+ * delta CRL can be generated without reading the table DELTACRL_CACHE and the certificates.
+ * Only the latest event of a certificate is kept.
+ *
+ * <p>Each event is appended to a local journal and synced to disk before it is accepted, so
+ * that the events survive a crash. The journal consists of segments: after each CRL a new
+ * segment is written with the remaining events, and the previous segments are deleted. On
+ * start the segments are replayed.
+ *
+ * <p>The table DELTACRL_CACHE is still written and remains the reference. The accumulator is
+ * only used if it is {@link #isComplete() complete}, namely if it has seen all events in the
+ * table. If an event could not be appended, or a torn record is found on start, an incomplete
+ * marker is written to the journal directory. It is removed only if the accumulator becomes
+ * complete again after the next full CRL.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+class DeltaCrlAccumulator implements Closeable {
+
+  private static class Entry {
+
+    private final boolean ee;
+
+    private final CertRevInfoWithSerial revInfo;
+
+    Entry(boolean ee, CertRevInfoWithSerial revInfo) {
+      this.ee = ee;
+      this.revInfo = revInfo;
+    }
+
+  } // class Entry
+
+  private static final Logger LOG = LoggerFactory.getLogger(DeltaCrlAccumulator.class);
+
+  private static final String SEGMENT_PREFIX = "delta-";
+
+  private static final String SEGMENT_SUFFIX = ".journal";
+
+  private static final int MAX_RECORD_SIZE = 4096;
+
+  private static final String INCOMPLETE_MARKER = "incomplete";
+
+  private final File dir;
+
+  // latest event per certificate
+  private final Map<BigInteger, Entry> entries = new HashMap<>();
+
+  // all events by ID, the journal is compacted to them
+  private final Map<Long, Entry> events = new HashMap<>();
+
+  private long segmentNo;
+
+  private FileOutputStream segment;
+
+  private long maxId;
+
+  private Long markedMaxId;
+
+  private boolean complete;
+
+  private boolean markedIncomplete;
+
+  /**
+   * Constructor. Replays the existing journal segments.
+   *
+   * @param dir
+   *          directory of the journal of the CA.
+   * @throws IOException
+   *           if error occurs while reading or writing the journal.
+   */
+  DeltaCrlAccumulator(File dir) throws IOException {
+    this.dir = Args.notNull(dir, "dir");
+    Files.createDirectories(dir.toPath());
+
+    this.markedIncomplete = new File(dir, INCOMPLETE_MARKER).exists();
+
+    long[] segmentNos = listSegmentNos();
+    boolean torn = false;
+    for (long no : segmentNos) {
+      if (!replay(segmentFile(no))) {
+        torn = true;
+      }
+    }
+
+    this.segmentNo = (segmentNos.length == 0) ? 0 : segmentNos[segmentNos.length - 1];
+    LOG.info("replayed {} journal segments in {}: {} entries, {} events, maxId={}",
+        segmentNos.length, dir.getPath(), entries.size(), events.size(), maxId);
+
+    if (torn) {
+      // crash while appending: the events written to the table after the torn one may be
+      // in the journal while the torn one is not
+      markIncomplete();
+    }
+
+    // write the entries to a new segment, the last segment may end with a torn record
+    compact();
+  } // constructor
+
+  synchronized long getMaxId() {
+    return maxId;
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Returns the number of events, including the events superseded by a later event of the
+   * same certificate.
+   *
+   * @return the number of events.
+   */
+  synchronized int getNumEvents() {
+    return events.size();
+  }
+
+  synchronized boolean isComplete() {
+    return complete;
+  }
+
+  /**
+   * Sets whether the accumulator has seen all events in the table DELTACRL_CACHE. If true, the
+   * incomplete marker is removed.
+   *
+   * @param complete
+   *          whether the accumulator is complete.
+   */
+  synchronized void setComplete(boolean complete) {
+    this.complete = complete;
+    if (complete) {
+      removeIncompleteMarker();
+    }
+  } // method setComplete
+
+  /**
+   * Returns whether an event could not be appended or a torn record has been found since the
+   * accumulator was complete the last time.
+   *
+   * @return whether the incomplete marker exists.
+   */
+  synchronized boolean isMarkedIncomplete() {
+    return markedIncomplete;
+  }
+
+  /**
+   * Records the maximal ID of the table DELTACRL_CACHE read before a CRL is generated.
+   *
+   * @param maxId
+   *          the maximal ID.
+   */
+  synchronized void mark(long maxId) {
+    this.markedMaxId = maxId;
+  }
+
+  /**
+   * Appends the event to the journal and to the memory.
+   *
+   * @param id
+   *          ID of the event in the table DELTACRL_CACHE.
+   * @param ee
+   *          whether the certificate is an end entity certificate.
+   * @param revInfo
+   *          the revocation information, with reason REMOVE_FROM_CRL if unrevoked.
+   * @throws IOException
+   *           if error occurs while writing the journal.
+   */
+  synchronized void add(long id, boolean ee, CertRevInfoWithSerial revInfo) throws IOException {
+    if (segment == null) {
+      throw new IOException("journal is closed");
+    }
+
+    try {
+      segment.write(encode(id, ee, revInfo));
+      segment.getChannel().force(false);
+    } catch (IOException ex) {
+      markIncomplete();
+      throw ex;
+    }
+    put(id, ee, revInfo);
+  } // method add
+
+  /**
+   * Appends the events to the journal and to the memory. The journal is synced to disk once
+   * for all events.
+   *
+   * @param ees
+   *          for each event, whether the certificate is an end entity certificate.
+   * @param revInfos
+   *          the revocation information, the ID of each event in the table DELTACRL_CACHE is
+   *          given by {@link CertRevInfoWithSerial#getId()}.
+   * @throws IOException
+   *           if error occurs while writing the journal.
+   */
+  synchronized void addAll(boolean[] ees, List<CertRevInfoWithSerial> revInfos)
+      throws IOException {
+    if (segment == null) {
+      throw new IOException("journal is closed");
+    }
+
+    final int n = revInfos.size();
+    if (ees.length != n) {
+      throw new IllegalArgumentException("ees and revInfos have different lengths");
+    }
+
+    try {
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      for (int i = 0; i < n; i++) {
+        CertRevInfoWithSerial revInfo = revInfos.get(i);
+        buffer.write(encode(revInfo.getId(), ees[i], revInfo));
+        if (buffer.size() > 64 * 1024) {
+          buffer.writeTo(segment);
+          buffer.reset();
+        }
+      }
+      buffer.writeTo(segment);
+      segment.getChannel().force(false);
+    } catch (IOException ex) {
+      markIncomplete();
+      throw ex;
+    }
+
+    for (int i = 0; i < n; i++) {
+      CertRevInfoWithSerial revInfo = revInfos.get(i);
+      put(revInfo.getId(), ees[i], revInfo);
+    }
+  } // method addAll
+
+  /**
+   * Returns the accumulated events.
+   *
+   * @param onlyCaCerts
+   *          whether only the events of CA certificates are returned.
+   * @param onlyUserCerts
+   *          whether only the events of end entity certificates are returned.
+   * @return the latest events of the certificates.
+   */
+  synchronized List<CertRevInfoWithSerial> getEntries(boolean onlyCaCerts,
+      boolean onlyUserCerts) {
+    List<CertRevInfoWithSerial> ret = new ArrayList<>(entries.size());
+    for (Entry entry : entries.values()) {
+      if ((onlyCaCerts && entry.ee) || (onlyUserCerts && !entry.ee)) {
+        continue;
+      }
+      ret.add(entry.revInfo);
+    }
+    return ret;
+  } // method getEntries
+
+  /**
+   * Removes the events with ID not greater than {@code maxId}, which have been included in a
+   * CRL. The remaining events are written to a new journal segment.
+   *
+   * @param maxId
+   *          the maximal ID of the removed events.
+   * @throws IOException
+   *           if error occurs while writing the journal.
+   */
+  synchronized void clear(long maxId) throws IOException {
+    Iterator<Entry> it = entries.values().iterator();
+    while (it.hasNext()) {
+      if (it.next().revInfo.getId() <= maxId) {
+        it.remove();
+      }
+    }
+
+    it = events.values().iterator();
+    while (it.hasNext()) {
+      if (it.next().revInfo.getId() <= maxId) {
+        it.remove();
+      }
+    }
+
+    // all events after the mark have been seen by this accumulator
+    boolean seenAll = markedMaxId != null && markedMaxId.longValue() == maxId;
+    markedMaxId = null;
+
+    compact();
+
+    if (seenAll) {
+      setComplete(true);
+    }
+  } // method clear
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (segment != null) {
+      segment.close();
+      segment = null;
+    }
+  } // method close
+
+  private void compact() throws IOException {
+    long newSegmentNo = segmentNo + 1;
+    File file = segmentFile(newSegmentNo);
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      for (Entry entry : events.values()) {
+        CertRevInfoWithSerial revInfo = entry.revInfo;
+        buffer.write(encode(revInfo.getId(), entry.ee, revInfo));
+        if (buffer.size() > 64 * 1024) {
+          buffer.writeTo(out);
+          buffer.reset();
+        }
+      }
+      buffer.writeTo(out);
+      out.getChannel().force(false);
+    } catch (IOException ex) {
+      out.close();
+      if (!file.delete()) {
+        LOG.warn("could not delete journal segment {}", file.getPath());
+      }
+      throw ex;
+    }
+
+    if (segment != null) {
+      segment.close();
+    }
+    segment = out;
+    segmentNo = newSegmentNo;
+
+    for (long no : listSegmentNos()) {
+      if (no < newSegmentNo) {
+        File oldFile = segmentFile(no);
+        if (!oldFile.delete()) {
+          LOG.warn("could not delete journal segment {}", oldFile.getPath());
+        }
+      }
+    }
+  } // method compact
+
+  private void put(long id, boolean ee, CertRevInfoWithSerial revInfo) {
+    if (id > maxId) {
+      maxId = id;
+    }
+
+    Entry entry = new Entry(ee, revInfo);
+    events.put(id, entry);
+    Entry existing = entries.get(revInfo.getSerial());
+    if (existing == null || existing.revInfo.getId() < id) {
+      entries.put(revInfo.getSerial(), entry);
+    }
+  } // method put
+
+  private void markIncomplete() {
+    complete = false;
+    if (markedIncomplete) {
+      return;
+    }
+
+    File file = new File(dir, INCOMPLETE_MARKER);
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.getChannel().force(true);
+      markedIncomplete = true;
+      LOG.warn("marked the delta CRL journal in {} as incomplete until the next full CRL",
+          dir.getPath());
+    } catch (IOException ex) {
+      LOG.error("could not write the incomplete marker {}: {}", file.getPath(), ex.getMessage());
+    }
+  } // method markIncomplete
+
+  private void removeIncompleteMarker() {
+    if (!markedIncomplete) {
+      return;
+    }
+
+    File file = new File(dir, INCOMPLETE_MARKER);
+    if (file.delete() || !file.exists()) {
+      markedIncomplete = false;
+    } else {
+      LOG.warn("could not delete the incomplete marker {}", file.getPath());
+    }
+  } // method removeIncompleteMarker
+
+  /**
+   * Replays the journal segment.
+   *
+   * @return whether the segment has been read completely, false if it ends with a torn record.
+   */
+  private boolean replay(File file) throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+      while (true) {
+        int len;
+        try {
+          len = in.readInt();
+        } catch (EOFException ex) {
+          return true;
+        }
+
+        try {
+          if (len < 1 || len > MAX_RECORD_SIZE) {
+            throw new IOException("invalid record length " + len);
+          }
+
+          byte[] record = new byte[len];
+          in.readFully(record);
+          CRC32 crc = new CRC32();
+          crc.update(record);
+          if ((int) crc.getValue() != in.readInt()) {
+            throw new IOException("invalid checksum");
+          }
+
+          decode(record);
+        } catch (IOException ex) {
+          // the remaining part has not been completely written
+          LOG.warn("ignore the rest of journal segment {}: {}", file.getPath(), ex.getMessage());
+          return false;
+        }
+      }
+    }
+  } // method replay
+
+  private void decode(byte[] record) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+    long id = in.readLong();
+    boolean ee = in.readBoolean();
+    byte[] serial = new byte[in.readUnsignedShort()];
+    in.readFully(serial);
+    int reason = in.readInt();
+    long revTime = in.readLong();
+    long invTime = in.readLong();
+    put(id, ee, new CertRevInfoWithSerial(id, new BigInteger(serial), reason,
+        new Date(revTime), (invTime == -1) ? null : new Date(invTime)));
+  } // method decode
+
+  private static byte[] encode(long id, boolean ee, CertRevInfoWithSerial revInfo)
+      throws IOException {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream(64);
+    DataOutputStream out = new DataOutputStream(bout);
+    out.writeLong(id);
+    out.writeBoolean(ee);
+    byte[] serial = revInfo.getSerial().toByteArray();
+    out.writeShort(serial.length);
+    out.write(serial);
+    out.writeInt(revInfo.getReason().getCode());
+    out.writeLong(revInfo.getRevocationTime().getTime());
+    Date invTime = revInfo.getInvalidityTime();
+    out.writeLong((invTime == null) ? -1 : invTime.getTime());
+    out.flush();
+    byte[] record = bout.toByteArray();
+
+    CRC32 crc = new CRC32();
+    crc.update(record);
+
+    bout = new ByteArrayOutputStream(record.length + 8);
+    out = new DataOutputStream(bout);
+    out.writeInt(record.length);
+    out.write(record);
+    out.writeInt((int) crc.getValue());
+    out.flush();
+    return bout.toByteArray();
+  } // method encode
+
+  private File segmentFile(long no) {
+    return new File(dir, SEGMENT_PREFIX + no + SEGMENT_SUFFIX);
+  }
+
+  private long[] listSegmentNos() {
+    String[] names = dir.list();
+    if (names == null) {
+      return new long[0];
+    }
+
+    List<Long> nos = new ArrayList<>(names.length);
+    for (String name : names) {
+      if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+        String str = name.substring(SEGMENT_PREFIX.length(),
+            name.length() - SEGMENT_SUFFIX.length());
+        try {
+          nos.add(Long.parseLong(str));
+        } catch (NumberFormatException ex) {
+          LOG.warn("ignore file {} in {}", name, dir.getPath());
+        }
+      }
+    }
+
+    long[] ret = new long[nos.size()];
+    for (int i = 0; i < ret.length; i++) {
+      ret[i] = nos.get(i);
+    }
+    Arrays.sort(ret);
+    return ret;
+  } // method listSegmentNos
+
+}
@@ -0,0 +1,280 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.util.Args;
+
+/**
+ * Writes the DER encoded SET OF with bounded memory, independent of the number and size of
+ * the elements. The elements are sorted by their encodings as required by DER, the same as
+ * {@link org.bouncycastle.asn1.DERSet}.
+ *
+ * <p>Up to {@code maxBytesInMemory} bytes of elements are sorted in memory, more elements are
+ * sorted in runs written to temporary files and merged while the SET is written.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class DerSetWriter implements Closeable {
+
+  private static class Run implements Closeable {
+
+    private final DataInputStream in;
+
+    private byte[] head;
+
+    Run(File file) throws IOException {
+      this.in = new DataInputStream(
+          new BufferedInputStream(Files.newInputStream(file.toPath()), BUFFER_SIZE));
+      this.head = readElement();
+    }
+
+    byte[] next() throws IOException {
+      byte[] element = head;
+      head = readElement();
+      return element;
+    }
+
+    private byte[] readElement() throws IOException {
+      int len;
+      try {
+        len = in.readInt();
+      } catch (EOFException ex) {
+        return null;
+      }
+
+      byte[] bytes = new byte[len];
+      in.readFully(bytes);
+      return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+  } // class Run
+
+  /**
+   * Compares the encodings as unsigned bytes, a proper prefix is less than the longer one.
+   */
+  private static final Comparator<byte[]> DER_ORDER = new Comparator<byte[]>() {
+
+    @Override
+    public int compare(byte[] a, byte[] b) {
+      int len = Math.min(a.length, b.length);
+      for (int i = 0; i < len; i++) {
+        int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+        if (diff != 0) {
+          return diff;
+        }
+      }
+      return a.length - b.length;
+    }
+
+  };
+
+  private static final Logger LOG = LoggerFactory.getLogger(DerSetWriter.class);
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final long DFLT_MAX_BYTES_IN_MEMORY = 32L * 1024 * 1024;
+
+  private final long maxBytesInMemory;
+
+  private final List<byte[]> elements = new ArrayList<>();
+
+  private final List<File> runFiles = new ArrayList<>();
+
+  private long bytesInMemory;
+
+  private long contentLength;
+
+  private long numElements;
+
+  private File setFile;
+
+  public DerSetWriter() {
+    this(DFLT_MAX_BYTES_IN_MEMORY);
+  }
+
+  public DerSetWriter(long maxBytesInMemory) {
+    this.maxBytesInMemory = Args.positive(maxBytesInMemory, "maxBytesInMemory");
+  }
+
+  public long getNumElements() {
+    return numElements;
+  }
+
+  /**
+   * Adds the element.
+   *
+   * @param encodedElement
+   *          DER encoded element. Must not be {@code null}.
+   * @throws IOException
+   *           if error occurs while writing the sorted elements to temporary file.
+   */
+  public void add(byte[] encodedElement) throws IOException {
+    Args.notNull(encodedElement, "encodedElement");
+    if (setFile != null) {
+      throw new IllegalStateException("SET has been written");
+    }
+
+    elements.add(encodedElement);
+    numElements++;
+    contentLength += encodedElement.length;
+    bytesInMemory += encodedElement.length;
+
+    if (bytesInMemory >= maxBytesInMemory) {
+      flushRun();
+    }
+  } // method add
+
+  /**
+   * Writes the DER encoded SET to a temporary file. The caller is responsible for deleting
+   * the file.
+   *
+   * @return the file containing the DER encoded SET.
+   * @throws IOException
+   *           if error occurs while writing the file.
+   */
+  public File finish() throws IOException {
+    if (setFile != null) {
+      return setFile;
+    }
+
+    if (!runFiles.isEmpty() && !elements.isEmpty()) {
+      flushRun();
+    }
+
+    File file = File.createTempFile("xipki-derset-", ".tmp");
+    boolean successful = false;
+    try (OutputStream out =
+        new BufferedOutputStream(Files.newOutputStream(file.toPath()), BUFFER_SIZE)) {
+      out.write(CrlStreamBuilder.derHeader(0x31, contentLength));
+
+      if (runFiles.isEmpty()) {
+        Collections.sort(elements, DER_ORDER);
+        for (byte[] element : elements) {
+          out.write(element);
+        }
+      } else {
+        merge(out);
+      }
+      successful = true;
+    } finally {
+      if (!successful) {
+        delete(file);
+      }
+
+      elements.clear();
+      bytesInMemory = 0;
+      for (File runFile : runFiles) {
+        delete(runFile);
+      }
+      runFiles.clear();
+    }
+
+    setFile = file;
+    LOG.debug("wrote SET with {} elements, {} bytes", numElements, file.length());
+    return file;
+  } // method finish
+
+  @Override
+  public void close() {
+    elements.clear();
+    for (File file : runFiles) {
+      delete(file);
+    }
+    runFiles.clear();
+  } // method close
+
+  private void flushRun() throws IOException {
+    Collections.sort(elements, DER_ORDER);
+    File file = File.createTempFile("xipki-derset-", ".tmp");
+    runFiles.add(file);
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(file.toPath()), BUFFER_SIZE))) {
+      for (byte[] element : elements) {
+        out.writeInt(element.length);
+        out.write(element);
+      }
+    }
+    elements.clear();
+    bytesInMemory = 0;
+  } // method flushRun
+
+  private void merge(OutputStream out) throws IOException {
+    PriorityQueue<Run> queue = new PriorityQueue<>(runFiles.size(), new Comparator<Run>() {
+      @Override
+      public int compare(Run a, Run b) {
+        return DER_ORDER.compare(a.head, b.head);
+      }
+    });
+
+    List<Run> runs = new ArrayList<>(runFiles.size());
+    try {
+      for (File runFile : runFiles) {
+        Run run = new Run(runFile);
+        runs.add(run);
+        if (run.head != null) {
+          queue.add(run);
+        }
+      }
+
+      LOG.debug("merging {} sorted runs of SET elements", runs.size());
+      while (!queue.isEmpty()) {
+        Run run = queue.poll();
+        out.write(run.next());
+        if (run.head != null) {
+          queue.add(run);
+        }
+      }
+    } finally {
+      for (Run run : runs) {
+        run.close();
+      }
+    }
+  } // method merge
+
+  private static void delete(File file) {
+    if (file.exists() && !file.delete()) {
+      LOG.warn("could not delete temporary file {}", file.getPath());
+    }
+  }
+
+}
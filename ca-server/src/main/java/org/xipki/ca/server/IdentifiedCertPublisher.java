@@ -19,11 +19,13 @@ package org.xipki.ca.server;
 
 import java.io.Closeable;
 import java.security.cert.X509CRL;
+import java.util.List;
 import java.util.Map;
 
 import org.xipki.ca.api.CertWithDbId;
 import org.xipki.ca.api.CertificateInfo;
 import org.xipki.ca.api.NameId;
+import org.xipki.ca.api.mgmt.CertWithRevocationInfo;
 import org.xipki.ca.api.mgmt.MgmtEntry;
 import org.xipki.ca.api.publisher.CertPublisher;
 import org.xipki.ca.api.publisher.CertPublisherException;
@@ -65,15 +67,27 @@ class IdentifiedCertPublisher implements Closeable {
     return certPublisher.certificateAdded(certInfo);
   }
 
+  public boolean[] certificatesAdded(List<CertificateInfo> certInfos) {
+    return certPublisher.certificatesAdded(certInfos);
+  }
+
   public boolean certificateRevoked(X509Cert caCert, CertWithDbId cert, String certprofile,
       CertRevocationInfo revInfo) {
     return certPublisher.certificateRevoked(caCert, cert, certprofile, revInfo);
   }
 
+  public boolean[] certificatesRevoked(X509Cert caCert, List<CertWithRevocationInfo> certs) {
+    return certPublisher.certificatesRevoked(caCert, certs);
+  }
+
   public boolean crlAdded(X509Cert caCert, X509CRL crl) {
     return certPublisher.crlAdded(caCert, crl);
   }
 
+  public boolean crlAdded(X509Cert caCert, byte[] encodedCrl) {
+    return certPublisher.crlAdded(caCert, encodedCrl);
+  }
+
   public MgmtEntry.Publisher getDbEntry() {
     return entry;
   }
@@ -21,16 +21,25 @@ import static org.xipki.audit.AuditLevel.ERROR;
 import static org.xipki.audit.AuditLevel.INFO;
 import static org.xipki.audit.AuditStatus.FAILED;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.math.BigInteger;
-import java.security.cert.X509CRL;
+import java.nio.charset.StandardCharsets;
 import java.security.cert.X509Certificate;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TimeZone;
 
 import org.bouncycastle.asn1.pkcs.CertificationRequest;
 import org.bouncycastle.asn1.pkcs.CertificationRequestInfo;
@@ -168,6 +177,8 @@ public class RestResponder {
 
   private static final int OK = 200;
 
+  private static final int NOT_MODIFIED = 304;
+
   private static final int BAD_REQUEST = 400;
 
   private static final int UNAUTHORIZED = 401;
@@ -334,7 +345,8 @@ public class RestResponder {
 
         respBytes = StringUtil.toUtf8Bytes(X509Util.encodeCertificates(certchainWithCaCert));
       } else if (RestAPIConstants.CMD_enroll_cert.equalsIgnoreCase(command)
-          || RestAPIConstants.CMD_enroll_cert_cagenkeypair.equalsIgnoreCase(command)) {
+          || RestAPIConstants.CMD_enroll_cert_cagenkeypair.equalsIgnoreCase(command)
+          || RestAPIConstants.CMD_enroll_certs.equalsIgnoreCase(command)) {
         String profile = httpRetriever.getParameter(RestAPIConstants.PARAM_profile);
         if (StringUtil.isBlank(profile)) {
           throw new HttpRespAuditException(BAD_REQUEST,
@@ -415,6 +427,45 @@ public class RestResponder {
           respBytes[keyBytes.length] = '\r';
           respBytes[keyBytes.length + 1] = '\n';
           System.arraycopy(certBytes, 0, respBytes, keyBytes.length + 2, certBytes.length);
+        } else if (RestAPIConstants.CMD_enroll_certs.equalsIgnoreCase(command)) {
+          String ct = httpRetriever.getHeader("Content-Type");
+          if (!RestAPIConstants.CT_pem_file.equalsIgnoreCase(ct)) {
+            String message = "unsupported media type " + ct;
+            throw new HttpRespAuditException(UNSUPPORTED_MEDIA_TYPE, message, INFO, FAILED);
+          }
+
+          List<byte[]> encodedCsrs = listCsrs(request);
+          if (encodedCsrs.isEmpty()) {
+            throw new HttpRespAuditException(BAD_REQUEST, "no CSR is specified", INFO, FAILED);
+          }
+
+          List<CertTemplateData> certTemplates = new ArrayList<>(encodedCsrs.size());
+          for (byte[] encodedCsr : encodedCsrs) {
+            CertificationRequest csr = CertificationRequest.getInstance(encodedCsr);
+            if (!ca.verifyCsr(csr)) {
+              throw new OperationException(ErrorCode.BAD_POP);
+            }
+
+            CertificationRequestInfo certTemp = csr.getCertificationRequestInfo();
+            certTemplates.add(new CertTemplateData(certTemp.getSubject(),
+                certTemp.getSubjectPublicKeyInfo(), notBefore, notAfter,
+                CaUtil.getExtensions(certTemp), profile));
+          }
+
+          event.addEventData(CaAuditConstants.NAME_num, certTemplates.size());
+          List<CertificateInfo> certInfos = ca.generateCertsInBulk(certTemplates, requestor,
+              false, RequestType.REST, null, request, msgId);
+
+          ByteArrayOutputStream bout = new ByteArrayOutputStream();
+          for (CertificateInfo certInfo : certInfos) {
+            bout.write(
+                PemEncoder.encode(certInfo.getCert().getEncodedCert(), PemLabel.CERTIFICATE));
+            bout.write('\r');
+            bout.write('\n');
+          }
+
+          respCt = RestAPIConstants.CT_pem_file;
+          respBytes = bout.toByteArray();
         } else {
           String ct = httpRetriever.getHeader("Content-Type");
           if (!RestAPIConstants.CT_pkcs10.equalsIgnoreCase(ct)) {
@@ -527,15 +578,23 @@ public class RestResponder {
           }
         }
 
-        X509CRL crl = ca.getCrl(crlNumber);
+        CrlCache.CachedCrl crl = ca.getCachedCrl(crlNumber);
         if (crl == null) {
           String message = "could not get CRL";
           LOG.warn(message);
           throw new HttpRespAuditException(INTERNAL_SERVER_ERROR, message, INFO, FAILED);
         }
 
-        respCt = RestAPIConstants.CT_pkix_crl;
-        respBytes = crl.getEncoded();
+        Map<String, String> headers = new HashMap<>();
+        headers.put(RestAPIConstants.HEADER_PKISTATUS, RestAPIConstants.PKISTATUS_accepted);
+        headers.put("ETag", crl.getEtag());
+        headers.put("Last-Modified", formatHttpDate(crl.getThisUpdate()));
+
+        if (isNotModified(httpRetriever, crl)) {
+          return new RestResponse(NOT_MODIFIED, null, headers, null);
+        }
+
+        return new RestResponse(OK, RestAPIConstants.CT_pkix_crl, headers, crl.getEncoded());
       } else if (RestAPIConstants.CMD_new_crl.equalsIgnoreCase(command)) {
         try {
           requestor.assertPermitted(PermissionConstants.GEN_CRL);
@@ -543,7 +602,7 @@ public class RestResponder {
           throw new OperationException(ErrorCode.NOT_PERMITTED, ex.getMessage());
         }
 
-        X509CRL crl = ca.generateCrlOnDemand(msgId);
+        CrlCache.CachedCrl crl = ca.generateCrlOnDemand(msgId);
         if (crl == null) {
           String message = "could not generate CRL";
           LOG.warn(message);
@@ -670,6 +729,78 @@ public class RestResponder {
     }
   } // method service
 
+  /**
+   * Evaluates the conditional headers If-None-Match and If-Modified-Since as specified in
+   * RFC 7232. If-Modified-Since is ignored if If-None-Match is present.
+   */
+  private static boolean isNotModified(HttpRequestMetadataRetriever httpRetriever,
+      CrlCache.CachedCrl crl) {
+    String ifNoneMatch = httpRetriever.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      String etag = crl.getEtag();
+      for (String tag : ifNoneMatch.split(",")) {
+        tag = tag.trim();
+        if (tag.startsWith("W/")) {
+          tag = tag.substring(2);
+        }
+
+        if ("*".equals(tag) || etag.equals(tag)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    String ifModifiedSince = httpRetriever.getHeader("If-Modified-Since");
+    if (ifModifiedSince != null) {
+      try {
+        Date since = newHttpDateFormat().parse(ifModifiedSince.trim());
+        // the HTTP date has the precision of seconds
+        return crl.getThisUpdate().getTime() / 1000 <= since.getTime() / 1000;
+      } catch (ParseException ex) {
+        LOG.debug("ignore invalid If-Modified-Since '{}'", ifModifiedSince);
+      }
+    }
+
+    return false;
+  } // method isNotModified
+
+  private static String formatHttpDate(Date date) {
+    return newHttpDateFormat().format(date);
+  }
+
+  private static SimpleDateFormat newHttpDateFormat() {
+    SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+    format.setTimeZone(TimeZone.getTimeZone("GMT"));
+    return format;
+  }
+
+  private static List<byte[]> listCsrs(byte[] request) throws IOException {
+    final String beginCsr = "-----BEGIN CERTIFICATE REQUEST-----";
+    final String endCsr = "-----END CERTIFICATE REQUEST-----";
+
+    List<byte[]> csrs = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(new ByteArrayInputStream(request), StandardCharsets.UTF_8))) {
+      String line;
+      StringBuilder sb = null;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (beginCsr.equals(line)) {
+          sb = new StringBuilder();
+        } else if (endCsr.equals(line)) {
+          if (sb != null) {
+            csrs.add(Base64.decode(sb.toString()));
+            sb = null;
+          }
+        } else if (sb != null) {
+          sb.append(line);
+        }
+      }
+    }
+    return csrs;
+  } // method listCsrs
+
   private static BigInteger toBigInt(String str) {
     String tmpStr = str.trim();
     if (tmpStr.startsWith("0x") || tmpStr.startsWith("0X")) {
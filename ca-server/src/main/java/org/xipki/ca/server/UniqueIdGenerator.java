@@ -17,8 +17,7 @@
 
 package org.xipki.ca.server;
 
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.IntBinaryOperator;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.xipki.util.Args;
 
@@ -33,6 +32,10 @@ import org.xipki.util.Args;
  *  <li>shard_id: 7 bits
  * </ol>
  *
+ * <p>The generated ids are strictly increasing. If the 1024 offsets of a millisecond are
+ * exhausted, the next millisecond is used. If the clock goes backwards, the ids continue
+ * after the last generated id, until the clock catches up.
+ *
  * <p>Idea is borrowed from http://instagram-engineering.tumblr.com/post/10853187575/sharding-ids-at-instagram
  * @author Lijun Liao
  * @since 2.0.0
@@ -41,42 +44,36 @@ import org.xipki.util.Args;
 
 class UniqueIdGenerator {
 
-  private static class OffsetIncrement implements IntBinaryOperator {
-
-    @Override
-    public int applyAsInt(int left, int right) {
-      return (left >= right) ? 0 : left + 1;
-    }
-
-  }
+  private static final int OFFSET_BITS = 10;
 
-  // maximal 10 bits
-  private static final int MAX_OFFSET = 0x3FF;
+  private static final int SHARD_BITS = 7;
 
   private final long epoch; // in milliseconds
 
   private final int shardId; // 7 bits
 
-  private final AtomicInteger offset = new AtomicInteger(0);
-
-  private final IntBinaryOperator accumulatorFunction;
+  // last generated id without shard_id, namely (ms since epoch << OFFSET_BITS) + offset
+  private final AtomicLong last = new AtomicLong(0);
 
   public UniqueIdGenerator(long epoch, int shardId) {
     this.epoch = Args.notNegative(epoch, "epoch");
     this.shardId = Args.range(shardId, "shardId", 0, 127);
-    this.accumulatorFunction = new OffsetIncrement();
   } // constructor
 
   public long nextId() {
-    long now = System.currentTimeMillis();
-    long ret = now - epoch;
-    ret <<= 10;
-
-    ret += offset.getAndAccumulate(MAX_OFFSET, accumulatorFunction);
-    ret <<= 7;
+    return nextId(System.currentTimeMillis());
+  }
 
-    ret += shardId;
-    return ret;
+  long nextId(long now) {
+    long min = (now - epoch) << OFFSET_BITS;
+    while (true) {
+      long prev = last.get();
+      // the first offset of the current millisecond, or the successor of the last id
+      long next = (min > prev) ? min : prev + 1;
+      if (last.compareAndSet(prev, next)) {
+        return (next << SHARD_BITS) + shardId;
+      }
+    }
   } // method nextId
 
 }
@@ -55,19 +55,31 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.bouncycastle.asn1.ASN1EncodableVector;
-import org.bouncycastle.asn1.ASN1GeneralizedTime;
 import org.bouncycastle.asn1.ASN1Integer;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.ASN1Sequence;
@@ -75,7 +87,6 @@ import org.bouncycastle.asn1.DERNull;
 import org.bouncycastle.asn1.DEROctetString;
 import org.bouncycastle.asn1.DERPrintableString;
 import org.bouncycastle.asn1.DERSequence;
-import org.bouncycastle.asn1.DERSet;
 import org.bouncycastle.asn1.DERTaggedObject;
 import org.bouncycastle.asn1.DERUTF8String;
 import org.bouncycastle.asn1.pkcs.CertificationRequest;
@@ -87,22 +98,17 @@ import org.bouncycastle.asn1.x500.RDN;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
 import org.bouncycastle.asn1.x509.CRLDistPoint;
-import org.bouncycastle.asn1.x509.CRLReason;
 import org.bouncycastle.asn1.x509.Certificate;
 import org.bouncycastle.asn1.x509.CertificateList;
 import org.bouncycastle.asn1.x509.DistributionPointName;
 import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.Extensions;
-import org.bouncycastle.asn1.x509.GeneralName;
-import org.bouncycastle.asn1.x509.GeneralNames;
 import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
 import org.bouncycastle.asn1.x509.ReasonFlags;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
 import org.bouncycastle.asn1.x509.Time;
 import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
 import org.bouncycastle.cert.CertIOException;
-import org.bouncycastle.cert.X509CRLHolder;
-import org.bouncycastle.cert.X509v2CRLBuilder;
 import org.bouncycastle.cert.X509v3CertificateBuilder;
 import org.bouncycastle.crypto.RuntimeCryptoException;
 import org.slf4j.Logger;
@@ -131,6 +137,7 @@ import org.xipki.ca.api.mgmt.CrlControl;
 import org.xipki.ca.api.mgmt.CrlControl.HourMinute;
 import org.xipki.ca.api.mgmt.MgmtEntry;
 import org.xipki.ca.api.mgmt.RequestorInfo;
+import org.xipki.ca.api.mgmt.RevokeCertsResult;
 import org.xipki.ca.api.mgmt.ValidityMode;
 import org.xipki.ca.api.profile.Certprofile;
 import org.xipki.ca.api.profile.Certprofile.ExtensionControl;
@@ -394,8 +401,257 @@ public class X509Ca implements Closeable {
 
   }
 
+  private static class PublishQueueBatch {
+
+    private final List<Long> certIds;
+
+    private final Map<Long, CertificateInfo> certs;
+
+    PublishQueueBatch(List<Long> certIds, Map<Long, CertificateInfo> certs) {
+      this.certIds = certIds;
+      this.certs = certs;
+    }
+
+  } // class PublishQueueBatch
+
+  /**
+   * Loads the next batch of certificates in the publish queue.
+   */
+  private class PublishQueueBatchLoader implements Callable<PublishQueueBatch> {
+
+    private final NameId publisher;
+
+    private final long startId;
+
+    PublishQueueBatchLoader(NameId publisher, long startId) {
+      this.publisher = publisher;
+      this.startId = startId;
+    }
+
+    @Override
+    public PublishQueueBatch call() throws OperationException {
+      List<Long> certIds = certstore.getPublishQueueEntries(caIdent, publisher, startId,
+          PUBLISH_QUEUE_BATCH_SIZE);
+      Map<Long, CertificateInfo> certs = certIds.isEmpty()
+          ? Collections.<Long, CertificateInfo>emptyMap()
+          : certstore.getCertsForIds(caIdent, caCert, certIds, caIdNameMap);
+      return new PublishQueueBatch(certIds, certs);
+    }
+
+  } // class PublishQueueBatchLoader
+
+  /**
+   * Backend of the {@link CertPublishPipeline} of one publisher.
+   */
+  private class PipelineBackend implements CertPublishPipeline.Backend {
+
+    private final IdentifiedCertPublisher publisher;
+
+    private final String name;
+
+    PipelineBackend(IdentifiedCertPublisher publisher) {
+      this.publisher = publisher;
+      this.name = "publisher " + publisher.getIdent().getName() + " of CA " + caIdent.getName();
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public boolean isHealthy() {
+      return publisher.isHealthy();
+    }
+
+    @Override
+    public List<Long> publishCurrentStates(List<Long> certIds) {
+      Map<Long, CertificateInfo> certs;
+      try {
+        certs = certstore.getCertsForIds(caIdent, caCert, certIds, caIdNameMap);
+      } catch (OperationException ex) {
+        LogUtil.error(LOG, ex, "could not load certificates to be published to " + name);
+        return certIds;
+      }
+
+      // removed certificates are ignored
+      List<Long> ids = new ArrayList<>(certs.size());
+      List<CertificateInfo> certInfos = new ArrayList<>(certs.size());
+      for (Long certId : certIds) {
+        CertificateInfo certInfo = certs.get(certId);
+        if (certInfo != null) {
+          ids.add(certId);
+          certInfos.add(certInfo);
+        }
+      }
+
+      if (certInfos.isEmpty()) {
+        return Collections.emptyList();
+      }
+
+      boolean[] published = publisher.certificatesAdded(certInfos);
+      List<Long> failed = new ArrayList<>();
+      for (int i = 0; i < ids.size(); i++) {
+        if (published == null || !published[i]) {
+          failed.add(ids.get(i));
+        }
+      }
+      return failed;
+    } // method publishCurrentStates
+
+    @Override
+    public boolean publishRemoved(CertWithDbId cert) {
+      return publisher.certificateRemoved(caCert, cert);
+    }
+
+    @Override
+    public void addToPublishQueue(List<Long> certIds) {
+      try {
+        certstore.addToPublishQueue(publisher.getIdent(), certIds, caIdent);
+      } catch (OperationException ex) {
+        throw new IllegalStateException(ex.getMessage(), ex);
+      }
+    }
+
+  } // class PipelineBackend
+
+  /**
+   * Generates one certificate of a bulk enrollment without saving it.
+   */
+  private class BulkCertTask implements Callable<Void> {
+
+    private final int index;
+
+    private final GrantedCertTemplate gct;
+
+    private final RequestorInfo requestor;
+
+    private final RequestType reqType;
+
+    private final byte[] transactionId;
+
+    private final AuditEvent event;
+
+    private boolean prepared;
+
+    private CertificateInfo certInfo;
+
+    private OperationException error;
+
+    BulkCertTask(int index, GrantedCertTemplate gct, RequestorInfo requestor,
+        RequestType reqType, byte[] transactionId, String msgId) {
+      this.index = index;
+      this.gct = gct;
+      this.requestor = requestor;
+      this.reqType = reqType;
+      this.transactionId = transactionId;
+      this.event = newPerfAuditEvent(CaAuditConstants.TYPE_gen_cert, msgId);
+    } // constructor
+
+    @Override
+    public Void call() {
+      try {
+        prepareCert(gct, event);
+        prepared = true;
+        certInfo = buildCert(gct, requestor, reqType, transactionId);
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("generated certificate {}: CA={}, serial={}", index, caIdent.getName(),
+              LogUtil.formatCsn(certInfo.getCert().getCert().getSerialNumber()));
+        }
+      } catch (OperationException ex) {
+        error = ex;
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "could not generate certificate");
+        error = new OperationException(SYSTEM_FAILURE, th);
+      }
+      return null;
+    } // method call
+
+    void finish(boolean successful) {
+      if (prepared) {
+        releaseCertInProcess(gct);
+      }
+      X509Ca.this.finish(event, successful && error == null);
+    } // method finish
+
+  } // class BulkCertTask
+
+  /**
+   * Generates and saves one certificate independently of the others.
+   */
+  private class IndependentCertTask implements Callable<Void> {
+
+    private final CertTemplateData certTemplate;
+
+    private final RequestorInfo requestor;
+
+    private final boolean update;
+
+    private final RequestType reqType;
+
+    private final byte[] transactionId;
+
+    private final String msgId;
+
+    private CertResult result;
+
+    IndependentCertTask(CertTemplateData certTemplate, RequestorInfo requestor, boolean update,
+        RequestType reqType, byte[] transactionId, String msgId) {
+      this.certTemplate = certTemplate;
+      this.requestor = requestor;
+      this.update = update;
+      this.reqType = reqType;
+      this.transactionId = transactionId;
+      this.msgId = msgId;
+    } // constructor
+
+    @Override
+    public Void call() {
+      try {
+        CertificateInfo certInfo = generateCerts(Arrays.asList(certTemplate), requestor, update,
+            reqType, transactionId, msgId).get(0);
+        result = new CertResult(certInfo, null);
+      } catch (OperationException ex) {
+        result = new CertResult(null, ex);
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "could not generate certificate");
+        result = new CertResult(null, new OperationException(SYSTEM_FAILURE, th));
+      }
+      return null;
+    } // method call
+
+  } // class IndependentCertTask
+
+  /**
+   * Result of the generation of one certificate, either the certificate or the error.
+   */
+  public static class CertResult {
+
+    private final CertificateInfo certInfo;
+
+    private final OperationException error;
+
+    CertResult(CertificateInfo certInfo, OperationException error) {
+      this.certInfo = certInfo;
+      this.error = error;
+    }
+
+    public CertificateInfo getCertInfo() {
+      return certInfo;
+    }
+
+    public OperationException getError() {
+      return error;
+    }
+
+  } // class CertResult
+
   private static final TimeZone TIMEZONE_UTC = TimeZone.getTimeZone("UTC");
 
+  private static final int BULK_CHUNK_SIZE = 1000;
+
+  private static final int PUBLISH_QUEUE_BATCH_SIZE = 500;
+
   private static final long MS_PER_SECOND = 1000L;
 
   private static final long MS_PER_MINUTE = 60000L;
@@ -443,6 +699,20 @@ public class X509Ca implements Closeable {
 
   private ScheduledFuture<?> suspendedCertsRevoker;
 
+  // generates the certificates of the bulk enrollments
+  private ExecutorService bulkCertGenExecutor;
+
+  // generates the certificates of the requests with independent templates
+  private ExecutorService certGenExecutor;
+
+  private ExecutorService publishQueueExecutor;
+
+  private final int publishBufferSize;
+
+  private final CaServerConf.CertGen certGenConf;
+
+  private final Map<String, CertPublishPipeline> publishPipelines = new HashMap<>();
+
   private final ConcurrentSkipListSet<Long> publicKeyCertsInProcess = new ConcurrentSkipListSet<>();
 
   private final ConcurrentSkipListSet<Long> subjectCertsInProcess = new ConcurrentSkipListSet<>();
@@ -458,6 +728,11 @@ public class X509Ca implements Closeable {
     this.caIdent = caInfo.getIdent();
     this.caCert = caInfo.getCert();
     this.certstore = Args.notNull(certstore, "certstore");
+    CaServerConf caServerConf = caManager.getCaServerConf();
+    this.publishBufferSize = (caServerConf == null) ? 0 : caServerConf.getPublishBufferSize();
+    CaServerConf.CertGen tmpCertGenConf = (caServerConf == null) ? null
+        : caServerConf.getCertGen();
+    this.certGenConf = (tmpCertGenConf == null) ? new CaServerConf.CertGen() : tmpCertGenConf;
 
     SubjectPublicKeyInfo caSpki = this.caCert.getCertHolder().getSubjectPublicKeyInfo();
     ASN1ObjectIdentifier caSpkiAlgId = caSpki.getAlgorithm().getAlgorithm();
@@ -616,32 +891,17 @@ public class X509Ca implements Closeable {
   }
 
   public X509CRL getCrl(BigInteger crlNumber) throws OperationException {
-    LOG.info("     START getCrl: ca={}, crlNumber={}", caIdent.getName(), crlNumber);
-    boolean successful = false;
+    CrlCache.CachedCrl cachedCrl = getCachedCrl(crlNumber);
+    if (cachedCrl == null) {
+      return null;
+    }
 
     try {
-      byte[] encodedCrl = certstore.getEncodedCrl(caIdent, crlNumber);
-      if (encodedCrl == null) {
-        return null;
-      }
-
-      try {
-        X509CRL crl = X509Util.parseCrl(encodedCrl);
-        successful = true;
-        if (LOG.isInfoEnabled()) {
-          String timeStr = new Time(crl.getThisUpdate()).getTime();
-          LOG.info("SUCCESSFUL getCrl: ca={}, thisUpdate={}", caIdent.getName(), timeStr);
-        }
-        return crl;
-      } catch (CRLException | CertificateException ex) {
-        throw new OperationException(SYSTEM_FAILURE, ex);
-      } catch (RuntimeException ex) {
-        throw new OperationException(SYSTEM_FAILURE, ex);
-      }
-    } finally {
-      if (!successful) {
-        LOG.info("    FAILED getCrl: ca={}", caIdent.getName());
-      }
+      return cachedCrl.getCrl();
+    } catch (CRLException | CertificateException ex) {
+      throw new OperationException(SYSTEM_FAILURE, ex);
+    } catch (RuntimeException ex) {
+      throw new OperationException(SYSTEM_FAILURE, ex);
     }
   } // method getCrl
 
@@ -650,32 +910,49 @@ public class X509Ca implements Closeable {
   }
 
   public CertificateList getBcCrl(BigInteger crlNumber) throws OperationException {
+    CrlCache.CachedCrl cachedCrl = getCachedCrl(crlNumber);
+    if (cachedCrl == null) {
+      return null;
+    }
+
+    try {
+      return cachedCrl.getBcCrl();
+    } catch (RuntimeException ex) {
+      throw new OperationException(SYSTEM_FAILURE, ex);
+    }
+  } // method getBcCrl
+
+  /**
+   * Returns the encoded CRL. The CRL is read from the database only if not cached.
+   *
+   * @param crlNumber
+   *          CRL number, {@code null} for the current CRL.
+   * @return the CRL, or {@code null} if not available.
+   * @throws OperationException
+   *           if error occurs while reading the CRL.
+   */
+  public CrlCache.CachedCrl getCachedCrl(BigInteger crlNumber) throws OperationException {
     LOG.info("     START getCrl: ca={}, crlNumber={}", caIdent.getName(), crlNumber);
     boolean successful = false;
 
     try {
-      byte[] encodedCrl = certstore.getEncodedCrl(caIdent, crlNumber);
-      if (encodedCrl == null) {
+      CrlCache.CachedCrl crl = certstore.getCrl(caIdent, crlNumber);
+      if (crl == null) {
         return null;
       }
 
-      try {
-        CertificateList crl = CertificateList.getInstance(encodedCrl);
-        successful = true;
-        if (LOG.isInfoEnabled()) {
-          LOG.info("SUCCESSFUL getCrl: ca={}, thisUpdate={}", caIdent.getName(),
-              crl.getThisUpdate().getTime());
-        }
-        return crl;
-      } catch (RuntimeException ex) {
-        throw new OperationException(SYSTEM_FAILURE, ex);
+      successful = true;
+      if (LOG.isInfoEnabled()) {
+        String timeStr = new Time(crl.getThisUpdate()).getTime();
+        LOG.info("SUCCESSFUL getCrl: ca={}, thisUpdate={}", caIdent.getName(), timeStr);
       }
+      return crl;
     } finally {
       if (!successful) {
         LOG.info("    FAILED getCrl: ca={}", caIdent.getName());
       }
     }
-  } // method getCrl
+  } // method getCachedCrl
 
   private void cleanupCrlsWithoutException(String msgId) throws OperationException {
     try {
@@ -707,7 +984,7 @@ public class X509Ca implements Closeable {
     }
   } // method cleanupCrls
 
-  public X509CRL generateCrlOnDemand(String msgId) throws OperationException {
+  public CrlCache.CachedCrl generateCrlOnDemand(String msgId) throws OperationException {
     CrlControl control = caInfo.getCrlControl();
     if (control == null) {
       throw new OperationException(NOT_PERMITTED, "CA could not generate CRL");
@@ -733,7 +1010,7 @@ public class X509Ca implements Closeable {
           + (intervals + control.getOverlapDays()) * MS_PER_DAY);
 
       long maxIdOfDeltaCrlCache = certstore.getMaxIdOfDeltaCrlCache(caIdent);
-      X509CRL crl = generateCrl(false, thisUpdate, nextUpdate, msgId);
+      CrlCache.CachedCrl crl = generateCrl(false, thisUpdate, nextUpdate, msgId);
       if (crl == null) {
         return null;
       }
@@ -749,12 +1026,12 @@ public class X509Ca implements Closeable {
     }
   } // method generateCrlOnDemand
 
-  private X509CRL generateCrl(boolean deltaCrl, Date thisUpdate, Date nextUpdate, String msgId)
-      throws OperationException {
+  private CrlCache.CachedCrl generateCrl(boolean deltaCrl, Date thisUpdate, Date nextUpdate,
+      String msgId) throws OperationException {
     boolean successful = false;
     AuditEvent event = newPerfAuditEvent(CaAuditConstants.TYPE_gen_crl, msgId);
     try {
-      X509CRL crl = generateCrl0(deltaCrl, thisUpdate, nextUpdate, event, msgId);
+      CrlCache.CachedCrl crl = generateCrl0(deltaCrl, thisUpdate, nextUpdate, event, msgId);
       successful = true;
       return crl;
     } finally {
@@ -762,7 +1039,7 @@ public class X509Ca implements Closeable {
     }
   }
 
-  private X509CRL generateCrl0(boolean deltaCrl, Date thisUpdate, Date nextUpdate,
+  private CrlCache.CachedCrl generateCrl0(boolean deltaCrl, Date thisUpdate, Date nextUpdate,
       AuditEvent event, String msgId) throws OperationException {
     CrlControl control = caInfo.getCrlControl();
     if (control == null) {
@@ -785,6 +1062,7 @@ public class X509Ca implements Closeable {
     }
 
     boolean successful = false;
+    CrlStreamBuilder crlBuilder = null;
 
     try {
       SignerEntryWrapper crlSigner = getCrlSigner();
@@ -793,12 +1071,7 @@ public class X509Ca implements Closeable {
       boolean indirectCrl = (crlSigner != null);
       X500Name crlIssuer = indirectCrl ? crlSigner.getSubjectAsX500Name() : pci.getX500Subject();
 
-      X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(crlIssuer, thisUpdate);
-      if (nextUpdate != null) {
-        crlBuilder.setNextUpdate(nextUpdate);
-      }
-
-      final int numEntries = 100;
+      final CrlControl crlControl = caInfo.getCrlControl();
 
       Date notExpireAt;
       if (control.isIncludeExpiredCerts()) {
@@ -808,99 +1081,27 @@ public class X509Ca implements Closeable {
         notExpireAt = new Date(thisUpdate.getTime() - 600L * MS_PER_SECOND);
       }
 
-      long startId = 1;
+      // the entries are sorted by the crlBuilder, in runs of bounded size
+      final CrlStreamBuilder builder = new CrlStreamBuilder(crlIssuer, thisUpdate, nextUpdate,
+          indirectCrl ? pci.getX500Subject() : null);
+      crlBuilder = builder;
 
-      // we have to cache the serial entries to sort them
-      List<CertRevInfoWithSerial> allRevInfos = new LinkedList<>();
-
-      List<CertRevInfoWithSerial> revInfos;
-
-      do {
-        if (deltaCrl) {
-          revInfos = certstore.getCertsForDeltaCrl(caIdent, startId, numEntries,
-              control.isOnlyContainsCaCerts(), control.isOnlyContainsUserCerts());
-        } else {
-          revInfos = certstore.getRevokedCerts(caIdent, notExpireAt, startId, numEntries,
-              control.isOnlyContainsCaCerts(), control.isOnlyContainsUserCerts());
+      CertStore.RevokedCertConsumer consumer = new CertStore.RevokedCertConsumer() {
+        @Override
+        public void accept(CertRevInfoWithSerial revInfo) throws OperationException {
+          addCrlEntry(builder, crlControl, revInfo);
         }
-        allRevInfos.addAll(revInfos);
-
-        long maxId = 1;
-        for (CertRevInfoWithSerial revInfo : revInfos) {
-          if (revInfo.getId() > maxId) {
-            maxId = revInfo.getId();
-          }
-        } // end for
-        startId = maxId + 1;
-      } while (revInfos.size() >= numEntries); // end do
-
-      if (revInfos != null) { // free the memory
-        revInfos.clear();
-      }
-
-      // sort the list by SerialNumber ASC
-      Collections.sort(allRevInfos);
-
-      boolean isFirstCrlEntry = true;
-      CrlControl crlControl = caInfo.getCrlControl();
-
-      for (CertRevInfoWithSerial revInfo : allRevInfos) {
-        CrlReason reason = revInfo.getReason();
-        if (crlControl.isExcludeReason() && reason != CrlReason.REMOVE_FROM_CRL) {
-          reason = CrlReason.UNSPECIFIED;
-        }
-
-        Date revocationTime = revInfo.getRevocationTime();
-        Date invalidityTime = revInfo.getInvalidityTime();
+      };
 
-        switch (crlControl.getInvalidityDateMode()) {
-          case forbidden:
-            invalidityTime = null;
-            break;
-          case optional:
-            break;
-          case required:
-            if (invalidityTime == null) {
-              invalidityTime = revocationTime;
-            }
-            break;
-          default:
-            throw new IllegalStateException(
-                "unknown TripleState " + crlControl.getInvalidityDateMode());
-        }
-
-        BigInteger serial = revInfo.getSerial();
-        LOG.debug("added cert ca={} serial={} to CRL", caIdent, serial);
-
-        if (!indirectCrl || !isFirstCrlEntry) {
-          if (invalidityTime != null) {
-            crlBuilder.addCRLEntry(serial, revocationTime, reason.getCode(),
-                invalidityTime);
-          } else {
-            crlBuilder.addCRLEntry(serial, revocationTime, reason.getCode());
-          }
-          continue;
-        }
-
-        List<Extension> extensions = new ArrayList<>(3);
-        if (reason != CrlReason.UNSPECIFIED) {
-          Extension ext = createReasonExtension(reason.getCode());
-          extensions.add(ext);
-        }
-        if (invalidityTime != null) {
-          Extension ext = createInvalidityDateExtension(invalidityTime);
-          extensions.add(ext);
-        }
-
-        Extension ext = createCertificateIssuerExtension(pci.getX500Subject());
-        extensions.add(ext);
-
-        crlBuilder.addCRLEntry(serial, revocationTime,
-            new Extensions(extensions.toArray(new Extension[0])));
-        isFirstCrlEntry = false;
+      if (deltaCrl) {
+        certstore.getCertsForDeltaCrl(caIdent, control.isOnlyContainsCaCerts(),
+            control.isOnlyContainsUserCerts(), consumer);
+      } else {
+        certstore.getRevokedCerts(caIdent, notExpireAt, control.isOnlyContainsCaCerts(),
+            control.isOnlyContainsUserCerts(), consumer);
       }
 
-      allRevInfos.clear(); // free the memory
+      LOG.info("added {} entries to CRL of CA {}", builder.getNumEntries(), caIdent.getName());
 
       BigInteger crlNumber = caInfo.nextCrlNumber();
       event.addEventData(CaAuditConstants.NAME_crl_number, crlNumber);
@@ -943,7 +1144,7 @@ public class X509Ca implements Closeable {
               crlIssuer);
           crlBuilder.addExtension(Extension.freshestCRL, false, cdp);
         }
-      } catch (CertIOException | CertificateEncodingException ex) {
+      } catch (IOException | CertificateEncodingException ex) {
         LogUtil.error(LOG, ex, "crlBuilder.addExtension");
         throw new OperationException(INVALID_EXTENSION, ex);
       }
@@ -961,38 +1162,75 @@ public class X509Ca implements Closeable {
         throw new OperationException(SYSTEM_FAILURE, "NoIdleSignerException: " + ex.getMessage());
       }
 
-      X509CRLHolder crlHolder;
+      byte[] encodedCrl;
       try {
-        crlHolder = crlBuilder.build(signer0.value());
+        encodedCrl = crlBuilder.build(signer0.value());
+      } catch (IOException ex) {
+        throw new OperationException(CRL_FAILURE, ex);
       } finally {
         concurrentSigner.requiteSigner(signer0);
       }
 
-      try {
-        X509CRL crl = X509Util.toX509Crl(crlHolder.toASN1Structure());
-        caInfo.getCaEntry().setNextCrlNumber(crlNumber.longValue() + 1);
-        caManager.commitNextCrlNo(caIdent, caInfo.getCaEntry().getNextCrlNumber());
-        publishCrl(crl);
+      caInfo.getCaEntry().setNextCrlNumber(crlNumber.longValue() + 1);
+      caManager.commitNextCrlNo(caIdent, caInfo.getCaEntry().getNextCrlNumber());
+      CrlCache.CachedCrl crl = publishCrl(encodedCrl, crlNumber, thisUpdate, nextUpdate);
 
-        successful = true;
-        LOG.info("SUCCESSFUL generateCrl: ca={}, crlNumber={}, thisUpdate={}", caIdent.getName(),
-            crlNumber, crl.getThisUpdate());
+      successful = true;
+      LOG.info("SUCCESSFUL generateCrl: ca={}, crlNumber={}, thisUpdate={}", caIdent.getName(),
+          crlNumber, thisUpdate);
 
-        if (!deltaCrl) {
-          // clean up the CRL
-          cleanupCrlsWithoutException(msgId);
-        }
-        return crl;
-      } catch (CRLException | CertificateException ex) {
-        throw new OperationException(CRL_FAILURE, ex);
+      if (!deltaCrl) {
+        // clean up the CRL
+        cleanupCrlsWithoutException(msgId);
       }
+      return crl;
     } finally {
+      if (crlBuilder != null) {
+        crlBuilder.close();
+      }
+
       if (!successful) {
         LOG.info("    FAILED generateCrl: ca={}", caIdent.getName());
       }
     }
   } // method generateCrl
 
+  private void addCrlEntry(CrlStreamBuilder crlBuilder, CrlControl crlControl,
+      CertRevInfoWithSerial revInfo) throws OperationException {
+    CrlReason reason = revInfo.getReason();
+    if (crlControl.isExcludeReason() && reason != CrlReason.REMOVE_FROM_CRL) {
+      reason = CrlReason.UNSPECIFIED;
+    }
+
+    Date revocationTime = revInfo.getRevocationTime();
+    Date invalidityTime = revInfo.getInvalidityTime();
+
+    switch (crlControl.getInvalidityDateMode()) {
+      case forbidden:
+        invalidityTime = null;
+        break;
+      case optional:
+        break;
+      case required:
+        if (invalidityTime == null) {
+          invalidityTime = revocationTime;
+        }
+        break;
+      default:
+        throw new IllegalStateException(
+            "unknown TripleState " + crlControl.getInvalidityDateMode());
+    }
+
+    BigInteger serial = revInfo.getSerial();
+    LOG.debug("added cert ca={} serial={} to CRL", caIdent, serial);
+
+    try {
+      crlBuilder.addCrlEntry(serial, revocationTime, reason.getCode(), invalidityTime);
+    } catch (IOException ex) {
+      throw new OperationException(CRL_FAILURE, ex);
+    }
+  } // method addCrlEntry
+
   /**
    * Add XiPKI extension CrlCertSet.
    *
@@ -1006,66 +1244,65 @@ public class X509Ca implements Closeable {
    * }
    * </pre>
    */
-  private void addXipkiCertset(X509v2CRLBuilder crlBuilder, boolean deltaCrl, CrlControl control,
+  private void addXipkiCertset(CrlStreamBuilder crlBuilder, boolean deltaCrl, CrlControl control,
       Date notExpireAt, boolean onlyCaCerts, boolean onlyUserCerts) throws OperationException {
     if (deltaCrl || !control.isXipkiCertsetIncluded()) {
       return;
     }
 
-    ASN1EncodableVector vector = new ASN1EncodableVector();
-    final int numEntries = 100;
-    long startId = 1;
-
-    List<CertStore.SerialWithId> serials;
-    do {
-      serials = certstore.getSerialNumbers(caIdent, notExpireAt, startId, numEntries, false,
-          onlyCaCerts, onlyUserCerts);
-
-      long maxId = 1;
-      for (CertStore.SerialWithId sid : serials) {
-        if (sid.getId() > maxId) {
-          maxId = sid.getId();
-        }
-
-        ASN1EncodableVector vec = new ASN1EncodableVector();
-        vec.add(new ASN1Integer(sid.getSerial()));
-
-        if (control.isXipkiCertsetCertIncluded()) {
-          CertificateInfo certInfo;
-          try {
-            certInfo = certstore.getCertForId(caIdent, caCert, sid.getId(), caIdNameMap);
-          } catch (CertificateException ex) {
-            throw new OperationException(SYSTEM_FAILURE,
-                "CertificateException: " + ex.getMessage());
-          }
-
-          Certificate cert = Certificate.getInstance(certInfo.getCert().getEncodedCert());
+    final boolean withCert = control.isXipkiCertsetCertIncluded();
+
+    // the elements are sorted by the setWriter, with bounded memory
+    try (DerSetWriter setWriter = new DerSetWriter()) {
+      certstore.getCertsForCrlCertset(caIdent, notExpireAt, withCert, onlyCaCerts,
+          onlyUserCerts, new CertStore.CrlCertConsumer() {
+            @Override
+            public void accept(long id, BigInteger serial, int certprofileId,
+                byte[] encodedCert) throws OperationException {
+              try {
+                setWriter.add(encodeCrlCert(serial, certprofileId, encodedCert));
+              } catch (IOException ex) {
+                throw new OperationException(CRL_FAILURE, ex);
+              }
+            }
+          });
 
-          NameId profileId = certInfo.getProfile();
-          if (profileId != null) {
-            String profileName = profileId.getName();
-            ConfPairs info = new ConfPairs();
-            info.putPair("profile", profileName);
-            vec.add(new DERTaggedObject(1, new DERUTF8String(info.getEncoded())));
-          }
+      crlBuilder.addExtension(ObjectIdentifiers.Xipki.id_xipki_ext_crlCertset, false,
+          setWriter.finish());
+      LOG.info("added {} certificates to the CrlCertSet of CA {}", setWriter.getNumElements(),
+          caIdent.getName());
+    } catch (IOException ex) {
+      throw new OperationException(INVALID_EXTENSION, "IOException: " + ex.getMessage());
+    }
+  } // method addXipkiCertset
 
-          vec.add(new DERTaggedObject(true, 0, cert));
-        }
+  /**
+   * Encodes the Xipki-CrlCert, without parsing the certificate.
+   */
+  private byte[] encodeCrlCert(BigInteger serial, int certprofileId, byte[] encodedCert)
+      throws IOException {
+    byte[] encodedSerial = new ASN1Integer(serial).getEncoded();
+    if (encodedCert == null) {
+      return CrlStreamBuilder.concat(CrlStreamBuilder.derHeader(0x30, encodedSerial.length),
+          encodedSerial);
+    }
 
-        vector.add(new DERSequence(vec));
-      } // end for
+    byte[] encodedInfo = null;
+    NameId profileId = caIdNameMap.getCertprofile(certprofileId);
+    if (profileId != null) {
+      ConfPairs info = new ConfPairs();
+      info.putPair("profile", profileId.getName());
+      encodedInfo = new DERTaggedObject(1, new DERUTF8String(info.getEncoded())).getEncoded();
+    }
 
-      startId = maxId + 1;
-    } while (serials.size() >= numEntries);
-    // end do
+    // cert [0] EXPLICIT Certificate
+    byte[] certHeader = CrlStreamBuilder.derHeader(0xA0, encodedCert.length);
 
-    try {
-      crlBuilder.addExtension(ObjectIdentifiers.Xipki.id_xipki_ext_crlCertset,
-          false, new DERSet(vector));
-    } catch (CertIOException ex) {
-      throw new OperationException(INVALID_EXTENSION, "CertIOException: " + ex.getMessage());
-    }
-  }
+    int bodyLen = encodedSerial.length + (encodedInfo == null ? 0 : encodedInfo.length)
+        + certHeader.length + encodedCert.length;
+    return CrlStreamBuilder.concat(CrlStreamBuilder.derHeader(0x30, bodyLen), encodedSerial,
+        encodedInfo, certHeader, encodedCert);
+  } // method encodeCrlCert
 
   public CertificateInfo regenerateCert(CertTemplateData certTemplate,
       RequestorInfo requestor, RequestType reqType, byte[] transactionId, String msgId)
@@ -1102,7 +1339,13 @@ public class X509Ca implements Closeable {
     }
 
     for (IdentifiedCertPublisher publisher : publishers()) {
-      if (!publisher.isAsyn()) {
+      if (publisher.isAsyn()) {
+        CertPublishPipeline pipeline = getPublishPipeline(publisher);
+        if (pipeline != null) {
+          pipeline.publish(certInfo.getCert().getCertId());
+          continue;
+        }
+      } else {
         boolean successful;
         try {
           successful = publisher.certificateAdded(certInfo);
@@ -1231,82 +1474,226 @@ public class X509Ca implements Closeable {
     }
   } // method clearPublishQueue
 
+  /**
+   * Publishes the certificates in the publish queue. The publishers are processed in parallel.
+   * For each publisher, the next batch of certificates is loaded while the current one is
+   * published. A certificate which could not be published remains in the queue and does not
+   * stop the processing of the other certificates.
+   *
+   * @return whether all certificates have been published.
+   */
   public boolean publishCertsInQueue() {
+    List<IdentifiedCertPublisher> publishers = publishers();
+    if (publishers.isEmpty()) {
+      return true;
+    }
+
+    ExecutorService executor = getPublishQueueExecutor();
+    List<Future<Boolean>> futures = new ArrayList<>(publishers.size());
+    for (final IdentifiedCertPublisher publisher : publishers) {
+      futures.add(executor.submit(new Callable<Boolean>() {
+
+        @Override
+        public Boolean call() {
+          return publishCertsInQueue(publisher);
+        }
+
+      }));
+    }
+
     boolean allSuccessful = true;
-    for (IdentifiedCertPublisher publisher : publishers()) {
-      if (!publishCertsInQueue(publisher)) {
+    for (Future<Boolean> future : futures) {
+      try {
+        if (!future.get()) {
+          allSuccessful = false;
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        LOG.warn("interrupted while publishing certificates in PUBLISHQUEUE");
+        return false;
+      } catch (ExecutionException ex) {
+        LogUtil.error(LOG, ex.getCause(), "could not publish certificates in PUBLISHQUEUE");
         allSuccessful = false;
       }
     }
 
     return allSuccessful;
-  }
+  } // method publishCertsInQueue
 
   private boolean publishCertsInQueue(IdentifiedCertPublisher publisher) {
     Args.notNull(publisher, "publisher");
-    final int numEntries = 500;
+    CertPublishPipeline pipeline = publisher.isAsyn() ? getPublishPipeline(publisher) : null;
+    if (pipeline != null) {
+      return publishCertsInQueue(publisher, pipeline);
+    }
+
+    ExecutorService executor = getPublishQueueExecutor();
 
+    boolean allSuccessful = true;
+    Future<PublishQueueBatch> nextBatch =
+        executor.submit(new PublishQueueBatchLoader(publisher.getIdent(), 0));
     while (true) {
-      List<Long> certIds;
+      PublishQueueBatch batch;
       try {
-        certIds = certstore.getPublishQueueEntries(caIdent, publisher.getIdent(), numEntries);
-      } catch (OperationException ex) {
-        LogUtil.error(LOG, ex);
+        batch = nextBatch.get();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        LOG.warn("interrupted while publishing certificates in PUBLISHQUEUE");
+        return false;
+      } catch (ExecutionException ex) {
+        LogUtil.error(LOG, ex.getCause(), "could not load certificates in PUBLISHQUEUE");
         return false;
       }
 
-      if (CollectionUtil.isEmpty(certIds)) {
+      if (batch.certIds.isEmpty()) {
         break;
       }
 
-      for (Long certId : certIds) {
-        CertificateInfo certInfo;
+      long lastCertId = batch.certIds.get(batch.certIds.size() - 1);
+      nextBatch = executor.submit(new PublishQueueBatchLoader(publisher.getIdent(), lastCertId));
 
-        try {
-          certInfo = certstore.getCertForId(caIdent, caCert, certId, caIdNameMap);
-        } catch (OperationException | CertificateException ex) {
-          LogUtil.error(LOG, ex);
-          return false;
-        }
+      if (!publishQueueBatch(publisher, batch)) {
+        allSuccessful = false;
+      }
+    } // end while
 
-        boolean successful = publisher.certificateAdded(certInfo);
-        if (!successful) {
-          LOG.error("republishing certificate id={} failed", certId);
-          return false;
+    return allSuccessful;
+  } // method publishCertsInQueue
+
+  /**
+   * Publishes the certificates in the queue to a publisher with pipeline. Each batch is loaded
+   * and published while holding the publishing lock of the pipeline, so that the batch and
+   * the pipeline cannot overwrite a newer state with an older one. Hence the next batch is not
+   * prefetched.
+   */
+  private boolean publishCertsInQueue(IdentifiedCertPublisher publisher,
+      CertPublishPipeline pipeline) {
+    boolean allSuccessful = true;
+    long startId = 0;
+    while (true) {
+      PublishQueueBatch batch;
+      pipeline.lockPublishing();
+      try {
+        batch = new PublishQueueBatchLoader(publisher.getIdent(), startId).call();
+        if (batch.certIds.isEmpty()) {
+          break;
         }
 
-        try {
-          certstore.removeFromPublishQueue(publisher.getIdent(), certId);
-        } catch (OperationException ex) {
-          LogUtil.warn(LOG, ex, "could not remove republished cert id=" + certId
-              + " and publisher=" + publisher.getIdent().getName());
-          continue;
+        if (!publishQueueBatch(publisher, batch)) {
+          allSuccessful = false;
         }
-      } // end for
+      } catch (OperationException ex) {
+        LogUtil.error(LOG, ex, "could not load certificates in PUBLISHQUEUE");
+        return false;
+      } finally {
+        pipeline.unlockPublishing();
+      }
+
+      startId = batch.certIds.get(batch.certIds.size() - 1);
     } // end while
 
-    return true;
+    return allSuccessful;
   } // method publishCertsInQueue
 
-  private boolean publishCrl(X509CRL crl) {
+  private boolean publishQueueBatch(IdentifiedCertPublisher publisher, PublishQueueBatch batch) {
+    boolean allSuccessful = true;
+    // entries of removed certificates are removed from the queue
+    List<Long> processedCertIds = new ArrayList<>(batch.certIds.size());
+    List<Long> certIds = new ArrayList<>(batch.certs.size());
+    List<CertificateInfo> certInfos = new ArrayList<>(batch.certs.size());
+    for (Long certId : batch.certIds) {
+      CertificateInfo certInfo = batch.certs.get(certId);
+      if (certInfo == null) {
+        LOG.warn("certificate id={} in PUBLISHQUEUE does not exist", certId);
+        processedCertIds.add(certId);
+      } else {
+        certIds.add(certId);
+        certInfos.add(certInfo);
+      }
+    }
+
+    boolean[] published = null;
+    if (!certInfos.isEmpty()) {
+      try {
+        published = publisher.certificatesAdded(certInfos);
+      } catch (RuntimeException ex) {
+        LogUtil.error(LOG, ex, "could not publish certificates to the publisher "
+            + publisher.getIdent() + ", publish them one by one");
+      }
+
+      if (published == null || published.length != certInfos.size()) {
+        published = new boolean[certInfos.size()];
+        for (int i = 0; i < published.length; i++) {
+          try {
+            published[i] = publisher.certificateAdded(certInfos.get(i));
+          } catch (RuntimeException ex) {
+            LogUtil.error(LOG, ex, "could not publish certificate to the publisher "
+                + publisher.getIdent());
+          }
+        }
+      }
+    }
+
+    for (int i = 0; i < certIds.size(); i++) {
+      if (published[i]) {
+        processedCertIds.add(certIds.get(i));
+      } else {
+        LOG.error("republishing certificate id={} failed", certIds.get(i));
+        allSuccessful = false;
+      }
+    }
+
+    try {
+      certstore.removeFromPublishQueue(publisher.getIdent(), processedCertIds);
+    } catch (OperationException ex) {
+      LogUtil.warn(LOG, ex, "could not remove " + processedCertIds.size()
+          + " republished certificates of publisher " + publisher.getIdent().getName());
+    }
+
+    return allSuccessful;
+  } // method publishQueueBatch
+
+  private synchronized ExecutorService getPublishQueueExecutor() {
+    if (publishQueueExecutor == null) {
+      final String threadNamePrefix = "ca-" + caIdent.getName() + "-publishqueue-";
+      publishQueueExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, threadNamePrefix + counter.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+
+      });
+    }
+    return publishQueueExecutor;
+  } // method getPublishQueueExecutor
+
+  private CrlCache.CachedCrl publishCrl(byte[] encodedCrl, BigInteger crlNumber,
+      Date thisUpdate, Date nextUpdate) {
+    CrlCache.CachedCrl crl;
     try {
-      certstore.addCrl(caIdent, crl);
+      // in this version delta CRL is generated without the deltaCRLIndicator
+      crl = certstore.addCrl(caIdent, encodedCrl, crlNumber, null, thisUpdate, nextUpdate);
     } catch (Exception ex) {
       LOG.error("could not add CRL ca={}, thisUpdate={}: {}, ",
-          caIdent.getName(), crl.getThisUpdate(), ex.getMessage());
+          caIdent.getName(), thisUpdate, ex.getMessage());
       LOG.debug("Exception", ex);
-      return false;
+      return new CrlCache.CachedCrl(crlNumber, thisUpdate, encodedCrl, null);
     }
 
     for (IdentifiedCertPublisher publisher : publishers()) {
       try {
-        publisher.crlAdded(caCert, crl);
+        publisher.crlAdded(caCert, encodedCrl);
       } catch (RuntimeException ex) {
         LogUtil.error(LOG, ex, "could not publish CRL to the publisher " + publisher.getIdent());
       }
     } // end for
 
-    return true;
+    return crl;
   } // method publishCrl
 
   public CertWithRevocationInfo revokeCert(BigInteger serialNumber, CrlReason reason,
@@ -1319,7 +1706,145 @@ public class X509Ca implements Closeable {
     if (reason == null) {
       reason = CrlReason.UNSPECIFIED;
     }
+    checkRevocationReason(reason);
+
+    AuditEvent event = newPerfAuditEvent(CaAuditConstants.TYPE_revoke_cert, msgId);
+    boolean successful = true;
+    try {
+      CertWithRevocationInfo ret = revokeCertificate0(serialNumber, reason,
+          invalidityTime, false, event);
+      successful = (ret != null);
+      return ret;
+    } finally {
+      finish(event, successful);
+    }
+  } // method revokeCertificate
+
+  /**
+   * Revokes a list of certificates. The certificates are revoked in chunks of
+   * {@value #BULK_CHUNK_SIZE} certificates, each with batched database statements in one
+   * transaction. Certificates which have already been revoked are skipped, so that an
+   * interrupted revocation can be resumed by repeating it. One summary audit event is logged.
+   *
+   * @param serialNumbers
+   *          serial numbers of the certificates to be revoked.
+   * @param reason
+   *          revocation reason, {@code null} for unspecified.
+   * @param invalidityTime
+   *          invalidity time, may be {@code null}.
+   * @param msgId
+   *          message ID for the audit.
+   * @return the result of the revocation.
+   * @throws OperationException
+   *           if error occurs.
+   */
+  public RevokeCertsResult revokeCerts(List<BigInteger> serialNumbers, CrlReason reason,
+      Date invalidityTime, String msgId) throws OperationException {
+    Args.notNull(serialNumbers, "serialNumbers");
+    if (reason == null) {
+      reason = CrlReason.UNSPECIFIED;
+    }
+    checkRevocationReason(reason);
+
+    AuditEvent event = newPerfAuditEvent(CaAuditConstants.TYPE_revoke_certs, msgId);
+    event.addEventData(CaAuditConstants.NAME_num, serialNumbers.size());
+    event.addEventData(CaAuditConstants.NAME_reason, reason.getDescription());
+    if (invalidityTime != null) {
+      event.addEventData(CaAuditConstants.NAME_invalidity_time,
+          DateUtil.toUtcTimeyyyyMMddhhmmss(invalidityTime));
+    }
+
+    LOG.info("     START revokeCertificates: ca={}, num={}, reason={}, invalidityTime={}",
+        caIdent.getName(), serialNumbers.size(), reason.getDescription(), invalidityTime);
+
+    RevokeCertsResult result = new RevokeCertsResult();
+    boolean successful = false;
+    try {
+      // duplicated serial numbers are revoked once
+      Set<BigInteger> serials = new LinkedHashSet<>(serialNumbers);
+      Iterator<BigInteger> it = serials.iterator();
+      while (it.hasNext()) {
+        BigInteger serialNumber = it.next();
+        if (caInfo.isSelfSigned() && caInfo.getSerialNumber().equals(serialNumber)) {
+          LOG.warn("insufficient permission to revoke CA certificate");
+          result.getFailedSerialNumbers().add(serialNumber);
+          it.remove();
+        }
+      }
+
+      List<BigInteger> serialList = new ArrayList<>(serials);
+      final int n = serialList.size();
+      for (int offset = 0; offset < n; offset += BULK_CHUNK_SIZE) {
+        List<BigInteger> chunk =
+            serialList.subList(offset, Math.min(n, offset + BULK_CHUNK_SIZE));
+        CertRevocationInfo revInfo = new CertRevocationInfo(reason, new Date(), invalidityTime);
+        List<CertWithRevocationInfo> revokedCerts = certstore.revokeCerts(caIdent, chunk,
+            revInfo, shouldPublishToDeltaCrlCache(), caIdNameMap, result);
+        publishCertsRevoked(revokedCerts);
+
+        LOG.info("revokeCertificates: ca={}, processed {}/{}, revoked={}, alreadyRevoked={}, "
+            + "failed={}", caIdent.getName(), offset + chunk.size(), n, result.getNumRevoked(),
+            result.getNumAlreadyRevoked(), result.getFailedSerialNumbers().size());
+      }
+
+      successful = true;
+    } finally {
+      event.addEventData(CaAuditConstants.NAME_num_revoked, result.getNumRevoked());
+      event.addEventData(CaAuditConstants.NAME_num_already_revoked,
+          result.getNumAlreadyRevoked());
+      event.addEventData(CaAuditConstants.NAME_num_failed,
+          result.getFailedSerialNumbers().size());
+      finish(event, successful);
+    }
+
+    LOG.info("SUCCESSFUL revokeCertificates: ca={}, revoked={}, alreadyRevoked={}, failed={}",
+        caIdent.getName(), result.getNumRevoked(), result.getNumAlreadyRevoked(),
+        result.getFailedSerialNumbers().size());
+    return result;
+  } // method revokeCerts
+
+  private void publishCertsRevoked(List<CertWithRevocationInfo> revokedCerts) {
+    if (revokedCerts.isEmpty()) {
+      return;
+    }
 
+    for (IdentifiedCertPublisher publisher : publishers()) {
+      boolean[] published = null;
+      if (publisher.isAsyn()) {
+        CertPublishPipeline pipeline = getPublishPipeline(publisher);
+        if (pipeline != null) {
+          List<Long> certIds = new ArrayList<>(revokedCerts.size());
+          for (CertWithRevocationInfo revokedCert : revokedCerts) {
+            certIds.add(revokedCert.getCert().getCertId());
+          }
+          pipeline.publish(certIds);
+          continue;
+        }
+      } else {
+        try {
+          published = publisher.certificatesRevoked(caCert, revokedCerts);
+        } catch (RuntimeException ex) {
+          LogUtil.error(LOG, ex, "could not publish revocation of certificates to the publisher "
+              + publisher.getIdent());
+        }
+      }
+
+      List<Long> queuedCertIds = new ArrayList<>();
+      for (int i = 0; i < revokedCerts.size(); i++) {
+        if (published == null || !published[i]) {
+          queuedCertIds.add(revokedCerts.get(i).getCert().getCertId());
+        }
+      }
+
+      try {
+        certstore.addToPublishQueue(publisher.getIdent(), queuedCertIds, caIdent);
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "could not add entries to PublishQueue");
+      }
+    } // end for
+  } // method publishCertsRevoked
+
+  private static void checkRevocationReason(CrlReason reason) throws OperationException {
     switch (reason) {
       case CA_COMPROMISE:
       case AA_COMPROMISE:
@@ -1334,21 +1859,10 @@ public class X509Ca implements Closeable {
       case CERTIFICATE_HOLD:
       case PRIVILEGE_WITHDRAWN:
         break;
-      default:
-        throw new IllegalStateException("unknown CRL reason " + reason);
-    } // switch (reason)
-
-    AuditEvent event = newPerfAuditEvent(CaAuditConstants.TYPE_revoke_cert, msgId);
-    boolean successful = true;
-    try {
-      CertWithRevocationInfo ret = revokeCertificate0(serialNumber, reason,
-          invalidityTime, false, event);
-      successful = (ret != null);
-      return ret;
-    } finally {
-      finish(event, successful);
-    }
-  } // method revokeCertificate
+      default:
+        throw new IllegalStateException("unknown CRL reason " + reason);
+    } // switch (reason)
+  } // method checkRevocationReason
 
   public CertWithDbId unrevokeCert(BigInteger serialNumber, String msgId)
       throws OperationException {
@@ -1396,7 +1910,16 @@ public class X509Ca implements Closeable {
 
     boolean successful = true;
     CertWithDbId certToRemove = certWithRevInfo.getCert();
+    List<CertPublishPipeline> pipelines = new ArrayList<>();
     for (IdentifiedCertPublisher publisher : publishers()) {
+      if (publisher.isAsyn()) {
+        CertPublishPipeline pipeline = getPublishPipeline(publisher);
+        if (pipeline != null) {
+          pipelines.add(pipeline);
+          continue;
+        }
+      }
+
       boolean singleSuccessful;
       try {
         singleSuccessful = publisher.certificateRemoved(caCert, certToRemove);
@@ -1425,6 +1948,12 @@ public class X509Ca implements Closeable {
     }
 
     certstore.removeCert(caIdent, serialNumber);
+
+    // published after the removal from the database, so that the pipelines cannot load the
+    // certificate again
+    for (CertPublishPipeline pipeline : pipelines) {
+      pipeline.publishRemoved(certToRemove);
+    }
     return certToRemove;
   } // method removeCertificate0
 
@@ -1451,7 +1980,13 @@ public class X509Ca implements Closeable {
     }
 
     for (IdentifiedCertPublisher publisher : publishers()) {
-      if (!publisher.isAsyn()) {
+      if (publisher.isAsyn()) {
+        CertPublishPipeline pipeline = getPublishPipeline(publisher);
+        if (pipeline != null) {
+          pipeline.publish(revokedCert.getCert().getCertId());
+          continue;
+        }
+      } else {
         boolean successful;
         try {
           successful = publisher.certificateRevoked(caCert, revokedCert.getCert(),
@@ -1517,7 +2052,13 @@ public class X509Ca implements Closeable {
     }
 
     for (IdentifiedCertPublisher publisher : publishers()) {
-      if (!publisher.isAsyn()) {
+      if (publisher.isAsyn()) {
+        CertPublishPipeline pipeline = getPublishPipeline(publisher);
+        if (pipeline != null) {
+          pipeline.publish(revokedCert.getCert().getCertId());
+          continue;
+        }
+      } else {
         boolean successful;
         try {
           successful = publisher.certificateRevoked(caCert, revokedCert.getCert(),
@@ -1564,7 +2105,13 @@ public class X509Ca implements Closeable {
     }
 
     for (IdentifiedCertPublisher publisher : publishers()) {
-      if (!publisher.isAsyn()) {
+      if (publisher.isAsyn()) {
+        CertPublishPipeline pipeline = getPublishPipeline(publisher);
+        if (pipeline != null) {
+          pipeline.publish(unrevokedCert.getCertId());
+          continue;
+        }
+      } else {
         boolean successful;
         try {
           successful = publisher.certificateUnrevoked(caCert, unrevokedCert);
@@ -1696,19 +2243,7 @@ public class X509Ca implements Closeable {
       String msgId) throws OperationExceptionWithIndex {
     Args.notEmpty(certTemplates, "certTemplates");
     final int n = certTemplates.size();
-    List<GrantedCertTemplate> gcts = new ArrayList<>(n);
-
-    for (int i = 0; i < n; i++) {
-      CertTemplateData certTemplate = certTemplates.get(i);
-      try {
-        GrantedCertTemplate gct = createGrantedCertTemplate(certTemplate, requestor, update);
-        gcts.add(gct);
-      } catch (OperationException ex) {
-        LOG.error("     FAILED createGrantedCertTemplate: CA={}, profile={}, subject='{}'",
-            caIdent.getName(), certTemplate.getCertprofileName(), certTemplate.getSubject());
-        throw new OperationExceptionWithIndex(i, ex);
-      }
-    }
+    List<GrantedCertTemplate> gcts = createGrantedCertTemplates(certTemplates, requestor, update);
 
     List<CertificateInfo> certInfos = new ArrayList<>(n);
     OperationExceptionWithIndex exception = null;
@@ -1749,24 +2284,356 @@ public class X509Ca implements Closeable {
     }
 
     if (exception != null) {
-      LOG.error("could not generate certificate for request[{}], reverted all generated"
-          + " certificates", exception.getIndex());
-      // delete generated certificates
-      for (CertificateInfo m : certInfos) {
-        BigInteger serial = m.getCert().getCert().getSerialNumber();
-        try {
-          removeCert(serial, msgId);
-        } catch (Throwable thr) {
-          LogUtil.error(LOG, thr, "could not delete certificate serial=" + serial);
+      revertCerts(certInfos, exception, msgId);
+      throw exception;
+    }
+
+    return certInfos;
+  } // method generateCerts
+
+  private List<GrantedCertTemplate> createGrantedCertTemplates(
+      List<CertTemplateData> certTemplates, RequestorInfo requestor, boolean update)
+      throws OperationExceptionWithIndex {
+    final int n = certTemplates.size();
+    List<GrantedCertTemplate> gcts = new ArrayList<>(n);
+
+    for (int i = 0; i < n; i++) {
+      CertTemplateData certTemplate = certTemplates.get(i);
+      try {
+        GrantedCertTemplate gct = createGrantedCertTemplate(certTemplate, requestor, update);
+        gcts.add(gct);
+      } catch (OperationException ex) {
+        LOG.error("     FAILED createGrantedCertTemplate: CA={}, profile={}, subject='{}'",
+            caIdent.getName(), certTemplate.getCertprofileName(), certTemplate.getSubject());
+        throw new OperationExceptionWithIndex(i, ex);
+      }
+    }
+    return gcts;
+  } // method createGrantedCertTemplates
+
+  private void revertCerts(List<CertificateInfo> certInfos,
+      OperationExceptionWithIndex exception, String msgId) {
+    LOG.error("could not generate certificate for request[{}], reverted all generated"
+        + " certificates", exception.getIndex());
+    // delete generated certificates
+    for (CertificateInfo m : certInfos) {
+      BigInteger serial = m.getCert().getCert().getSerialNumber();
+      try {
+        removeCert(serial, msgId);
+      } catch (Throwable thr) {
+        LogUtil.error(LOG, thr, "could not delete certificate serial=" + serial);
+      }
+    }
+
+    LogUtil.warn(LOG, exception);
+  } // method revertCerts
+
+  /**
+   * Generates the certificates of a bulk enrollment. The certificates are signed in parallel,
+   * and saved in chunks of {@value #BULK_CHUNK_SIZE} certificates, each in one transaction with
+   * JDBC batches for the certificates, the request references and the publish queue.
+   *
+   * <p>As in {@link #generateCerts(List, RequestorInfo, RequestType, byte[], String)}, all
+   * certificates are reverted if one certificate could not be generated.
+   *
+   * @param certTemplates
+   *          the certificate templates. Must not be {@code null} or empty.
+   * @param requestor
+   *          the requestor. Must not be {@code null}.
+   * @param update
+   *          whether the certificates are re-generated.
+   * @param reqType
+   *          the request type.
+   * @param transactionId
+   *          the transaction ID, may be {@code null}.
+   * @param request
+   *          the encoded request, saved if configured in the CA. May be {@code null}.
+   * @param msgId
+   *          the message ID for the audit.
+   * @return the generated certificates, in the order of the templates.
+   * @throws OperationException
+   *           if one certificate could not be generated, with the index of its template.
+   */
+  public List<CertificateInfo> generateCertsInBulk(List<CertTemplateData> certTemplates,
+      RequestorInfo requestor, boolean update, RequestType reqType, byte[] transactionId,
+      byte[] request, String msgId) throws OperationException {
+    Args.notEmpty(certTemplates, "certTemplates");
+    Args.notNull(requestor, "requestor");
+    final int n = certTemplates.size();
+    List<GrantedCertTemplate> gcts = createGrantedCertTemplates(certTemplates, requestor, update);
+
+    Long reqDbId = null;
+    if (request != null && caInfo.isSaveRequest()) {
+      try {
+        reqDbId = certstore.addRequest(request);
+      } catch (OperationException ex) {
+        LOG.warn("could not save request");
+      }
+    }
+
+    // without pipeline, the entries to the asynchronous publishers are saved together with
+    // the certificates
+    List<NameId> queuedPublishers = new ArrayList<>();
+    List<IdentifiedCertPublisher> syncPublishers = new ArrayList<>();
+    List<CertPublishPipeline> pipelines = new ArrayList<>();
+    for (IdentifiedCertPublisher publisher : publishers()) {
+      if (publisher.isAsyn()) {
+        CertPublishPipeline pipeline = getPublishPipeline(publisher);
+        if (pipeline == null) {
+          queuedPublishers.add(publisher.getIdent());
+        } else {
+          pipelines.add(pipeline);
+        }
+      } else {
+        syncPublishers.add(publisher);
+      }
+    }
+
+    LOG.info("     START generateCertsInBulk: CA={}, numCerts={}", caIdent.getName(), n);
+    long start = System.currentTimeMillis();
+
+    ExecutorService executor = getBulkCertGenExecutor();
+
+    List<CertificateInfo> certInfos = new ArrayList<>(n);
+    OperationExceptionWithIndex exception = null;
+    for (int offset = 0; offset < n && exception == null; offset += BULK_CHUNK_SIZE) {
+      final int end = Math.min(n, offset + BULK_CHUNK_SIZE);
+      List<BulkCertTask> tasks = new ArrayList<>(end - offset);
+      for (int i = offset; i < end; i++) {
+        tasks.add(new BulkCertTask(i, gcts.get(i), requestor, reqType, transactionId, msgId));
+      }
+
+      List<CertificateInfo> chunk = new ArrayList<>(tasks.size());
+      try {
+        executor.invokeAll(tasks);
+
+        for (BulkCertTask task : tasks) {
+          if (task.error != null) {
+            exception = new OperationExceptionWithIndex(task.index, task.error);
+            break;
+          }
+          chunk.add(task.certInfo);
         }
+
+        if (exception == null) {
+          certstore.addCerts(caIdent, chunk, reqDbId, queuedPublishers);
+          certInfos.addAll(chunk);
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        exception = new OperationExceptionWithIndex(offset,
+            new OperationException(SYSTEM_FAILURE, "interrupted"));
+      } catch (OperationException ex) {
+        exception = new OperationExceptionWithIndex(offset, ex);
+      } finally {
+        for (BulkCertTask task : tasks) {
+          task.finish(exception == null);
+        }
+      }
+
+      if (exception == null) {
+        publishToSyncPublishers(chunk, syncPublishers);
+        publishToPipelines(chunk, pipelines);
       }
+    }
 
-      LogUtil.warn(LOG, exception);
+    if (exception != null) {
+      revertCerts(certInfos, exception, msgId);
       throw exception;
     }
 
+    LOG.info("SUCCESSFUL generateCertsInBulk: CA={}, numCerts={}, duration={} ms",
+        caIdent.getName(), n, System.currentTimeMillis() - start);
     return certInfos;
-  }
+  } // method generateCertsInBulk
+
+  /**
+   * Generates the certificates independently of each other in parallel. Unlike
+   * {@link #generateCerts(List, RequestorInfo, RequestType, byte[], String)}, the failure of one
+   * certificate does not affect the others.
+   *
+   * @param certTemplates
+   *          the certificate templates. Must not be {@code null} or empty.
+   * @param requestor
+   *          the requestor. Must not be {@code null}.
+   * @param update
+   *          whether the certificates are re-generated.
+   * @param reqType
+   *          the request type.
+   * @param transactionId
+   *          the transaction ID, may be {@code null}.
+   * @param msgId
+   *          the message ID for the audit.
+   * @return the results, in the order of the templates.
+   */
+  public List<CertResult> generateCertsIndependently(List<CertTemplateData> certTemplates,
+      RequestorInfo requestor, boolean update, RequestType reqType, byte[] transactionId,
+      String msgId) {
+    Args.notEmpty(certTemplates, "certTemplates");
+    Args.notNull(requestor, "requestor");
+    final int n = certTemplates.size();
+
+    List<IndependentCertTask> tasks = new ArrayList<>(n);
+    for (CertTemplateData certTemplate : certTemplates) {
+      tasks.add(new IndependentCertTask(certTemplate, requestor, update, reqType,
+          transactionId, msgId));
+    }
+
+    if (n == 1) {
+      // no need to switch the thread
+      tasks.get(0).call();
+    } else {
+      try {
+        getCertGenExecutor().invokeAll(tasks);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    List<CertResult> ret = new ArrayList<>(n);
+    for (IndependentCertTask task : tasks) {
+      if (task.result == null) {
+        // not executed due to interruption
+        task.result = new CertResult(null, new OperationException(SYSTEM_FAILURE, "interrupted"));
+      }
+      ret.add(task.result);
+    }
+    return ret;
+  } // method generateCertsIndependently
+
+  private synchronized ExecutorService getBulkCertGenExecutor() {
+    if (bulkCertGenExecutor == null) {
+      bulkCertGenExecutor = newCertGenExecutor("ca-" + caIdent.getName() + "-bulkcertgen-",
+          certGenConf.getBulkThreads());
+    }
+    return bulkCertGenExecutor;
+  } // method getBulkCertGenExecutor
+
+  private synchronized ExecutorService getCertGenExecutor() {
+    if (certGenExecutor == null) {
+      certGenExecutor = newCertGenExecutor("ca-" + caIdent.getName() + "-certgen-",
+          certGenConf.getThreads());
+    }
+    return certGenExecutor;
+  } // method getCertGenExecutor
+
+  /**
+   * Creates a pool with a bounded queue. If the queue is full, the task is executed in the
+   * calling thread, so that the callers are slowed down instead of queuing without limit.
+   *
+   * @param threadNamePrefix
+   *          prefix of the names of the threads.
+   * @param threads
+   *          number of threads, the number of processors if not positive.
+   * @return the new executor.
+   */
+  private ExecutorService newCertGenExecutor(final String threadNamePrefix, int threads) {
+    int numThreads = (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+    LOG.info("CA {}: created pool {} with {} threads and queue size {}", caIdent.getName(),
+        threadNamePrefix, numThreads, certGenConf.getQueueSize());
+
+    ThreadFactory threadFactory = new ThreadFactory() {
+
+      private final AtomicInteger counter = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, threadNamePrefix + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+
+    };
+
+    RejectedExecutionHandler rejectedHandler = new RejectedExecutionHandler() {
+
+      @Override
+      public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+          // discarding the task would block ExecutorService.invokeAll() forever
+          throw new RejectedExecutionException("CA " + caIdent.getName() + " is closed");
+        }
+        runnable.run();
+      }
+
+    };
+
+    return new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(certGenConf.getQueueSize()), threadFactory,
+        rejectedHandler);
+  } // method newCertGenExecutor
+
+  private void publishToSyncPublishers(List<CertificateInfo> certInfos,
+      List<IdentifiedCertPublisher> publishers) {
+    for (IdentifiedCertPublisher publisher : publishers) {
+      for (CertificateInfo certInfo : certInfos) {
+        boolean successful;
+        try {
+          successful = publisher.certificateAdded(certInfo);
+        } catch (RuntimeException ex) {
+          successful = false;
+          LogUtil.warn(LOG, ex, "could not publish certificate to the publisher "
+              + publisher.getIdent());
+        }
+
+        if (successful) {
+          continue;
+        }
+
+        Long certId = certInfo.getCert().getCertId();
+        try {
+          certstore.addToPublishQueue(publisher.getIdent(), certId.longValue(), caIdent);
+        } catch (Throwable th) {
+          LogUtil.error(LOG, th, "could not add entry to PublishQueue");
+        }
+      }
+    }
+  } // method publishToSyncPublishers
+
+  private void publishToPipelines(List<CertificateInfo> certInfos,
+      List<CertPublishPipeline> pipelines) {
+    if (pipelines.isEmpty()) {
+      return;
+    }
+
+    List<Long> certIds = new ArrayList<>(certInfos.size());
+    for (CertificateInfo certInfo : certInfos) {
+      certIds.add(certInfo.getCert().getCertId());
+    }
+
+    for (CertPublishPipeline pipeline : pipelines) {
+      pipeline.publish(certIds);
+    }
+  } // method publishToPipelines
+
+  /**
+   * Returns the publish pipeline of the asynchronous publisher.
+   *
+   * @return the pipeline, or {@code null} if the pipelines are not activated.
+   */
+  private CertPublishPipeline getPublishPipeline(IdentifiedCertPublisher publisher) {
+    if (publishBufferSize < 1) {
+      return null;
+    }
+
+    String name = publisher.getIdent().getName();
+    synchronized (publishPipelines) {
+      CertPublishPipeline pipeline = publishPipelines.get(name);
+      if (pipeline != null && ((PipelineBackend) pipeline.getBackend()).publisher == publisher) {
+        return pipeline;
+      }
+
+      if (pipeline != null) {
+        // the publisher has been changed
+        pipeline.close();
+      }
+
+      pipeline = new CertPublishPipeline("ca-" + caIdent.getName() + "-publish-" + name,
+          new PipelineBackend(publisher), publishBufferSize);
+      publishPipelines.put(name, pipeline);
+      return pipeline;
+    }
+  } // method getPublishPipeline
 
   public CertificateInfo generateCert(CertTemplateData certTemplate, RequestorInfo requestor,
       RequestType reqType, byte[] transactionId, String msgId) throws OperationException {
@@ -1793,6 +2660,23 @@ public class X509Ca implements Closeable {
       RequestType reqType, byte[] transactionId, AuditEvent event) throws OperationException {
     Args.notNull(gct, "gct");
 
+    prepareCert(gct, event);
+    try {
+      CertificateInfo ret = buildCert(gct, requestor, reqType, transactionId);
+      if (publishCert0(ret) == 1) {
+        throw new OperationException(SYSTEM_FAILURE, "could not save certificate");
+      }
+      return ret;
+    } finally {
+      releaseCertInProcess(gct);
+    }
+  } // method generateCertificate0
+
+  /**
+   * Adapts the subject, and marks the subject and public key as in process if duplicates are
+   * not permitted.
+   */
+  private void prepareCert(GrantedCertTemplate gct, AuditEvent event) throws OperationException {
     event.addEventData(CaAuditConstants.NAME_req_subject,
         X509Util.getRfc4519Name(gct.requestedSubject));
     event.addEventData(CaAuditConstants.NAME_certprofile, gct.certprofile.getIdent().getName());
@@ -1803,8 +2687,6 @@ public class X509Ca implements Closeable {
 
     adaptGrantedSubejct(gct);
 
-    IdentifiedCertprofile certprofile = gct.certprofile;
-
     boolean duplicatedKeyNotAllowed = !caInfo.isDuplicateKeyPermitted();
     boolean duplicatedSubjectNotAllowed = !caInfo.isDuplicateSubjectPermitted();
     if (duplicatedKeyNotAllowed) {
@@ -1825,6 +2707,23 @@ public class X509Ca implements Closeable {
             "certificate with the given subject " + gct.grantedSubjectText + " already in process");
       }
     }
+  } // method prepareCert
+
+  private void releaseCertInProcess(GrantedCertTemplate gct) {
+    if (!caInfo.isDuplicateKeyPermitted()) {
+      publicKeyCertsInProcess.remove(gct.fpPublicKey);
+    }
+    if (!caInfo.isDuplicateSubjectPermitted()) {
+      subjectCertsInProcess.remove(gct.fpSubject);
+    }
+  } // method releaseCertInProcess
+
+  /**
+   * Builds and signs the certificate, without saving it.
+   */
+  private CertificateInfo buildCert(GrantedCertTemplate gct, RequestorInfo requestor,
+      RequestType reqType, byte[] transactionId) throws OperationException {
+    IdentifiedCertprofile certprofile = gct.certprofile;
 
     ExtensionControl extnSctCtrl = certprofile.getExtensionControls().get(Extn.id_SCTs);
     boolean ctlogEnabled = caInfo.getCtlogControl() != null && caInfo.getCtlogControl().isEnabled();
@@ -1837,69 +2736,31 @@ public class X509Ca implements Closeable {
       }
     }
 
-    try {
-      X509v3CertificateBuilder certBuilder = new X509v3CertificateBuilder(
-          caInfo.getPublicCaInfo().getX500Subject(), caInfo.nextSerial(), gct.grantedNotBefore,
-          gct.grantedNotAfter, gct.grantedSubject, gct.grantedPublicKey);
+    X509v3CertificateBuilder certBuilder = new X509v3CertificateBuilder(
+        caInfo.getPublicCaInfo().getX500Subject(), caInfo.nextSerial(), gct.grantedNotBefore,
+        gct.grantedNotAfter, gct.grantedSubject, gct.grantedPublicKey);
 
-      CertificateInfo ret;
+    CertificateInfo ret;
 
-      try {
-        SignerEntryWrapper crlSigner = getCrlSigner();
-        X509Certificate crlSignerCert = (crlSigner == null)
-            ? null : crlSigner.getSigner().getCertificate();
-
-        ExtensionValues extensionTuples = certprofile.getExtensions(gct.requestedSubject,
-            gct.grantedSubject, gct.extensions, gct.grantedPublicKey, caInfo.getPublicCaInfo(),
-            crlSignerCert, gct.grantedNotBefore, gct.grantedNotAfter);
-        if (extensionTuples != null) {
-          for (ASN1ObjectIdentifier extensionType : extensionTuples.getExtensionTypes()) {
-            ExtensionValue extValue = extensionTuples.getExtensionValue(extensionType);
-            certBuilder.addExtension(extensionType, extValue.isCritical(), extValue.getValue());
-          }
+    try {
+      SignerEntryWrapper crlSigner = getCrlSigner();
+      X509Certificate crlSignerCert = (crlSigner == null)
+          ? null : crlSigner.getSigner().getCertificate();
+
+      ExtensionValues extensionTuples = certprofile.getExtensions(gct.requestedSubject,
+          gct.grantedSubject, gct.extensions, gct.grantedPublicKey, caInfo.getPublicCaInfo(),
+          crlSignerCert, gct.grantedNotBefore, gct.grantedNotAfter);
+      if (extensionTuples != null) {
+        for (ASN1ObjectIdentifier extensionType : extensionTuples.getExtensionTypes()) {
+          ExtensionValue extValue = extensionTuples.getExtensionValue(extensionType);
+          certBuilder.addExtension(extensionType, extValue.isCritical(), extValue.getValue());
         }
+      }
 
-        boolean addCtlog = ctlogEnabled && extnSctCtrl != null;
-
-        if (addCtlog) {
-          certBuilder.addExtension(Extn.id_precertificate, true, DERNull.INSTANCE);
-
-          ConcurrentBagEntrySigner signer0;
-          try {
-            signer0 = gct.signer.borrowSigner();
-          } catch (NoIdleSignerException ex) {
-            throw new OperationException(SYSTEM_FAILURE, ex);
-          }
-
-          Certificate precert;
-          try {
-            precert = certBuilder.build(signer0.value()).toASN1Structure();
-          } finally {
-            // returns the signer after the signing so that it can be used by others
-            gct.signer.requiteSigner(signer0);
-          }
-
-          byte[] encodedPreCert;
-          try {
-            encodedPreCert = precert.getEncoded();
-          } catch (IOException ex) {
-            throw new CertIOException("could not encode PreCert", ex);
-          }
-          SignedCertificateTimestampList scts = getCtlogScts(encodedPreCert);
-
-          // remove the precertificate extension
-          certBuilder.removeExtension(Extn.id_precertificate);
+      boolean addCtlog = ctlogEnabled && extnSctCtrl != null;
 
-          // add the SCTs extension
-          DEROctetString extnValue;
-          try {
-            extnValue = new DEROctetString(new DEROctetString(scts.getEncoded()).getEncoded());
-          } catch (IOException ex) {
-            throw new CertIOException("could not encode SCT extension", ex);
-          }
-          certBuilder.addExtension(
-              new Extension(Extn.id_SCTs, extnSctCtrl.isCritical(), extnValue));
-        }
+      if (addCtlog) {
+        certBuilder.addExtension(Extn.id_precertificate, true, DERNull.INSTANCE);
 
         ConcurrentBagEntrySigner signer0;
         try {
@@ -1908,74 +2769,99 @@ public class X509Ca implements Closeable {
           throw new OperationException(SYSTEM_FAILURE, ex);
         }
 
-        Certificate bcCert;
+        Certificate precert;
         try {
-          bcCert = certBuilder.build(signer0.value()).toASN1Structure();
+          precert = certBuilder.build(signer0.value()).toASN1Structure();
         } finally {
+          // returns the signer after the signing so that it can be used by others
           gct.signer.requiteSigner(signer0);
         }
 
-        byte[] encodedCert = bcCert.getEncoded();
-        int maxCertSize = gct.certprofile.getMaxCertSize();
-        if (maxCertSize > 0) {
-          int certSize = encodedCert.length;
-          if (certSize > maxCertSize) {
-            throw new OperationException(NOT_PERMITTED,
-              String.format("certificate exceeds the maximal allowed size: %d > %d",
-                certSize, maxCertSize));
-          }
+        byte[] encodedPreCert;
+        try {
+          encodedPreCert = precert.getEncoded();
+        } catch (IOException ex) {
+          throw new CertIOException("could not encode PreCert", ex);
         }
+        SignedCertificateTimestampList scts = getCtlogScts(encodedPreCert);
 
-        X509Certificate cert;
+        // remove the precertificate extension
+        certBuilder.removeExtension(Extn.id_precertificate);
+
+        // add the SCTs extension
+        DEROctetString extnValue;
         try {
-          cert = X509Util.toX509Cert(bcCert);
-        } catch (CertificateException ex) {
-          String message = "should not happen, could not parse generated certificate";
-          LOG.error(message, ex);
-          throw new OperationException(SYSTEM_FAILURE, ex);
+          extnValue = new DEROctetString(new DEROctetString(scts.getEncoded()).getEncoded());
+        } catch (IOException ex) {
+          throw new CertIOException("could not encode SCT extension", ex);
         }
+        certBuilder.addExtension(
+            new Extension(Extn.id_SCTs, extnSctCtrl.isCritical(), extnValue));
+      }
 
-        if (!verifySignature(cert)) {
-          throw new OperationException(SYSTEM_FAILURE,
-              "could not verify the signature of generated certificate");
-        }
+      ConcurrentBagEntrySigner signer0;
+      try {
+        signer0 = gct.signer.borrowSigner();
+      } catch (NoIdleSignerException ex) {
+        throw new OperationException(SYSTEM_FAILURE, ex);
+      }
 
-        CertWithDbId certWithMeta = new CertWithDbId(cert, encodedCert);
-        ret = new CertificateInfo(certWithMeta, gct.privateKey, caIdent, caCert,
-            gct.grantedPublicKeyData, gct.certprofile.getIdent(), requestor.getIdent());
-        if (requestor instanceof RequestorInfo.ByUserRequestorInfo) {
-          ret.setUser((((RequestorInfo.ByUserRequestorInfo) requestor).getUserId()));
-        }
-        ret.setReqType(reqType);
-        ret.setTransactionId(transactionId);
-        ret.setRequestedSubject(gct.requestedSubject);
+      Certificate bcCert;
+      try {
+        bcCert = certBuilder.build(signer0.value()).toASN1Structure();
+      } finally {
+        gct.signer.requiteSigner(signer0);
+      }
 
-        if (publishCert0(ret) == 1) {
-          throw new OperationException(SYSTEM_FAILURE, "could not save certificate");
+      byte[] encodedCert = bcCert.getEncoded();
+      int maxCertSize = gct.certprofile.getMaxCertSize();
+      if (maxCertSize > 0) {
+        int certSize = encodedCert.length;
+        if (certSize > maxCertSize) {
+          throw new OperationException(NOT_PERMITTED,
+            String.format("certificate exceeds the maximal allowed size: %d > %d",
+              certSize, maxCertSize));
         }
-      } catch (BadCertTemplateException ex) {
-        throw new OperationException(BAD_CERT_TEMPLATE, ex);
-      } catch (OperationException ex) {
-        throw ex;
-      } catch (Throwable th) {
-        LogUtil.error(LOG, th, "could not generate certificate");
-        throw new OperationException(SYSTEM_FAILURE, th);
       }
 
-      if (gct.warning != null) {
-        ret.setWarningMessage(gct.warning);
+      X509Certificate cert;
+      try {
+        cert = X509Util.toX509Cert(bcCert);
+      } catch (CertificateException ex) {
+        String message = "should not happen, could not parse generated certificate";
+        LOG.error(message, ex);
+        throw new OperationException(SYSTEM_FAILURE, ex);
       }
 
-      return ret;
-    } finally {
-      if (duplicatedKeyNotAllowed) {
-        publicKeyCertsInProcess.remove(gct.fpPublicKey);
+      if (!verifySignature(cert)) {
+        throw new OperationException(SYSTEM_FAILURE,
+            "could not verify the signature of generated certificate");
       }
-      if (duplicatedSubjectNotAllowed) {
-        subjectCertsInProcess.remove(gct.fpSubject);
+
+      CertWithDbId certWithMeta = new CertWithDbId(cert, encodedCert);
+      ret = new CertificateInfo(certWithMeta, gct.privateKey, caIdent, caCert,
+          gct.grantedPublicKeyData, gct.certprofile.getIdent(), requestor.getIdent());
+      if (requestor instanceof RequestorInfo.ByUserRequestorInfo) {
+        ret.setUser((((RequestorInfo.ByUserRequestorInfo) requestor).getUserId()));
       }
+      ret.setReqType(reqType);
+      ret.setTransactionId(transactionId);
+      ret.setRequestedSubject(gct.requestedSubject);
+    } catch (BadCertTemplateException ex) {
+      throw new OperationException(BAD_CERT_TEMPLATE, ex);
+    } catch (OperationException ex) {
+      throw ex;
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th, "could not generate certificate");
+      throw new OperationException(SYSTEM_FAILURE, th);
     }
-  } // method generateCertificate0
+
+    if (gct.warning != null) {
+      ret.setWarningMessage(gct.warning);
+    }
+
+    return ret;
+  } // method buildCert
 
   private void adaptGrantedSubejct(GrantedCertTemplate gct) throws OperationException {
     if (caInfo.isDuplicateSubjectPermitted()) {
@@ -2719,32 +3605,32 @@ public class X509Ca implements Closeable {
     if (executor != null) {
       executor.purge();
     }
-  }
 
-  private static Extension createReasonExtension(int reasonCode) {
-    CRLReason crlReason = CRLReason.lookup(reasonCode);
-    try {
-      return new Extension(Extension.reasonCode, false, crlReason.getEncoded());
-    } catch (IOException ex) {
-      throw new IllegalArgumentException("error encoding reason: " + ex.getMessage(), ex);
+    // the remaining entries are written to the table PUBLISHQUEUE
+    synchronized (publishPipelines) {
+      for (CertPublishPipeline pipeline : publishPipelines.values()) {
+        pipeline.close();
+      }
+      publishPipelines.clear();
     }
-  }
 
-  private static Extension createInvalidityDateExtension(Date invalidityDate) {
-    try {
-      ASN1GeneralizedTime asnTime = new ASN1GeneralizedTime(invalidityDate);
-      return new Extension(Extension.invalidityDate, false, asnTime.getEncoded());
-    } catch (IOException ex) {
-      throw new IllegalArgumentException("error encoding reason: " + ex.getMessage(), ex);
-    }
-  }
+    certstore.closeDeltaCrlAccumulator(caIdent);
 
-  private static Extension createCertificateIssuerExtension(X500Name certificateIssuer) {
-    try {
-      GeneralNames generalNames = new GeneralNames(new GeneralName(certificateIssuer));
-      return new Extension(Extension.certificateIssuer, true, generalNames.getEncoded());
-    } catch (IOException ex) {
-      throw new IllegalArgumentException("error encoding reason: " + ex.getMessage(), ex);
+    synchronized (this) {
+      if (bulkCertGenExecutor != null) {
+        bulkCertGenExecutor.shutdown();
+        bulkCertGenExecutor = null;
+      }
+
+      if (certGenExecutor != null) {
+        certGenExecutor.shutdown();
+        certGenExecutor = null;
+      }
+
+      if (publishQueueExecutor != null) {
+        publishQueueExecutor.shutdown();
+        publishQueueExecutor = null;
+      }
     }
   }
 
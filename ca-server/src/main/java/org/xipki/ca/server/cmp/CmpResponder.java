@@ -23,8 +23,6 @@ import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
-import java.security.cert.CRLException;
-import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPublicKey;
@@ -143,6 +141,7 @@ import org.xipki.ca.server.CaInfo;
 import org.xipki.ca.server.CaManagerImpl;
 import org.xipki.ca.server.CaUtil;
 import org.xipki.ca.server.CertTemplateData;
+import org.xipki.ca.server.CrlCache;
 import org.xipki.ca.server.DhpocControl;
 import org.xipki.ca.server.X509Ca;
 import org.xipki.security.AlgorithmValidator;
@@ -909,32 +908,23 @@ public class CmpResponder extends BaseCmpResponder {
     if (cmpControl.isGroupEnroll()) {
       List<CertificateInfo> certInfos = null;
       try {
-        if (kup) {
-          certInfos = ca.regenerateCerts(certTemplates, requestor, RequestType.CMP,
-              tid.getOctets(), msgId);
-        } else {
-          certInfos = ca.generateCerts(certTemplates, requestor, RequestType.CMP,
-              tid.getOctets(), msgId);
-        }
-
-        // save the request
-        Long reqDbId = null;
+        // the request is saved together with the certificates
+        byte[] encodedRequest = null;
         if (ca.getCaInfo().isSaveRequest()) {
           try {
-            byte[] encodedRequest = request.getEncoded();
-            reqDbId = ca.addRequest(encodedRequest);
-          } catch (Exception ex) {
-            LOG.warn("could not save request");
+            encodedRequest = request.getEncoded();
+          } catch (IOException ex) {
+            LOG.warn("could not encode request");
           }
         }
 
+        certInfos = ca.generateCertsInBulk(certTemplates, requestor, kup, RequestType.CMP,
+            tid.getOctets(), encodedRequest, msgId);
+
         for (int i = 0; i < n; i++) {
           CertificateInfo certInfo = certInfos.get(i);
           ret.add(postProcessCertInfo(certTemplates.get(i).getCertReqId(), requestor, certInfo, tid,
               cmpControl));
-          if (reqDbId != null) {
-            ca.addRequestCert(reqDbId, certInfo.getCert().getCertId());
-          }
         }
       } catch (OperationException ex) {
         if (certInfos != null) {
@@ -957,18 +947,19 @@ public class CmpResponder extends BaseCmpResponder {
       Long reqDbId = null;
       boolean savingRequestFailed = false;
 
+      // the templates are independent of each other, and are processed in parallel
+      List<X509Ca.CertResult> results = ca.generateCertsIndependently(certTemplates, requestor,
+          kup, RequestType.CMP, tid.getOctets(), msgId);
+
       for (int i = 0; i < n; i++) {
         CertTemplateData certTemplate = certTemplates.get(i);
         ASN1Integer certReqId = certTemplate.getCertReqId();
 
-        CertificateInfo certInfo;
+        X509Ca.CertResult result = results.get(i);
+        CertificateInfo certInfo = result.getCertInfo();
         try {
-          if (kup) {
-            certInfo = ca.regenerateCert(certTemplate, requestor, RequestType.CMP,
-                tid.getOctets(), msgId);
-          } else {
-            certInfo = ca.generateCert(certTemplate, requestor, RequestType.CMP,
-                tid.getOctets(), msgId);
+          if (certInfo == null) {
+            throw result.getError();
           }
 
           if (ca.getCaInfo().isSaveRequest()) {
@@ -1947,13 +1938,13 @@ public class CmpResponder extends BaseCmpResponder {
           case XiSecurityConstants.CMP_ACTION_GEN_CRL:
             event.addEventType(CaAuditConstants.Cmp.TYPE_genm_gen_crl);
             checkPermission(requestor, PermissionConstants.GEN_CRL);
-            X509CRL tmpCrl = ca.generateCrlOnDemand(msgId);
+            CrlCache.CachedCrl tmpCrl = ca.generateCrlOnDemand(msgId);
             if (tmpCrl == null) {
               String statusMessage = "CRL generation is not activated";
               return buildErrorMsgPkiBody(PKIStatus.rejection,
                   PKIFailureInfo.systemFailure, statusMessage);
             } else {
-              respValue = CertificateList.getInstance(tmpCrl.getEncoded());
+              respValue = tmpCrl.getBcCrl();
             }
             break;
           case XiSecurityConstants.CMP_ACTION_GET_CRL_WITH_SN:
@@ -2030,9 +2021,6 @@ public class CmpResponder extends BaseCmpResponder {
       } // end switch code
 
       return buildErrorMsgPkiBody(PKIStatus.rejection, failureInfo, errorMessage);
-    } catch (CRLException ex) {
-      return buildErrorMsgPkiBody(PKIStatus.rejection, PKIFailureInfo.systemFailure,
-          "CRLException: " + ex.getMessage());
     }
   } // method cmpGeneralMsg
 
@@ -2048,8 +2036,8 @@ public class CmpResponder extends BaseCmpResponder {
     return (crlNumber == null) ? ca.getBcCurrentCrl() : ca.getBcCrl(crlNumber);
   }
 
-  public X509CRL generateCrlOnDemand(CmpRequestorInfo requestor, RequestType reqType, String msgId)
-      throws OperationException {
+  public CertificateList generateCrlOnDemand(CmpRequestorInfo requestor, RequestType reqType,
+      String msgId) throws OperationException {
     Args.notNull(requestor, "requestor");
     try {
       checkPermission(requestor, PermissionConstants.GEN_CRL);
@@ -2057,7 +2045,8 @@ public class CmpResponder extends BaseCmpResponder {
       throw new OperationException(ErrorCode.NOT_PERMITTED, ex.getMessage());
     }
 
-    return getCa().generateCrlOnDemand(msgId);
+    CrlCache.CachedCrl crl = getCa().generateCrlOnDemand(msgId);
+    return (crl == null) ? null : crl.getBcCrl();
   }
 
   public void revokeCert(CmpRequestorInfo requestor, BigInteger serialNumber, CrlReason reason,
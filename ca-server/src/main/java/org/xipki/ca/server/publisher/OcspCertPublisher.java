@@ -21,7 +21,12 @@ import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509CRL;
 import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
@@ -32,6 +37,7 @@ import org.xipki.audit.AuditStatus;
 import org.xipki.audit.Audits;
 import org.xipki.ca.api.CertWithDbId;
 import org.xipki.ca.api.CertificateInfo;
+import org.xipki.ca.api.mgmt.CertWithRevocationInfo;
 import org.xipki.ca.api.publisher.CertPublisher;
 import org.xipki.ca.api.publisher.CertPublisherException;
 import org.xipki.datasource.DataAccessException;
@@ -148,6 +154,43 @@ public class OcspCertPublisher extends CertPublisher {
     }
   } // method certificateAdded
 
+  @Override
+  public boolean[] certificatesAdded(List<CertificateInfo> certInfos) {
+    if (certInfos.isEmpty()) {
+      return new boolean[0];
+    }
+
+    // the certificates are written per issuer
+    Map<X509Cert, List<CertWithDbId>> certsMap = new LinkedHashMap<>();
+    Map<X509Cert, List<CertRevocationInfo>> revInfosMap = new HashMap<>();
+    for (CertificateInfo certInfo : certInfos) {
+      X509Cert caCert = certInfo.getIssuerCert();
+      List<CertWithDbId> certs = certsMap.get(caCert);
+      if (certs == null) {
+        certs = new ArrayList<>(certInfos.size());
+        certsMap.put(caCert, certs);
+        revInfosMap.put(caCert, new ArrayList<CertRevocationInfo>(certInfos.size()));
+      }
+      certs.add(certInfo.getCert());
+      revInfosMap.get(caCert).add(certInfo.getRevocationInfo());
+    }
+
+    try {
+      for (Map.Entry<X509Cert, List<CertWithDbId>> entry : certsMap.entrySet()) {
+        queryExecutor.addCerts(entry.getKey(), entry.getValue(),
+            revInfosMap.get(entry.getKey()));
+      }
+    } catch (Exception ex) {
+      LogUtil.warn(LOG, ex, "could not save " + certInfos.size()
+          + " certificates at once, save them one by one");
+      return super.certificatesAdded(certInfos);
+    }
+
+    boolean[] published = new boolean[certInfos.size()];
+    Arrays.fill(published, true);
+    return published;
+  } // method certificatesAdded
+
   @Override
   public boolean certificateRevoked(X509Cert caCert, CertWithDbId cert,
       String certprofile, CertRevocationInfo revInfo) {
@@ -160,6 +203,28 @@ public class OcspCertPublisher extends CertPublisher {
     }
   } // method certificateRevoked
 
+  @Override
+  public boolean[] certificatesRevoked(X509Cert caCert, List<CertWithRevocationInfo> certs) {
+    List<CertWithDbId> revokedCerts = new ArrayList<>(certs.size());
+    List<CertRevocationInfo> revInfos = new ArrayList<>(certs.size());
+    for (CertWithRevocationInfo cert : certs) {
+      revokedCerts.add(cert.getCert());
+      revInfos.add(cert.getRevInfo());
+    }
+
+    try {
+      queryExecutor.addCerts(caCert, revokedCerts, revInfos);
+    } catch (Exception ex) {
+      LogUtil.warn(LOG, ex, "could not publish " + certs.size()
+          + " revoked certificates at once, publish them one by one");
+      return super.certificatesRevoked(caCert, certs);
+    }
+
+    boolean[] published = new boolean[certs.size()];
+    Arrays.fill(published, true);
+    return published;
+  } // method certificatesRevoked
+
   @Override
   public boolean certificateUnrevoked(X509Cert caCert, CertWithDbId cert) {
     try {
@@ -202,6 +267,11 @@ public class OcspCertPublisher extends CertPublisher {
     return true;
   }
 
+  @Override
+  public boolean crlAdded(X509Cert caCert, byte[] encodedCrl) {
+    return true;
+  }
+
   @Override
   public boolean isHealthy() {
     return queryExecutor.isHealthy();
@@ -20,6 +20,7 @@ package org.xipki.ca.server.publisher;
 import java.math.BigInteger;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -28,9 +29,13 @@ import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,50 +67,75 @@ class OcspStoreQueryExecutor {
 
     private final byte[] cert;
 
+    private final int certHashCode;
+
     IssuerEntry(int id, String b64Cert) {
       this.id = id;
       this.cert = Base64.decode(b64Cert);
+      this.certHashCode = Arrays.hashCode(cert);
     }
 
     int getId() {
       return id;
     }
 
+    int getCertHashCode() {
+      return certHashCode;
+    }
+
     boolean matchCert(byte[] encodedCert) {
       return Arrays.equals(this.cert, encodedCert);
     }
   } // class IssuerEntry
 
+  /**
+   * Issuer store. The entries are indexed by the hash code of the encoded certificate,
+   * and the index is replaced atomically on each change.
+   */
   private static class IssuerStore {
 
-    private final List<IssuerEntry> entries;
+    private volatile Map<Integer, List<IssuerEntry>> entries = new HashMap<>();
+
+    private Set<Integer> ids = new HashSet<>();
 
     IssuerStore(List<IssuerEntry> entries) {
       Args.notNull(entries, "entries");
-      this.entries = new ArrayList<>(entries.size());
-
       for (IssuerEntry entry : entries) {
         addIdentityEntry(entry);
       }
     } // constructor
 
-    final void addIdentityEntry(IssuerEntry entry) {
+    final synchronized void addIdentityEntry(IssuerEntry entry) {
       Args.notNull(entry, "entry");
-      for (IssuerEntry existingEntry : entries) {
-        if (existingEntry.getId() == entry.getId()) {
-          throw new IllegalArgumentException(
-              "issuer with the same id " + entry.getId() + " already available");
-        }
+      if (ids.contains(entry.getId())) {
+        throw new IllegalArgumentException(
+            "issuer with the same id " + entry.getId() + " already available");
+      }
+
+      Map<Integer, List<IssuerEntry>> newEntries = new HashMap<>(entries);
+      List<IssuerEntry> list = newEntries.get(entry.getCertHashCode());
+      List<IssuerEntry> newList = new ArrayList<>((list == null) ? 1 : list.size() + 1);
+      if (list != null) {
+        newList.addAll(list);
       }
+      newList.add(entry);
+      newEntries.put(entry.getCertHashCode(), newList);
 
-      entries.add(entry);
+      Set<Integer> newIds = new HashSet<>(ids);
+      newIds.add(entry.getId());
+
+      this.entries = newEntries;
+      this.ids = newIds;
     } // method addIdentityEntry
 
     Integer getIdForCert(byte[] encodedCert) {
       Args.notNull(encodedCert, "encodedCert");
-      for (IssuerEntry entry : entries) {
-        if (entry.matchCert(encodedCert)) {
-          return entry.getId();
+      List<IssuerEntry> list = entries.get(Arrays.hashCode(encodedCert));
+      if (list != null) {
+        for (IssuerEntry entry : list) {
+          if (entry.matchCert(encodedCert)) {
+            return entry.getId();
+          }
         }
       }
 
@@ -122,6 +152,11 @@ class OcspStoreQueryExecutor {
       "INSERT INTO CERT (ID,LUPDATE,SN,NBEFORE,NAFTER,REV,IID,HASH,SUBJECT) "
       + "VALUES (?,?,?,?,?,?,?,?,?)";
 
+  private static final String SQL_UPDATE_CERT =
+      "UPDATE CERT SET LUPDATE=?,REV=?,RT=?,RIT=?,RR=? WHERE ID=?";
+
+  private static final int MAX_IN_LIST_SIZE = 100;
+
   private static final Logger LOG = LoggerFactory.getLogger(OcspStoreQueryExecutor.class);
 
   private final DataSourceWrapper datasource;
@@ -229,42 +264,13 @@ class OcspStoreQueryExecutor {
     }
 
     final String sql = revoked ? SQL_ADD_REVOKED_CERT : SQL_ADD_CERT;
-
     long certId = certificate.getCertId();
-    byte[] encodedCert = certificate.getEncodedCert();
-    String certHash = certhashAlgo.base64Hash(encodedCert);
-
-    X509Certificate cert = certificate.getCert();
-    long notBeforeSeconds = cert.getNotBefore().getTime() / 1000;
-    long notAfterSeconds = cert.getNotAfter().getTime() / 1000;
-    String cuttedSubject = X509Util.cutText(certificate.getSubject(), maxX500nameLen);
 
     PreparedStatement ps = datasource.prepareStatement(sql);
 
     try {
-      // CERT
-      int idx = 1;
-      ps.setLong(idx++, certId);
-      ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
-      ps.setString(idx++, serialNumber.toString(16));
-      ps.setLong(idx++, notBeforeSeconds);
-      ps.setLong(idx++, notAfterSeconds);
-      setBoolean(ps, idx++, revoked);
-      ps.setInt(idx++, issuerId);
-      ps.setString(idx++, certHash);
-      ps.setString(idx++, cuttedSubject);
-
-      if (revoked) {
-        long revTime = revInfo.getRevocationTime().getTime() / 1000;
-        ps.setLong(idx++, revTime);
-        if (revInfo.getInvalidityTime() != null) {
-          ps.setLong(idx++, revInfo.getInvalidityTime().getTime() / 1000);
-        } else {
-          ps.setNull(idx++, Types.BIGINT);
-        }
-        int reasonCode = (revInfo.getReason() == null) ? 0 : revInfo.getReason().getCode();
-        ps.setInt(idx++, reasonCode);
-      }
+      setAddCertParameters(ps, System.currentTimeMillis() / 1000, issuerId, certificate,
+          revInfo);
 
       try {
         ps.executeUpdate();
@@ -288,33 +294,44 @@ class OcspStoreQueryExecutor {
     }
   } // method addOrUpdateCert
 
-  private void updateRegisteredCert(long registeredCertId, CertRevocationInfo revInfo)
-      throws DataAccessException {
+  private void setAddCertParameters(PreparedStatement ps, long currentTimeSeconds,
+      int issuerId, CertWithDbId certificate, CertRevocationInfo revInfo) throws SQLException {
+    X509Certificate cert = certificate.getCert();
+    String certHash = certhashAlgo.base64Hash(certificate.getEncodedCert());
+    String cuttedSubject = X509Util.cutText(certificate.getSubject(), maxX500nameLen);
     boolean revoked = (revInfo != null);
 
-    final String sql = "UPDATE CERT SET LUPDATE=?,REV=?,RT=?,RIT=?,RR=? WHERE ID=?";
+    int idx = 1;
+    ps.setLong(idx++, certificate.getCertId());
+    ps.setLong(idx++, currentTimeSeconds);
+    ps.setString(idx++, cert.getSerialNumber().toString(16));
+    ps.setLong(idx++, cert.getNotBefore().getTime() / 1000);
+    ps.setLong(idx++, cert.getNotAfter().getTime() / 1000);
+    setBoolean(ps, idx++, revoked);
+    ps.setInt(idx++, issuerId);
+    ps.setString(idx++, certHash);
+    ps.setString(idx++, cuttedSubject);
+
+    if (revoked) {
+      long revTime = revInfo.getRevocationTime().getTime() / 1000;
+      ps.setLong(idx++, revTime);
+      if (revInfo.getInvalidityTime() != null) {
+        ps.setLong(idx++, revInfo.getInvalidityTime().getTime() / 1000);
+      } else {
+        ps.setNull(idx++, Types.BIGINT);
+      }
+      int reasonCode = (revInfo.getReason() == null) ? 0 : revInfo.getReason().getCode();
+      ps.setInt(idx++, reasonCode);
+    }
+  } // method setAddCertParameters
 
+  private void updateRegisteredCert(long registeredCertId, CertRevocationInfo revInfo)
+      throws DataAccessException {
+    final String sql = SQL_UPDATE_CERT;
     PreparedStatement ps = datasource.prepareStatement(sql);
 
     try {
-      int idx = 1;
-      ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
-      setBoolean(ps, idx++, revoked);
-      if (revoked) {
-        long revTime = revInfo.getRevocationTime().getTime() / 1000;
-        ps.setLong(idx++, revTime);
-        if (revInfo.getInvalidityTime() != null) {
-          ps.setLong(idx++, revInfo.getInvalidityTime().getTime() / 1000);
-        } else {
-          ps.setNull(idx++, Types.INTEGER);
-        }
-        ps.setInt(idx++, revInfo.getReason().getCode());
-      } else {
-        ps.setNull(idx++, Types.INTEGER); // rev_time
-        ps.setNull(idx++, Types.INTEGER); // rev_invalidity_time
-        ps.setNull(idx++, Types.INTEGER); // rev_reason
-      }
-      ps.setLong(idx++, registeredCertId);
+      setUpdateCertParameters(ps, System.currentTimeMillis() / 1000, registeredCertId, revInfo);
       ps.executeUpdate();
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
@@ -323,6 +340,146 @@ class OcspStoreQueryExecutor {
     }
   } // method updateRegisteredCert
 
+  private static void setUpdateCertParameters(PreparedStatement ps, long currentTimeSeconds,
+      long registeredCertId, CertRevocationInfo revInfo) throws SQLException {
+    boolean revoked = (revInfo != null);
+
+    int idx = 1;
+    ps.setLong(idx++, currentTimeSeconds);
+    setBoolean(ps, idx++, revoked);
+    if (revoked) {
+      long revTime = revInfo.getRevocationTime().getTime() / 1000;
+      ps.setLong(idx++, revTime);
+      if (revInfo.getInvalidityTime() != null) {
+        ps.setLong(idx++, revInfo.getInvalidityTime().getTime() / 1000);
+      } else {
+        ps.setNull(idx++, Types.INTEGER);
+      }
+      ps.setInt(idx++, revInfo.getReason().getCode());
+    } else {
+      ps.setNull(idx++, Types.INTEGER); // rev_time
+      ps.setNull(idx++, Types.INTEGER); // rev_invalidity_time
+      ps.setNull(idx++, Types.INTEGER); // rev_reason
+    }
+    ps.setLong(idx++, registeredCertId);
+  } // method setUpdateCertParameters
+
+  /**
+   * Adds or updates a list of certificates of one issuer. The registered certificates are
+   * resolved with IN queries, and the certificates are written with JDBC batches in one
+   * transaction.
+   *
+   * @param issuer
+   *          Issuer of the certificates.
+   * @param certs
+   *          Certificates.
+   * @param revInfos
+   *          Revocation information of the certificates, same size as certs. The entry is
+   *          {@code null} for a not revoked certificate.
+   */
+  void addCerts(X509Cert issuer, List<CertWithDbId> certs, List<CertRevocationInfo> revInfos)
+      throws DataAccessException {
+    Args.notNull(issuer, "issuer");
+    Args.notNull(certs, "certs");
+    Args.notNull(revInfos, "revInfos");
+    if (certs.size() != revInfos.size()) {
+      throw new IllegalArgumentException("certs and revInfos have different sizes");
+    }
+
+    int issuerId = getIssuerId(issuer);
+
+    // a later entry of the same certificate overwrites the previous one
+    Map<String, Integer> indexes = new LinkedHashMap<>();
+    for (int i = 0; i < certs.size(); i++) {
+      indexes.put(certs.get(i).getCert().getSerialNumber().toString(16), i);
+    }
+
+    Map<String, Long> registeredIds = getCertIds(issuerId, new ArrayList<>(indexes.keySet()));
+
+    List<Integer> toAdd = new LinkedList<>();
+    List<Integer> toAddRevoked = new LinkedList<>();
+    List<Long> toUpdateIds = new LinkedList<>();
+    List<CertRevocationInfo> toUpdateRevInfos = new LinkedList<>();
+    for (Map.Entry<String, Integer> entry : indexes.entrySet()) {
+      int index = entry.getValue();
+      CertRevocationInfo revInfo = revInfos.get(index);
+      Long registeredId = registeredIds.get(entry.getKey());
+      if (registeredId == null) {
+        if (revInfo == null) {
+          toAdd.add(index);
+        } else {
+          toAddRevoked.add(index);
+        }
+      } else if (publishGoodCerts || revInfo != null) {
+        toUpdateIds.add(registeredId);
+        toUpdateRevInfos.add(revInfo);
+      }
+    }
+
+    Connection conn = datasource.getConnection();
+    PreparedStatement psAdd = null;
+    PreparedStatement psAddRevoked = null;
+    PreparedStatement psUpdate = null;
+    String sql = null;
+
+    boolean successful = false;
+    try {
+      conn.setAutoCommit(false);
+      final long currentTimeSeconds = System.currentTimeMillis() / 1000;
+
+      if (!toAdd.isEmpty()) {
+        sql = SQL_ADD_CERT;
+        psAdd = datasource.prepareStatement(conn, sql);
+        for (Integer index : toAdd) {
+          setAddCertParameters(psAdd, currentTimeSeconds, issuerId, certs.get(index), null);
+          psAdd.addBatch();
+        }
+        psAdd.executeBatch();
+      }
+
+      if (!toAddRevoked.isEmpty()) {
+        sql = SQL_ADD_REVOKED_CERT;
+        psAddRevoked = datasource.prepareStatement(conn, sql);
+        for (Integer index : toAddRevoked) {
+          setAddCertParameters(psAddRevoked, currentTimeSeconds, issuerId, certs.get(index),
+              revInfos.get(index));
+          psAddRevoked.addBatch();
+        }
+        psAddRevoked.executeBatch();
+      }
+
+      if (!toUpdateIds.isEmpty()) {
+        sql = SQL_UPDATE_CERT;
+        psUpdate = datasource.prepareStatement(conn, sql);
+        Iterator<CertRevocationInfo> revInfoIt = toUpdateRevInfos.iterator();
+        for (Long registeredId : toUpdateIds) {
+          setUpdateCertParameters(psUpdate, currentTimeSeconds, registeredId, revInfoIt.next());
+          psUpdate.addBatch();
+        }
+        psUpdate.executeBatch();
+      }
+
+      conn.commit();
+      successful = true;
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      try {
+        if (!successful) {
+          conn.rollback();
+        }
+        conn.setAutoCommit(true);
+      } catch (SQLException ex) {
+        LOG.warn("could not reset the auto-commit mode: {}", ex.getMessage());
+      }
+
+      datasource.releaseResources(psUpdate, null, false);
+      datasource.releaseResources(psAddRevoked, null, false);
+      datasource.releaseResources(psAdd, null, false);
+      datasource.returnConnection(conn);
+    }
+  } // method addCerts
+
   void revokeCert(X509Cert caCert, CertWithDbId cert, CertRevocationInfo revInfo)
       throws DataAccessException, OperationException {
     addOrUpdateCert(caCert, cert, revInfo);
@@ -507,6 +664,46 @@ class OcspStoreQueryExecutor {
     }
   } // method getCertId
 
+  /**
+   * Returns the database IDs of the registered certificates.
+   *
+   * @return map of the hex serial number to the database ID.
+   */
+  private Map<String, Long> getCertIds(int issuerId, List<String> hexSerials)
+      throws DataAccessException {
+    Map<String, Long> ret = new HashMap<>();
+    final int size = hexSerials.size();
+    for (int i = 0; i < size; i += MAX_IN_LIST_SIZE) {
+      List<String> subList = hexSerials.subList(i, Math.min(size, i + MAX_IN_LIST_SIZE));
+      StringBuilder sb = new StringBuilder(60 + 2 * subList.size());
+      sb.append("SELECT ID,SN FROM CERT WHERE IID=? AND SN IN (");
+      for (int j = 0; j < subList.size(); j++) {
+        sb.append(j == 0 ? "?" : ",?");
+      }
+      final String sql = sb.append(")").toString();
+
+      ResultSet rs = null;
+      PreparedStatement ps = datasource.prepareStatement(sql);
+      try {
+        int idx = 1;
+        ps.setInt(idx++, issuerId);
+        for (String hexSerial : subList) {
+          ps.setString(idx++, hexSerial);
+        }
+
+        rs = ps.executeQuery();
+        while (rs.next()) {
+          ret.put(rs.getString("SN"), rs.getLong("ID"));
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        datasource.releaseResources(ps, rs);
+      }
+    }
+    return ret;
+  } // method getCertIds
+
   boolean isHealthy() {
     final String sql = "SELECT ID FROM ISSUER";
 
@@ -0,0 +1,73 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * CertFpIndex test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class CertFpIndexTest {
+
+  @Test
+  public void testLookup() {
+    CertFpIndex index = new CertFpIndex();
+    Set<Long> subjectFps = new HashSet<>();
+    Set<Long> keyFps = new HashSet<>();
+
+    Random random = new Random(1);
+    for (int i = 0; i < 100000; i++) {
+      long subjectFp = random.nextLong();
+      long keyFp = random.nextLong();
+      index.add(subjectFp, keyFp);
+      subjectFps.add(subjectFp);
+      keyFps.add(keyFp);
+    }
+
+    // zero is stored separately from the slots of the hash table
+    index.add(0, 1);
+    subjectFps.add(0L);
+    keyFps.add(1L);
+
+    for (Long fp : subjectFps) {
+      Assert.assertTrue("subject not found", index.mayContainSubject(fp));
+    }
+
+    for (Long fp : keyFps) {
+      Assert.assertTrue("key not found", index.mayContainKey(fp));
+    }
+
+    Assert.assertEquals("number of subjects", subjectFps.size(), index.size());
+
+    for (int i = 0; i < 100000; i++) {
+      long fp = random.nextLong();
+      Assert.assertEquals("unexpected subject", subjectFps.contains(fp),
+          index.mayContainSubject(fp));
+    }
+  } // method testLookup
+
+}
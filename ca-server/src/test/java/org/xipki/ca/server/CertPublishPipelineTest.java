@@ -0,0 +1,242 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.ca.api.CertWithDbId;
+
+/**
+ * CertPublishPipeline test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class CertPublishPipelineTest {
+
+  private static final String WORKER_NAME = "test-publish";
+
+  /**
+   * Backend with the states of the certificates in a map instead of the database.
+   */
+  private static class MockBackend implements CertPublishPipeline.Backend {
+
+    private final Map<Long, String> dbStates = new ConcurrentHashMap<>();
+
+    private final Map<Long, String> publishedStates = new ConcurrentHashMap<>();
+
+    private final List<Long> publishQueue = Collections.synchronizedList(new ArrayList<Long>());
+
+    private final CountDownLatch workerEntered = new CountDownLatch(1);
+
+    private volatile CountDownLatch workerGate;
+
+    private volatile boolean failing;
+
+    private volatile boolean healthy = true;
+
+    @Override
+    public String getName() {
+      return "mock";
+    }
+
+    @Override
+    public boolean isHealthy() {
+      return healthy;
+    }
+
+    @Override
+    public List<Long> publishCurrentStates(List<Long> certIds) {
+      if (WORKER_NAME.equals(Thread.currentThread().getName())) {
+        workerEntered.countDown();
+        CountDownLatch gate = workerGate;
+        if (gate != null) {
+          try {
+            gate.await();
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }
+
+      if (failing) {
+        return certIds;
+      }
+
+      // load and publish the current states
+      for (Long certId : certIds) {
+        String state = dbStates.get(certId);
+        if (state != null) {
+          publishedStates.put(certId, state);
+        }
+      }
+      return Collections.emptyList();
+    } // method publishCurrentStates
+
+    @Override
+    public boolean publishRemoved(CertWithDbId cert) {
+      publishedStates.remove(cert.getCertId());
+      return true;
+    }
+
+    @Override
+    public void addToPublishQueue(List<Long> certIds) {
+      publishQueue.addAll(certIds);
+    }
+
+    /**
+     * Publishes the entries in PUBLISHQUEUE, like X509Ca.publishCertsInQueue().
+     */
+    void drainPublishQueue(CertPublishPipeline pipeline) {
+      pipeline.lockPublishing();
+      try {
+        List<Long> certIds;
+        synchronized (publishQueue) {
+          certIds = new ArrayList<>(publishQueue);
+          publishQueue.clear();
+        }
+        publishCurrentStates(certIds);
+      } finally {
+        pipeline.unlockPublishing();
+      }
+    } // method drainPublishQueue
+
+  } // class MockBackend
+
+  private interface Condition {
+
+    boolean isTrue();
+
+  } // interface Condition
+
+  @Test
+  public void testFullBuffer() throws Exception {
+    final MockBackend backend = new MockBackend();
+    backend.dbStates.put(1L, "good");
+    backend.dbStates.put(2L, "good");
+    backend.workerGate = new CountDownLatch(1);
+
+    final CertPublishPipeline pipeline = new CertPublishPipeline(WORKER_NAME, backend, 1);
+    try {
+      // the worker holds the entry of certificate 2
+      pipeline.publish(2L);
+      Assert.assertTrue("worker not started",
+          backend.workerEntered.await(10, TimeUnit.SECONDS));
+
+      // the addition of certificate 1 is buffered
+      pipeline.publish(1L);
+      Assert.assertTrue("publish queue not empty", backend.publishQueue.isEmpty());
+
+      // the revocation of certificate 1 goes to PUBLISHQUEUE, since the buffer is full
+      backend.dbStates.put(1L, "revoked");
+      pipeline.publish(1L);
+      Assert.assertEquals("publish queue", Collections.singletonList(1L), backend.publishQueue);
+
+      Thread drainer = new Thread() {
+        @Override
+        public void run() {
+          backend.drainPublishQueue(pipeline);
+        }
+      };
+      drainer.start();
+
+      backend.workerGate.countDown();
+      drainer.join(10000);
+    } finally {
+      pipeline.close();
+    }
+
+    // the buffered addition must not overwrite the revocation
+    Assert.assertEquals("state of certificate 1", "revoked", backend.publishedStates.get(1L));
+    Assert.assertEquals("state of certificate 2", "good", backend.publishedStates.get(2L));
+  } // method testFullBuffer
+
+  @Test
+  public void testUnhealthyPublisher() throws Exception {
+    final MockBackend backend = new MockBackend();
+    backend.dbStates.put(1L, "good");
+    backend.failing = true;
+    backend.healthy = false;
+
+    final CertPublishPipeline pipeline = new CertPublishPipeline(WORKER_NAME, backend, 10, 10);
+    try {
+      // the publication fails, the entry is written to PUBLISHQUEUE
+      pipeline.publish(1L);
+      await("pipeline unhealthy", new Condition() {
+        @Override
+        public boolean isTrue() {
+          return !pipeline.isHealthy() && backend.publishQueue.size() == 1;
+        }
+      });
+
+      // the revocation and the unrevocation go to PUBLISHQUEUE
+      backend.failing = false;
+      backend.dbStates.put(1L, "revoked");
+      pipeline.publish(1L);
+      backend.dbStates.put(1L, "hold");
+      pipeline.publish(1L);
+      backend.dbStates.put(1L, "good");
+      pipeline.publish(1L);
+      Assert.assertEquals("size of publish queue", 4, backend.publishQueue.size());
+
+      backend.drainPublishQueue(pipeline);
+      Assert.assertEquals("state of certificate 1", "good", backend.publishedStates.get(1L));
+
+      // healthy again
+      backend.healthy = true;
+      await("pipeline healthy", new Condition() {
+        @Override
+        public boolean isTrue() {
+          return pipeline.isHealthy();
+        }
+      });
+
+      backend.dbStates.put(1L, "revoked");
+      pipeline.publish(1L);
+      await("revocation published", new Condition() {
+        @Override
+        public boolean isTrue() {
+          return "revoked".equals(backend.publishedStates.get(1L));
+        }
+      });
+    } finally {
+      pipeline.close();
+    }
+
+    Assert.assertTrue("publish queue not empty", backend.publishQueue.isEmpty());
+  } // method testUnhealthyPublisher
+
+  private static void await(String desc, Condition condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (!condition.isTrue()) {
+      if (System.currentTimeMillis() > deadline) {
+        Assert.fail("timeout: " + desc);
+      }
+      Thread.sleep(10);
+    }
+  } // method await
+
+}
@@ -0,0 +1,208 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERSet;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.security.ObjectIdentifiers;
+
+/**
+ * CrlStreamBuilder test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class CrlStreamBuilderTest {
+
+  private static final X500Name ISSUER = new X500Name("CN=CRL Signer,O=xipki");
+
+  private static final X500Name CA_NAME = new X500Name("CN=CA,O=xipki");
+
+  private static ContentSigner signer;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA");
+    kpGen.initialize(2048);
+    KeyPair keypair = kpGen.generateKeyPair();
+    // RSA PKCS#1 v1.5 signature is deterministic
+    signer = new JcaContentSignerBuilder("SHA256withRSA").build(keypair.getPrivate());
+  }
+
+  @Test
+  public void testEmptyCrl() throws Exception {
+    testIdentical(0, false, 10);
+  }
+
+  @Test
+  public void testDirectCrl() throws Exception {
+    testIdentical(100, false, 1000);
+  }
+
+  @Test
+  public void testIndirectCrl() throws Exception {
+    testIdentical(100, true, 1000);
+  }
+
+  @Test
+  public void testSortedRuns() throws Exception {
+    testIdentical(2500, false, 100);
+    testIdentical(2500, true, 100);
+  }
+
+  @Test
+  public void testExtensionFromFile() throws Exception {
+    Date thisUpdate = new Date(1600000000000L);
+    X509v2CRLBuilder expectedBuilder = new X509v2CRLBuilder(ISSUER, thisUpdate);
+
+    Random random = new Random(1);
+    ASN1EncodableVector vec = new ASN1EncodableVector();
+    try (DerSetWriter setWriter = new DerSetWriter(4096);
+        CrlStreamBuilder builder = new CrlStreamBuilder(ISSUER, thisUpdate, null, null)) {
+      for (int i = 0; i < 1000; i++) {
+        byte[] bytes = new byte[random.nextInt(200)];
+        random.nextBytes(bytes);
+        DERSequence element = new DERSequence(new ASN1Encodable[] {
+            new ASN1Integer(i), new DEROctetString(bytes)});
+        vec.add(element);
+        setWriter.add(element.getEncoded());
+      }
+
+      ASN1ObjectIdentifier certsetType = ObjectIdentifiers.Xipki.id_xipki_ext_crlCertset;
+      expectedBuilder.addExtension(Extension.cRLNumber, false, new ASN1Integer(1));
+      expectedBuilder.addExtension(certsetType, false, new DERSet(vec));
+      byte[] expected = expectedBuilder.build(signer).getEncoded();
+
+      builder.addExtension(Extension.cRLNumber, false, new ASN1Integer(1));
+      builder.addExtension(certsetType, false, setWriter.finish());
+      Assert.assertArrayEquals("encoded CRL", expected, builder.build(signer));
+    }
+  } // method testExtensionFromFile
+
+  private static void testIdentical(int numEntries, boolean indirect, int maxEntriesInMemory)
+      throws Exception {
+    Date thisUpdate = new Date(1600000000000L);
+    Date nextUpdate = new Date(thisUpdate.getTime() + 86400000L);
+
+    X509v2CRLBuilder expectedBuilder = new X509v2CRLBuilder(ISSUER, thisUpdate);
+    expectedBuilder.setNextUpdate(nextUpdate);
+
+    Random random = new Random(numEntries);
+    Entry[] entries = new Entry[numEntries];
+    for (int i = 0; i < numEntries; i++) {
+      // unique serial numbers in random order
+      BigInteger serial = new BigInteger(1 + random.nextInt(150), random)
+          .shiftLeft(16).add(BigInteger.valueOf(i));
+      Date revTime = new Date(1500000000000L + random.nextInt(1000000) * 1000L);
+      Date invTime = random.nextBoolean() ? null : new Date(revTime.getTime() - 60000L);
+      int reason = new int[]{0, 1, 2, 3, 4, 5, 6, 8, 9, 10}[random.nextInt(10)];
+      entries[i] = new Entry(serial, revTime, invTime, reason);
+    }
+
+    Entry[] sorted = entries.clone();
+    Arrays.sort(sorted);
+
+    for (int i = 0; i < numEntries; i++) {
+      Entry entry = sorted[i];
+      if (indirect && i == 0) {
+        List<Extension> extns = new ArrayList<>(3);
+        if (entry.reason != 0) {
+          extns.add(new Extension(Extension.reasonCode, false,
+              CRLReason.lookup(entry.reason).getEncoded()));
+        }
+        if (entry.invTime != null) {
+          extns.add(new Extension(Extension.invalidityDate, false,
+              new ASN1GeneralizedTime(entry.invTime).getEncoded()));
+        }
+        extns.add(new Extension(Extension.certificateIssuer, true,
+            new GeneralNames(new GeneralName(CA_NAME)).getEncoded()));
+        expectedBuilder.addCRLEntry(entry.serial, entry.revTime,
+            new Extensions(extns.toArray(new Extension[0])));
+      } else if (entry.invTime == null) {
+        expectedBuilder.addCRLEntry(entry.serial, entry.revTime, entry.reason);
+      } else {
+        expectedBuilder.addCRLEntry(entry.serial, entry.revTime, entry.reason, entry.invTime);
+      }
+    }
+    expectedBuilder.addExtension(Extension.cRLNumber, false, new ASN1Integer(numEntries));
+    byte[] expected = expectedBuilder.build(signer).getEncoded();
+
+    try (CrlStreamBuilder builder = new CrlStreamBuilder(ISSUER, thisUpdate, nextUpdate,
+        indirect ? CA_NAME : null, maxEntriesInMemory)) {
+      for (Entry entry : entries) {
+        builder.addCrlEntry(entry.serial, entry.revTime, entry.reason, entry.invTime);
+      }
+      builder.addExtension(Extension.cRLNumber, false, new ASN1Integer(numEntries));
+
+      Assert.assertArrayEquals("encoded CRL", expected, builder.build(signer));
+    }
+  } // method testIdentical
+
+  private static class Entry implements Comparable<Entry> {
+
+    private final BigInteger serial;
+
+    private final Date revTime;
+
+    private final Date invTime;
+
+    private final int reason;
+
+    Entry(BigInteger serial, Date revTime, Date invTime, int reason) {
+      this.serial = serial;
+      this.revTime = revTime;
+      this.invTime = invTime;
+      this.reason = reason;
+    }
+
+    @Override
+    public int compareTo(Entry other) {
+      return serial.compareTo(other.serial);
+    }
+
+  } // class Entry
+
+}
@@ -0,0 +1,196 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xipki.security.CrlReason;
+
+/**
+ * DeltaCrlAccumulator test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class DeltaCrlAccumulatorTest {
+
+  private File dir;
+
+  @Before
+  public void init() throws Exception {
+    dir = Files.createTempDirectory("xipki-deltacrl-").toFile();
+  }
+
+  @After
+  public void cleanup() {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  @Test
+  public void testLatestEventPerCert() throws Exception {
+    try (DeltaCrlAccumulator accumulator = new DeltaCrlAccumulator(dir)) {
+      accumulator.add(1, true, revInfo(1, 10, CrlReason.CERTIFICATE_HOLD));
+      accumulator.add(2, false, revInfo(2, 11, CrlReason.CA_COMPROMISE));
+      accumulator.add(3, true, revInfo(3, 10, CrlReason.KEY_COMPROMISE));
+
+      Map<BigInteger, CertRevInfoWithSerial> entries =
+          toMap(accumulator.getEntries(false, false));
+      Assert.assertEquals("number of entries", 2, entries.size());
+      Assert.assertEquals("reason", CrlReason.KEY_COMPROMISE,
+          entries.get(BigInteger.valueOf(10)).getReason());
+
+      Assert.assertEquals("only user certs", 1, accumulator.getEntries(false, true).size());
+      Assert.assertEquals("only CA certs", 1, accumulator.getEntries(true, false).size());
+    }
+  } // method testLatestEventPerCert
+
+  @Test
+  public void testReplay() throws Exception {
+    try (DeltaCrlAccumulator accumulator = new DeltaCrlAccumulator(dir)) {
+      for (int i = 1; i <= 100; i++) {
+        accumulator.add(i, true, revInfo(i, i, CrlReason.KEY_COMPROMISE));
+      }
+    }
+
+    // simulate a crash while writing a record
+    File[] segments = dir.listFiles();
+    Assert.assertEquals("number of segments", 1, segments.length);
+    try (FileOutputStream out = new FileOutputStream(segments[0], true)) {
+      out.write(new byte[] {0, 0, 0, 40, 1, 2, 3});
+    }
+
+    try (DeltaCrlAccumulator accumulator = new DeltaCrlAccumulator(dir)) {
+      Assert.assertEquals("number of entries", 100, accumulator.size());
+      Assert.assertEquals("maxId", 100, accumulator.getMaxId());
+      CertRevInfoWithSerial entry =
+          toMap(accumulator.getEntries(false, false)).get(BigInteger.valueOf(50));
+      Assert.assertEquals("revocation time", new Date(50000L), entry.getRevocationTime());
+      Assert.assertTrue("marked incomplete", accumulator.isMarkedIncomplete());
+    }
+
+    // the marker survives a restart, and is removed when complete again
+    try (DeltaCrlAccumulator accumulator = new DeltaCrlAccumulator(dir)) {
+      Assert.assertTrue("marked incomplete", accumulator.isMarkedIncomplete());
+      accumulator.mark(100);
+      accumulator.clear(100);
+      Assert.assertTrue("complete", accumulator.isComplete());
+      Assert.assertFalse("marked incomplete", accumulator.isMarkedIncomplete());
+    }
+
+    try (DeltaCrlAccumulator accumulator = new DeltaCrlAccumulator(dir)) {
+      Assert.assertFalse("marked incomplete", accumulator.isMarkedIncomplete());
+    }
+  } // method testReplay
+
+  @Test
+  public void testNumEvents() throws Exception {
+    try (DeltaCrlAccumulator accumulator = new DeltaCrlAccumulator(dir)) {
+      accumulator.add(1, true, revInfo(1, 10, CrlReason.CERTIFICATE_HOLD));
+      accumulator.add(2, true, revInfo(2, 11, CrlReason.KEY_COMPROMISE));
+      accumulator.add(3, true, revInfo(3, 10, CrlReason.KEY_COMPROMISE));
+      Assert.assertEquals("number of entries", 2, accumulator.size());
+      Assert.assertEquals("number of events", 3, accumulator.getNumEvents());
+    }
+
+    // the superseded events are kept in the compacted journal
+    try (DeltaCrlAccumulator accumulator = new DeltaCrlAccumulator(dir)) {
+      Assert.assertEquals("number of entries", 2, accumulator.size());
+      Assert.assertEquals("number of events", 3, accumulator.getNumEvents());
+      Assert.assertFalse("marked incomplete", accumulator.isMarkedIncomplete());
+
+      accumulator.clear(1);
+      Assert.assertEquals("number of events", 2, accumulator.getNumEvents());
+    }
+  } // method testNumEvents
+
+  @Test
+  public void testClear() throws Exception {
+    try (DeltaCrlAccumulator accumulator = new DeltaCrlAccumulator(dir)) {
+      for (int i = 1; i <= 10; i++) {
+        accumulator.add(i, true, revInfo(i, i, CrlReason.KEY_COMPROMISE));
+      }
+
+      Assert.assertFalse("complete", accumulator.isComplete());
+      accumulator.mark(8);
+      accumulator.clear(8);
+      Assert.assertTrue("complete", accumulator.isComplete());
+      Assert.assertEquals("number of entries", 2, accumulator.size());
+    }
+
+    Assert.assertEquals("number of segments", 1, dir.listFiles().length);
+    try (DeltaCrlAccumulator accumulator = new DeltaCrlAccumulator(dir)) {
+      Assert.assertEquals("number of entries", 2, accumulator.size());
+    }
+  } // method testClear
+
+  @Test
+  public void testAddAll() throws Exception {
+    try (DeltaCrlAccumulator accumulator = new DeltaCrlAccumulator(dir)) {
+      List<CertRevInfoWithSerial> revInfos = new ArrayList<>();
+      boolean[] ees = new boolean[1000];
+      for (int i = 1; i <= 1000; i++) {
+        revInfos.add(revInfo(i, i, CrlReason.KEY_COMPROMISE));
+        ees[i - 1] = (i % 2 == 0);
+      }
+      accumulator.addAll(ees, revInfos);
+
+      Assert.assertEquals("number of entries", 1000, accumulator.size());
+      Assert.assertEquals("maxId", 1000, accumulator.getMaxId());
+      Assert.assertEquals("only user certs", 500, accumulator.getEntries(false, true).size());
+    }
+
+    try (DeltaCrlAccumulator accumulator = new DeltaCrlAccumulator(dir)) {
+      Assert.assertEquals("number of entries", 1000, accumulator.size());
+      Assert.assertEquals("only CA certs", 500, accumulator.getEntries(true, false).size());
+    }
+  } // method testAddAll
+
+  private static CertRevInfoWithSerial revInfo(long id, long serial, CrlReason reason) {
+    return new CertRevInfoWithSerial(id, BigInteger.valueOf(serial), reason,
+        new Date(id * 1000), null);
+  }
+
+  private static Map<BigInteger, CertRevInfoWithSerial> toMap(
+      List<CertRevInfoWithSerial> entries) {
+    Map<BigInteger, CertRevInfoWithSerial> map = new HashMap<>();
+    for (CertRevInfoWithSerial entry : entries) {
+      map.put(entry.getSerial(), entry);
+    }
+    return map;
+  }
+
+}
@@ -0,0 +1,117 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * UniqueIdGenerator test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class UniqueIdGeneratorTest {
+
+  private static final long EPOCH = 1500000000000L;
+
+  @Test
+  public void testSpillToNextMillisecond() {
+    UniqueIdGenerator generator = new UniqueIdGenerator(EPOCH, 5);
+    long now = EPOCH + 1000;
+
+    long prev = -1;
+    for (int i = 0; i < 3000; i++) {
+      long id = generator.nextId(now);
+      Assert.assertTrue("id not increasing", id > prev);
+      Assert.assertEquals("shard", 5, id & 0x7F);
+      prev = id;
+    }
+
+    // the 1024 offsets of the millisecond are exhausted twice
+    Assert.assertEquals("millisecond", 1002, prev >>> 17);
+  } // method testSpillToNextMillisecond
+
+  @Test
+  public void testClockRegression() {
+    UniqueIdGenerator generator = new UniqueIdGenerator(EPOCH, 0);
+    long id1 = generator.nextId(EPOCH + 5000);
+    long id2 = generator.nextId(EPOCH + 1000);
+    long id3 = generator.nextId(EPOCH + 1000);
+    Assert.assertTrue("id not increasing", id2 > id1);
+    Assert.assertTrue("id not increasing", id3 > id2);
+
+    // the clock has caught up
+    long id4 = generator.nextId(EPOCH + 6000);
+    Assert.assertEquals("millisecond", 6000, id4 >>> 17);
+  } // method testClockRegression
+
+  @Test
+  public void testConcurrency() throws Exception {
+    final UniqueIdGenerator generator = new UniqueIdGenerator(EPOCH, 1);
+    final int numThreads = 8;
+    final int numIdsPerThread = 200000;
+
+    final long[][] ids = new long[numThreads][numIdsPerThread];
+    final CountDownLatch startSignal = new CountDownLatch(1);
+    Thread[] threads = new Thread[numThreads];
+    for (int i = 0; i < numThreads; i++) {
+      final long[] threadIds = ids[i];
+      threads[i] = new Thread() {
+
+        @Override
+        public void run() {
+          try {
+            startSignal.await();
+          } catch (InterruptedException ex) {
+            return;
+          }
+
+          for (int j = 0; j < numIdsPerThread; j++) {
+            threadIds[j] = generator.nextId();
+          }
+        }
+
+      };
+      threads[i].start();
+    }
+
+    startSignal.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    long[] allIds = new long[numThreads * numIdsPerThread];
+    for (int i = 0; i < numThreads; i++) {
+      for (int j = 1; j < numIdsPerThread; j++) {
+        Assert.assertTrue("id not increasing in a thread", ids[i][j] > ids[i][j - 1]);
+      }
+      System.arraycopy(ids[i], 0, allIds, i * numIdsPerThread, numIdsPerThread);
+    }
+
+    Arrays.sort(allIds);
+    for (int i = 1; i < allIds.length; i++) {
+      Assert.assertNotEquals("duplicated id", allIds[i - 1], allIds[i]);
+    }
+  } // method testConcurrency
+
+}
@@ -69,6 +69,8 @@ public class CaServletFilter implements Filter {
 
   private static final String DFLT_SYSLOG_AUDIT_CFG = "etc/ca/audit.syslog.cfg";
 
+  private static final String DFLT_FILE_AUDIT_CFG = "etc/ca/audit.file.cfg";
+
   private Securities securities;
 
   private CaManagerImpl caManager;
@@ -113,8 +115,11 @@ public class CaServletFilter implements Filter {
     if ("syslog".equalsIgnoreCase(auditType) && auditConf == null) {
       auditConf = DFLT_SYSLOG_AUDIT_CFG;
     }
+    if ("file".equalsIgnoreCase(auditType) && auditConf == null) {
+      auditConf = DFLT_FILE_AUDIT_CFG;
+    }
 
-    Audits.init(auditType, auditConf);
+    Audits.init(auditType, auditConf, audit.getAsync());
 
     securities = new Securities();
     try {
@@ -197,6 +202,8 @@ public class CaServletFilter implements Filter {
     if (caManager != null) {
       caManager.close();
     }
+
+    Audits.close();
   } // method destroy
 
   @Override
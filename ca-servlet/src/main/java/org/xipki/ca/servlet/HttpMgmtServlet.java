@@ -50,6 +50,7 @@ import org.xipki.ca.api.mgmt.MgmtMessage.MgmtAction;
 import org.xipki.ca.api.mgmt.MgmtMessage.SignerEntryWrapper;
 import org.xipki.ca.api.mgmt.MgmtRequest;
 import org.xipki.ca.api.mgmt.MgmtResponse;
+import org.xipki.ca.api.mgmt.RevokeCertsResult;
 import org.xipki.util.Args;
 import org.xipki.util.HttpConstants;
 import org.xipki.util.InvalidConfException;
@@ -631,6 +632,13 @@ public class HttpMgmtServlet extends HttpServlet {
           resp = null;
           break;
         }
+        case revokeCertificates: {
+          MgmtRequest.RevokeCertificates req = parse(in, MgmtRequest.RevokeCertificates.class);
+          RevokeCertsResult result = caManager.revokeCertificates(req.getCaName(),
+              req.getSerialNumbers(), req.getReason(), req.getInvalidityTime());
+          resp = new MgmtResponse.RevokeCertificates(result);
+          break;
+        }
         case unlockCa: {
           caManager.unlockCa();
           resp = null;
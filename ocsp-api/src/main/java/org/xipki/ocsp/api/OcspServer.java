@@ -19,6 +19,7 @@ package org.xipki.ocsp.api;
 
 import java.io.Closeable;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 
 import org.xipki.util.HealthCheckResult;
 
@@ -35,5 +36,27 @@ public interface OcspServer extends Closeable {
 
   OcspRespWithCacheInfo answer(Responder responder, byte[] request, boolean viaGet);
 
+  /**
+   * Answers the request contained in the first {@code requestLength} bytes of
+   * {@code request}. The array may be a reused buffer, it will not be referenced after
+   * this method returns.
+   *
+   * @param responder
+   *          The responder.
+   * @param request
+   *          Buffer containing the request.
+   * @param requestLength
+   *          Length of the request.
+   * @param viaGet
+   *          Whether the request is received via HTTP GET.
+   * @return the response
+   */
+  default OcspRespWithCacheInfo answer(Responder responder, byte[] request, int requestLength,
+      boolean viaGet) {
+    byte[] exactRequest = (request.length == requestLength) ? request
+        : Arrays.copyOf(request, requestLength);
+    return answer(responder, exactRequest, viaGet);
+  }
+
   HealthCheckResult healthCheck(Responder responder);
 }
@@ -0,0 +1,162 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.ocsp.OCSPRequest;
+import org.bouncycastle.asn1.ocsp.Request;
+import org.bouncycastle.asn1.ocsp.TBSRequest;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xipki.ocsp.server.OCSPRespBuilder;
+import org.xipki.ocsp.server.type.CertID;
+import org.xipki.ocsp.server.type.OcspRequest;
+import org.xipki.ocsp.server.type.RequestBuffer;
+import org.xipki.ocsp.server.type.ResponderID;
+import org.xipki.security.ConcurrentContentSigner;
+import org.xipki.security.DfltConcurrentContentSigner;
+import org.xipki.security.XiContentSigner;
+import org.xipki.security.pkcs12.HmacContentSigner;
+import org.xipki.util.IoUtil;
+
+/**
+ * Benchmark of the request decoding and response encoding of the OCSP server.
+ *
+ * <p>The signer is a HMAC signer, so that the costs of the encoding are not hidden by the
+ * costs of the signature. Run with the option {@code -prof gc} to compare the allocation
+ * rate ({@code gc.alloc.rate.norm}) of the copying and pooled request paths, and of the
+ * response building against previous versions.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodingBenchmark {
+
+  private static final byte[] CERTSTATUS_GOOD = new byte[]{(byte) 0x80, 0x00};
+
+  @Param({"1", "10"})
+  public int numCertIds;
+
+  private byte[] request;
+
+  private List<CertID> certIds;
+
+  private ResponderID responderId;
+
+  private ConcurrentContentSigner signer;
+
+  @Setup
+  public void setup() throws Exception {
+    request = buildRequest(numCertIds);
+    certIds = OcspRequest.getInstance(request).getRequestList();
+
+    byte[] keyHash = new byte[20];
+    Arrays.fill(keyHash, (byte) 0x11);
+    responderId = new ResponderID(keyHash);
+
+    List<XiContentSigner> signers = new ArrayList<>(1);
+    signers.add(new HmacContentSigner(
+        new AlgorithmIdentifier(PKCSObjectIdentifiers.id_hmacWithSHA256, DERNull.INSTANCE),
+        new SecretKeySpec(new byte[32], "HMACSHA256")));
+    signer = new DfltConcurrentContentSigner(true, signers);
+  } // method setup
+
+  /**
+   * Reads the request into a newly allocated array, as done before version 5.3.8.
+   */
+  @Benchmark
+  public OcspRequest parseRequestCopying() throws Exception {
+    byte[] bytes = IoUtil.read(new ByteArrayInputStream(request));
+    return OcspRequest.getInstance(bytes);
+  }
+
+  /**
+   * Reads the request into the thread-local {@link RequestBuffer}.
+   */
+  @Benchmark
+  public OcspRequest parseRequestPooled() throws Exception {
+    RequestBuffer buffer = RequestBuffer.getInstance();
+    buffer.read(new ByteArrayInputStream(request), 4096);
+    return OcspRequest.getInstance(buffer.getBuffer(), buffer.getLength());
+  }
+
+  @Benchmark
+  public byte[] buildResponse() throws Exception {
+    OCSPRespBuilder builder = new OCSPRespBuilder(responderId);
+    Date now = new Date();
+    for (CertID certId : certIds) {
+      builder.addResponse(certId, CERTSTATUS_GOOD, now, null, (Extensions) null);
+    }
+    return builder.buildOCSPResponse(signer, null, now);
+  }
+
+  static byte[] buildRequest(int numCertIds) throws Exception {
+    AlgorithmIdentifier hashAlgId =
+        new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1, DERNull.INSTANCE);
+    byte[] nameHash = new byte[20];
+    Arrays.fill(nameHash, (byte) 0x22);
+    byte[] keyHash = new byte[20];
+    Arrays.fill(keyHash, (byte) 0x33);
+
+    ASN1EncodableVector requests = new ASN1EncodableVector();
+    for (int i = 0; i < numCertIds; i++) {
+      org.bouncycastle.asn1.ocsp.CertID certId = new org.bouncycastle.asn1.ocsp.CertID(
+          hashAlgId, new DEROctetString(nameHash), new DEROctetString(keyHash),
+          new ASN1Integer(BigInteger.valueOf(0x1000L + i)));
+      requests.add(new Request(certId, null));
+    }
+
+    TBSRequest tbsRequest = new TBSRequest(null, new DERSequence(requests), (Extensions) null);
+    return new OCSPRequest(tbsRequest, null).getEncoded();
+  } // method buildRequest
+
+}
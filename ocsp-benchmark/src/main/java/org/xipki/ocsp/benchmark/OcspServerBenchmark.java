@@ -0,0 +1,151 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xipki.ocsp.api.OcspRespWithCacheInfo;
+import org.xipki.ocsp.api.Responder;
+import org.xipki.ocsp.server.OcspServerImpl;
+import org.xipki.util.Base64;
+
+/**
+ * Benchmark of {@link OcspServerImpl#answer(Responder, byte[], int, boolean)} without the
+ * HTTP layer. See {@link OcspServerEnvironment} for the configuration of the server.
+ *
+ * <p>Example, only the single CertID requests via POST without cache, with the allocation
+ * profiler:
+ * <pre>
+ * java -jar benchmarks.jar OcspServerBenchmark -p numCertIds=1 -p method=POST \
+ *     -p cached=false -prof gc
+ * </pre>
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class OcspServerBenchmark {
+
+  @State(Scope.Thread)
+  public static class RequestIndex {
+
+    private int next;
+
+  } // class RequestIndex
+
+  private static final int NUM_CERTS = 10000;
+
+  // must be power of 2
+  private static final int NUM_REQUESTS = 1024;
+
+  @Param({OcspServerEnvironment.RESPONDER_DB, OcspServerEnvironment.RESPONDER_CRL})
+  public String store;
+
+  @Param({"1", "4"})
+  public int numCertIds;
+
+  @Param({"false", "true"})
+  public boolean nonce;
+
+  @Param({"false", "true"})
+  public boolean cached;
+
+  @Param({"POST", "GET"})
+  public String method;
+
+  private OcspServerEnvironment env;
+
+  private OcspServerImpl server;
+
+  private Responder responder;
+
+  private boolean viaGet;
+
+  /**
+   * DER encoded requests for POST, Base64 encoded requests for GET.
+   */
+  private byte[][] requests;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    env = new OcspServerEnvironment(NUM_CERTS, cached);
+    server = env.getServer();
+    responder = env.getResponder(store);
+    viaGet = "GET".equalsIgnoreCase(method);
+
+    Random random = new Random(NUM_REQUESTS);
+    requests = new byte[NUM_REQUESTS][];
+    for (int i = 0; i < NUM_REQUESTS; i++) {
+      long[] serialNumbers = new long[numCertIds];
+      for (int j = 0; j < numCertIds; j++) {
+        serialNumbers[j] = 1 + random.nextInt(NUM_CERTS);
+      }
+
+      byte[] request = env.buildRequest(serialNumbers, nonce);
+      requests[i] = viaGet ? Base64.encodeToByte(request) : request;
+    }
+
+    // make sure that the server is configured correctly
+    OcspServerEnvironment.checkResponse(doAnswer(requests[0]));
+  } // method setup
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    if (env != null) {
+      env.close();
+      env = null;
+    }
+  }
+
+  @Benchmark
+  public byte[] answer(RequestIndex index) {
+    return doAnswer(requests[index.next++ & (NUM_REQUESTS - 1)]);
+  }
+
+  private byte[] doAnswer(byte[] request) {
+    OcspRespWithCacheInfo resp;
+    if (viaGet) {
+      // the servlet decodes the request from the path
+      resp = server.answer(responder, Base64.decodeFast(request), true);
+    } else {
+      resp = server.answer(responder, request, request.length, false);
+    }
+    return resp.getResponse();
+  } // method doAnswer
+
+}
@@ -0,0 +1,535 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.benchmark;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.spec.ECGenParameterSpec;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.sec.SECObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.DigestCalculator;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.xipki.ocsp.api.Responder;
+import org.xipki.ocsp.server.OcspServerImpl;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.Securities;
+import org.xipki.security.Securities.SecurityConf;
+import org.xipki.security.pkcs11.P11CryptService;
+import org.xipki.security.pkcs11.P11IdentityId;
+import org.xipki.security.pkcs11.P11Module;
+import org.xipki.security.pkcs11.P11Slot;
+import org.xipki.security.pkcs11.P11Slot.P11NewKeyControl;
+import org.xipki.security.util.X509Util;
+import org.xipki.util.Base64;
+import org.xipki.util.FileOrValue;
+import org.xipki.util.IoUtil;
+import org.xipki.util.StringUtil;
+
+/**
+ * Self-contained OCSP server for the benchmarks.
+ *
+ * <p>All data is kept in a temporary directory and in in-memory H2 databases:
+ * <ul>
+ *   <li>responder {@link #RESPONDER_DB} uses a store of type xipki-db,</li>
+ *   <li>responder {@link #RESPONDER_CRL} uses a store of type crl, filled from a generated CRL,
+ *   </li>
+ *   <li>both responders sign with an EC key in the PKCS#11 emulator,</li>
+ *   <li>optionally the response cache is configured with the memory caches.</li>
+ * </ul>
+ * The certificates have the serial numbers 1 to {@code numCerts}, every tenth certificate
+ * is revoked.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class OcspServerEnvironment implements Closeable {
+
+  public static final String RESPONDER_DB = "db";
+
+  public static final String RESPONDER_CRL = "crl";
+
+  private static final String P11_MODULE = "default";
+
+  private static final String SIGNER_KEY_LABEL = "ocsp-signer";
+
+  private static final String SIGALGO = "SHA256withECDSA";
+
+  private static final String DB_USER = "root";
+
+  private static final String DB_PASSWORD = "123456";
+
+  private static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+  private static final AtomicInteger COUNTER = new AtomicInteger();
+
+  private static final String[] OCSP_DB_SCHEMA = {
+    "CREATE TABLE DBSCHEMA (NAME VARCHAR(45) NOT NULL PRIMARY KEY,"
+        + " VALUE2 VARCHAR(100) NOT NULL)",
+    "INSERT INTO DBSCHEMA (NAME,VALUE2) VALUES ('VERSION','4')",
+    "INSERT INTO DBSCHEMA (NAME,VALUE2) VALUES ('X500NAME_MAXLEN','350')",
+    "INSERT INTO DBSCHEMA (NAME,VALUE2) VALUES ('CERTHASH_ALGO','SHA256')",
+    "CREATE TABLE ISSUER (ID SMALLINT NOT NULL PRIMARY KEY, SUBJECT VARCHAR(350) NOT NULL,"
+        + " NBEFORE BIGINT NOT NULL, NAFTER BIGINT NOT NULL, S1C CHAR(28) NOT NULL,"
+        + " REV_INFO VARCHAR(200), CERT VARCHAR(6000) NOT NULL, CRL_ID INT)",
+    "CREATE TABLE CRL_INFO (ID INT NOT NULL PRIMARY KEY, NAME VARCHAR(100) NOT NULL,"
+        + " INFO VARCHAR(1000) NOT NULL)",
+    "CREATE TABLE CERT (ID BIGINT NOT NULL PRIMARY KEY, IID SMALLINT NOT NULL,"
+        + " SN VARCHAR(40) NOT NULL, CRL_ID INT, LUPDATE BIGINT NOT NULL, NBEFORE BIGINT,"
+        + " NAFTER BIGINT, REV SMALLINT NOT NULL, RR SMALLINT, RT BIGINT, RIT BIGINT,"
+        + " HASH CHAR(86), SUBJECT VARCHAR(350), CONSTRAINT CONST_ISSUER_SN UNIQUE (IID,SN))"};
+
+  private static final String[] CACHE_DB_SCHEMA = {
+    "CREATE TABLE ISSUER (ID INT NOT NULL PRIMARY KEY, S1C CHAR(28) NOT NULL,"
+        + " CERT VARCHAR(6000) NOT NULL)",
+    "CREATE TABLE OCSP (ID BIGINT NOT NULL PRIMARY KEY, IID INT NOT NULL,"
+        + " IDENT VARCHAR(48) NOT NULL, THIS_UPDATE BIGINT NOT NULL,"
+        + " NEXT_UPDATE BIGINT NOT NULL, RESP VARCHAR(4000) NOT NULL)"};
+
+  private final SecureRandom random = new SecureRandom();
+
+  private final List<String> dbUrls = new LinkedList<>();
+
+  private final File baseDir;
+
+  private final Securities securities;
+
+  private final OcspServerImpl server;
+
+  private final X509CertificateHolder caCert;
+
+  public OcspServerEnvironment(int numCerts, boolean cached) throws Exception {
+    baseDir = Files.createTempDirectory("xipki-ocsp-benchmark").toFile();
+    final String dbPrefix = "jdbc:h2:mem:ocsp-benchmark-" + COUNTER.incrementAndGet() + "-";
+
+    // PKCS#11 emulator with the signing key of the OCSP responders
+    File p11ConfFile = new File(baseDir, "pkcs11.json");
+    saveText(p11ConfFile, buildPkcs11Conf(new File(baseDir, "pkcs11-emulator")));
+
+    SecurityConf securityConf = new SecurityConf();
+    securityConf.setPkcs11Conf(FileOrValue.ofFile(p11ConfFile.getPath()));
+    securities = new Securities();
+    securities.init(securityConf);
+
+    P11CryptService p11Service =
+        securities.getP11CryptServiceFactory().getP11CryptService(P11_MODULE);
+    P11Module p11Module = p11Service.getModule();
+    P11Slot slot = p11Module.getSlot(p11Module.getSlotIdForIndex(0));
+    P11IdentityId identityId = slot.generateECKeypair(SECObjectIdentifiers.secp256r1,
+        new P11NewKeyControl(null, SIGNER_KEY_LABEL));
+    PublicKey signerPublicKey = p11Service.getIdentity(identityId).getPublicKey();
+
+    // CA and OCSP signer certificates
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(new ECGenParameterSpec("secp256r1"));
+    KeyPair caKeyPair = kpGen.generateKeyPair();
+    ContentSigner caSigner = new JcaContentSignerBuilder(SIGALGO).build(caKeyPair.getPrivate());
+    JcaX509ExtensionUtils extnUtils = new JcaX509ExtensionUtils();
+
+    Date now = new Date();
+    Date notBefore = new Date(now.getTime() - DAY_MS);
+    Date notAfter = new Date(now.getTime() + 3650 * DAY_MS);
+    X500Name caSubject = new X500Name("CN=Benchmark CA,O=xipki");
+
+    X509v3CertificateBuilder certBuilder = new JcaX509v3CertificateBuilder(caSubject,
+        BigInteger.ONE, notBefore, notAfter, caSubject, caKeyPair.getPublic());
+    certBuilder.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+    certBuilder.addExtension(Extension.keyUsage, true,
+        new KeyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign));
+    certBuilder.addExtension(Extension.subjectKeyIdentifier, false,
+        extnUtils.createSubjectKeyIdentifier(caKeyPair.getPublic()));
+    caCert = certBuilder.build(caSigner);
+
+    certBuilder = new JcaX509v3CertificateBuilder(caSubject, BigInteger.valueOf(2),
+        notBefore, notAfter, new X500Name("CN=Benchmark OCSP Signer,O=xipki"), signerPublicKey);
+    certBuilder.addExtension(Extension.authorityKeyIdentifier, false,
+        extnUtils.createAuthorityKeyIdentifier(caCert));
+    certBuilder.addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.digitalSignature));
+    certBuilder.addExtension(Extension.extendedKeyUsage, false,
+        new ExtendedKeyUsage(KeyPurposeId.id_kp_OCSPSigning));
+    File signerCertFile = new File(baseDir, "ocsp-signer.der");
+    IoUtil.save(signerCertFile, certBuilder.build(caSigner).getEncoded());
+
+    // database of the store xipki-db
+    String ocspDbUrl = dbPrefix + "ocsp;DB_CLOSE_DELAY=-1";
+    executeSql(ocspDbUrl, OCSP_DB_SCHEMA);
+    fillOcspDb(ocspDbUrl, numCerts, now);
+    File ocspDbConfFile = new File(baseDir, "ocsp-db.properties");
+    saveText(ocspDbConfFile, buildDataSourceConf(ocspDbUrl));
+
+    // CRL and database of the store crl
+    File crlDir = new File(baseDir, "crls/crl-benchmark");
+    crlDir.mkdirs();
+    IoUtil.save(new File(crlDir, "ca.crt"), caCert.getEncoded());
+
+    X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(caSubject, now);
+    crlBuilder.setNextUpdate(new Date(now.getTime() + DAY_MS));
+    crlBuilder.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.ONE));
+    crlBuilder.addExtension(Extension.authorityKeyIdentifier, false,
+        extnUtils.createAuthorityKeyIdentifier(caCert));
+    Date revocationTime = new Date(now.getTime() - DAY_MS / 2);
+    for (int i = 1; i <= numCerts; i++) {
+      if (isRevoked(i)) {
+        crlBuilder.addCRLEntry(BigInteger.valueOf(i), revocationTime, CRLReason.keyCompromise);
+      }
+    }
+    IoUtil.save(new File(crlDir, "ca.crl"), crlBuilder.build(caSigner).getEncoded());
+    IoUtil.save(new File(crlDir, "UPDATEME"), new byte[0]);
+
+    String crlDbUrl = dbPrefix + "crl;DB_CLOSE_DELAY=-1";
+    executeSql(crlDbUrl, OCSP_DB_SCHEMA);
+    File crlDbConfFile = new File(baseDir, "ocsp-crl-db.properties");
+    saveText(crlDbConfFile, buildDataSourceConf(crlDbUrl));
+
+    // database of the response cache
+    File cacheDbConfFile = null;
+    if (cached) {
+      String cacheDbUrl = dbPrefix + "cache;DB_CLOSE_DELAY=-1";
+      executeSql(cacheDbUrl, CACHE_DB_SCHEMA);
+      cacheDbConfFile = new File(baseDir, "ocsp-cache-db.properties");
+      saveText(cacheDbConfFile, buildDataSourceConf(cacheDbUrl));
+    }
+
+    File confFile = new File(baseDir, "ocsp-responder.json");
+    saveText(confFile, buildServerConf(signerCertFile, ocspDbConfFile, crlDbConfFile,
+        crlDir.getParentFile(), cacheDbConfFile));
+
+    server = new OcspServerImpl();
+    server.setSecurityFactory(securities.getSecurityFactory());
+    server.setConfFile(confFile.getPath());
+    server.init(true);
+    if (!server.isInitialized()) {
+      close();
+      throw new IllegalStateException("could not initialize the OCSP server");
+    }
+
+    waitUntilHealthy(RESPONDER_DB);
+    waitUntilHealthy(RESPONDER_CRL);
+  } // constructor
+
+  public OcspServerImpl getServer() {
+    return server;
+  }
+
+  public Responder getResponder(String name) {
+    Responder responder = server.getResponder(name);
+    if (responder == null) {
+      throw new IllegalArgumentException("unknown responder " + name);
+    }
+    return responder;
+  }
+
+  public static boolean isRevoked(long serialNumber) {
+    return serialNumber % 10 == 0;
+  }
+
+  /**
+   * Builds an unsigned OCSP request.
+   *
+   * @param serialNumbers
+   *          serial numbers of the certificates. Must not be {@code null}.
+   * @param nonce
+   *          whether to add a nonce.
+   * @return the DER encoded OCSP request.
+   * @throws Exception
+   *           if error occurs while building the request.
+   */
+  public byte[] buildRequest(long[] serialNumbers, boolean nonce) throws Exception {
+    DigestCalculator sha1 =
+        new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1);
+
+    OCSPReqBuilder builder = new OCSPReqBuilder();
+    for (long serialNumber : serialNumbers) {
+      builder.addRequest(new CertificateID(sha1, caCert, BigInteger.valueOf(serialNumber)));
+    }
+
+    if (nonce) {
+      byte[] nonceValue = new byte[16];
+      random.nextBytes(nonceValue);
+      builder.setRequestExtensions(new Extensions(new Extension(
+          OCSPObjectIdentifiers.id_pkix_ocsp_nonce, false, new DEROctetString(nonceValue))));
+    }
+
+    return builder.build().getEncoded();
+  } // method buildRequest
+
+  /**
+   * Checks that the response is a successful OCSP response.
+   *
+   * @param response
+   *          the DER encoded OCSP response.
+   * @throws IOException
+   *           if the response is invalid or not successful.
+   */
+  public static void checkResponse(byte[] response) throws IOException {
+    if (response == null) {
+      throw new IOException("no response");
+    }
+
+    int status = new OCSPResp(response).getStatus();
+    if (status != OCSPResp.SUCCESSFUL) {
+      throw new IOException("OCSP response is not successful, status=" + status);
+    }
+  } // method checkResponse
+
+  @Override
+  public void close() {
+    if (server != null) {
+      server.close();
+    }
+
+    if (securities != null) {
+      securities.close();
+    }
+
+    for (String url : dbUrls) {
+      try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASSWORD);
+          Statement stmt = conn.createStatement()) {
+        stmt.execute("SHUTDOWN");
+      } catch (SQLException ex) {
+        // the database is already closed
+      }
+    }
+    dbUrls.clear();
+
+    deleteDir(baseDir);
+  } // method close
+
+  private void waitUntilHealthy(String responderName) throws InterruptedException {
+    Responder responder = getResponder(responderName);
+    long deadline = System.currentTimeMillis() + 60 * 1000;
+    while (!server.healthCheck(responder).isHealthy()) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new IllegalStateException("responder " + responderName + " is not healthy");
+      }
+      Thread.sleep(100);
+    }
+  } // method waitUntilHealthy
+
+  private void executeSql(String url, String[] sqls) throws SQLException {
+    dbUrls.add(url);
+    try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASSWORD);
+        Statement stmt = conn.createStatement()) {
+      for (String sql : sqls) {
+        stmt.execute(sql);
+      }
+    }
+  } // method executeSql
+
+  private void fillOcspDb(String url, int numCerts, Date now)
+      throws SQLException, IOException {
+    byte[] encodedCaCert = caCert.getEncoded();
+    long notBefore = caCert.getNotBefore().getTime() / 1000;
+    long notAfter = caCert.getNotAfter().getTime() / 1000;
+    long lastUpdate = now.getTime() / 1000;
+    long revocationTime = lastUpdate - DAY_MS / 2 / 1000;
+
+    try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASSWORD)) {
+      try (PreparedStatement ps = conn.prepareStatement(
+          "INSERT INTO ISSUER (ID,SUBJECT,NBEFORE,NAFTER,S1C,CERT) VALUES (1,?,?,?,?,?)")) {
+        ps.setString(1, X509Util.getRfc4519Name(caCert.getSubject()));
+        ps.setLong(2, notBefore);
+        ps.setLong(3, notAfter);
+        ps.setString(4, HashAlgo.SHA1.base64Hash(encodedCaCert));
+        ps.setString(5, Base64.encodeToString(encodedCaCert));
+        ps.executeUpdate();
+      }
+
+      conn.setAutoCommit(false);
+      try (PreparedStatement ps = conn.prepareStatement("INSERT INTO CERT "
+          + "(ID,IID,SN,LUPDATE,NBEFORE,NAFTER,REV,RR,RT) VALUES (?,1,?,?,?,?,?,?,?)")) {
+        for (int i = 1; i <= numCerts; i++) {
+          boolean revoked = isRevoked(i);
+          int idx = 1;
+          ps.setLong(idx++, i);
+          ps.setString(idx++, Long.toHexString(i));
+          ps.setLong(idx++, lastUpdate);
+          ps.setLong(idx++, notBefore);
+          ps.setLong(idx++, notAfter);
+          ps.setInt(idx++, revoked ? 1 : 0);
+          if (revoked) {
+            ps.setInt(idx++, CRLReason.keyCompromise);
+            ps.setLong(idx++, revocationTime);
+          } else {
+            ps.setNull(idx++, Types.SMALLINT);
+            ps.setNull(idx++, Types.BIGINT);
+          }
+          ps.addBatch();
+
+          if (i % 1000 == 0) {
+            ps.executeBatch();
+          }
+        }
+        ps.executeBatch();
+      }
+      conn.commit();
+    }
+  } // method fillOcspDb
+
+  private static String buildPkcs11Conf(File emulatorDir) {
+    return "{\"modules\":[{\"name\":\"" + P11_MODULE + "\",\"type\":\"emulator\","
+        + "\"readonly\":false,\"user\":\"CKU_USER\","
+        + "\"includeSlots\":[{\"index\":0}],"
+        + "\"mechanismFilters\":[{\"mechanismSet\":\"all\",\"slots\":[{\"index\":0}]}],"
+        + "\"nativeLibraries\":[{\"path\":\"" + toPath(emulatorDir) + "\"}],"
+        + "\"passwordSets\":[{\"passwords\":[\"" + DB_PASSWORD + "\"],"
+        + "\"slots\":[{\"index\":0}]}]}],"
+        + "\"mechanismSets\":[{\"name\":\"all\",\"mechanisms\":[\"ALL\"]}]}";
+  } // method buildPkcs11Conf
+
+  private static String buildDataSourceConf(String url) {
+    return "dataSourceClassName = org.h2.jdbcx.JdbcDataSource\n"
+        + "dataSource.url = " + url + "\n"
+        + "dataSource.user = " + DB_USER + "\n"
+        + "dataSource.password = " + DB_PASSWORD + "\n"
+        + "autoCommit = true\n"
+        + "readOnly = false\n"
+        + "maximumPoolSize = 20\n"
+        + "minimumIdle = 1\n"
+        + "transactionIsolation = TRANSACTION_READ_COMMITTED\n";
+  } // method buildDataSourceConf
+
+  private static String buildServerConf(File signerCertFile, File ocspDbConfFile,
+      File crlDbConfFile, File crlsDir, File cacheDbConfFile) {
+    StringBuilder sb = new StringBuilder(4000);
+    sb.append("{");
+    if (cacheDbConfFile != null) {
+      sb.append("\"responseCache\":{\"datasource\":{\"name\":\"datasource-cache\",")
+        .append("\"conf\":{\"file\":\"").append(toPath(cacheDbConfFile)).append("\"}},")
+        .append("\"validity\":\"1d\",\"memoryCacheSize\":64,\"singleResponseCacheSize\":64},");
+    }
+
+    sb.append("\"master\":true,\"unknownIssuerBehaviour\":\"malformedRequest\",");
+
+    sb.append("\"datasources\":[{\"name\":\"datasource-db\",\"conf\":{\"file\":\"")
+      .append(toPath(ocspDbConfFile)).append("\"}},")
+      .append("{\"name\":\"datasource-crl\",\"conf\":{\"file\":\"")
+      .append(toPath(crlDbConfFile)).append("\"}}],");
+
+    sb.append("\"requestOptions\":[{\"name\":\"request1\",")
+      .append("\"hashAlgorithms\":[\"SHA1\",\"SHA256\"],")
+      .append("\"maxRequestListCount\":10,\"maxRequestSize\":4096,")
+      .append("\"nonce\":{\"maxLen\":32,\"minLen\":4,\"occurrence\":\"optional\"},")
+      .append("\"signatureRequired\":false,\"supportsHttpGet\":true,")
+      .append("\"validateSignature\":false,\"versions\":[\"v1\"]}],");
+
+    sb.append("\"responders\":[");
+    appendResponder(sb, RESPONDER_DB);
+    sb.append(",");
+    appendResponder(sb, RESPONDER_CRL);
+    sb.append("],");
+
+    sb.append("\"responseOptions\":[{\"name\":\"response1\",\"embedCertsMode\":\"SIGNER\",")
+      .append("\"includeCerthash\":false,\"includeInvalidityDate\":false,")
+      .append("\"includeRevReason\":true,\"responderIdByName\":true}],");
+
+    sb.append("\"signers\":[{\"name\":\"signer1\",\"type\":\"pkcs11\",")
+      .append("\"algorithms\":[\"").append(SIGALGO).append("\"],")
+      .append("\"key\":\"module=").append(P11_MODULE).append(",slot=0,key-label=")
+      .append(SIGNER_KEY_LABEL).append("\",")
+      .append("\"cert\":{\"file\":\"").append(toPath(signerCertFile)).append("\"}}],");
+
+    sb.append("\"stores\":[");
+    appendStore(sb, RESPONDER_DB, "datasource-db", "xipki-db", "{}", "unknown");
+    sb.append(",");
+    appendStore(sb, RESPONDER_CRL, "datasource-crl", "crl",
+        "{\"dir\":\"" + toPath(crlsDir) + "\",\"sqlBatchCommit\":1000}", "good");
+    sb.append("]}");
+    return sb.toString();
+  } // method buildServerConf
+
+  private static void appendResponder(StringBuilder sb, String name) {
+    sb.append("{\"name\":\"").append(name).append("\",\"inheritCaRevocation\":true,")
+      .append("\"mode\":\"RFC6960\",\"request\":\"request1\",\"response\":\"response1\",")
+      .append("\"servletPaths\":[\"/").append(name).append("\"],\"signer\":\"signer1\",")
+      .append("\"stores\":[\"").append(name).append("\"]}");
+  } // method appendResponder
+
+  private static void appendStore(StringBuilder sb, String name, String datasource,
+      String type, String sourceConf, String unknownCertBehaviour) {
+    sb.append("{\"name\":\"").append(name).append("\",")
+      .append("\"ignoreExpiredCert\":true,\"ignoreNotYetValidCert\":true,")
+      .append("\"includeArchiveCutoff\":false,\"includeCrlId\":false,")
+      .append("\"retentionInterval\":-1,\"minNextUpdatePeriod\":\"1d\",")
+      .append("\"updateInterval\":\"1d\",")
+      .append("\"source\":{\"datasource\":\"").append(datasource).append("\",")
+      .append("\"type\":\"").append(type).append("\",\"conf\":").append(sourceConf).append("},")
+      .append("\"unknownCertBehaviour\":\"").append(unknownCertBehaviour).append("\"}");
+  } // method appendStore
+
+  private static String toPath(File file) {
+    return file.getAbsolutePath().replace('\\', '/');
+  }
+
+  private static void saveText(File file, String text) throws IOException {
+    IoUtil.save(file, StringUtil.toUtf8Bytes(text));
+  }
+
+  private static void deleteDir(File dir) {
+    File[] children = dir.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        if (child.isDirectory()) {
+          deleteDir(child);
+        } else {
+          child.delete();
+        }
+      }
+    }
+    dir.delete();
+  } // method deleteDir
+
+}
@@ -49,6 +49,12 @@ public class OCSPRespBuilder {
   private static final byte[] successfulStatus = Hex.decode("0a0100");
   private static final byte[] responseTypeBasic = Hex.decode("06092b0601050507300101");
 
+  // buffers larger than this size are not kept in the thread-local variable.
+  private static final int MAX_RETAINED_TBS_SIZE = 64 * 1024;
+
+  // reusable buffer for the to-be-signed ResponseData.
+  private static final ThreadLocal<byte[]> tbsBuffers = new ThreadLocal<>();
+
   private List<SingleResponse> list = new LinkedList<>();
   private Extensions responseExtensions = null;
   private ResponderID responderId;
@@ -77,6 +83,15 @@ public class OCSPRespBuilder {
     list.add(new SingleResponse(certId, certStatus, thisUpdate, nextUpdate, singleExtensions));
   }
 
+  /**
+   * Add a prepared response, e.g. a cached one, for a particular Certificate ID.
+   *
+   * @param singleResponse the response
+   */
+  public void addResponse(SingleResponse singleResponse) {
+    list.add(singleResponse);
+  }
+
   /**
    * Set the extensions for the response.
    *
@@ -93,7 +108,8 @@ public class OCSPRespBuilder {
     ResponseData responseData = new ResponseData(0,
         responderId, producedAt, list, responseExtensions);
 
-    byte[] tbs = new byte[responseData.getEncodedLength()];
+    final int tbsLen = responseData.getEncodedLength();
+    byte[] tbs = getTbsBuffer(tbsLen);
     responseData.write(tbs, 0);
 
     ConcurrentBagEntrySigner signer0 = signer.borrowSigner();
@@ -105,7 +121,7 @@ public class OCSPRespBuilder {
       XiContentSigner csigner0 = signer0.value();
       OutputStream sigOut = csigner0.getOutputStream();
       try {
-        sigOut.write(tbs);
+        sigOut.write(tbs, 0, tbsLen);
         sigOut.close();
       } catch (IOException ex) {
         throw new OCSPException("exception signing TBSRequest: " + ex.getMessage(), ex);
@@ -123,7 +139,7 @@ public class OCSPRespBuilder {
     int signatureLen = getLen(signatureBodyLen);
 
     // BasicOCSPResponse
-    int basicResponseBodyLen = tbs.length + sigAlgId.length + signatureLen;
+    int basicResponseBodyLen = tbsLen + sigAlgId.length + signatureLen;
     if (taggedCertSequence != null) {
       basicResponseBodyLen += taggedCertSequence.getEncodedLength();
     }
@@ -163,7 +179,8 @@ public class OCSPRespBuilder {
     // BasicOCSPResponse
     offset += ASN1Type.writeHeader((byte) 0x30, basicResponseBodyLen, out, offset);
     // BasicOCSPResponse.tbsResponseData
-    offset += arraycopy(tbs, out, offset);
+    System.arraycopy(tbs, 0, out, offset, tbsLen);
+    offset += tbsLen;
 
     // BasicOCSPResponse.signatureAlgorithm
     offset += arraycopy(sigAlgId, out, offset);
@@ -179,6 +196,19 @@ public class OCSPRespBuilder {
     return out;
   } // method buildOCSPResponse
 
+  private static byte[] getTbsBuffer(int size) {
+    byte[] buffer = tbsBuffers.get();
+    if (buffer != null && buffer.length >= size) {
+      return buffer;
+    }
+
+    buffer = new byte[Math.max(size, 1024)];
+    if (buffer.length <= MAX_RETAINED_TBS_SIZE) {
+      tbsBuffers.set(buffer);
+    }
+    return buffer;
+  } // method getTbsBuffer
+
   private static int getLen(int bodyLen) {
     return ASN1Type.getHeaderLen(bodyLen) + bodyLen;
   }
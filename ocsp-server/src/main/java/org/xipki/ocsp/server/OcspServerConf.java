@@ -411,6 +411,36 @@ public class OcspServerConf extends ValidatableConf {
 
     private String validity;
 
+    /**
+     * Maximal size, in megabytes, of the in-memory cache in front of the cache database.
+     * 0 to disable the in-memory cache.
+     */
+    private int memoryCacheSize;
+
+    /**
+     * Maximal size, in megabytes, of the in-memory cache of the single responses (per CertID).
+     * The cached single responses are used to assemble the responses of requests with more
+     * than one CertID or with nonce. 0 to disable this cache.
+     */
+    private int singleResponseCacheSize;
+
+    /**
+     * Maximal number of responses waiting to be written to the cache database. If positive,
+     * the responses are written asynchronously in batches, otherwise synchronously.
+     */
+    private int writeBehindQueueSize;
+
+    /**
+     * Number of responses written to the cache database in one batch.
+     */
+    private int writeBehindBatchSize = 100;
+
+    /**
+     * If present, the responses of all certificates in the stores of type xipki-db and crl
+     * are generated and cached after each update of the store. Only applied in master mode.
+     */
+    private ResponsePregeneration pregeneration;
+
     public DataSourceConf getDatasource() {
       return datasource;
     }
@@ -431,13 +461,104 @@ public class OcspServerConf extends ValidatableConf {
       return validity == null ? new Validity(1, Unit.DAY) : Validity.getInstance(validity);
     }
 
+    public int getMemoryCacheSize() {
+      return memoryCacheSize;
+    }
+
+    public void setMemoryCacheSize(int memoryCacheSize) {
+      this.memoryCacheSize = memoryCacheSize;
+    }
+
+    public int getSingleResponseCacheSize() {
+      return singleResponseCacheSize;
+    }
+
+    public void setSingleResponseCacheSize(int singleResponseCacheSize) {
+      this.singleResponseCacheSize = singleResponseCacheSize;
+    }
+
+    public ResponsePregeneration getPregeneration() {
+      return pregeneration;
+    }
+
+    public void setPregeneration(ResponsePregeneration pregeneration) {
+      this.pregeneration = pregeneration;
+    }
+
+    public int getWriteBehindQueueSize() {
+      return writeBehindQueueSize;
+    }
+
+    public void setWriteBehindQueueSize(int writeBehindQueueSize) {
+      this.writeBehindQueueSize = writeBehindQueueSize;
+    }
+
+    public int getWriteBehindBatchSize() {
+      return writeBehindBatchSize;
+    }
+
+    public void setWriteBehindBatchSize(int writeBehindBatchSize) {
+      this.writeBehindBatchSize = writeBehindBatchSize;
+    }
+
     @Override
     public void validate() throws InvalidConfException {
       notNull(datasource, "datasource");
+      if (writeBehindBatchSize < 1) {
+        throw new InvalidConfException("writeBehindBatchSize is not positive: "
+            + writeBehindBatchSize);
+      }
+
+      if (memoryCacheSize < 0 || memoryCacheSize > 2047) {
+        throw new InvalidConfException("memoryCacheSize is not within [0, 2047]: "
+            + memoryCacheSize);
+      }
+
+      if (singleResponseCacheSize < 0 || singleResponseCacheSize > 2047) {
+        throw new InvalidConfException("singleResponseCacheSize is not within [0, 2047]: "
+            + singleResponseCacheSize);
+      }
+
+      validate(pregeneration);
     }
 
   } // class ResponseCache
 
+  public static class ResponsePregeneration extends ValidatableConf {
+
+    /**
+     * Number of threads to generate the responses. If not positive, the number of available
+     * processors will be used.
+     */
+    private int threads;
+
+    /**
+     * Maximal number of responses generated per second. If not positive, unlimited.
+     */
+    private int maxRate;
+
+    public int getThreads() {
+      return threads;
+    }
+
+    public void setThreads(int threads) {
+      this.threads = threads;
+    }
+
+    public int getMaxRate() {
+      return maxRate;
+    }
+
+    public void setMaxRate(int maxRate) {
+      this.maxRate = maxRate;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+    }
+
+  } // class ResponsePregeneration
+
   public static class ResponseOption extends ValidatableConf {
 
     private boolean responderIdByName = true;
@@ -79,6 +79,7 @@ import org.xipki.ocsp.server.store.CaDbCertStatusStore;
 import org.xipki.ocsp.server.store.CrlDbCertStatusStore;
 import org.xipki.ocsp.server.store.DbCertStatusStore;
 import org.xipki.ocsp.server.store.ResponseCacher;
+import org.xipki.ocsp.server.store.ResponseCacher.CachedSingleResponse;
 import org.xipki.ocsp.server.store.ejbca.EjbcaCertStatusStore;
 import org.xipki.ocsp.server.type.CertID;
 import org.xipki.ocsp.server.type.EncodingException;
@@ -88,6 +89,7 @@ import org.xipki.ocsp.server.type.Extensions;
 import org.xipki.ocsp.server.type.OID;
 import org.xipki.ocsp.server.type.OcspRequest;
 import org.xipki.ocsp.server.type.ResponderID;
+import org.xipki.ocsp.server.type.SingleResponse;
 import org.xipki.ocsp.server.type.TaggedCertSequence;
 import org.xipki.ocsp.server.type.WritableOnlyExtension;
 import org.xipki.password.PasswordResolverException;
@@ -196,6 +198,8 @@ public class OcspServerImpl implements OcspServer {
 
   private ResponseCacher responseCacher;
 
+  private ResponsePregenerator responsePregenerator;
+
   private Map<String, ResponderImpl> responders = new HashMap<>();
 
   private Map<String, ResponseSigner> signers = new HashMap<>();
@@ -316,6 +320,10 @@ public class OcspServerImpl implements OcspServer {
     initialized.set(false);
 
     // reset
+    if (responsePregenerator != null) {
+      responsePregenerator.close();
+      responsePregenerator = null;
+    }
     responseCacher = null;
     responders.clear();
     signers.clear();
@@ -469,7 +477,12 @@ public class OcspServerImpl implements OcspServer {
       } finally {
         closeStream(dsStream);
       }
-      responseCacher = new ResponseCacher(datasource, master, cacheType.validity());
+      responseCacher = new ResponseCacher(datasource, master, cacheType.validity(),
+          cacheType.getMemoryCacheSize() * 1024 * 1024);
+      responseCacher.setWriteBehindQueueSize(cacheType.getWriteBehindQueueSize());
+      responseCacher.setWriteBehindBatchSize(cacheType.getWriteBehindBatchSize());
+      responseCacher.setSingleResponseCacheSize(
+          cacheType.getSingleResponseCacheSize() * 1024 * 1024);
       responseCacher.init();
     }
 
@@ -572,7 +585,7 @@ public class OcspServerImpl implements OcspServer {
         }
       }
 
-      ResponderImpl responder = new ResponderImpl(option,
+      ResponderImpl responder = new ResponderImpl(name, option,
           requestOptions.get(option.getRequestOptionName()),
           responseOption, signer, statusStores);
       responders.put(name, responder);
@@ -598,11 +611,21 @@ public class OcspServerImpl implements OcspServer {
       list2.add(m.str);
     }
     this.servletPaths = list2;
+
+    if (responseCacher != null && master && cacheType.getPregeneration() != null) {
+      responsePregenerator = new ResponsePregenerator(this, responseCacher, responders,
+          cacheType.getPregeneration());
+      responsePregenerator.start();
+    }
   } // method init0
 
   @Override
   public void close() {
     LOG.info("stopped OCSP Responder");
+    if (responsePregenerator != null) {
+      responsePregenerator.close();
+    }
+
     if (responseCacher != null) {
       responseCacher.close();
     }
@@ -618,6 +641,12 @@ public class OcspServerImpl implements OcspServer {
 
   @Override
   public OcspRespWithCacheInfo answer(Responder responder2, byte[] request, boolean viaGet) {
+    return answer(responder2, request, request.length, viaGet);
+  }
+
+  @Override
+  public OcspRespWithCacheInfo answer(Responder responder2, byte[] request, int requestLength,
+      boolean viaGet) {
     ResponderImpl responder = (ResponderImpl) responder2;
     RequestOption reqOpt = responder.getRequestOption();
 
@@ -640,7 +669,7 @@ public class OcspServerImpl implements OcspServer {
     OcspServerConf.ResponseOption repOpt = responder.getResponseOption();
 
     try {
-      Object reqOrRrrorResp = checkSignature(request, reqOpt);
+      Object reqOrRrrorResp = checkSignature(request, requestLength, reqOpt);
       if (reqOrRrrorResp instanceof OcspRespWithCacheInfo) {
         return (OcspRespWithCacheInfo) reqOrRrrorResp;
       }
@@ -823,7 +852,7 @@ public class OcspServerImpl implements OcspServer {
       for (int i = 0; i < requestsSize; i++) {
         OcspRespWithCacheInfo failureOcspResp = processCertReq(
             unknownAsRevoked0, requestList.get(i),
-            builder, responder, reqOpt, repOpt, repControl);
+            builder, responder, reqOpt, repOpt, repControl, true);
 
         if (failureOcspResp != null) {
           return failureOcspResp;
@@ -842,16 +871,7 @@ public class OcspServerImpl implements OcspServer {
         builder.setResponseExtensions(new Extensions(respExtensions));
       }
 
-      TaggedCertSequence certsInResp;
-      EmbedCertsMode certsMode = repOpt.getEmbedCertsMode();
-      if (certsMode == EmbedCertsMode.SIGNER) {
-        certsInResp = signer.getSequenceOfCert();
-      } else if (certsMode == EmbedCertsMode.NONE) {
-        certsInResp = null;
-      } else {
-        // certsMode == EmbedCertsMode.SIGNER_AND_CA
-        certsInResp = signer.getSequenceOfCertChain();
-      }
+      TaggedCertSequence certsInResp = getCertsInResp(signer, repOpt);
 
       byte[] encodeOcspResponse;
       try {
@@ -887,16 +907,99 @@ public class OcspServerImpl implements OcspServer {
     }
   } // method ask
 
+  /**
+   * Generates the response for the given CertID without request, and stores it in the
+   * response cache database. The status is read from the stores, and the in-memory caches are
+   * bypassed, so that the pregeneration does not evict the entries of the real requests.
+   *
+   * @param responder
+   *          The responder.
+   * @param certId
+   *          The CertID.
+   * @param cacheIssuerId
+   *          ID of the issuer in the response cache database.
+   * @return whether the response has been generated and cached.
+   * @throws Exception
+   *           if error occurs while generating the response.
+   */
+  boolean pregenerateResponse(ResponderImpl responder, CertID certId, int cacheIssuerId)
+      throws Exception {
+    if (responseCacher == null) {
+      return false;
+    }
+
+    ResponseSigner signer = responder.getSigner();
+    OcspServerConf.ResponseOption repOpt = responder.getResponseOption();
+
+    OcspRespControl repControl = new OcspRespControl();
+    repControl.canCacheInfo = true;
+
+    OCSPRespBuilder builder = new OCSPRespBuilder(
+        signer.getResponderId(repOpt.isResponderIdByName()));
+    // the cached single responses may be older than the store.
+    OcspRespWithCacheInfo failureOcspResp = processCertReq(new AtomicBoolean(false), certId,
+        builder, responder, responder.getRequestOption(), repOpt, repControl, false);
+    responseCacher.removeSingleResponse(responder.getName(), certId);
+    if (failureOcspResp != null || !repControl.canCacheInfo) {
+      // only the responses with status good and revoked are cached.
+      return false;
+    }
+
+    ConcurrentContentSigner concurrentSigner = signer.getFirstSigner();
+    byte[] encodeOcspResponse = builder.buildOCSPResponse(concurrentSigner,
+        getCertsInResp(signer, repOpt), new Date());
+    responseCacher.storePregeneratedOcspResponse(cacheIssuerId, certId.getSerialNumber(),
+        repControl.cacheThisUpdate, repControl.cacheNextUpdate,
+        concurrentSigner.getAlgorithmCode(), encodeOcspResponse);
+    return true;
+  } // method pregenerateResponse
+
+  private static TaggedCertSequence getCertsInResp(ResponseSigner signer,
+      OcspServerConf.ResponseOption repOpt) {
+    EmbedCertsMode certsMode = repOpt.getEmbedCertsMode();
+    if (certsMode == EmbedCertsMode.SIGNER) {
+      return signer.getSequenceOfCert();
+    } else if (certsMode == EmbedCertsMode.NONE) {
+      return null;
+    } else {
+      // certsMode == EmbedCertsMode.SIGNER_AND_CA
+      return signer.getSequenceOfCertChain();
+    }
+  } // method getCertsInResp
+
   private OcspRespWithCacheInfo processCertReq(AtomicBoolean unknownAsRevoked,
       CertID certId, OCSPRespBuilder builder,
       ResponderImpl responder, RequestOption reqOpt, OcspServerConf.ResponseOption repOpt,
-      OcspRespControl repControl) throws IOException {
+      OcspRespControl repControl, boolean useInMemoryCache) throws IOException {
     HashAlgo reqHashAlgo = certId.getIssuer().hashAlgorithm();
     if (!reqOpt.allows(reqHashAlgo)) {
       LOG.warn("CertID.hashAlgorithm {} not allowed", reqHashAlgo);
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
     }
 
+    if (useInMemoryCache && responseCacher != null
+        && responseCacher.isSingleResponseCacheEnabled()) {
+      CachedSingleResponse cachedResp = responseCacher.getSingleResponse(
+          responder.getName(), certId);
+      if (cachedResp != null) {
+        // only the responses with status good and revoked are cached.
+        unknownAsRevoked.set(false);
+        if (responder.getResponderOption().getMode() != OcspMode.RFC2560) {
+          repControl.includeExtendedRevokeExtension = true;
+        }
+
+        builder.addResponse(cachedResp.getSingleResponse());
+
+        repControl.cacheThisUpdate = Math.max(repControl.cacheThisUpdate,
+            cachedResp.getThisUpdate());
+        if (cachedResp.getNextUpdate() != null) {
+          repControl.cacheNextUpdate = Math.min(repControl.cacheNextUpdate,
+              cachedResp.getNextUpdate());
+        }
+        return null;
+      }
+    }
+
     CertStatusInfo certStatusInfo = null;
     boolean exceptionOccurs = false;
 
@@ -980,9 +1083,11 @@ public class OcspServerImpl implements OcspServer {
 
     List<Extension> extensions = new LinkedList<>();
     unknownAsRevoked.set(false);
+    boolean cacheable = false;
     byte[] certStatus;
     switch (certStatusInfo.getCertStatus()) {
       case GOOD:
+        cacheable = true;
         certStatus = bytes_certstatus_good;
         break;
       case ISSUER_UNKNOWN:
@@ -1000,6 +1105,7 @@ public class OcspServerImpl implements OcspServer {
         }
         break;
       case REVOKED:
+        cacheable = true;
         CertRevocationInfo revInfo = certStatusInfo.getRevocationInfo();
         certStatus = Template.getEncodeRevokedInfo(
             repOpt.isIncludeRevReason() ? revInfo.getReason() : null, revInfo.getRevocationTime());
@@ -1053,10 +1159,14 @@ public class OcspServerImpl implements OcspServer {
       LOG.debug(sb.toString());
     }
 
-    if (CollectionUtil.isEmpty(extensions)) {
-      builder.addResponse(certId, certStatus, thisUpdate, nextUpdate, null);
-    } else {
-      builder.addResponse(certId, certStatus, thisUpdate, nextUpdate, new Extensions(extensions));
+    SingleResponse singleResponse = new SingleResponse(certId, certStatus, thisUpdate, nextUpdate,
+        CollectionUtil.isEmpty(extensions) ? null : new Extensions(extensions));
+    builder.addResponse(singleResponse);
+
+    if (useInMemoryCache && cacheable && responseCacher != null
+        && responseCacher.isSingleResponseCacheEnabled()) {
+      responseCacher.storeSingleResponse(responder.getName(), certId, singleResponse,
+          thisUpdate.getTime() / 1000, (nextUpdate == null) ? null : nextUpdate.getTime() / 1000);
     }
 
     repControl.cacheThisUpdate =
@@ -1094,6 +1204,25 @@ public class OcspServerImpl implements OcspServer {
     signerHealth.setHealthy(signerHealthy);
     result.addChildCheck(signerHealth);
 
+    // the response cache is optional, its state does not affect the health of the responder.
+    Map<String, Object> cacheStatistics =
+        (responseCacher == null) ? null : responseCacher.getStatistics();
+    if (cacheStatistics != null && !cacheStatistics.isEmpty()) {
+      HealthCheckResult cacheHealth = new HealthCheckResult();
+      cacheHealth.setName("ResponseCacher");
+      cacheHealth.setHealthy(responseCacher.isOnService());
+      cacheHealth.setStatuses(cacheStatistics);
+      result.addChildCheck(cacheHealth);
+    }
+
+    if (responsePregenerator != null) {
+      HealthCheckResult pregenerationHealth = new HealthCheckResult();
+      pregenerationHealth.setName("ResponsePregenerator");
+      pregenerationHealth.setHealthy(true);
+      pregenerationHealth.setStatuses(responsePregenerator.getStatistics());
+      result.addChildCheck(pregenerationHealth);
+    }
+
     result.setHealthy(healthy);
     return result;
   } // method healthCheck
@@ -1231,25 +1360,28 @@ public class OcspServerImpl implements OcspServer {
     return store;
   } // method newStore
 
-  private Object checkSignature(byte[] request, RequestOption requestOption)
+  private Object checkSignature(byte[] request, int requestLength, RequestOption requestOption)
       throws OCSPException, CertificateParsingException, InvalidAlgorithmParameterException {
     OCSPRequest req;
     try {
       if (!requestOption.isValidateSignature()) {
-        return OcspRequest.getInstance(request);
+        return OcspRequest.getInstance(request, requestLength);
       }
 
-      if (!OcspRequest.containsSignature(request)) {
+      if (!OcspRequest.containsSignature(request, requestLength)) {
         if (requestOption.isSignatureRequired()) {
           LOG.warn("signature in request required");
           return unsuccesfulOCSPRespMap.get(OcspResponseStatus.sigRequired);
         } else {
-          return OcspRequest.getInstance(request);
+          return OcspRequest.getInstance(request, requestLength);
         }
       }
 
+      // signed requests are rare, parse them from the exact copy
+      byte[] exactRequest = (request.length == requestLength) ? request
+          : Arrays.copyOf(request, requestLength);
       try {
-        req = OCSPRequest.getInstance(request);
+        req = OCSPRequest.getInstance(exactRequest);
       } catch (IllegalArgumentException ex) {
         throw new EncodingException("could not parse OCSP request", ex);
       }
@@ -33,6 +33,8 @@ import org.xipki.util.Args;
 
 public class ResponderImpl implements Responder {
 
+  private final String name;
+
   private final ResponderOption responderOption;
 
   private final RequestOption requestOption;
@@ -43,8 +45,9 @@ public class ResponderImpl implements Responder {
 
   private final List<OcspStore> stores;
 
-  ResponderImpl(ResponderOption responderOption, RequestOption requestOption,
+  ResponderImpl(String name, ResponderOption responderOption, RequestOption requestOption,
       ResponseOption responseOption, ResponseSigner signer, List<OcspStore> stores) {
+    this.name = Args.notBlank(name, "name");
     this.responderOption = Args.notNull(responderOption, "responderOption");
     this.requestOption = Args.notNull(requestOption, "requestOption");
     this.responseOption = Args.notNull(responseOption, "responseOption");
@@ -52,6 +55,10 @@ public class ResponderImpl implements Responder {
     this.stores = Args.notEmpty(stores, "stores");
   }
 
+  public String getName() {
+    return name;
+  }
+
   public ResponderOption getResponderOption() {
     return responderOption;
   }
@@ -0,0 +1,482 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import java.io.Closeable;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ocsp.api.OcspStore;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.store.DbCertStatusStore;
+import org.xipki.ocsp.server.store.ResponseCacher;
+import org.xipki.ocsp.server.type.CertID;
+import org.xipki.security.AlgorithmCode;
+import org.xipki.security.HashAlgo;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+
+/**
+ * Generates and caches the responses of all certificates in a store after each update of
+ * the store, so that the requests can be answered from the {@link ResponseCacher}.
+ *
+ * <p>The responses are signed in parallel by a pool of threads, and the generation
+ * can be throttled to a maximal number of responses per second. The responses of all
+ * certificates are generated at the start and after each change of the issuers or CRLs.
+ * After a change of the certificates only the responses of the certificates changed since
+ * the start of the previous generation (by LUPDATE) are generated, a running generation is
+ * continued. If a generation fails, it is resumed after one minute from the last visited
+ * certificate.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+class ResponsePregenerator implements DbCertStatusStore.UpdateListener, Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ResponsePregenerator.class);
+
+  private static final long RETRY_DELAY_SEC = 60;
+
+  /**
+   * Number of seconds re-read before the start of the previous generation, to tolerate clock
+   * skew between the writers of the database.
+   */
+  private static final long LUPDATE_OVERLAP_SEC = 60;
+
+  private static final long PROGRESS_LOG_INTERVAL = 10000;
+
+  private static final HashAlgo[] CERTID_HASH_ALGOS = {HashAlgo.SHA1, HashAlgo.SHA256,
+    HashAlgo.SHA224, HashAlgo.SHA384, HashAlgo.SHA512};
+
+  private class StoreJob implements Runnable, DbCertStatusStore.CertVisitor {
+
+    private final DbCertStatusStore store;
+
+    private final List<ResponderImpl> responders;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private final Map<Integer, RequestIssuer[]> requestIssuers = new HashMap<>();
+
+    private final Map<Integer, Integer> cacheIssuerIds = new HashMap<>();
+
+    private final AtomicLong generated = new AtomicLong();
+
+    private final AtomicLong skipped = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    // whether the responses of all certificates are to be generated
+    private volatile boolean fullRequested = true;
+
+    // whether the responses of the changed certificates are to be generated
+    private volatile boolean deltaRequested;
+
+    private volatile boolean running;
+
+    // database ID of the last visited certificate, used to resume the generation.
+    private volatile long lastId;
+
+    private long startTime;
+
+    // minimal LUPDATE of the certificates in the current generation, 0 for all certificates.
+    private long minLastUpdate;
+
+    // minimal LUPDATE of the certificates in the next generation of the changed certificates.
+    private long nextMinLastUpdate;
+
+    private long visited;
+
+    private long lastDuration = -1;
+
+    private long lastCount = -1;
+
+    StoreJob(DbCertStatusStore store, List<ResponderImpl> responders) {
+      this.store = store;
+      this.responders = responders;
+    }
+
+    void schedule(long delaySeconds) {
+      if (scheduled.compareAndSet(false, true)) {
+        coordinator.schedule(this, delaySeconds, TimeUnit.SECONDS);
+      }
+    }
+
+    @Override
+    public void run() {
+      scheduled.set(false);
+      if (closed.get()) {
+        return;
+      }
+
+      running = true;
+      try {
+        while (true) {
+          if (startTime == 0) {
+            if (fullRequested) {
+              fullRequested = false;
+              deltaRequested = false;
+              minLastUpdate = 0;
+            } else if (deltaRequested) {
+              deltaRequested = false;
+              minLastUpdate = nextMinLastUpdate;
+            } else {
+              break;
+            }
+
+            lastId = 0;
+            visited = 0;
+            generated.set(0);
+            skipped.set(0);
+            failed.set(0);
+            requestIssuers.clear();
+            cacheIssuerIds.clear();
+            startTime = System.currentTimeMillis();
+            LOG.info("start generating responses of {} certificates for store {}",
+                (minLastUpdate == 0) ? "all" : "changed", store.getName());
+          }
+
+          lastId = store.visitCertificates(lastId, minLastUpdate, this);
+          if (closed.get()) {
+            return;
+          }
+
+          if (fullRequested) {
+            // the issuers or CRLs have been changed, start again with all certificates.
+            startTime = 0;
+            continue;
+          }
+
+          // wait for the pending responses
+          inFlight.acquire(maxInFlight);
+          inFlight.release(maxInFlight);
+
+          lastDuration = System.currentTimeMillis() - startTime;
+          lastCount = generated.get();
+          LOG.info("generated {} responses for store {} in {} s ({} responses/s), "
+              + "skipped {}, failed {}", lastCount, store.getName(), lastDuration / 1000,
+              rate(lastCount, lastDuration), skipped.get(), failed.get());
+          // the certificates changed since the start of this generation may have been missed.
+          nextMinLastUpdate = Math.max(1, startTime / 1000 - LUPDATE_OVERLAP_SEC);
+          startTime = 0;
+        }
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "error generating responses for store " + store.getName()
+            + ", resume in " + RETRY_DELAY_SEC + " seconds");
+        if (!closed.get()) {
+          schedule(RETRY_DELAY_SEC);
+        }
+      } finally {
+        running = false;
+      }
+    } // method run
+
+    @Override
+    public boolean visit(long id, int issuerId, BigInteger serialNumber) {
+      if (closed.get() || fullRequested) {
+        return false;
+      }
+
+      final RequestIssuer[] reqIssuers;
+      final Integer cacheIssuerId;
+      try {
+        reqIssuers = getRequestIssuers(issuerId);
+        cacheIssuerId = getCacheIssuerId(issuerId);
+      } catch (Exception ex) {
+        throw new IllegalStateException("could not store issuer " + issuerId
+            + " in the response cache: " + ex.getMessage(), ex);
+      }
+
+      if (cacheIssuerId == null) {
+        // issuer has been removed in the meantime
+        skipped.incrementAndGet();
+        return true;
+      }
+
+      try {
+        acquirePermit();
+        inFlight.acquire();
+      } catch (InterruptedException ex) {
+        return false;
+      }
+
+      workers.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < responders.size(); i++) {
+              if (reqIssuers[i] == null) {
+                skipped.incrementAndGet();
+                continue;
+              }
+
+              CertID certId = new CertID(reqIssuers[i], serialNumber);
+              if (server.pregenerateResponse(responders.get(i), certId, cacheIssuerId)) {
+                generated.incrementAndGet();
+              } else {
+                skipped.incrementAndGet();
+              }
+            }
+          } catch (Throwable th) {
+            failed.incrementAndGet();
+            LogUtil.warn(LOG, th, "could not generate response for serial number "
+                + LogUtil.formatCsn(serialNumber) + " in store " + store.getName());
+          } finally {
+            inFlight.release();
+          }
+        }
+      });
+
+      lastId = id;
+      if (++visited % PROGRESS_LOG_INTERVAL == 0) {
+        long duration = System.currentTimeMillis() - startTime;
+        LOG.info("generating responses for store {}: visited {} certificates, generated {} "
+            + "responses ({} responses/s)", store.getName(), visited, generated.get(),
+            rate(generated.get(), duration));
+      }
+      return true;
+    } // method visit
+
+    private RequestIssuer[] getRequestIssuers(int issuerId) {
+      RequestIssuer[] reqIssuers = requestIssuers.get(issuerId);
+      if (reqIssuers == null) {
+        reqIssuers = new RequestIssuer[responders.size()];
+        for (int i = 0; i < reqIssuers.length; i++) {
+          reqIssuers[i] = store.getRequestIssuer(issuerId,
+              certIdHashAlgos.get(responders.get(i)));
+        }
+        requestIssuers.put(issuerId, reqIssuers);
+      }
+      return reqIssuers;
+    } // method getRequestIssuers
+
+    private Integer getCacheIssuerId(int issuerId) throws Exception {
+      Integer cacheIssuerId = cacheIssuerIds.get(issuerId);
+      if (cacheIssuerId == null) {
+        RequestIssuer reqIssuer = store.getRequestIssuer(issuerId, HashAlgo.SHA1);
+        if (reqIssuer == null) {
+          return null;
+        }
+
+        cacheIssuerId = responseCacher.getIssuerId(reqIssuer);
+        if (cacheIssuerId == null) {
+          cacheIssuerId = responseCacher.storeIssuer(store.getIssuerCert(issuerId));
+        }
+        cacheIssuerIds.put(issuerId, cacheIssuerId);
+      }
+      return cacheIssuerId;
+    } // method getCacheIssuerId
+
+    void addStatistics(Map<String, Object> statistics) {
+      String prefix = store.getName() + ".";
+      statistics.put(prefix + "running", running);
+      statistics.put(prefix + "generated", generated.get());
+      statistics.put(prefix + "skipped", skipped.get());
+      statistics.put(prefix + "failed", failed.get());
+      if (running) {
+        long duration = System.currentTimeMillis() - startTime;
+        statistics.put(prefix + "full", minLastUpdate == 0);
+        statistics.put(prefix + "visited", visited);
+        statistics.put(prefix + "rate", rate(generated.get(), duration));
+      }
+
+      if (lastDuration != -1) {
+        statistics.put(prefix + "lastDurationMs", lastDuration);
+        statistics.put(prefix + "lastRate", rate(lastCount, lastDuration));
+      }
+    } // method addStatistics
+
+  } // class StoreJob
+
+  private final OcspServerImpl server;
+
+  private final ResponseCacher responseCacher;
+
+  private final Map<ResponderImpl, HashAlgo> certIdHashAlgos = new HashMap<>();
+
+  private final Map<String, StoreJob> jobs = new LinkedHashMap<>();
+
+  private final ScheduledThreadPoolExecutor coordinator;
+
+  private final ExecutorService workers;
+
+  private final int maxInFlight;
+
+  private final Semaphore inFlight;
+
+  // 0 if not throttled
+  private final long intervalNanos;
+
+  private final AtomicBoolean closed = new AtomicBoolean(false);
+
+  private long nextPermitNanos;
+
+  ResponsePregenerator(OcspServerImpl server, ResponseCacher responseCacher,
+      Map<String, ResponderImpl> responders, OcspServerConf.ResponsePregeneration conf) {
+    this.server = Args.notNull(server, "server");
+    this.responseCacher = Args.notNull(responseCacher, "responseCacher");
+    Args.notNull(conf, "conf");
+
+    // responders per store, responders with the same signature algorithm share the cached
+    // responses.
+    Map<DbCertStatusStore, List<ResponderImpl>> storeResponders = new LinkedHashMap<>();
+    Map<DbCertStatusStore, Set<AlgorithmCode>> storeSigAlgs = new HashMap<>();
+    for (ResponderImpl responder : responders.values()) {
+      HashAlgo certIdHashAlgo = null;
+      for (HashAlgo m : CERTID_HASH_ALGOS) {
+        if (responder.getRequestOption().allows(m)) {
+          certIdHashAlgo = m;
+          break;
+        }
+      }
+
+      if (certIdHashAlgo == null) {
+        continue;
+      }
+      certIdHashAlgos.put(responder, certIdHashAlgo);
+
+      AlgorithmCode sigAlg = responder.getSigner().getFirstSigner().getAlgorithmCode();
+      for (OcspStore store : responder.getStores()) {
+        if (!(store instanceof DbCertStatusStore)) {
+          continue;
+        }
+
+        DbCertStatusStore dbStore = (DbCertStatusStore) store;
+        Set<AlgorithmCode> sigAlgs = storeSigAlgs.get(dbStore);
+        if (sigAlgs == null) {
+          sigAlgs = new HashSet<>();
+          storeSigAlgs.put(dbStore, sigAlgs);
+          storeResponders.put(dbStore, new ArrayList<ResponderImpl>());
+        }
+
+        if (sigAlgs.add(sigAlg)) {
+          storeResponders.get(dbStore).add(responder);
+        }
+      }
+    }
+
+    for (Map.Entry<DbCertStatusStore, List<ResponderImpl>> entry : storeResponders.entrySet()) {
+      jobs.put(entry.getKey().getName(), new StoreJob(entry.getKey(), entry.getValue()));
+    }
+
+    int threads = conf.getThreads() > 0 ? conf.getThreads()
+        : Runtime.getRuntime().availableProcessors();
+    this.maxInFlight = threads * 4;
+    this.inFlight = new Semaphore(maxInFlight);
+    this.intervalNanos = conf.getMaxRate() > 0 ? 1_000_000_000L / conf.getMaxRate() : 0;
+
+    this.coordinator = new ScheduledThreadPoolExecutor(1);
+    this.coordinator.setRemoveOnCancelPolicy(true);
+    this.workers = Executors.newFixedThreadPool(threads);
+  } // constructor
+
+  /**
+   * Registers this generator as listener of the stores, and starts the generation for
+   * all stores.
+   */
+  void start() {
+    for (StoreJob job : jobs.values()) {
+      job.store.addUpdateListener(this);
+      job.schedule(0);
+    }
+    LOG.info("started response pregeneration for stores {}", jobs.keySet());
+  } // method start
+
+  @Override
+  public void storeUpdated(DbCertStatusStore store, boolean issuersChanged) {
+    StoreJob job = jobs.get(store.getName());
+    if (job == null || closed.get()) {
+      return;
+    }
+
+    // a running generation of all certificates is restarted only if the issuers or CRLs
+    // have been changed, the changed certificates are generated after it.
+    if (issuersChanged) {
+      job.fullRequested = true;
+    } else {
+      job.deltaRequested = true;
+    }
+    job.schedule(0);
+  } // method storeUpdated
+
+  Map<String, Object> getStatistics() {
+    Map<String, Object> statistics = new LinkedHashMap<>();
+    for (StoreJob job : jobs.values()) {
+      job.addStatistics(statistics);
+    }
+    return statistics;
+  } // method getStatistics
+
+  @Override
+  public void close() {
+    if (!closed.compareAndSet(false, true)) {
+      return;
+    }
+
+    for (StoreJob job : jobs.values()) {
+      job.store.removeUpdateListener(this);
+    }
+
+    coordinator.shutdown();
+    workers.shutdown();
+    try {
+      coordinator.awaitTermination(60, TimeUnit.SECONDS);
+      workers.awaitTermination(60, TimeUnit.SECONDS);
+    } catch (InterruptedException ex) {
+      LOG.error("interrupted: {}", ex.getMessage());
+    }
+  } // method close
+
+  private void acquirePermit() throws InterruptedException {
+    if (intervalNanos == 0) {
+      return;
+    }
+
+    long now = System.nanoTime();
+    long permitNanos;
+    synchronized (this) {
+      permitNanos = Math.max(nextPermitNanos, now);
+      nextPermitNanos = permitNanos + intervalNanos;
+    }
+
+    if (permitNanos > now) {
+      TimeUnit.NANOSECONDS.sleep(permitNanos - now);
+    }
+  } // method acquirePermit
+
+  private static long rate(long count, long durationMs) {
+    return (durationMs <= 0) ? count : count * 1000 / durationMs;
+  }
+
+}
@@ -0,0 +1,505 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of the certificate status, keyed by (issuer id, serial number).
+ *
+ * <p>The entries are held in primitive arrays (open addressing with linear probing),
+ * so that no object is allocated per certificate. The serial number and certificate
+ * hash of each entry are stored in one shared byte arena. The database ID of each entry
+ * is kept, so that the entries of deleted rows can be removed.
+ *
+ * <p>Times are stored as unsigned seconds since the epoch in an int. Values after
+ * 2106-02-07 are clamped to the maximal value.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+class CertStatusIndex {
+
+  static class Entry {
+
+    private final long notBefore;
+
+    private final long notAfter;
+
+    private final boolean revoked;
+
+    private final int reason;
+
+    private final long revTime;
+
+    private final long invalidityTime;
+
+    private final int crlId;
+
+    private final byte[] certHash;
+
+    private Entry(long notBefore, long notAfter, boolean revoked, int reason,
+        long revTime, long invalidityTime, int crlId, byte[] certHash) {
+      this.notBefore = notBefore;
+      this.notAfter = notAfter;
+      this.revoked = revoked;
+      this.reason = reason;
+      this.revTime = revTime;
+      this.invalidityTime = invalidityTime;
+      this.crlId = crlId;
+      this.certHash = certHash;
+    }
+
+    /**
+     * Returns the notBefore in seconds since January 1, 1970, 00:00:00 GMT.
+     * @return notBefore, 0 if not present.
+     */
+    public long getNotBefore() {
+      return notBefore;
+    }
+
+    /**
+     * Returns the notAfter in seconds since January 1, 1970, 00:00:00 GMT.
+     * @return notAfter, 0 if not present.
+     */
+    public long getNotAfter() {
+      return notAfter;
+    }
+
+    public boolean isRevoked() {
+      return revoked;
+    }
+
+    public int getReason() {
+      return reason;
+    }
+
+    public long getRevTime() {
+      return revTime;
+    }
+
+    public long getInvalidityTime() {
+      return invalidityTime;
+    }
+
+    public int getCrlId() {
+      return crlId;
+    }
+
+    public byte[] getCertHash() {
+      return certHash;
+    }
+
+  } // class Entry
+
+  private static final float LOAD_FACTOR = 0.75f;
+
+  private static final int FLAG_USED = 0x01;
+
+  private static final int FLAG_REVOKED = 0x02;
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  // 64-bit hash of (issuer id, serial number)
+  private long[] keys;
+
+  // database ID of the entry
+  private long[] ids;
+
+  // offset of the record (issuer id, serial number, certificate hash) in the arena.
+  private int[] refs;
+
+  // bit 0: used, bit 1: revoked, bits 4-7: revocation reason
+  private byte[] flags;
+
+  private int[] notBefores;
+
+  private int[] notAfters;
+
+  private int[] revTimes;
+
+  private int[] invalidityTimes;
+
+  private int[] crlIds;
+
+  private byte[] arena;
+
+  private int arenaSize;
+
+  private int size;
+
+  private int threshold;
+
+  CertStatusIndex(int expectedSize) {
+    int capacity = 16;
+    while (capacity * LOAD_FACTOR < expectedSize) {
+      capacity <<= 1;
+    }
+
+    allocate(capacity);
+    this.arena = new byte[Math.max(1024, expectedSize * 24)];
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    ids = new long[capacity];
+    refs = new int[capacity];
+    flags = new byte[capacity];
+    notBefores = new int[capacity];
+    notAfters = new int[capacity];
+    revTimes = new int[capacity];
+    invalidityTimes = new int[capacity];
+    crlIds = new int[capacity];
+    threshold = (int) (capacity * LOAD_FACTOR);
+  }
+
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the number of bytes occupied by the arrays of this index.
+   * @return the memory footprint in bytes.
+   */
+  public long memoryBytes() {
+    lock.readLock().lock();
+    try {
+      // keys/ids: 2 * 8, refs/notBefores/notAfters/revTimes/invalidityTimes/crlIds: 6 * 4,
+      // flags: 1
+      return (long) keys.length * (2 * 8 + 6 * 4 + 1) + arena.length;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Adds or replaces the entry for the given issuer and serial number.
+   *
+   * @param id
+   *          Database ID of the entry.
+   * @param issuerId
+   *          Issuer id, must be within [0, 65535].
+   * @param serialNumber
+   *          Serial number, must be positive.
+   * @param notBefore
+   *          notBefore in seconds since epoch, 0 if not present.
+   * @param notAfter
+   *          notAfter in seconds since epoch, 0 if not present.
+   * @param revoked
+   *          Whether the certificate is revoked.
+   * @param reason
+   *          Revocation reason.
+   * @param revTime
+   *          Revocation time in seconds since epoch.
+   * @param invalidityTime
+   *          Invalidity time in seconds since epoch, 0 if not present.
+   * @param crlId
+   *          CRL id, 0 if not present.
+   * @param certHash
+   *          Certificate hash, may be {@code null}.
+   */
+  public void put(long id, int issuerId, BigInteger serialNumber, long notBefore,
+      long notAfter, boolean revoked, int reason, long revTime, long invalidityTime, int crlId,
+      byte[] certHash) {
+    if (issuerId < 0 || issuerId > 0xFFFF) {
+      throw new IllegalArgumentException("issuerId is out of the range [0, 65535]: " + issuerId);
+    }
+
+    if (serialNumber.signum() != 1) {
+      throw new IllegalArgumentException("serialNumber is not positive");
+    }
+
+    byte[] bytes = serialNumber.toByteArray();
+    byte[] sn = (bytes[0] == 0) ? Arrays.copyOfRange(bytes, 1, bytes.length) : bytes;
+    put0(id, issuerId, sn, notBefore, notAfter, revoked, reason, revTime, invalidityTime,
+        crlId, certHash);
+  } // method put
+
+  private void put0(long id, int issuerId, byte[] serialNumber, long notBefore, long notAfter,
+      boolean revoked, int reason, long revTime, long invalidityTime, int crlId,
+      byte[] certHash) {
+    if (serialNumber.length > 0xFF) {
+      throw new IllegalArgumentException("serialNumber is too long");
+    }
+
+    if (certHash != null && certHash.length > 0xFF) {
+      throw new IllegalArgumentException("certHash is too long");
+    }
+
+    lock.writeLock().lock();
+    try {
+      if (size >= threshold) {
+        rehash(keys.length << 1);
+      }
+
+      long key = hash(issuerId, serialNumber, 0, serialNumber.length);
+      int mask = keys.length - 1;
+      int idx = (int) key & mask;
+      while ((flags[idx] & FLAG_USED) != 0) {
+        if (keys[idx] == key && matches(refs[idx], issuerId, serialNumber, 0,
+            serialNumber.length)) {
+          break;
+        }
+        idx = (idx + 1) & mask;
+      }
+
+      boolean exists = (flags[idx] & FLAG_USED) != 0;
+      if (!exists || !hashMatches(refs[idx], certHash)) {
+        // the old record, if present, remains unreferenced in the arena until the next rebuild.
+        refs[idx] = appendRecord(issuerId, serialNumber, certHash);
+      }
+
+      if (!exists) {
+        keys[idx] = key;
+        size++;
+      }
+
+      ids[idx] = id;
+      int flag = FLAG_USED;
+      if (revoked) {
+        flag |= FLAG_REVOKED | ((reason & 0x0F) << 4);
+      }
+      flags[idx] = (byte) flag;
+      notBefores[idx] = toUnsignedInt(notBefore);
+      notAfters[idx] = toUnsignedInt(notAfter);
+      revTimes[idx] = revoked ? toUnsignedInt(revTime) : 0;
+      invalidityTimes[idx] = revoked ? toUnsignedInt(invalidityTime) : 0;
+      crlIds[idx] = crlId;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  } // method put0
+
+  public Entry get(int issuerId, BigInteger serialNumber) {
+    byte[] bytes = serialNumber.toByteArray();
+    // remove the leading zero byte of positive numbers
+    int off = (bytes.length > 1 && bytes[0] == 0) ? 1 : 0;
+    int len = bytes.length - off;
+
+    lock.readLock().lock();
+    try {
+      long key = hash(issuerId, bytes, off, len);
+      int mask = keys.length - 1;
+      int idx = (int) key & mask;
+      while ((flags[idx] & FLAG_USED) != 0) {
+        if (keys[idx] == key && matches(refs[idx], issuerId, bytes, off, len)) {
+          int flag = flags[idx] & 0xFF;
+          boolean revoked = (flag & FLAG_REVOKED) != 0;
+          return new Entry(Integer.toUnsignedLong(notBefores[idx]),
+              Integer.toUnsignedLong(notAfters[idx]), revoked, revoked ? (flag >> 4) : 0,
+              Integer.toUnsignedLong(revTimes[idx]), Integer.toUnsignedLong(invalidityTimes[idx]),
+              crlIds[idx], readCertHash(refs[idx]));
+        }
+        idx = (idx + 1) & mask;
+      }
+      return null;
+    } finally {
+      lock.readLock().unlock();
+    }
+  } // method get
+
+  /**
+   * Returns the database IDs of all entries.
+   * @return the IDs in ascending order.
+   */
+  public long[] getIds() {
+    lock.readLock().lock();
+    try {
+      long[] ret = new long[size];
+      int num = 0;
+      for (int i = 0; i < keys.length; i++) {
+        if ((flags[i] & FLAG_USED) != 0) {
+          ret[num++] = ids[i];
+        }
+      }
+      Arrays.sort(ret);
+      return ret;
+    } finally {
+      lock.readLock().unlock();
+    }
+  } // method getIds
+
+  /**
+   * Removes the entries with the given database IDs.
+   *
+   * @param sortedIds
+   *          Database IDs in ascending order.
+   * @return number of removed entries.
+   */
+  public int remove(long[] sortedIds) {
+    if (sortedIds.length == 0) {
+      return 0;
+    }
+
+    lock.writeLock().lock();
+    try {
+      int num = 0;
+      for (int i = 0; i < keys.length; i++) {
+        if ((flags[i] & FLAG_USED) != 0 && Arrays.binarySearch(sortedIds, ids[i]) >= 0) {
+          flags[i] = 0;
+          num++;
+        }
+      }
+
+      if (num > 0) {
+        size -= num;
+        // re-insert the remaining entries, so that no probe sequence contains a gap.
+        rehash(keys.length);
+      }
+      return num;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  } // method remove
+
+  private void rehash(int newCapacity) {
+    long[] oldKeys = keys;
+    long[] oldIds = ids;
+    int[] oldRefs = refs;
+    byte[] oldFlags = flags;
+    int[] oldNotBefores = notBefores;
+    int[] oldNotAfters = notAfters;
+    int[] oldRevTimes = revTimes;
+    int[] oldInvalidityTimes = invalidityTimes;
+    int[] oldCrlIds = crlIds;
+
+    allocate(newCapacity);
+    int mask = newCapacity - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if ((oldFlags[i] & FLAG_USED) == 0) {
+        continue;
+      }
+
+      int idx = (int) oldKeys[i] & mask;
+      while ((flags[idx] & FLAG_USED) != 0) {
+        idx = (idx + 1) & mask;
+      }
+
+      keys[idx] = oldKeys[i];
+      ids[idx] = oldIds[i];
+      refs[idx] = oldRefs[i];
+      flags[idx] = oldFlags[i];
+      notBefores[idx] = oldNotBefores[i];
+      notAfters[idx] = oldNotAfters[i];
+      revTimes[idx] = oldRevTimes[i];
+      invalidityTimes[idx] = oldInvalidityTimes[i];
+      crlIds[idx] = oldCrlIds[i];
+    }
+  } // method rehash
+
+  // record: issuerId (2 bytes) | len(serial) (1 byte) | serial | len(hash) (1 byte) | hash
+  private int appendRecord(int issuerId, byte[] serialNumber, byte[] certHash) {
+    int hashLen = (certHash == null) ? 0 : certHash.length;
+    int recordLen = 4 + serialNumber.length + hashLen;
+    if (arenaSize + recordLen > arena.length) {
+      long newLen = Math.max((long) arena.length * 3 / 2, (long) arenaSize + recordLen);
+      if (newLen > Integer.MAX_VALUE - 8) {
+        throw new IllegalStateException("in-memory index is full");
+      }
+      arena = Arrays.copyOf(arena, (int) newLen);
+    }
+
+    int offset = arenaSize;
+    int idx = offset;
+    arena[idx++] = (byte) (issuerId >> 8);
+    arena[idx++] = (byte) issuerId;
+    arena[idx++] = (byte) serialNumber.length;
+    System.arraycopy(serialNumber, 0, arena, idx, serialNumber.length);
+    idx += serialNumber.length;
+    arena[idx++] = (byte) hashLen;
+    if (hashLen > 0) {
+      System.arraycopy(certHash, 0, arena, idx, hashLen);
+      idx += hashLen;
+    }
+    arenaSize = idx;
+    return offset;
+  } // method appendRecord
+
+  private boolean matches(int ref, int issuerId, byte[] serialNumber, int off, int len) {
+    if ((arena[ref] & 0xFF) != (issuerId >> 8) || (arena[ref + 1] & 0xFF) != (issuerId & 0xFF)
+        || (arena[ref + 2] & 0xFF) != len) {
+      return false;
+    }
+
+    int base = ref + 3;
+    for (int i = 0; i < len; i++) {
+      if (arena[base + i] != serialNumber[off + i]) {
+        return false;
+      }
+    }
+    return true;
+  } // method matches
+
+  private boolean hashMatches(int ref, byte[] certHash) {
+    int hashRef = ref + 3 + (arena[ref + 2] & 0xFF);
+    int hashLen = arena[hashRef] & 0xFF;
+    if (certHash == null) {
+      return hashLen == 0;
+    }
+
+    if (hashLen != certHash.length) {
+      return false;
+    }
+
+    for (int i = 0; i < hashLen; i++) {
+      if (arena[hashRef + 1 + i] != certHash[i]) {
+        return false;
+      }
+    }
+    return true;
+  } // method hashMatches
+
+  private byte[] readCertHash(int ref) {
+    int hashRef = ref + 3 + (arena[ref + 2] & 0xFF);
+    int hashLen = arena[hashRef] & 0xFF;
+    return (hashLen == 0) ? null : Arrays.copyOfRange(arena, hashRef + 1, hashRef + 1 + hashLen);
+  }
+
+  private static long hash(int issuerId, byte[] bytes, int off, int len) {
+    // FNV-1a 64, followed by the finalizer of MurmurHash3 to spread the lower bits.
+    long h = 0xcbf29ce484222325L;
+    h = (h ^ (issuerId >> 8 & 0xFF)) * 0x100000001b3L;
+    h = (h ^ (issuerId & 0xFF)) * 0x100000001b3L;
+    for (int i = 0; i < len; i++) {
+      h = (h ^ (bytes[off + i] & 0xFF)) * 0x100000001b3L;
+    }
+
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  } // method hash
+
+  private static int toUnsignedInt(long seconds) {
+    if (seconds <= 0) {
+      return 0;
+    }
+    return (seconds > 0xFFFFFFFFL) ? -1 : (int) seconds;
+  }
+
+}
@@ -26,6 +26,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -35,8 +36,10 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -74,6 +77,45 @@ import com.alibaba.fastjson.JSON;
 
 public class DbCertStatusStore extends OcspStore {
 
+  /**
+   * Listener which will be notified after the issuers, CRLs or certificates in the store
+   * have been changed.
+   */
+  public interface UpdateListener {
+
+    /**
+     * Notifies the update of the store.
+     *
+     * @param store
+     *          The updated store.
+     * @param issuersChanged
+     *          Whether the issuers or CRLs have been changed. If {@code false}, only
+     *          certificates have been changed.
+     */
+    void storeUpdated(DbCertStatusStore store, boolean issuersChanged);
+
+  } // interface UpdateListener
+
+  /**
+   * Visitor of the certificates in the store.
+   */
+  public interface CertVisitor {
+
+    /**
+     * Visits a certificate.
+     *
+     * @param id
+     *          Database ID of the certificate.
+     * @param issuerId
+     *          Database ID of the issuer.
+     * @param serialNumber
+     *          Serial number of the certificate.
+     * @return whether to continue with the next certificate.
+     */
+    boolean visit(long id, int issuerId, BigInteger serialNumber);
+
+  } // interface CertVisitor
+
   private class StoreUpdateService implements Runnable {
 
     @Override
@@ -89,6 +131,26 @@ public class DbCertStatusStore extends OcspStore {
 
   private static final long MS_PER_5MIN = 300L * 1000;
 
+  /**
+   * Number of seconds re-read before the last seen LUPDATE, to tolerate clock skew between
+   * the writers of the database.
+   */
+  private static final long INDEX_DELTA_OVERLAP_SEC = 60;
+
+  /**
+   * Interval in which the IDs of the in-memory index are compared with those in the database,
+   * even if the number of certificates indicates no deletion.
+   */
+  private static final long INDEX_ID_DIFF_INTERVAL_MS = 3600L * 1000;
+
+  private static final int INDEX_LOAD_PAGE_SIZE = 10000;
+
+  private static final int VISIT_PAGE_SIZE = 1000;
+
+  private static final String SQL_INDEX_DELTA =
+      "SELECT ID,IID,SN,NBEFORE,NAFTER,REV,RR,RT,RIT,HASH,CRL_ID,LUPDATE FROM CERT "
+      + "WHERE LUPDATE>=?";
+
   private final Object lock = new Object();
 
   private final AtomicBoolean storeUpdateInProcess = new AtomicBoolean(false);
@@ -105,12 +167,42 @@ public class DbCertStatusStore extends OcspStore {
 
   private IssuerFilter issuerFilter;
 
-  private IssuerStore issuerStore = new IssuerStore();
+  private final IssuerStore issuerStore = new IssuerStore();
 
   private HashAlgo certHashAlgo;
 
   private boolean initialized;
 
+  private boolean inMemory;
+
+  private String sqlIndexLoad;
+
+  private String sqlIndexIds;
+
+  private String sqlIssuerForId;
+
+  private Map<Integer, String> encodedCrlInfos = Collections.emptyMap();
+
+  private volatile CertStatusIndex certStatusIndex;
+
+  private long certStatusIndexLastUpdate;
+
+  // IDs of the rows which are not in the index, namely those with non-positive serial number
+  private final Set<Long> certStatusIndexSkippedIds = new HashSet<>();
+
+  private long certStatusIndexLastIdDiff;
+
+  private String sqlVisitCerts;
+
+  private String sqlVisitChangedCerts;
+
+  private final List<UpdateListener> updateListeners = new CopyOnWriteArrayList<>();
+
+  // maximal LUPDATE and number of the certificates, used to detect changes
+  private long certsLastUpdate = -1;
+
+  private int certsCount = -1;
+
   private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
 
   protected List<Runnable> getScheduledServices() {
@@ -144,145 +236,511 @@ public class DbCertStatusStore extends OcspStore {
       }
 
       storeUpdateInProcess.set(true);
+      boolean changed;
+      boolean issuersChanged;
       try {
-        updateIssuers();
-        updateCrls();
+        List<IssuerEntry> issuers = updateIssuers();
+        Map<Integer, CrlInfo> crlInfos = updateCrls();
+        issuersChanged = issuers != null || crlInfos != null;
+        changed = issuersChanged;
+        if (changed) {
+          // replace both in one step, so that readers see consistent issuers and CRL infos.
+          issuerStore.update(issuers, crlInfos);
+        }
+
+        if (inMemory) {
+          changed |= updateCertStatusIndex();
+        } else if (!updateListeners.isEmpty()) {
+          changed |= certsChanged();
+        }
       } finally {
         initialized = true;
         storeUpdateInProcess.set(false);
       }
+
+      if (changed) {
+        for (UpdateListener listener : updateListeners) {
+          try {
+            listener.storeUpdated(this, issuersChanged);
+          } catch (Throwable th) {
+            LogUtil.error(LOG, th, "error while notifying the update of store " + name);
+          }
+        }
+      }
     } // end lock
   } // method updateIssuerStore
 
-  private void updateIssuers() {
+  public void addUpdateListener(UpdateListener listener) {
+    updateListeners.add(Args.notNull(listener, "listener"));
+  }
+
+  public void removeUpdateListener(UpdateListener listener) {
+    updateListeners.remove(listener);
+  }
+
+  /**
+   * Visits the certificates with database ID greater than {@code fromId}, in the order of
+   * the database ID. Certificates of unknown issuers are skipped.
+   *
+   * @param fromId
+   *          The certificates with ID greater than it will be visited.
+   * @param visitor
+   *          The visitor.
+   * @return the database ID of the last visited certificate, or {@code fromId} if no
+   *         certificate has been visited.
+   * @throws DataAccessException
+   *           if database error occurs.
+   */
+  public long visitCertificates(long fromId, CertVisitor visitor) throws DataAccessException {
+    return visitCertificates(fromId, 0, visitor);
+  }
+
+  /**
+   * Visits the certificates with database ID greater than {@code fromId} and last update
+   * not before {@code minLastUpdate}, in the order of the database ID. Certificates of
+   * unknown issuers are skipped.
+   *
+   * @param fromId
+   *          The certificates with ID greater than it will be visited.
+   * @param minLastUpdate
+   *          Minimal LUPDATE in seconds since January 1, 1970, 00:00:00 GMT. All
+   *          certificates will be visited if not positive.
+   * @param visitor
+   *          The visitor.
+   * @return the database ID of the last visited certificate, or {@code fromId} if no
+   *         certificate has been visited.
+   * @throws DataAccessException
+   *           if database error occurs.
+   */
+  public long visitCertificates(long fromId, long minLastUpdate, CertVisitor visitor)
+      throws DataAccessException {
+    Args.notNull(visitor, "visitor");
+    final String sql = (minLastUpdate > 0) ? sqlVisitChangedCerts : sqlVisitCerts;
+    PreparedStatement ps = preparedStatement(sql);
+    long lastId = fromId;
     try {
-      if (initialized) {
-        final String sql = "SELECT ID,REV_INFO,S1C FROM ISSUER";
-        PreparedStatement ps = preparedStatement(sql);
+      while (true) {
         ResultSet rs = null;
-
+        int num = 0;
         try {
-          Map<Integer, SimpleIssuerEntry> newIssuers = new HashMap<>();
-
+          ps.setLong(1, lastId);
+          if (minLastUpdate > 0) {
+            ps.setLong(2, minLastUpdate);
+          }
           rs = ps.executeQuery();
           while (rs.next()) {
-            if (!issuerFilter.includeAll()) {
-              String sha1Fp = rs.getString("S1C");
-              if (!issuerFilter.includeIssuerWithSha1Fp(sha1Fp)) {
-                continue;
-              }
-            }
-
-            int id = rs.getInt("ID");
-            Long revTimeMs = null;
-            String str = rs.getString("REV_INFO");
-            if (str != null) {
-              CertRevocationInfo revInfo = CertRevocationInfo.fromEncoded(str);
-              revTimeMs = revInfo.getRevocationTime().getTime();
-            }
-            SimpleIssuerEntry issuerEntry = new SimpleIssuerEntry(id, revTimeMs);
-            newIssuers.put(id, issuerEntry);
-          }
-
-          // no change in the issuerStore
-          Set<Integer> newIds = newIssuers.keySet();
-          Set<Integer> ids = (issuerStore != null) ? issuerStore.getIds() : Collections.emptySet();
-
-          boolean issuersUnchanged = (ids.size() == newIds.size())
-              && ids.containsAll(newIds) && newIds.containsAll(ids);
-
-          if (issuersUnchanged) {
-            for (Integer id : newIds) {
-              IssuerEntry entry = issuerStore.getIssuerForId(id);
-              SimpleIssuerEntry newEntry = newIssuers.get(id);
-              if (!newEntry.match(entry)) {
-                issuersUnchanged = false;
-                break;
+            num++;
+            long id = rs.getLong("ID");
+            int issuerId = rs.getInt("IID");
+            if (issuerStore.getIssuerForId(issuerId) != null) {
+              if (!visitor.visit(id, issuerId, new BigInteger(rs.getString("SN"), 16))) {
+                return lastId;
               }
             }
+            lastId = id;
           }
-
-          if (issuersUnchanged) {
-            return;
-          }
+        } catch (SQLException ex) {
+          throw datasource.translate(sql, ex);
         } finally {
-          releaseDbResources(ps, rs);
+          releaseDbResources(null, rs);
         }
-      } // end if(initialized)
 
-      final String sql = "SELECT ID,NBEFORE,REV_INFO,S1C,CERT,CRL_ID FROM ISSUER";
-      PreparedStatement ps = preparedStatement(sql);
+        if (num < VISIT_PAGE_SIZE) {
+          return lastId;
+        }
+      }
+    } finally {
+      releaseDbResources(ps, null);
+    }
+  } // method visitCertificates
+
+  /**
+   * Detects the changes of the certificates via the maximal LUPDATE and the number of
+   * certificates.
+   *
+   * @return whether the certificates have been changed since the last call.
+   */
+  private boolean certsChanged() {
+    try {
+      long lastUpdate = datasource.getMax(null, "CERT", "LUPDATE");
+      int count = datasource.getCount(null, "CERT");
+      boolean changed = lastUpdate != certsLastUpdate || count != certsCount;
+      certsLastUpdate = lastUpdate;
+      certsCount = count;
+      return changed;
+    } catch (DataAccessException ex) {
+      LogUtil.error(LOG, ex, "could not detect the changes of certificates in store " + name);
+      return false;
+    }
+  } // method certsChanged
 
+  /**
+   * Reads the changed issuers.
+   *
+   * <p>Only the small columns ID, REV_INFO, S1C and CRL_ID of all issuers are read. The
+   * certificate of an issuer is read and parsed only if the issuer is new.
+   *
+   * @return the new list of issuers, or {@code null} if no issuer has been changed.
+   */
+  private List<IssuerEntry> updateIssuers() {
+    try {
+      final String sql = "SELECT ID,REV_INFO,S1C,CRL_ID FROM ISSUER";
+      PreparedStatement ps = preparedStatement(sql);
       ResultSet rs = null;
+
+      List<SimpleIssuerEntry> dbIssuers = new LinkedList<>();
       try {
         rs = ps.executeQuery();
-        List<IssuerEntry> caInfos = new LinkedList<>();
         while (rs.next()) {
-          String sha1Fp = rs.getString("S1C");
-          if (!issuerFilter.includeIssuerWithSha1Fp(sha1Fp)) {
-            continue;
-          }
-
-          X509Certificate cert = X509Util.parseCert(StringUtil.toUtf8Bytes(rs.getString("CERT")));
-
-          IssuerEntry caInfoEntry = new IssuerEntry(rs.getInt("ID"), cert);
-          RequestIssuer reqIssuer = new RequestIssuer(HashAlgo.SHA1,
-              caInfoEntry.getEncodedHash(HashAlgo.SHA1));
-          for (IssuerEntry existingIssuer : caInfos) {
-            if (existingIssuer.matchHash(reqIssuer)) {
-              throw new Exception("found at least two issuers with the same subject and key");
+          if (!issuerFilter.includeAll()) {
+            String sha1Fp = rs.getString("S1C");
+            if (!issuerFilter.includeIssuerWithSha1Fp(sha1Fp)) {
+              continue;
             }
           }
 
+          Long revTimeMs = null;
           String str = rs.getString("REV_INFO");
           if (str != null) {
             CertRevocationInfo revInfo = CertRevocationInfo.fromEncoded(str);
-            caInfoEntry.setRevocationInfo(revInfo.getRevocationTime());
+            revTimeMs = revInfo.getRevocationTime().getTime();
           }
+          dbIssuers.add(new SimpleIssuerEntry(rs.getInt("ID"), revTimeMs, rs.getInt("CRL_ID")));
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        releaseDbResources(ps, rs);
+      }
 
-          caInfoEntry.setCrlId(rs.getInt("CRL_ID"));
+      boolean changed = dbIssuers.size() != issuerStore.size();
+      List<IssuerEntry> issuers = new ArrayList<>(dbIssuers.size());
+      List<Integer> newIds = new LinkedList<>();
+      for (SimpleIssuerEntry dbIssuer : dbIssuers) {
+        IssuerEntry entry = issuerStore.getIssuerForId(dbIssuer.getId());
+        if (entry == null) {
+          newIds.add(dbIssuer.getId());
+          changed = true;
+        } else if (dbIssuer.match(entry)) {
+          issuers.add(entry);
+        } else {
+          Long revTimeMs = dbIssuer.getRevocationTimeMs();
+          issuers.add(entry.copy(revTimeMs == null ? null : new Date(revTimeMs),
+              dbIssuer.getCrlId()));
+          changed = true;
+          LOG.info("updated issuer {} of store {}", entry.getId(), name);
+        }
+      }
 
-          caInfos.add(caInfoEntry);
-        } // end while (rs.next())
+      if (!changed) {
+        return null;
+      }
 
-        this.issuerStore.setIssuers(caInfos);
-        LOG.info("Updated issuers of store {}", name);
-      } finally {
-        releaseDbResources(ps, rs);
+      if (!newIds.isEmpty()) {
+        final String sqlIssuer = sqlIssuerForId;
+        ps = preparedStatement(sqlIssuer);
+        try {
+          for (Integer id : newIds) {
+            rs = null;
+            try {
+              ps.setInt(1, id);
+              rs = ps.executeQuery();
+              if (!rs.next()) {
+                // removed in the meantime
+                continue;
+              }
+
+              X509Certificate cert =
+                  X509Util.parseCert(StringUtil.toUtf8Bytes(rs.getString("CERT")));
+              IssuerEntry caInfoEntry = new IssuerEntry(id, cert);
+              RequestIssuer reqIssuer = new RequestIssuer(HashAlgo.SHA1,
+                  caInfoEntry.getEncodedHash(HashAlgo.SHA1));
+              for (IssuerEntry existingIssuer : issuers) {
+                if (existingIssuer.matchHash(reqIssuer)) {
+                  throw new Exception("found at least two issuers with the same subject and key");
+                }
+              }
+
+              String str = rs.getString("REV_INFO");
+              if (str != null) {
+                CertRevocationInfo revInfo = CertRevocationInfo.fromEncoded(str);
+                caInfoEntry.setRevocationInfo(revInfo.getRevocationTime());
+              }
+
+              caInfoEntry.setCrlId(rs.getInt("CRL_ID"));
+              issuers.add(caInfoEntry);
+              LOG.info("added issuer {} to store {}", id, name);
+            } catch (SQLException ex) {
+              throw datasource.translate(sqlIssuer, ex);
+            } finally {
+              releaseDbResources(null, rs);
+            }
+          }
+        } finally {
+          releaseDbResources(ps, null);
+        }
       }
+
+      LOG.info("Updated issuers of store {}", name);
+      return issuers;
     } catch (Throwable th) {
       LogUtil.error(LOG, th, "error while executing updateIssuers()");
+      return null;
     }
   } // method updateIssuers
 
-  private void updateCrls() {
+  /**
+   * Reads the CRL infos. Only the changed CRL infos are parsed.
+   *
+   * @return the new CRL infos, or {@code null} if no CRL info has been changed.
+   */
+  private Map<Integer, CrlInfo> updateCrls() {
     try {
       final String sql = "SELECT ID,INFO FROM CRL_INFO";
       PreparedStatement ps = preparedStatement(sql);
       ResultSet rs = null;
 
+      Map<Integer, String> dbCrlInfos = new HashMap<>();
       try {
-        Map<Integer, CrlInfo> crlInfos = new HashMap<>();
-
         rs = ps.executeQuery();
         while (rs.next()) {
-          int id = rs.getInt("ID");
-          String str = rs.getString("INFO");
-          CrlInfo crlInfo = new CrlInfo(str);
-          crlInfos.put(id, crlInfo);
+          dbCrlInfos.put(rs.getInt("ID"), rs.getString("INFO"));
         }
-
-        issuerStore.setCrlInfos(crlInfos);
-
-        LOG.info("Updated CRL_INFOs of store {}", name);
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
       } finally {
         releaseDbResources(ps, rs);
       }
+
+      if (dbCrlInfos.equals(encodedCrlInfos)) {
+        return null;
+      }
+
+      Map<Integer, CrlInfo> crlInfos = new HashMap<>();
+      for (Entry<Integer, String> entry : dbCrlInfos.entrySet()) {
+        Integer id = entry.getKey();
+        String str = entry.getValue();
+        CrlInfo crlInfo = str.equals(encodedCrlInfos.get(id)) ? issuerStore.getCrlInfo(id) : null;
+        if (crlInfo == null) {
+          crlInfo = new CrlInfo(str);
+        }
+        crlInfos.put(id, crlInfo);
+      }
+
+      this.encodedCrlInfos = dbCrlInfos;
+      LOG.info("Updated CRL_INFOs of store {}", name);
+      return crlInfos;
     } catch (Throwable th) {
       LogUtil.error(LOG, th, "error while executing updateCrls()");
+      return null;
     }
   } // method updateCrls
 
+  /**
+   * Updates the in-memory index.
+   * @return whether the index has been changed.
+   */
+  private boolean updateCertStatusIndex() {
+    try {
+      CertStatusIndex index = certStatusIndex;
+      if (index == null) {
+        loadCertStatusIndex();
+        return true;
+      }
+
+      long start = System.currentTimeMillis();
+      // counted before the delta, so that the rows inserted meanwhile are not missed.
+      int count = datasource.getCount(null, "CERT");
+
+      long prevLastUpdate = certStatusIndexLastUpdate;
+      long since = prevLastUpdate - INDEX_DELTA_OVERLAP_SEC;
+      PreparedStatement ps = preparedStatement(SQL_INDEX_DELTA);
+      ResultSet rs = null;
+      int num = 0;
+      try {
+        ps.setLong(1, since);
+        rs = ps.executeQuery();
+        while (rs.next()) {
+          addToIndex(index, rs);
+          num++;
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(SQL_INDEX_DELTA, ex);
+      } finally {
+        releaseDbResources(ps, rs);
+      }
+
+      int numRows = index.size() + certStatusIndexSkippedIds.size();
+      if (numRows < count) {
+        // rows have been missed, e.g. due to clock skew larger than the overlap.
+        LOG.info("{} certificates in store {}, but only {} in the index, reload the index",
+            count, name, numRows);
+        loadCertStatusIndex();
+        return true;
+      }
+
+      // deleted rows cannot be detected by LUPDATE, compare the IDs if the index contains more
+      // rows than the database, and periodically.
+      int numRemoved = 0;
+      if (numRows > count || start - certStatusIndexLastIdDiff >= INDEX_ID_DIFF_INTERVAL_MS) {
+        numRemoved = removeDeletedFromIndex(index);
+      }
+
+      LOG.info("updated {} and removed {} entries of the in-memory index of store {} in {} ms",
+          num, numRemoved, name, System.currentTimeMillis() - start);
+      // the entries within the overlap are re-read in each update
+      return numRemoved > 0 || certStatusIndexLastUpdate != prevLastUpdate;
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th, "error while executing updateCertStatusIndex()");
+      return false;
+    }
+  } // method updateCertStatusIndex
+
+  /**
+   * Removes the entries of the deleted rows from the index. Only the column ID of the table
+   * CERT is read.
+   *
+   * @param index
+   *          The index.
+   * @return number of removed entries.
+   * @throws DataAccessException
+   *           if database error occurs.
+   */
+  private int removeDeletedFromIndex(CertStatusIndex index) throws DataAccessException {
+    certStatusIndexLastIdDiff = System.currentTimeMillis();
+
+    // both the IDs in the index and those read from the database are in ascending order
+    long[] ids = index.getIds();
+    long[] deletedIds = new long[16];
+    int numDeleted = 0;
+    int pos = 0;
+
+    Set<Long> skippedIds = certStatusIndexSkippedIds;
+    Set<Long> existingSkippedIds = new HashSet<>();
+
+    final String sql = sqlIndexIds;
+    PreparedStatement ps = preparedStatement(sql);
+    try {
+      long maxId = 0;
+      while (true) {
+        ResultSet rs = null;
+        int num = 0;
+        try {
+          ps.setLong(1, maxId);
+          rs = ps.executeQuery();
+          while (rs.next()) {
+            long id = rs.getLong("ID");
+            maxId = id;
+            num++;
+
+            while (pos < ids.length && ids[pos] < id) {
+              if (numDeleted == deletedIds.length) {
+                deletedIds = Arrays.copyOf(deletedIds, numDeleted << 1);
+              }
+              deletedIds[numDeleted++] = ids[pos++];
+            }
+
+            if (pos < ids.length && ids[pos] == id) {
+              pos++;
+            } else if (!skippedIds.isEmpty() && skippedIds.contains(id)) {
+              existingSkippedIds.add(id);
+            }
+          }
+        } catch (SQLException ex) {
+          throw datasource.translate(sql, ex);
+        } finally {
+          releaseDbResources(null, rs);
+        }
+
+        if (num < INDEX_LOAD_PAGE_SIZE) {
+          break;
+        }
+      }
+    } finally {
+      releaseDbResources(ps, null);
+    }
+
+    // the remaining IDs are greater than the maximal ID in the database
+    if (pos < ids.length) {
+      deletedIds = Arrays.copyOf(deletedIds, numDeleted + ids.length - pos);
+      while (pos < ids.length) {
+        deletedIds[numDeleted++] = ids[pos++];
+      }
+    }
+
+    skippedIds.retainAll(existingSkippedIds);
+    return index.remove(Arrays.copyOf(deletedIds, numDeleted));
+  } // method removeDeletedFromIndex
+
+  private void loadCertStatusIndex() throws DataAccessException {
+    long start = System.currentTimeMillis();
+    certStatusIndexLastUpdate = 0;
+    certStatusIndexLastIdDiff = start;
+    certStatusIndexSkippedIds.clear();
+
+    int count = datasource.getCount(null, "CERT");
+    CertStatusIndex index = new CertStatusIndex(count);
+
+    final String sql = sqlIndexLoad;
+    PreparedStatement ps = preparedStatement(sql);
+    try {
+      long maxId = 0;
+      while (true) {
+        ResultSet rs = null;
+        int num = 0;
+        try {
+          ps.setLong(1, maxId);
+          rs = ps.executeQuery();
+          while (rs.next()) {
+            maxId = Math.max(maxId, rs.getLong("ID"));
+            addToIndex(index, rs);
+            num++;
+          }
+        } catch (SQLException ex) {
+          throw datasource.translate(sql, ex);
+        } finally {
+          releaseDbResources(null, rs);
+        }
+
+        if (num < INDEX_LOAD_PAGE_SIZE) {
+          break;
+        }
+      }
+    } finally {
+      releaseDbResources(ps, null);
+    }
+
+    this.certStatusIndex = index;
+
+    int size = index.size();
+    long bytes = index.memoryBytes();
+    LOG.info("loaded {} entries into the in-memory index of store {} in {} ms, "
+        + "memory: {} bytes ({} bytes per entry)", size, name, System.currentTimeMillis() - start,
+        bytes, (size == 0) ? 0 : bytes / size);
+  } // method loadCertStatusIndex
+
+  private void addToIndex(CertStatusIndex index, ResultSet rs) throws SQLException {
+    long id = rs.getLong("ID");
+    BigInteger serialNumber = new BigInteger(rs.getString("SN"), 16);
+    if (serialNumber.signum() != 1) {
+      // not indexed, but counted in the detection of deleted rows
+      certStatusIndexSkippedIds.add(id);
+      return;
+    }
+
+    String b64CertHash = rs.getString("HASH");
+    byte[] certHash = (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash);
+    boolean revoked = rs.getBoolean("REV");
+    index.put(id, rs.getInt("IID"), serialNumber, rs.getLong("NBEFORE"), rs.getLong("NAFTER"),
+        revoked, revoked ? rs.getInt("RR") : 0, revoked ? rs.getLong("RT") : 0,
+        revoked ? rs.getLong("RIT") : 0, rs.getInt("CRL_ID"), certHash);
+
+    long lastUpdate = rs.getLong("LUPDATE");
+    if (lastUpdate > certStatusIndexLastUpdate) {
+      certStatusIndexLastUpdate = lastUpdate;
+    }
+  } // method addToIndex
+
   @Override
   protected CertStatusInfo getCertStatus0(Date time, RequestIssuer reqIssuer,
       BigInteger serialNumber, boolean includeCertHash, boolean includeRit,
@@ -295,8 +753,6 @@ public class DbCertStatusStore extends OcspStore {
       throw new OcspStoreException("initialization of CertStore is still in process");
     }
 
-    String sql;
-
     try {
       IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
       if (issuer == null) {
@@ -315,45 +771,34 @@ public class DbCertStatusStore extends OcspStore {
         }
       }
 
-      if (includeCertHash) {
-        sql = includeRit ? sqlCsWithCertHash : sqlCsNoRitWithCertHash;
-      } else {
-        sql = includeRit ? sqlCs : sqlCsNoRit;
-      }
-
-      ResultSet rs = null;
       CertStatusInfo certStatusInfo = null;
 
       boolean unknown = true;
       boolean ignore = false;
-      String b64CertHash = null;
+      byte[] certHash = null;
       boolean revoked = false;
       int reason = 0;
       long revTime = 0;
       long invalTime = 0;
       int crlId = 0;
 
-      PreparedStatement ps = datasource.prepareStatement(sql);
-
-      try {
-        ps.setInt(1, issuer.getId());
-        ps.setString(2, serialNumber.toString(16));
-        rs = ps.executeQuery();
-
-        if (rs.next()) {
+      CertStatusIndex index = certStatusIndex;
+      if (index != null) {
+        CertStatusIndex.Entry entry = index.get(issuer.getId(), serialNumber);
+        if (entry != null) {
           unknown = false;
-          crlId = rs.getInt("CRL_ID");
+          crlId = entry.getCrlId();
 
           long timeInSec = time.getTime() / 1000;
-          if (!ignore && ignoreNotYetValidCert) {
-            long notBeforeInSec = rs.getLong("NBEFORE");
+          if (ignoreNotYetValidCert) {
+            long notBeforeInSec = entry.getNotBefore();
             if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
               ignore = true;
             }
           }
 
           if (!ignore && ignoreExpiredCert) {
-            long notAfterInSec = rs.getLong("NAFTER");
+            long notAfterInSec = entry.getNotAfter();
             if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
               ignore = true;
             }
@@ -361,23 +806,77 @@ public class DbCertStatusStore extends OcspStore {
 
           if (!ignore) {
             if (includeCertHash) {
-              b64CertHash = rs.getString("HASH");
+              certHash = entry.getCertHash();
             }
 
-            revoked = rs.getBoolean("REV");
+            revoked = entry.isRevoked();
             if (revoked) {
-              reason = rs.getInt("RR");
-              revTime = rs.getLong("RT");
+              reason = entry.getReason();
+              revTime = entry.getRevTime();
               if (includeRit) {
-                invalTime = rs.getLong("RIT");
+                invalTime = entry.getInvalidityTime();
               }
             }
           }
-        } // end if (rs.next())
-      } catch (SQLException ex) {
-        throw datasource.translate(sql, ex);
-      } finally {
-        releaseDbResources(ps, rs);
+        }
+      } else {
+        String sql;
+        if (includeCertHash) {
+          sql = includeRit ? sqlCsWithCertHash : sqlCsNoRitWithCertHash;
+        } else {
+          sql = includeRit ? sqlCs : sqlCsNoRit;
+        }
+
+        ResultSet rs = null;
+        PreparedStatement ps = datasource.prepareStatement(sql);
+
+        try {
+          ps.setInt(1, issuer.getId());
+          ps.setString(2, serialNumber.toString(16));
+          rs = ps.executeQuery();
+
+          if (rs.next()) {
+            unknown = false;
+            crlId = rs.getInt("CRL_ID");
+
+            long timeInSec = time.getTime() / 1000;
+            if (!ignore && ignoreNotYetValidCert) {
+              long notBeforeInSec = rs.getLong("NBEFORE");
+              if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
+                ignore = true;
+              }
+            }
+
+            if (!ignore && ignoreExpiredCert) {
+              long notAfterInSec = rs.getLong("NAFTER");
+              if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
+                ignore = true;
+              }
+            }
+
+            if (!ignore) {
+              if (includeCertHash) {
+                String b64CertHash = rs.getString("HASH");
+                if (b64CertHash != null) {
+                  certHash = Base64.decodeFast(b64CertHash);
+                }
+              }
+
+              revoked = rs.getBoolean("REV");
+              if (revoked) {
+                reason = rs.getInt("RR");
+                revTime = rs.getLong("RT");
+                if (includeRit) {
+                  invalTime = rs.getLong("RIT");
+                }
+              }
+            }
+          } // end if (rs.next())
+        } catch (SQLException ex) {
+          throw datasource.translate(sql, ex);
+        } finally {
+          releaseDbResources(ps, rs);
+        }
       }
 
       if (crlId == 0) {
@@ -410,7 +909,6 @@ public class DbCertStatusStore extends OcspStore {
       } else if (ignore) {
         certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
       } else {
-        byte[] certHash = (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash);
         if (revoked) {
           Date invTime = (invalTime == 0 || invalTime == revTime)
               ? null : new Date(invalTime * 1000);
@@ -530,6 +1028,11 @@ public class DbCertStatusStore extends OcspStore {
    * <li>caCerts: optional
    *   <p>
    *   CA certificate files to be included / excluded.</li>
+   * <li>inMemory: optional
+   *   <p>
+   *   Whether the status of all certificates is held in memory, default to false.
+   *   If true, the status is loaded at startup and updated incrementally in the
+   *   configured updateInterval.</li>
    *  </ul>
    * @param datasource DataSource.
    */
@@ -537,14 +1040,33 @@ public class DbCertStatusStore extends OcspStore {
   public void init(Map<String, ? extends Object> sourceConf, DataSourceWrapper datasource)
       throws OcspStoreException {
     OcspServerConf.CaCerts caCerts = null;
+    boolean inMemory = false;
     if (sourceConf != null) {
       Object objValue = sourceConf.get("caCerts");
       if (objValue != null) {
         caCerts = JSON.parseObject(JSON.toJSONBytes(objValue), OcspServerConf.CaCerts.class);
       }
+
+      objValue = sourceConf.get("inMemory");
+      if (objValue != null) {
+        inMemory = (objValue instanceof Boolean) ? (Boolean) objValue
+            : Boolean.parseBoolean(objValue.toString());
+      }
     }
 
     this.datasource = Args.notNull(datasource, "datasource");
+    this.inMemory = inMemory;
+    this.certStatusIndex = null;
+    this.sqlIssuerForId = datasource.buildSelectFirstSql(1,
+        "REV_INFO,CERT,CRL_ID FROM ISSUER WHERE ID=?");
+    this.sqlIndexLoad = datasource.buildSelectFirstSql(INDEX_LOAD_PAGE_SIZE, "ID ASC",
+        "ID,IID,SN,NBEFORE,NAFTER,REV,RR,RT,RIT,HASH,CRL_ID,LUPDATE FROM CERT WHERE ID>?");
+    this.sqlIndexIds = datasource.buildSelectFirstSql(INDEX_LOAD_PAGE_SIZE, "ID ASC",
+        "ID FROM CERT WHERE ID>?");
+    this.sqlVisitCerts = datasource.buildSelectFirstSql(VISIT_PAGE_SIZE, "ID ASC",
+        "ID,IID,SN FROM CERT WHERE ID>?");
+    this.sqlVisitChangedCerts = datasource.buildSelectFirstSql(VISIT_PAGE_SIZE, "ID ASC",
+        "ID,IID,SN FROM CERT WHERE ID>? AND LUPDATE>=?");
 
     sqlCs = datasource.buildSelectFirstSql(1,
         "NBEFORE,NAFTER,REV,RR,RT,RIT,CRL_ID FROM CERT WHERE IID=? AND SN=?");
@@ -630,6 +1152,25 @@ public class DbCertStatusStore extends OcspStore {
     return (issuer == null) ? null : issuer.getCert();
   }
 
+  /**
+   * Returns the issuer with given database ID in the form of CertID.
+   * @param issuerId
+   *          Database ID of the issuer.
+   * @param hashAlgo
+   *          Hash algorithm of the CertID.
+   * @return the issuer, or {@code null} if unknown.
+   */
+  public RequestIssuer getRequestIssuer(int issuerId, HashAlgo hashAlgo) {
+    IssuerEntry issuer = issuerStore.getIssuerForId(issuerId);
+    return (issuer == null) ? null
+        : new RequestIssuer(hashAlgo, issuer.getEncodedHash(hashAlgo));
+  }
+
+  public X509Certificate getIssuerCert(int issuerId) {
+    IssuerEntry issuer = issuerStore.getIssuerForId(issuerId);
+    return (issuer == null) ? null : issuer.getCert();
+  }
+
   protected boolean isInitialized() {
     return initialized;
   }
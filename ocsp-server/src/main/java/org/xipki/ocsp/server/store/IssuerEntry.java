@@ -61,6 +61,32 @@ class IssuerEntry {
     this.issuerHashMap = getIssuerHashAndKeys(cert.getEncoded());
   }
 
+  private IssuerEntry(IssuerEntry src) {
+    this.id = src.id;
+    this.cert = src.cert;
+    this.notBefore = src.notBefore;
+    this.issuerHashMap = src.issuerHashMap;
+  }
+
+  /**
+   * Returns a copy of this entry with the given revocation time and CRL id. The parsed
+   * certificate and the hash values are shared.
+   *
+   * @param revocationTime
+   *          Revocation time of the issuer, {@code null} if not revoked.
+   * @param crlId
+   *          CRL id, 0 if not present.
+   * @return the copy
+   */
+  public IssuerEntry copy(Date revocationTime, int crlId) {
+    IssuerEntry copy = new IssuerEntry(this);
+    if (revocationTime != null) {
+      copy.setRevocationInfo(revocationTime);
+    }
+    copy.setCrlId(crlId);
+    return copy;
+  }
+
   private static Map<HashAlgo, byte[]> getIssuerHashAndKeys(byte[] encodedCert)
       throws CertificateEncodingException {
     byte[] encodedName;
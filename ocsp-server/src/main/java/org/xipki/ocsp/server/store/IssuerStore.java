@@ -19,6 +19,7 @@ package org.xipki.ocsp.server.store;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -26,48 +27,160 @@ import java.util.Map;
 import java.util.Set;
 
 import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.security.HashAlgo;
 
 /**
  * Issuer store.
  *
+ * <p>The issuers and CRL infos are held in an immutable snapshot, which is replaced
+ * atomically on each change. Readers never block.
+ *
+ * <p>For each hash algorithm, the snapshot contains a hash table keyed by the encoded
+ * issuer-name-hash and issuer-key-hash, so that the lookup of an issuer in the OCSP
+ * request is O(1) and does not allocate any object.
+ *
  * @author Lijun Liao
  * @since 2.0.0
  */
 
 class IssuerStore {
 
-  private List<IssuerEntry> issuers = new ArrayList<>();
+  /**
+   * Hash table (open addressing with linear probing) of the issuers, keyed by the
+   * encoded issuer-name-hash and issuer-key-hash of one hash algorithm.
+   */
+  private static class HashIndex {
+
+    private final IssuerEntry[] slots;
+
+    // length of the encoded issuer-name-hash and issuer-key-hash
+    private final int encodedHashLen;
+
+    private HashIndex(HashAlgo hashAlgo, List<IssuerEntry> issuers) {
+      int capacity = 4;
+      while (capacity < issuers.size() * 2) {
+        capacity <<= 1;
+      }
+
+      this.slots = new IssuerEntry[capacity];
+      this.encodedHashLen = (2 + hashAlgo.getLength()) << 1;
+
+      final int mask = capacity - 1;
+      for (IssuerEntry issuer : issuers) {
+        byte[] encodedHash = issuer.getEncodedHash(hashAlgo);
+        int idx = hash(encodedHash, 0, encodedHash.length) & mask;
+        while (slots[idx] != null) {
+          idx = (idx + 1) & mask;
+        }
+        slots[idx] = issuer;
+      }
+    } // constructor
+
+    private IssuerEntry get(RequestIssuer reqIssuer) {
+      byte[] data = reqIssuer.getData();
+      int from = reqIssuer.getNameHashFrom();
+      if (reqIssuer.getFrom() + reqIssuer.getLength() - from < encodedHashLen) {
+        return null;
+      }
+
+      final int mask = slots.length - 1;
+      int idx = hash(data, from, encodedHashLen) & mask;
+      IssuerEntry entry;
+      while ((entry = slots[idx]) != null) {
+        if (entry.matchHash(reqIssuer)) {
+          return entry;
+        }
+        idx = (idx + 1) & mask;
+      }
+
+      return null;
+    } // method get
+
+    private static int hash(byte[] data, int from, int len) {
+      int hash = 1;
+      for (int i = from; i < from + len; i++) {
+        hash = 31 * hash + data[i];
+      }
+      // spread the higher bits to the lower ones.
+      return hash ^ (hash >>> 16);
+    }
+
+  } // class HashIndex
+
+  private static class Snapshot {
+
+    private final List<IssuerEntry> issuers;
+
+    private final Map<Integer, IssuerEntry> idMap;
+
+    private final Set<Integer> ids;
+
+    private final Map<Integer, CrlInfo> crlInfos;
+
+    private final Map<HashAlgo, HashIndex> hashIndexes;
 
-  private Set<Integer> ids = Collections.emptySet();
+    private Snapshot(List<IssuerEntry> issuers, Map<Integer, CrlInfo> crlInfos) {
+      Map<Integer, IssuerEntry> idMap = new HashMap<>();
+      for (IssuerEntry issuer : issuers) {
+        int id = issuer.getId();
+        if (idMap.containsKey(id)) {
+          throw new IllegalArgumentException(
+              "issuer with the same id " + id + " duplicated");
+        }
+        idMap.put(id, issuer);
+      }
+
+      this.issuers = Collections.unmodifiableList(new ArrayList<>(issuers));
+      this.idMap = idMap;
+      this.ids = Collections.unmodifiableSet(new HashSet<>(idMap.keySet()));
+      this.crlInfos = Collections.unmodifiableMap(new HashMap<>(crlInfos));
+
+      this.hashIndexes = new EnumMap<>(HashAlgo.class);
+      for (HashAlgo hashAlgo : HashAlgo.values()) {
+        hashIndexes.put(hashAlgo, new HashIndex(hashAlgo, this.issuers));
+      }
+    }
+
+  } // class Snapshot
 
-  private Map<Integer, CrlInfo> crlInfos = new HashMap<>();
+  private volatile Snapshot snapshot;
 
   public IssuerStore() {
+    this.snapshot = new Snapshot(Collections.emptyList(), Collections.emptyMap());
   }
 
   public void setIssuers(List<IssuerEntry> issuers) {
-    Set<Integer> newIds = new HashSet<>();
-    for (IssuerEntry issuer : issuers) {
-      int id = issuer.getId();
-      if (newIds.contains(id)) {
-        throw new IllegalArgumentException(
-            "issuer with the same id " + id + " duplicated");
-      }
-      newIds.add(id);
-    }
+    update(issuers, null);
+  }
+
+  public void setCrlInfos(Map<Integer, CrlInfo> crlInfos) {
+    update(null, crlInfos == null ? Collections.emptyMap() : crlInfos);
+  }
 
-    // to accelerate the switch
-    List<IssuerEntry> copy = new ArrayList<IssuerEntry>(issuers);
-    this.ids = Collections.unmodifiableSet(newIds);
-    this.issuers = copy;
-  } // method setIssuers
+  /**
+   * Replaces the issuers and CRL infos in one atomic step.
+   *
+   * @param issuers
+   *          The new issuers. {@code null} to keep the current ones.
+   * @param crlInfos
+   *          The new CRL infos. {@code null} to keep the current ones.
+   */
+  public synchronized void update(List<IssuerEntry> issuers, Map<Integer, CrlInfo> crlInfos) {
+    Snapshot old = snapshot;
+    this.snapshot = new Snapshot(issuers == null ? old.issuers : issuers,
+        crlInfos == null ? old.crlInfos : crlInfos);
+  } // method update
 
   public int size() {
-    return ids.size();
+    return snapshot.ids.size();
   }
 
   public Set<Integer> getIds() {
-    return ids;
+    return snapshot.ids;
+  }
+
+  public List<IssuerEntry> getIssuers() {
+    return snapshot.issuers;
   }
 
   public Integer getIssuerIdForFp(RequestIssuer reqIssuer) {
@@ -76,43 +189,37 @@ class IssuerStore {
   }
 
   public IssuerEntry getIssuerForId(int id) {
-    for (IssuerEntry entry : issuers) {
-      if (entry.getId() == id) {
-        return entry;
-      }
-    }
-
-    return null;
+    return snapshot.idMap.get(id);
   }
 
   public IssuerEntry getIssuerForFp(RequestIssuer reqIssuer) {
-    for (IssuerEntry entry : issuers) {
-      if (entry.matchHash(reqIssuer)) {
-        return entry;
-      }
+    HashAlgo hashAlgo = reqIssuer.hashAlgorithm();
+    if (hashAlgo == null) {
+      return null;
     }
 
-    return null;
+    HashIndex hashIndex = snapshot.hashIndexes.get(hashAlgo);
+    return (hashIndex == null) ? null : hashIndex.get(reqIssuer);
   }
 
-  public void addIssuer(IssuerEntry issuer) {
-    this.issuers.add(issuer);
-
-    Set<Integer> newIds = new HashSet<>(this.ids);
-    newIds.add(issuer.getId());
-    this.ids = Collections.unmodifiableSet(newIds);
+  public synchronized void addIssuer(IssuerEntry issuer) {
+    Snapshot old = snapshot;
+    List<IssuerEntry> newIssuers = new ArrayList<>(old.issuers.size() + 1);
+    newIssuers.addAll(old.issuers);
+    newIssuers.add(issuer);
+    this.snapshot = new Snapshot(newIssuers, old.crlInfos);
   }
 
-  public void setCrlInfos(Map<Integer, CrlInfo> crlInfos) {
-    this.crlInfos = crlInfos == null
-        ? Collections.emptyMap() : new HashMap<Integer, CrlInfo>(crlInfos);
+  public CrlInfo getCrlInfo(int crlInfoId) {
+    return snapshot.crlInfos.get(crlInfoId);
   }
 
-  public CrlInfo getCrlInfo(int crlInfoId) {
-    return crlInfos.get(crlInfoId);
+  public Map<Integer, CrlInfo> getCrlInfos() {
+    return snapshot.crlInfos;
   }
 
   public Set<Integer> getCrlIds() {
-    return Collections.unmodifiableSet(crlInfos.keySet());
+    return snapshot.crlInfos.keySet();
   }
+
 }
@@ -25,14 +25,21 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.bouncycastle.crypto.Digest;
 import org.slf4j.Logger;
@@ -43,6 +50,8 @@ import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.ocsp.api.OcspRespWithCacheInfo;
 import org.xipki.ocsp.api.OcspRespWithCacheInfo.ResponseCacheInfo;
 import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.type.CertID;
+import org.xipki.ocsp.server.type.SingleResponse;
 import org.xipki.security.AlgorithmCode;
 import org.xipki.security.HashAlgo;
 import org.xipki.security.util.X509Util;
@@ -50,6 +59,7 @@ import org.xipki.util.Args;
 import org.xipki.util.Base64;
 import org.xipki.util.InvalidConfException;
 import org.xipki.util.LogUtil;
+import org.xipki.util.LruCache;
 import org.xipki.util.StringUtil;
 import org.xipki.util.Validity;
 import org.xipki.util.concurrent.ConcurrentBag;
@@ -84,8 +94,361 @@ public class ResponseCacher implements Closeable {
   private static final String SQL_UPDATE_RESP = "UPDATE OCSP SET THIS_UPDATE=?,"
       + "NEXT_UPDATE=?,RESP=? WHERE ID=?";
 
+  // below the limit of 1000 elements in the IN list of Oracle
+  private static final int MAX_IDS_PER_SELECT = 500;
+
   private final ConcurrentBag<ConcurrentBagEntry<Digest>> idDigesters;
 
+  private static class MemoryCacheKey {
+
+    private final int issuerId;
+
+    private final BigInteger serialNumber;
+
+    private final byte sigAlgCode;
+
+    MemoryCacheKey(int issuerId, BigInteger serialNumber, byte sigAlgCode) {
+      this.issuerId = issuerId;
+      this.serialNumber = serialNumber;
+      this.sigAlgCode = sigAlgCode;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * issuerId + sigAlgCode) + serialNumber.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (!(obj instanceof MemoryCacheKey)) {
+        return false;
+      }
+
+      MemoryCacheKey other = (MemoryCacheKey) obj;
+      return issuerId == other.issuerId && sigAlgCode == other.sigAlgCode
+          && serialNumber.equals(other.serialNumber);
+    }
+
+  } // class MemoryCacheKey
+
+  private static class MemoryCacheEntry {
+
+    private final byte[] response;
+
+    private final long thisUpdate;
+
+    // 0 if not present
+    private final long nextUpdate;
+
+    MemoryCacheEntry(byte[] response, long thisUpdate, long nextUpdate) {
+      this.response = response;
+      this.thisUpdate = thisUpdate;
+      this.nextUpdate = nextUpdate;
+    }
+
+  } // class MemoryCacheEntry
+
+  /**
+   * LRU cache of the OCSP responses, the size is measured in bytes.
+   */
+  private static class MemoryCache extends LruCache<MemoryCacheKey, MemoryCacheEntry> {
+
+    // estimated overhead of the key, entry and the map node.
+    private static final int ENTRY_OVERHEAD = 160;
+
+    MemoryCache(int maxSize) {
+      super(maxSize);
+    }
+
+    @Override
+    protected int sizeOf(MemoryCacheKey key, MemoryCacheEntry value) {
+      return ENTRY_OVERHEAD + value.response.length;
+    }
+
+  } // class MemoryCache
+
+  private static class SingleResponseKey {
+
+    private final String responderName;
+
+    private final byte[] encodedCertId;
+
+    private final int hashCode;
+
+    SingleResponseKey(String responderName, CertID certId) {
+      this.responderName = responderName;
+      this.encodedCertId = new byte[certId.getEncodedLength()];
+      certId.write(encodedCertId, 0);
+      this.hashCode = 31 * responderName.hashCode() + Arrays.hashCode(encodedCertId);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (!(obj instanceof SingleResponseKey)) {
+        return false;
+      }
+
+      SingleResponseKey other = (SingleResponseKey) obj;
+      return hashCode == other.hashCode && responderName.equals(other.responderName)
+          && Arrays.equals(encodedCertId, other.encodedCertId);
+    }
+
+  } // class SingleResponseKey
+
+  private static class SingleResponseEntry {
+
+    private final byte[] encoded;
+
+    private final long thisUpdate;
+
+    // 0 if not present
+    private final long nextUpdate;
+
+    private final long expiresAt;
+
+    SingleResponseEntry(byte[] encoded, long thisUpdate, long nextUpdate, long expiresAt) {
+      this.encoded = encoded;
+      this.thisUpdate = thisUpdate;
+      this.nextUpdate = nextUpdate;
+      this.expiresAt = expiresAt;
+    }
+
+  } // class SingleResponseEntry
+
+  /**
+   * LRU cache of the encoded SingleResponses, the size is measured in bytes.
+   */
+  private static class SingleResponseCache
+      extends LruCache<SingleResponseKey, SingleResponseEntry> {
+
+    // estimated overhead of the key, entry and the map node.
+    private static final int ENTRY_OVERHEAD = 160;
+
+    SingleResponseCache(int maxSize) {
+      super(maxSize);
+    }
+
+    @Override
+    protected int sizeOf(SingleResponseKey key, SingleResponseEntry value) {
+      return ENTRY_OVERHEAD + key.encodedCertId.length + value.encoded.length;
+    }
+
+  } // class SingleResponseCache
+
+  /**
+   * Cached SingleResponse.
+   */
+  public static class CachedSingleResponse {
+
+    private final SingleResponse singleResponse;
+
+    private final long thisUpdate;
+
+    private final Long nextUpdate;
+
+    private CachedSingleResponse(SingleResponseEntry entry) {
+      this.singleResponse = new SingleResponse(entry.encoded);
+      this.thisUpdate = entry.thisUpdate;
+      this.nextUpdate = (entry.nextUpdate == 0) ? null : entry.nextUpdate;
+    }
+
+    public SingleResponse getSingleResponse() {
+      return singleResponse;
+    }
+
+    /**
+     * Returns the thisUpdate in seconds since January 1, 1970, 00:00:00 GMT.
+     * @return the thisUpdate.
+     */
+    public long getThisUpdate() {
+      return thisUpdate;
+    }
+
+    /**
+     * Returns the nextUpdate in seconds since January 1, 1970, 00:00:00 GMT.
+     * @return the nextUpdate, may be {@code null}.
+     */
+    public Long getNextUpdate() {
+      return nextUpdate;
+    }
+
+  } // class CachedSingleResponse
+
+  private static class PendingResponse {
+
+    private final long id;
+
+    private final int issuerId;
+
+    private final String ident;
+
+    private final long thisUpdate;
+
+    private final long nextUpdate;
+
+    private final byte[] response;
+
+    PendingResponse(long id, int issuerId, String ident, long thisUpdate, long nextUpdate,
+        byte[] response) {
+      this.id = id;
+      this.issuerId = issuerId;
+      this.ident = ident;
+      this.thisUpdate = thisUpdate;
+      this.nextUpdate = nextUpdate;
+      this.response = response;
+    }
+
+  } // class PendingResponse
+
+  /**
+   * Writes the queued responses in batches to the cache database. Responses with the same
+   * ID are coalesced, only the latest one will be written. If the queue is full, new responses
+   * are dropped.
+   */
+  private class ResponseWriter implements Runnable {
+
+    // maximal time in milliseconds a response stays in the queue
+    private static final long MAX_DELAY_MS = 1000;
+
+    private final int maxQueueSize;
+
+    private final int batchSize;
+
+    private final Object lock = new Object();
+
+    private final LinkedHashMap<Long, PendingResponse> queue = new LinkedHashMap<>();
+
+    private final AtomicLong queued = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong written = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private boolean stopped;
+
+    private Thread thread;
+
+    ResponseWriter(int maxQueueSize, int batchSize) {
+      this.maxQueueSize = maxQueueSize;
+      this.batchSize = batchSize;
+    }
+
+    void start() {
+      thread = new Thread(this, "ocsp-response-cache-writer");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    void stop() {
+      synchronized (lock) {
+        stopped = true;
+        lock.notifyAll();
+      }
+
+      if (thread != null) {
+        try {
+          thread.join();
+        } catch (InterruptedException ex) {
+          LOG.error("interrupted: {}", ex.getMessage());
+        }
+        thread = null;
+      }
+    }
+
+    void enqueue(PendingResponse response) {
+      synchronized (lock) {
+        if (stopped) {
+          dropped.incrementAndGet();
+          return;
+        }
+
+        if (queue.put(response.id, response) != null) {
+          coalesced.incrementAndGet();
+          return;
+        }
+
+        if (queue.size() > maxQueueSize) {
+          queue.remove(response.id);
+          dropped.incrementAndGet();
+          LOG.debug("queue is full, dropped OCSP response iid={}, ident={}",
+              response.issuerId, response.ident);
+          return;
+        }
+
+        queued.incrementAndGet();
+        if (queue.size() >= batchSize) {
+          lock.notifyAll();
+        }
+      }
+    } // method enqueue
+
+    @Override
+    public void run() {
+      while (true) {
+        List<PendingResponse> batch;
+        synchronized (lock) {
+          if (!stopped && queue.size() < batchSize) {
+            try {
+              lock.wait(MAX_DELAY_MS);
+            } catch (InterruptedException ex) {
+              stopped = true;
+            }
+          }
+
+          if (queue.isEmpty()) {
+            if (stopped) {
+              return;
+            }
+            continue;
+          }
+
+          batch = new ArrayList<>(Math.min(batchSize, queue.size()));
+          Iterator<PendingResponse> it = queue.values().iterator();
+          while (it.hasNext() && batch.size() < batchSize) {
+            batch.add(it.next());
+            it.remove();
+          }
+        }
+
+        try {
+          storeInDb(batch);
+          written.addAndGet(batch.size());
+        } catch (Throwable th) {
+          failed.addAndGet(batch.size());
+          LogUtil.error(LOG, th, "could not cache " + batch.size() + " OCSP responses");
+        }
+      }
+    } // method run
+
+    void addStatistics(Map<String, Object> statistics) {
+      int queueSize;
+      synchronized (lock) {
+        queueSize = queue.size();
+      }
+
+      statistics.put("writeBehind.queued", queued.get());
+      statistics.put("writeBehind.coalesced", coalesced.get());
+      statistics.put("writeBehind.dropped", dropped.get());
+      statistics.put("writeBehind.written", written.get());
+      statistics.put("writeBehind.failed", failed.get());
+      statistics.put("writeBehind.queueSize", queueSize);
+    } // method addStatistics
+
+  } // class ResponseWriter
+
   private class IssuerUpdater implements Runnable {
 
     @Override
@@ -138,6 +501,20 @@ public class ResponseCacher implements Closeable {
 
   private final AtomicBoolean onService;
 
+  private final MemoryCache memoryCache;
+
+  private final AtomicLong memoryCacheHits = new AtomicLong();
+
+  private final AtomicLong memoryCacheMisses = new AtomicLong();
+
+  private final AtomicLong memoryCacheExpirations = new AtomicLong();
+
+  private SingleResponseCache singleResponseCache;
+
+  private final AtomicLong singleResponseCacheHits = new AtomicLong();
+
+  private final AtomicLong singleResponseCacheMisses = new AtomicLong();
+
   private DataSourceWrapper datasource;
 
   private IssuerStore issuerStore = new IssuerStore();
@@ -148,8 +525,33 @@ public class ResponseCacher implements Closeable {
 
   private ScheduledFuture<?> issuerUpdater;
 
+  private int writeBehindQueueSize;
+
+  private int writeBehindBatchSize = 100;
+
+  private ResponseWriter responseWriter;
+
   public ResponseCacher(DataSourceWrapper datasource, boolean master, Validity validity) {
+    this(datasource, master, validity, 0);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param datasource
+   *          Datasource of the cache database.
+   * @param master
+   *          Whether this responder is the master.
+   * @param validity
+   *          Validity of the cached responses.
+   * @param memoryCacheSize
+   *          Maximal size in bytes of the in-memory cache in front of the cache database.
+   *          0 to disable the in-memory cache.
+   */
+  public ResponseCacher(DataSourceWrapper datasource, boolean master, Validity validity,
+      int memoryCacheSize) {
     this.datasource = Args.notNull(datasource, "datasource");
+    this.memoryCache = (memoryCacheSize > 0) ? new MemoryCache(memoryCacheSize) : null;
     this.master = master;
     this.validity = (int) (Args.notNull(validity, "validity").approxMinutes() * 60);
     this.sqlSelectIssuerCert = datasource.buildSelectFirstSql(1, "CERT FROM ISSUER WHERE ID=?");
@@ -164,6 +566,36 @@ public class ResponseCacher implements Closeable {
     }
   }
 
+  /**
+   * Enables the write-behind mode if positive. Must be called before {@link #init()}.
+   * @param writeBehindQueueSize
+   *          Maximal number of responses waiting to be written to the cache database.
+   *          0 to write the responses synchronously.
+   */
+  public void setWriteBehindQueueSize(int writeBehindQueueSize) {
+    this.writeBehindQueueSize = writeBehindQueueSize;
+  }
+
+  /**
+   * Enables the in-memory cache of the single responses if positive. The cached single
+   * responses are used to assemble the responses of requests with more than one CertID,
+   * and of requests with nonce. Must be called before {@link #init()}.
+   * @param singleResponseCacheSize
+   *          Maximal size in bytes of the cache. 0 to disable it.
+   */
+  public void setSingleResponseCacheSize(int singleResponseCacheSize) {
+    this.singleResponseCache = (singleResponseCacheSize > 0)
+        ? new SingleResponseCache(singleResponseCacheSize) : null;
+  }
+
+  public boolean isSingleResponseCacheEnabled() {
+    return singleResponseCache != null;
+  }
+
+  public void setWriteBehindBatchSize(int writeBehindBatchSize) {
+    this.writeBehindBatchSize = Args.positive(writeBehindBatchSize, "writeBehindBatchSize");
+  }
+
   public boolean isOnService() {
     return onService.get() && issuerStore != null;
   }
@@ -171,6 +603,11 @@ public class ResponseCacher implements Closeable {
   public void init() {
     updateCacheStore();
 
+    if (master && writeBehindQueueSize > 0) {
+      responseWriter = new ResponseWriter(writeBehindQueueSize, writeBehindBatchSize);
+      responseWriter.start();
+    }
+
     scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(1);
     scheduledThreadPoolExecutor.setRemoveOnCancelPolicy(true);
 
@@ -185,6 +622,12 @@ public class ResponseCacher implements Closeable {
 
   @Override
   public void close() {
+    if (responseWriter != null) {
+      // write the queued responses before closing the datasource
+      responseWriter.stop();
+      responseWriter = null;
+    }
+
     if (datasource != null) {
       datasource.close();
       datasource = null;
@@ -265,6 +708,30 @@ public class ResponseCacher implements Closeable {
 
   public OcspRespWithCacheInfo getOcspResponse(int issuerId, BigInteger serialNumber,
       AlgorithmCode sigAlg) throws DataAccessException {
+    MemoryCacheKey memoryCacheKey = null;
+    if (memoryCache != null) {
+      memoryCacheKey = new MemoryCacheKey(issuerId, serialNumber, sigAlg.getCode());
+      MemoryCacheEntry entry = memoryCache.get(memoryCacheKey);
+      if (entry != null) {
+        long nowInSec = System.currentTimeMillis() / 1000;
+        // nextUpdate must be at least in 600 seconds
+        boolean expired = (entry.nextUpdate != 0 && entry.nextUpdate < nowInSec + 600)
+            || (entry.thisUpdate < nowInSec - validity);
+        if (expired) {
+          memoryCache.remove(memoryCacheKey);
+          memoryCacheExpirations.incrementAndGet();
+        } else {
+          memoryCacheHits.incrementAndGet();
+          ResponseCacheInfo cacheInfo = new ResponseCacheInfo(entry.thisUpdate);
+          if (entry.nextUpdate != 0) {
+            cacheInfo.setNextUpdate(entry.nextUpdate);
+          }
+          return new OcspRespWithCacheInfo(entry.response, cacheInfo);
+        }
+      }
+      memoryCacheMisses.incrementAndGet();
+    }
+
     final String sql = sqlSelectOcsp;
     byte[] identBytes = buildIdent(serialNumber, sigAlg);
     long id = deriveId(issuerId, identBytes);
@@ -302,6 +769,10 @@ public class ResponseCacher implements Closeable {
       long thisUpdate = rs.getLong("THIS_UPDATE");
       String b64Resp = rs.getString("RESP");
       byte[] resp = Base64.decodeFast(b64Resp);
+      if (memoryCache != null) {
+        memoryCache.put(memoryCacheKey, new MemoryCacheEntry(resp, thisUpdate, nextUpdate));
+      }
+
       ResponseCacheInfo cacheInfo = new ResponseCacheInfo(thisUpdate);
       if (nextUpdate != 0) {
         cacheInfo.setNextUpdate(nextUpdate);
@@ -316,6 +787,36 @@ public class ResponseCacher implements Closeable {
 
   public void storeOcspResponse(int issuerId, BigInteger serialNumber, long thisUpdate,
       Long nextUpdate, AlgorithmCode sigAlgCode, byte[] response) {
+    storeOcspResponse(issuerId, serialNumber, thisUpdate, nextUpdate, sigAlgCode, response,
+        true);
+  } // method storeOcspResponse
+
+  /**
+   * Stores the pregenerated response only in the cache database. The response is not added to
+   * the in-memory cache, so that the pregeneration does not evict the entries of the real
+   * requests, but an outdated entry of the same certificate is removed from it.
+   *
+   * @param issuerId
+   *          ID of the issuer in the cache database.
+   * @param serialNumber
+   *          Serial number of the certificate.
+   * @param thisUpdate
+   *          thisUpdate in seconds since January 1, 1970, 00:00:00 GMT.
+   * @param nextUpdate
+   *          nextUpdate in seconds since January 1, 1970, 00:00:00 GMT. May be {@code null}.
+   * @param sigAlgCode
+   *          Code of the signature algorithm.
+   * @param response
+   *          The encoded OCSP response.
+   */
+  public void storePregeneratedOcspResponse(int issuerId, BigInteger serialNumber,
+      long thisUpdate, Long nextUpdate, AlgorithmCode sigAlgCode, byte[] response) {
+    storeOcspResponse(issuerId, serialNumber, thisUpdate, nextUpdate, sigAlgCode, response,
+        false);
+  } // method storePregeneratedOcspResponse
+
+  private void storeOcspResponse(int issuerId, BigInteger serialNumber, long thisUpdate,
+      Long nextUpdate, AlgorithmCode sigAlgCode, byte[] response, boolean toMemoryCache) {
     long nowInSec = System.currentTimeMillis() / 1000;
     if (nextUpdate == null) {
       nextUpdate = nowInSec + SEC_PER_WEEK;
@@ -325,11 +826,32 @@ public class ResponseCacher implements Closeable {
       return;
     }
 
+    if (memoryCache != null) {
+      MemoryCacheKey memoryCacheKey =
+          new MemoryCacheKey(issuerId, serialNumber, sigAlgCode.getCode());
+      if (toMemoryCache) {
+        memoryCache.put(memoryCacheKey, new MemoryCacheEntry(response, thisUpdate, nextUpdate));
+      } else {
+        memoryCache.remove(memoryCacheKey);
+      }
+    }
+
     byte[] identBytes = buildIdent(serialNumber, sigAlgCode);
     String ident = Base64.encodeToString(identBytes);
-    try {
-      long id = deriveId(issuerId, identBytes);
+    long id = deriveId(issuerId, identBytes);
 
+    ResponseWriter writer = responseWriter;
+    if (writer != null) {
+      writer.enqueue(new PendingResponse(id, issuerId, ident, thisUpdate, nextUpdate, response));
+      return;
+    }
+
+    storeInDb(id, issuerId, ident, thisUpdate, nextUpdate, response);
+  } // method storeOcspResponse
+
+  private void storeInDb(long id, int issuerId, String ident, long thisUpdate, long nextUpdate,
+      byte[] response) {
+    try {
       Connection conn = datasource.getConnection();
       try {
         String sql = SQL_ADD_RESP;
@@ -385,7 +907,238 @@ public class ResponseCacher implements Closeable {
         LOG.debug("could not cache OCSP response iid=" + issuerId + ", ident=" + ident, ex);
       }
     }
-  } // method storeOcspResponse
+  } // method storeInDb
+
+  private Set<Long> queryExistingIds(Connection conn, List<PendingResponse> responses)
+      throws DataAccessException {
+    Set<Long> ids = new HashSet<>();
+    for (int offset = 0; offset < responses.size(); offset += MAX_IDS_PER_SELECT) {
+      int num = Math.min(MAX_IDS_PER_SELECT, responses.size() - offset);
+      StringBuilder sb = new StringBuilder(40 + 2 * num);
+      sb.append("SELECT ID FROM OCSP WHERE ID IN (?");
+      for (int i = 1; i < num; i++) {
+        sb.append(",?");
+      }
+      sb.append(")");
+
+      String sql = sb.toString();
+      PreparedStatement ps = datasource.prepareStatement(conn, sql);
+      ResultSet rs = null;
+      try {
+        for (int i = 0; i < num; i++) {
+          ps.setLong(i + 1, responses.get(offset + i).id);
+        }
+
+        rs = ps.executeQuery();
+        while (rs.next()) {
+          ids.add(rs.getLong("ID"));
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        datasource.releaseResources(ps, rs, false);
+      }
+    }
+    return ids;
+  } // method queryExistingIds
+
+  /**
+   * Writes the responses with JDBC batches: the existing rows are updated first, and
+   * the remaining ones are inserted. If the driver does not report the number of updated rows,
+   * the existing rows are queried. If the batch insert fails, the responses are written one
+   * by one.
+   */
+  private void storeInDb(List<PendingResponse> responses) throws DataAccessException {
+    List<PendingResponse> newResponses = new ArrayList<>(responses.size());
+    // the responses whose update count is not reported by the driver, e.g. Oracle
+    List<PendingResponse> unknownResponses = new ArrayList<>();
+
+    Connection conn = datasource.getConnection();
+    try {
+      String sql = SQL_UPDATE_RESP;
+      PreparedStatement ps = datasource.prepareStatement(conn, sql);
+      try {
+        for (PendingResponse m : responses) {
+          int idx = 1;
+          ps.setLong(idx++, m.thisUpdate);
+          ps.setLong(idx++, m.nextUpdate);
+          ps.setString(idx++, Base64.encodeToString(m.response));
+          ps.setLong(idx++, m.id);
+          ps.addBatch();
+        }
+
+        int[] counts = ps.executeBatch();
+        for (int i = 0; i < counts.length; i++) {
+          if (counts[i] == 0 || counts[i] == Statement.EXECUTE_FAILED) {
+            newResponses.add(responses.get(i));
+          } else if (counts[i] == Statement.SUCCESS_NO_INFO) {
+            unknownResponses.add(responses.get(i));
+          }
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        datasource.releaseResources(ps, null, false);
+      }
+
+      if (!unknownResponses.isEmpty()) {
+        Set<Long> existingIds = queryExistingIds(conn, unknownResponses);
+        for (PendingResponse m : unknownResponses) {
+          if (!existingIds.contains(m.id)) {
+            newResponses.add(m);
+          }
+        }
+      }
+
+      if (newResponses.isEmpty()) {
+        return;
+      }
+
+      sql = SQL_ADD_RESP;
+      ps = datasource.prepareStatement(conn, sql);
+      boolean batchFailed = false;
+      try {
+        for (PendingResponse m : newResponses) {
+          int idx = 1;
+          ps.setLong(idx++, m.id);
+          ps.setInt(idx++, m.issuerId);
+          ps.setString(idx++, m.ident);
+          ps.setLong(idx++, m.thisUpdate);
+          ps.setLong(idx++, m.nextUpdate);
+          ps.setString(idx++, Base64.encodeToString(m.response));
+          ps.addBatch();
+        }
+
+        int[] counts = ps.executeBatch();
+        for (int count : counts) {
+          if (count == Statement.EXECUTE_FAILED) {
+            batchFailed = true;
+            break;
+          }
+        }
+      } catch (SQLException ex) {
+        LogUtil.warn(LOG, datasource.translate(sql, ex),
+            "could not add OCSP responses in batch, add them one by one");
+        batchFailed = true;
+      } finally {
+        datasource.releaseResources(ps, null, false);
+      }
+
+      if (!batchFailed) {
+        LOG.debug("added {} cached OCSP responses", newResponses.size());
+        return;
+      }
+    } finally {
+      datasource.returnConnection(conn);
+    }
+
+    // the responses may have been added in the meantime by another writer
+    for (PendingResponse m : newResponses) {
+      storeInDb(m.id, m.issuerId, m.ident, m.thisUpdate, m.nextUpdate, m.response);
+    }
+  } // method storeInDb
+
+  public CachedSingleResponse getSingleResponse(String responderName, CertID certId) {
+    if (singleResponseCache == null) {
+      return null;
+    }
+
+    SingleResponseKey key = new SingleResponseKey(responderName, certId);
+    SingleResponseEntry entry = singleResponseCache.get(key);
+    if (entry != null) {
+      if (entry.expiresAt > System.currentTimeMillis() / 1000) {
+        singleResponseCacheHits.incrementAndGet();
+        return new CachedSingleResponse(entry);
+      }
+
+      singleResponseCache.remove(key);
+    }
+
+    singleResponseCacheMisses.incrementAndGet();
+    return null;
+  } // method getSingleResponse
+
+  /**
+   * Stores the single response in the in-memory cache. The response expires after the
+   * configured validity, but at latest 600 seconds before its nextUpdate.
+   *
+   * @param responderName
+   *          Name of the responder.
+   * @param certId
+   *          CertID of the request.
+   * @param singleResponse
+   *          The single response.
+   * @param thisUpdate
+   *          thisUpdate in seconds since January 1, 1970, 00:00:00 GMT.
+   * @param nextUpdate
+   *          nextUpdate in seconds since January 1, 1970, 00:00:00 GMT. May be {@code null}.
+   */
+  public void storeSingleResponse(String responderName, CertID certId,
+      SingleResponse singleResponse, long thisUpdate, Long nextUpdate) {
+    if (singleResponseCache == null) {
+      return;
+    }
+
+    long nowInSec = System.currentTimeMillis() / 1000;
+    long expiresAt = nowInSec + validity;
+    if (nextUpdate != null) {
+      // nextUpdate must be at least in 600 seconds
+      expiresAt = Math.min(expiresAt, nextUpdate - 600);
+    }
+
+    if (expiresAt <= nowInSec) {
+      return;
+    }
+
+    singleResponseCache.put(new SingleResponseKey(responderName, certId),
+        new SingleResponseEntry(singleResponse.getEncoded(), thisUpdate,
+            (nextUpdate == null) ? 0 : nextUpdate, expiresAt));
+  } // method storeSingleResponse
+
+  /**
+   * Removes the single response from the in-memory cache.
+   *
+   * @param responderName
+   *          Name of the responder.
+   * @param certId
+   *          CertID of the request.
+   */
+  public void removeSingleResponse(String responderName, CertID certId) {
+    if (singleResponseCache != null) {
+      singleResponseCache.remove(new SingleResponseKey(responderName, certId));
+    }
+  } // method removeSingleResponse
+
+  /**
+   * Returns the statistics of the in-memory caches and of the write-behind queue.
+   * @return the statistics, empty if neither the in-memory caches nor the write-behind mode
+   *         is enabled.
+   */
+  public Map<String, Object> getStatistics() {
+    Map<String, Object> statistics = new LinkedHashMap<>();
+    if (memoryCache != null) {
+      statistics.put("hits", memoryCacheHits.get());
+      statistics.put("misses", memoryCacheMisses.get());
+      statistics.put("expirations", memoryCacheExpirations.get());
+      statistics.put("evictions", memoryCache.evictionCount());
+      statistics.put("size", memoryCache.size());
+      statistics.put("maxSize", memoryCache.maxSize());
+    }
+
+    if (singleResponseCache != null) {
+      statistics.put("singleResponse.hits", singleResponseCacheHits.get());
+      statistics.put("singleResponse.misses", singleResponseCacheMisses.get());
+      statistics.put("singleResponse.evictions", singleResponseCache.evictionCount());
+      statistics.put("singleResponse.size", singleResponseCache.size());
+      statistics.put("singleResponse.maxSize", singleResponseCache.maxSize());
+    }
+
+    ResponseWriter writer = responseWriter;
+    if (writer != null) {
+      writer.addStatistics(statistics);
+    }
+    return statistics;
+  } // method getStatistics
 
   private int removeExpiredResponses(long maxThisUpdate) throws DataAccessException {
     final String sql = SQL_DELETE_EXPIRED_RESP;
@@ -18,7 +18,7 @@
 package org.xipki.ocsp.server.store;
 
 /**
- * Simple IssuerEntry containing only the id and RevocationTime.
+ * Simple IssuerEntry containing only the id, RevocationTime and CRL id.
  *
  * @author Lijun Liao
  * @since 2.0.0
@@ -30,9 +30,28 @@ class SimpleIssuerEntry {
 
   private final Long revocationTimeMs;
 
+  private final Integer crlId;
+
   SimpleIssuerEntry(int id, Long revocationTimeMs) {
+    this(id, revocationTimeMs, null);
+  }
+
+  SimpleIssuerEntry(int id, Long revocationTimeMs, Integer crlId) {
     this.id = id;
     this.revocationTimeMs = revocationTimeMs;
+    this.crlId = crlId;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public Long getRevocationTimeMs() {
+    return revocationTimeMs;
+  }
+
+  public Integer getCrlId() {
+    return crlId;
   }
 
   public boolean match(IssuerEntry issuer) {
@@ -40,6 +59,10 @@ class SimpleIssuerEntry {
       return false;
     }
 
+    if (crlId != null && crlId.intValue() != issuer.getCrlId()) {
+      return false;
+    }
+
     if (revocationTimeMs == null) {
       return issuer.getRevocationInfo() == null;
     }
@@ -49,4 +72,3 @@ class SimpleIssuerEntry {
   }
 
 } // class SimpleIssuerEntry
-
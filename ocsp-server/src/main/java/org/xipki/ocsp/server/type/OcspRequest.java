@@ -75,8 +75,27 @@ public class OcspRequest {
   }
 
   public static OcspRequest getInstance(byte[] request) throws EncodingException {
+    return getInstance(request, request.length);
+  }
+
+  /**
+   * Parses the request contained in the first {@code length} bytes of {@code request}.
+   * The returned object references the array {@code request}.
+   *
+   * @param request
+   *          Buffer containing the request.
+   * @param length
+   *          Length of the request.
+   * @return the parsed request
+   * @throws EncodingException
+   *           if the request is invalid.
+   */
+  public static OcspRequest getInstance(byte[] request, int length) throws EncodingException {
     // OCSPRequest
     Header hdr = readHeader(request, 0);
+    if (hdr.readerIndex + hdr.len != length) {
+      throw new EncodingException("invalid length of OCSPRequest");
+    }
     // tbsRequest
     Header hdrTbs = readHeader(request, hdr.readerIndex);
 
@@ -235,12 +254,17 @@ public class OcspRequest {
   } // method readRequestVersion
 
   public static boolean containsSignature(byte[] request) throws EncodingException {
+    return containsSignature(request, request.length);
+  }
+
+  public static boolean containsSignature(byte[] request, int length)
+      throws EncodingException {
     // OCSPRequest
     Header hdr = readHeader(request, 0);
     // tbsRequest
     Header hdrTbs = readHeader(request, hdr.readerIndex);
     int signatureIndex = hdrTbs.readerIndex + hdrTbs.len;
-    return signatureIndex < request.length;
+    return signatureIndex < length;
   }
 
   static Header readHeader(byte[] encoded, int readerIndex) throws EncodingException {
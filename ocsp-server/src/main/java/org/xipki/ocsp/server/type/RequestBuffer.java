@@ -0,0 +1,104 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.type;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Thread-local buffer to read the OCSP request, so that no array is allocated per request.
+ * The content is only valid until the next call of {@link #read(InputStream, int)} in the
+ * same thread.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class RequestBuffer {
+
+  private static final int INITIAL_SIZE = 1024;
+
+  /**
+   * Buffers larger than this size are not kept after the request.
+   */
+  private static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+  private static final ThreadLocal<RequestBuffer> INSTANCES = new ThreadLocal<RequestBuffer>() {
+    @Override
+    protected RequestBuffer initialValue() {
+      return new RequestBuffer();
+    }
+  };
+
+  private byte[] buffer = new byte[INITIAL_SIZE];
+
+  private int length;
+
+  private RequestBuffer() {
+  }
+
+  public static RequestBuffer getInstance() {
+    return INSTANCES.get();
+  }
+
+  /**
+   * Reads the stream into this buffer.
+   *
+   * @param in
+   *          the input stream.
+   * @param maxSize
+   *          maximal number of bytes to read.
+   * @return whether the whole stream has been read. {@code false} if the stream contains
+   *         more than {@code maxSize} bytes.
+   * @throws IOException
+   *           if error occurs while reading the stream.
+   */
+  public boolean read(InputStream in, int maxSize) throws IOException {
+    if (buffer.length > MAX_RETAINED_SIZE) {
+      buffer = new byte[INITIAL_SIZE];
+    }
+
+    length = 0;
+    while (true) {
+      if (length == buffer.length) {
+        if (length > maxSize) {
+          return false;
+        }
+
+        byte[] newBuffer = new byte[Math.min(buffer.length << 1, maxSize + 1)];
+        System.arraycopy(buffer, 0, newBuffer, 0, length);
+        buffer = newBuffer;
+      }
+
+      int read = in.read(buffer, length, buffer.length - length);
+      if (read == -1) {
+        return length <= maxSize;
+      }
+      length += read;
+    }
+  } // method read
+
+  public byte[] getBuffer() {
+    return buffer;
+  }
+
+  public int getLength() {
+    return length;
+  }
+
+}
@@ -38,6 +38,9 @@ public class SingleResponse extends ASN1Type {
 
   private final Extensions extensions;
 
+  // encoded SingleResponse, if constructed from the encoded form
+  private final byte[] encoded;
+
   private final int bodyLength;
 
   private final int encodedLength;
@@ -49,6 +52,7 @@ public class SingleResponse extends ASN1Type {
     this.thisUpdate = thisUpdate;
     this.nextUpdate = nextUpdate;
     this.extensions = extensions;
+    this.encoded = null;
 
     int len = certId.getEncodedLength();
     len += certStatus.length;
@@ -66,13 +70,44 @@ public class SingleResponse extends ASN1Type {
     this.encodedLength = getLen(bodyLength);
   } // constructor
 
+  /**
+   * Constructor from the encoded form, e.g. a cached SingleResponse.
+   * @param encoded
+   *          DER-encoded SingleResponse.
+   */
+  public SingleResponse(byte[] encoded) {
+    this.encoded = encoded;
+    this.certId = null;
+    this.certStatus = null;
+    this.thisUpdate = null;
+    this.nextUpdate = null;
+    this.extensions = null;
+    int headerLen = ((encoded[1] & 0x80) == 0) ? 2 : 2 + (encoded[1] & 0x7F);
+    this.bodyLength = encoded.length - headerLen;
+    this.encodedLength = encoded.length;
+  } // constructor
+
   @Override
   public int getEncodedLength() {
     return encodedLength;
   }
 
+  public byte[] getEncoded() {
+    if (encoded != null) {
+      return encoded;
+    }
+
+    byte[] bytes = new byte[encodedLength];
+    write(bytes, 0);
+    return bytes;
+  } // method getEncoded
+
   @Override
   public int write(byte[] out, int offset) {
+    if (encoded != null) {
+      return arraycopy(encoded, out, offset);
+    }
+
     int idx = offset;
     idx += writeHeader((byte) 0x30, bodyLength, out, idx);
     idx += certId.write(out, idx);
@@ -0,0 +1,104 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.server.store;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * CertStatusIndex test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.8
+ */
+
+public class CertStatusIndexTest {
+
+  @Test
+  public void testPutAndGet() {
+    CertStatusIndex index = new CertStatusIndex(10);
+    byte[] certHash = new byte[] {1, 2, 3, 4};
+    index.put(1, 5, BigInteger.valueOf(100), 1000, 2000, false, 0, 0, 0, 0, certHash);
+    index.put(2, 5, BigInteger.valueOf(101), 1000, 2000, true, 1, 1500, 1400, 3, null);
+
+    CertStatusIndex.Entry entry = index.get(5, BigInteger.valueOf(100));
+    Assert.assertNotNull("entry", entry);
+    Assert.assertFalse("revoked", entry.isRevoked());
+    Assert.assertEquals("notBefore", 1000, entry.getNotBefore());
+    Assert.assertEquals("notAfter", 2000, entry.getNotAfter());
+    Assert.assertArrayEquals("certHash", certHash, entry.getCertHash());
+
+    entry = index.get(5, BigInteger.valueOf(101));
+    Assert.assertTrue("revoked", entry.isRevoked());
+    Assert.assertEquals("reason", 1, entry.getReason());
+    Assert.assertEquals("revTime", 1500, entry.getRevTime());
+    Assert.assertEquals("invalidityTime", 1400, entry.getInvalidityTime());
+    Assert.assertEquals("crlId", 3, entry.getCrlId());
+    Assert.assertNull("certHash", entry.getCertHash());
+
+    Assert.assertNull("unknown serial", index.get(5, BigInteger.valueOf(102)));
+    Assert.assertNull("unknown issuer", index.get(6, BigInteger.valueOf(100)));
+
+    // replace the entry, also with a new database ID
+    index.put(3, 5, BigInteger.valueOf(100), 1000, 2000, true, 4, 1800, 0, 0, certHash);
+    Assert.assertEquals("size", 2, index.size());
+    Assert.assertTrue("revoked", index.get(5, BigInteger.valueOf(100)).isRevoked());
+    Assert.assertArrayEquals("ids", new long[] {2, 3}, index.getIds());
+  } // method testPutAndGet
+
+  @Test
+  public void testRemove() {
+    CertStatusIndex index = new CertStatusIndex(10);
+    int num = 10000;
+    Random random = new Random(1);
+    BigInteger[] serials = new BigInteger[num];
+    for (int i = 0; i < num; i++) {
+      serials[i] = new BigInteger(64, random).setBit(63);
+      // database IDs are not in the order of insertion
+      index.put(num - i, i % 3, serials[i], 1000, 2000, false, 0, 0, 0, 0, null);
+    }
+    Assert.assertEquals("size", num, index.size());
+
+    // remove every second entry
+    long[] removedIds = new long[num / 2];
+    for (int i = 0; i < removedIds.length; i++) {
+      removedIds[i] = 2 * i + 1;
+    }
+    Assert.assertEquals("removed", removedIds.length, index.remove(removedIds));
+    Assert.assertEquals("size", num - removedIds.length, index.size());
+    Assert.assertEquals("remove unknown IDs", 0, index.remove(removedIds));
+
+    for (int i = 0; i < num; i++) {
+      long id = num - i;
+      boolean removed = Arrays.binarySearch(removedIds, id) >= 0;
+      Assert.assertEquals("entry " + id, !removed, index.get(i % 3, serials[i]) != null);
+    }
+
+    long[] ids = index.getIds();
+    Assert.assertEquals("number of IDs", num - removedIds.length, ids.length);
+    for (int i = 0; i < ids.length; i++) {
+      Assert.assertEquals("id", 2 * (i + 1), ids[i]);
+    }
+  } // method testRemove
+
+}
@@ -20,6 +20,7 @@ package org.xipki.ocsp.servlet;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -32,13 +33,13 @@ import org.xipki.ocsp.api.OcspRespWithCacheInfo;
 import org.xipki.ocsp.api.OcspServer;
 import org.xipki.ocsp.api.Responder;
 import org.xipki.ocsp.api.ResponderAndPath;
+import org.xipki.ocsp.server.type.RequestBuffer;
 import org.xipki.security.HashAlgo;
 import org.xipki.util.Args;
 import org.xipki.util.Base64;
 import org.xipki.util.Base64Url;
 import org.xipki.util.Hex;
 import org.xipki.util.HttpConstants;
-import org.xipki.util.IoUtil;
 import org.xipki.util.LogUtil;
 import org.xipki.util.StringUtil;
 
@@ -92,21 +93,31 @@ public class OcspServlet extends HttpServlet {
       }
 
       Responder responder = responderAndPath.getResponder();
-      byte[] reqContent = IoUtil.read(req.getInputStream());
+      int maxRequestSize = responder.getMaxRequestSize();
       // request too long
-      if (reqContent.length > responder.getMaxRequestSize()) {
+      if (req.getContentLength() > maxRequestSize) {
         sendError(resp, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
         return;
       }
 
-      OcspRespWithCacheInfo ocspRespWithCacheInfo = server.answer(responder, reqContent, false);
+      // read the request into the thread-local buffer
+      RequestBuffer reqBuffer = RequestBuffer.getInstance();
+      if (!reqBuffer.read(req.getInputStream(), maxRequestSize)) {
+        sendError(resp, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+        return;
+      }
+
+      OcspRespWithCacheInfo ocspRespWithCacheInfo = server.answer(responder,
+          reqBuffer.getBuffer(), reqBuffer.getLength(), false);
       if (ocspRespWithCacheInfo == null || ocspRespWithCacheInfo.getResponse() == null) {
         LOG.error("processRequest returned null, this should not happen");
         sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        return;
       }
 
       byte[] encodedOcspResp = ocspRespWithCacheInfo.getResponse();
       if (logReqResp && LOG.isDebugEnabled()) {
+        byte[] reqContent = Arrays.copyOf(reqBuffer.getBuffer(), reqBuffer.getLength());
         LOG.debug("HTTP POST OCSP path: {}\nRequest:\n{}\nResponse:\n{}", req.getRequestURI(),
             LogUtil.base64Encode(reqContent), LogUtil.base64Encode(encodedOcspResp));
       }
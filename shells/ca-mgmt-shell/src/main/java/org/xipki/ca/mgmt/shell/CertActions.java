@@ -17,12 +17,19 @@
 
 package org.xipki.ca.mgmt.shell;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.cert.CertificateException;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -40,6 +47,7 @@ import org.xipki.ca.api.mgmt.CertListInfo;
 import org.xipki.ca.api.mgmt.CertListOrderBy;
 import org.xipki.ca.api.mgmt.CertWithRevocationInfo;
 import org.xipki.ca.api.mgmt.MgmtEntry;
+import org.xipki.ca.api.mgmt.RevokeCertsResult;
 import org.xipki.ca.mgmt.shell.CaActions.CaAction;
 import org.xipki.security.CrlReason;
 import org.xipki.security.util.X509Util;
@@ -498,6 +506,147 @@ public class CertActions {
 
   } // class RevokeCert
 
+  @Command(scope = "ca", name = "revoke-certs",
+      description = "revoke certificates listed in a file")
+  @Service
+  public static class RevokeCerts extends CaAction {
+
+    @Option(name = "--ca", required = true, description = "CA name")
+    @Completion(CaCompleters.CaNameCompleter.class)
+    private String caName;
+
+    @Option(name = "--serials-file", required = true,
+        description = "file containing one hex-encoded serial number per line\n"
+            + "(empty lines and lines starting with # are ignored)")
+    @Completion(FileCompleter.class)
+    private String serialsFile;
+
+    @Option(name = "--reason", aliases = "-r", required = true, description = "CRL reason")
+    @Completion(Completers.ClientCrlReasonCompleter.class)
+    private String reason;
+
+    @Option(name = "--inv-date", description = "invalidity date, UTC time of format yyyyMMddHHmmss")
+    private String invalidityDateS;
+
+    @Option(name = "--batch-size", description = "number of serial numbers sent in one request")
+    private Integer batchSize = 1000;
+
+    @Option(name = "--skip",
+        description = "number of serial numbers to be skipped, to resume an interrupted run")
+    private Integer skip = 0;
+
+    @Option(name = "--failed-out", description = "where to save the failed serial numbers\n"
+        + "(written after each batch, appended if --skip is positive)")
+    @Completion(FileCompleter.class)
+    private String failedOutFile;
+
+    @Override
+    protected Object execute0() throws Exception {
+      CrlReason crlReason = CrlReason.forNameOrText(reason);
+
+      if (!CrlReason.PERMITTED_CLIENT_CRLREASONS.contains(crlReason)) {
+        throw new InvalidConfException("reason " + reason + " is not permitted");
+      }
+
+      if (batchSize < 1) {
+        throw new IllegalCmdParamException("invalid batch-size " + batchSize);
+      }
+
+      Date invalidityDate = null;
+      if (isNotBlank(invalidityDateS)) {
+        invalidityDate = DateUtil.parseUtcTimeyyyyMMddhhmmss(invalidityDateS);
+      }
+
+      RevokeCertsResult result = new RevokeCertsResult();
+      int processed = 0;
+      BufferedWriter failedWriter = null;
+      if (failedOutFile != null) {
+        Path path = Paths.get(IoUtil.expandFilepath(failedOutFile));
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+          Files.createDirectories(parent);
+        }
+        // the failed serial numbers of the interrupted run are kept if resumed
+        failedWriter = (skip > 0)
+            ? Files.newBufferedWriter(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+            : Files.newBufferedWriter(path);
+      }
+
+      BufferedReader reader = Files.newBufferedReader(
+          Paths.get(IoUtil.expandFilepath(serialsFile)));
+      try {
+        List<BigInteger> batch = new ArrayList<>(batchSize);
+        int index = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+          line = line.trim();
+          if (line.isEmpty() || line.startsWith("#")) {
+            continue;
+          }
+
+          if (index++ < skip) {
+            continue;
+          }
+
+          batch.add(toBigInt(line, true));
+          if (batch.size() == batchSize) {
+            processed += revokeBatch(batch, crlReason, invalidityDate, processed, result,
+                failedWriter);
+            batch.clear();
+          }
+        }
+
+        if (!batch.isEmpty()) {
+          processed += revokeBatch(batch, crlReason, invalidityDate, processed, result,
+              failedWriter);
+        }
+      } finally {
+        reader.close();
+        if (failedWriter != null) {
+          failedWriter.close();
+        }
+      }
+
+      List<BigInteger> failed = result.getFailedSerialNumbers();
+      println("processed " + processed + " serial numbers: revoked " + result.getNumRevoked()
+          + ", already revoked " + result.getNumAlreadyRevoked() + ", failed " + failed.size());
+
+      if (failedOutFile != null && !failed.isEmpty()) {
+        println("saved failed serial numbers to file " + failedOutFile);
+      }
+      return null;
+    } // method execute0
+
+    private int revokeBatch(List<BigInteger> batch, CrlReason crlReason, Date invalidityDate,
+        int processed, RevokeCertsResult result, BufferedWriter failedWriter)
+        throws CmdFailure, IOException {
+      try {
+        RevokeCertsResult batchResult =
+            caManager.revokeCertificates(caName, batch, crlReason, invalidityDate);
+        result.add(batchResult);
+
+        // saved immediately, so that they are not lost if a later batch fails
+        if (failedWriter != null && !batchResult.getFailedSerialNumbers().isEmpty()) {
+          for (BigInteger serial : batchResult.getFailedSerialNumbers()) {
+            failedWriter.write(serial.toString(16));
+            failedWriter.write('\n');
+          }
+          failedWriter.flush();
+        }
+      } catch (CaMgmtException ex) {
+        throw new CmdFailure("could not revoke certificates after " + (skip + processed)
+            + " serial numbers (resume with --skip " + (skip + processed) + "), error: "
+            + ex.getMessage(), ex);
+      }
+
+      println("processed " + (skip + processed + batch.size()) + " serial numbers: revoked "
+          + result.getNumRevoked() + ", already revoked " + result.getNumAlreadyRevoked()
+          + ", failed " + result.getFailedSerialNumbers().size());
+      return batch.size();
+    } // method revokeBatch
+
+  } // class RevokeCerts
+
   @Command(scope = "ca", name = "unrevoke-cert", description = "unrevoke certificate")
   @Service
   public static class UnrevokeCert extends UnRevRmCertAction {